@@ -0,0 +1,53 @@
+package edu.stanford.smi.protege.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import junit.framework.TestCase;
+
+public class FrameIDDictionary_Test extends TestCase {
+
+    public void testIntern() {
+        FrameIDDictionary dictionary = new FrameIDDictionary();
+        String a = dictionary.intern(new String("a"));
+        String b = dictionary.intern(new String("b"));
+        assertSame(a, dictionary.intern(new String("a")));
+        assertEquals(0, dictionary.getIndex("a"));
+        assertEquals(1, dictionary.getIndex(b));
+        assertEquals(-1, dictionary.getIndex("c"));
+        assertSame(a, dictionary.getName(0));
+        assertNull(dictionary.getName(2));
+        assertEquals(2, dictionary.size());
+        assertEquals(2, dictionary.getIndexLimit());
+    }
+
+    public void testFrameIDIndex() {
+        FrameID id1 = new FrameID(new String("FrameIDDictionary_Test_frame"));
+        FrameID id2 = new FrameID(new String("FrameIDDictionary_Test_frame"));
+        FrameID other = new FrameID("FrameIDDictionary_Test_other");
+        assertTrue(id1.getIndex() >= 0);
+        assertEquals(id1.getIndex(), id2.getIndex());
+        assertEquals(id1, id2);
+        assertFalse(id1.equals(other));
+        assertEquals(-1, new FrameID(null).getIndex());
+        assertEquals(new FrameID(null), new FrameID(null));
+        assertEquals(id1.getIndex(), FrameID.getDictionary().getIndex("FrameIDDictionary_Test_frame"));
+    }
+
+    public void testSerialization() throws Exception {
+        FrameID id = new FrameID("FrameIDDictionary_Test_serialized");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(id);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        FrameID copy = (FrameID) in.readObject();
+        assertNotSame(id, copy);
+        assertEquals(id, copy);
+        assertEquals(id.hashCode(), copy.hashCode());
+        assertEquals(id.getIndex(), copy.getIndex());
+        assertSame(id.getName(), copy.getName());
+    }
+}
@@ -0,0 +1,96 @@
+package edu.stanford.smi.protege.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Multi-threaded read throughput of a DefaultKnowledgeBase with the default monitor
+ * locking and with read/write locking.  Each thread repeatedly reads own slot values,
+ * types and superclasses of random frames.  Run with something like
+ * <pre>
+ *     java edu.stanford.smi.protege.model.ReadWriteLockingBenchmark 8 20000
+ * </pre>
+ * where the arguments are the maximum number of threads and the number of instances.
+ */
+public class ReadWriteLockingBenchmark {
+    private static final int CLASS_COUNT = 200;
+    private static final int SLOT_COUNT = 10;
+    private static final long RUN_MILLIS = 3000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int instanceCount = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        System.out.println("threads  monitor ops/sec  read/write ops/sec");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double monitor = run(false, threads, instanceCount);
+            double readWrite = run(true, threads, instanceCount);
+            System.out.println(threads + "        " + Math.round(monitor) + "        " + Math.round(readWrite));
+        }
+    }
+
+    private static double run(boolean readWriteLocking, int threadCount, int instanceCount)
+            throws InterruptedException {
+        DefaultKnowledgeBase kb = new DefaultKnowledgeBase();
+        kb.setReadWriteLockingEnabled(readWriteLocking);
+        final Slot[] slots = new Slot[SLOT_COUNT];
+        for (int i = 0; i < SLOT_COUNT; ++i) {
+            slots[i] = kb.createSlot("slot_" + i);
+        }
+        List<Cls> classes = new ArrayList<Cls>();
+        Collection parents = kb.getRootClses();
+        for (int i = 0; i < CLASS_COUNT; ++i) {
+            Cls cls = kb.createCls("Class_" + i, parents);
+            for (int j = 0; j < SLOT_COUNT; ++j) {
+                cls.addDirectTemplateSlot(slots[j]);
+            }
+            classes.add(cls);
+            if (i % 10 == 9) {
+                parents = new ArrayList<Cls>(classes.subList(i - 1, i + 1));
+            }
+        }
+        final Instance[] instances = new Instance[instanceCount];
+        for (int i = 0; i < instanceCount; ++i) {
+            Instance instance = classes.get(i % CLASS_COUNT).createDirectInstance("Instance_" + i);
+            instance.setDirectOwnSlotValue(slots[i % SLOT_COUNT], "value " + i);
+            instances[i] = instance;
+        }
+
+        final KnowledgeBase readKb = kb;
+        final long[] counts = new long[threadCount];
+        final long end = System.currentTimeMillis() + RUN_MILLIS;
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; ++t) {
+            final int index = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    int seed = index * 7919 + 1;
+                    long count = 0;
+                    while ((count & 0xff) != 0 || System.currentTimeMillis() < end) {
+                        seed = seed * 1103515245 + 12345;
+                        Instance instance = instances[(seed >>> 1) % instances.length];
+                        readKb.getDirectOwnSlotValues(instance, slots[(seed >>> 8) % SLOT_COUNT]);
+                        Collection types = readKb.getDirectTypes(instance);
+                        readKb.getSuperclasses((Cls) types.iterator().next());
+                        ++count;
+                    }
+                    counts[index] = count;
+                }
+            };
+        }
+        long start = System.currentTimeMillis();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        kb.close();
+        return total * 1000.0 / elapsed;
+    }
+}
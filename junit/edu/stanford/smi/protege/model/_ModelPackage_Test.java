@@ -20,6 +20,7 @@ public class _ModelPackage_Test {
         suite.addTestSuite(DefaultFrame_Test.class);
         suite.addTestSuite(BrowserSlotPattern_Test.class);
         suite.addTestSuite(ModelUtilities_Test.class);
+        suite.addTestSuite(FrameIDDictionary_Test.class);
         return suite;
     }
 }
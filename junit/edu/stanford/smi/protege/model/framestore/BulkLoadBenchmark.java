@@ -0,0 +1,81 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.Collections;
+import java.util.Random;
+
+import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.DefaultSimpleInstance;
+import edu.stanford.smi.protege.model.DefaultSlot;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Model;
+import edu.stanford.smi.protege.model.Slot;
+
+/**
+ * Time to load a synthetic set of instances into an InMemoryFrameDb with and without a
+ * bulk load.  Each instance gets a name, a type, a string value and a reference to another
+ * instance.  Run with something like
+ * <pre>
+ *     java -Xmx4g edu.stanford.smi.protege.model.framestore.BulkLoadBenchmark 1000000
+ * </pre>
+ * where the argument is the number of instances.  The index building at the end of a bulk
+ * load uses one thread per index so the difference grows with the number of cores.
+ */
+public class BulkLoadBenchmark {
+    private static final int ROUNDS = 3;
+
+    private final Slot nameSlot;
+    private final Slot typeSlot;
+    private final Slot stringSlot;
+    private final Slot referenceSlot;
+    private final Frame type;
+    private final Frame[] frames;
+
+    public static void main(String[] args) {
+        int frameCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        new BulkLoadBenchmark(frameCount).run();
+    }
+
+    private BulkLoadBenchmark(int frameCount) {
+        KnowledgeBase kb = new DefaultKnowledgeBase();
+        nameSlot = new DefaultSlot(kb, Model.SlotID.NAME);
+        typeSlot = new DefaultSlot(kb, Model.SlotID.DIRECT_TYPES);
+        stringSlot = new DefaultSlot(kb, new FrameID("string"));
+        referenceSlot = new DefaultSlot(kb, new FrameID("reference"));
+        type = new DefaultSimpleInstance(kb, new FrameID("Type"));
+        frames = new Frame[frameCount];
+        for (int i = 0; i < frameCount; ++i) {
+            frames[i] = new DefaultSimpleInstance(kb, new FrameID("Instance_" + i));
+        }
+    }
+
+    private void run() {
+        System.out.println("Instances: " + frames.length + ", processors: " + Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round < ROUNDS; ++round) {
+            System.out.println("one at a time: " + load(false) + " ms, bulk load: " + load(true) + " ms");
+        }
+    }
+
+    private long load(boolean bulk) {
+        System.gc();
+        Random random = new Random(42);
+        long start = System.currentTimeMillis();
+        InMemoryFrameDb frameDb = new InMemoryFrameDb("bulk load benchmark");
+        if (bulk) {
+            frameDb.beginBulkLoad();
+        }
+        for (Frame frame : frames) {
+            frameDb.setValues(frame, nameSlot, null, false, Collections.singleton(frame.getFrameID().getName()));
+            frameDb.setValues(frame, typeSlot, null, false, Collections.singleton(type));
+            frameDb.setValues(frame, stringSlot, null, false, Collections.singleton("value " + random.nextInt(100000)));
+            frameDb.setValues(frame, referenceSlot, null, false, Collections.singleton(frames[random.nextInt(frames.length)]));
+        }
+        if (bulk) {
+            frameDb.endBulkLoad();
+        }
+        long time = System.currentTimeMillis() - start;
+        frameDb.close();
+        return time;
+    }
+}
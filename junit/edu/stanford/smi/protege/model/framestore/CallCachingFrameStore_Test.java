@@ -1,5 +1,7 @@
 package edu.stanford.smi.protege.model.framestore;
 
+import java.lang.reflect.Proxy;
+
 import edu.stanford.smi.protege.model.*;
 
 public class CallCachingFrameStore_Test extends FrameStore_Test {
@@ -9,4 +11,40 @@ public class CallCachingFrameStore_Test extends FrameStore_Test {
         fs.setDelegate(new InMemoryFrameStore(kb));
         return fs;
     }
+
+    private CallCachingFrameStore getHandler() {
+        return (CallCachingFrameStore) Proxy.getInvocationHandler(getTestFrameStore());
+    }
+
+    public void testUnrelatedModificationKeepsCache() {
+        Cls cls = createCls();
+        Slot slot = createSlotOnCls(cls);
+        SimpleInstance a = createSimpleInstance(cls);
+        SimpleInstance b = createSimpleInstance(cls);
+        setOwnSlotValue(a, slot, "a");
+        assertEquals("a", getTestFrameStore().getDirectOwnSlotValues(a, slot).get(0));
+        long hits = getHandler().getHitCount();
+        setOwnSlotValue(b, slot, "b");
+        assertEquals("a", getTestFrameStore().getDirectOwnSlotValues(a, slot).get(0));
+        assertEquals(hits + 1, getHandler().getHitCount());
+        setOwnSlotValue(a, slot, "c");
+        assertEquals("c", getTestFrameStore().getDirectOwnSlotValues(a, slot).get(0));
+        assertEquals(hits + 1, getHandler().getHitCount());
+    }
+
+    public void testEviction() throws Exception {
+        MethodCallCache cache = new MethodCallCache(2, 0);
+        java.lang.reflect.Method method = FrameStore.class.getMethod("getFrame", new Class[] { String.class });
+        String[] names = new String[] { "frame0", "frame1", "frame2" };
+        cache.put(new MethodCall(method, new Object[] { names[0] }), "value0", null);
+        cache.put(new MethodCall(method, new Object[] { names[1] }), "value1", null);
+        assertEquals("value0", cache.get(method, new Object[] { names[0] }));
+        cache.put(new MethodCall(method, new Object[] { names[2] }), "value2", null);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals("value0", cache.get(method, new Object[] { names[0] }));
+        assertNull(cache.get(method, new Object[] { names[1] }));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
 }
@@ -0,0 +1,102 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import edu.stanford.smi.protege.model.DefaultCls;
+import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.DefaultSlot;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Model;
+import edu.stanford.smi.protege.model.Slot;
+
+public class ClosureCachingBasicFrameStore_Test extends SimpleTestCase {
+    private static final int FRAME_COUNT = 40;
+
+    private InMemoryFrameDb _frameDb;
+    private ClosureCachingBasicFrameStore _store;
+    private Slot _slot;
+    private Frame[] _frames;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        KnowledgeBase kb = new DefaultKnowledgeBase();
+        _frameDb = new InMemoryFrameDb("closure test");
+        _store = new ClosureCachingBasicFrameStore(_frameDb);
+        _slot = new DefaultSlot(kb, Model.SlotID.DIRECT_SUPERCLASSES);
+        _frames = new Frame[FRAME_COUNT];
+        for (int i = 0; i < FRAME_COUNT; ++i) {
+            _frames[i] = new DefaultCls(kb, new FrameID("Frame_" + i));
+        }
+    }
+
+    private void assertClosure(Frame frame) {
+        assertEqualsSet(ClosureUtils.calculateClosure(_frameDb, frame, _slot, null, false),
+                        _store.getClosure(frame, _slot, null, false));
+    }
+
+    public void testAddValue() {
+        _store.setValues(_frames[1], _slot, null, false, makeList(_frames[0]));
+        _store.setValues(_frames[2], _slot, null, false, makeList(_frames[1]));
+        assertEqualsSet(makeList(_frames[1], _frames[0]), _store.getClosure(_frames[2], _slot, null, false));
+        _store.addValues(_frames[0], _slot, null, false, makeList(_frames[3]));
+        assertEqualsSet(makeList(_frames[1], _frames[0], _frames[3]),
+                        _store.getClosure(_frames[2], _slot, null, false));
+    }
+
+    public void testRemoveValue() {
+        _store.setValues(_frames[1], _slot, null, false, makeList(_frames[0]));
+        _store.setValues(_frames[2], _slot, null, false, makeList(_frames[1]));
+        assertEqualsSet(makeList(_frames[1], _frames[0]), _store.getClosure(_frames[2], _slot, null, false));
+        _store.removeValue(_frames[1], _slot, null, false, _frames[0]);
+        assertEqualsSet(makeList(_frames[1]), _store.getClosure(_frames[2], _slot, null, false));
+    }
+
+    public void testEditKeepsUnrelatedClosures() {
+        _store.setValues(_frames[1], _slot, null, false, makeList(_frames[0]));
+        _store.setValues(_frames[3], _slot, null, false, makeList(_frames[2]));
+        Set closure1 = _store.getClosure(_frames[1], _slot, null, false);
+        Set closure3 = _store.getClosure(_frames[3], _slot, null, false);
+        _store.addValues(_frames[0], _slot, null, false, makeList(_frames[4]));
+        assertSame(closure3, _store.getClosure(_frames[3], _slot, null, false));
+        assertNotSame(closure1, _store.getClosure(_frames[1], _slot, null, false));
+        assertEqualsSet(makeList(_frames[0], _frames[4]), _store.getClosure(_frames[1], _slot, null, false));
+
+        _store.removeValue(_frames[0], _slot, null, false, _frames[4]);
+        closure1 = _store.getClosure(_frames[1], _slot, null, false);
+        _store.removeValue(_frames[3], _slot, null, false, _frames[2]);
+        assertSame(closure1, _store.getClosure(_frames[1], _slot, null, false));
+        assertEqualsSet(makeList(_frames[0]), closure1);
+        assertTrue(_store.getClosure(_frames[3], _slot, null, false).isEmpty());
+    }
+
+    public void testRandomEdits() {
+        Random random = new Random(7);
+        for (int step = 0; step < 2000; ++step) {
+            Frame frame = _frames[random.nextInt(FRAME_COUNT)];
+            Frame value = _frames[random.nextInt(FRAME_COUNT)];
+            switch (random.nextInt(4)) {
+            case 0:
+                _store.addValues(frame, _slot, null, false, Collections.singleton(value));
+                break;
+            case 1:
+                _store.removeValue(frame, _slot, null, false, value);
+                break;
+            case 2:
+                HashSet values = new HashSet(_frameDb.getValues(frame, _slot, null, false));
+                values.add(value);
+                _store.setValues(frame, _slot, null, false, values);
+                break;
+            default:
+                assertClosure(frame);
+            }
+        }
+        for (int i = 0; i < FRAME_COUNT; ++i) {
+            assertClosure(_frames[i]);
+        }
+    }
+}
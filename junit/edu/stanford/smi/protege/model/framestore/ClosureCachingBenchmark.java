@@ -0,0 +1,135 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import edu.stanford.smi.protege.model.DefaultCls;
+import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.DefaultSlot;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Model;
+import edu.stanford.smi.protege.model.Slot;
+
+/**
+ * Closure query latency and edit cost of the ClosureCachingBasicFrameStore on a synthetic
+ * class hierarchy.  The hierarchy is a DAG with the given number of nodes arranged in
+ * levels.  Each node has a parent close to it in the level above and one in ten nodes has
+ * a second parent.  Run with something like
+ * <pre>
+ *     java -Xmx4g edu.stanford.smi.protege.model.framestore.ClosureCachingBenchmark 500000 40
+ * </pre>
+ * where the arguments are the number of nodes and the depth.  The "cold" numbers are
+ * what every query paid after an edit when an edit dropped all of the cached closures.
+ */
+public class ClosureCachingBenchmark {
+    private static final int SAMPLE_SIZE = 2000;
+    private static final int EDIT_COUNT = 200;
+    private static final int SPREAD = 2;
+
+    private final Slot superclassesSlot;
+    private final Slot subclassesSlot;
+    private final Frame[] nodes;
+    private final int width;
+    private final InMemoryFrameDb frameDb = new InMemoryFrameDb("closure benchmark");
+    private final ClosureCachingBasicFrameStore store = new ClosureCachingBasicFrameStore(frameDb);
+    private final Random random = new Random(42);
+
+    public static void main(String[] args) {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        new ClosureCachingBenchmark(nodeCount, depth).run();
+    }
+
+    private ClosureCachingBenchmark(int nodeCount, int depth) {
+        KnowledgeBase kb = new DefaultKnowledgeBase();
+        superclassesSlot = new DefaultSlot(kb, Model.SlotID.DIRECT_SUPERCLASSES);
+        subclassesSlot = new DefaultSlot(kb, Model.SlotID.DIRECT_SUBCLASSES);
+        width = Math.max(1, nodeCount / depth);
+        nodes = new Frame[nodeCount];
+        for (int i = 0; i < nodeCount; ++i) {
+            nodes[i] = new DefaultCls(kb, new FrameID("Class_" + i));
+        }
+        for (int i = width; i < nodeCount; ++i) {
+            addEdge(frameDb, nodes[i], nodes[getParentIndex(i)]);
+            if (random.nextInt(10) == 0) {
+                addEdge(frameDb, nodes[i], nodes[getParentIndex(i)]);
+            }
+        }
+    }
+
+    private int getParentIndex(int i) {
+        int levelStart = (i / width - 1) * width;
+        int position = i % width + random.nextInt(2 * SPREAD + 1) - SPREAD;
+        return levelStart + Math.max(0, Math.min(width - 1, position));
+    }
+
+    private void addEdge(NarrowFrameStore target, Frame child, Frame parent) {
+        target.addValues(child, superclassesSlot, null, false, Collections.singleton(parent));
+        target.addValues(parent, subclassesSlot, null, false, Collections.singleton(child));
+    }
+
+    private void removeEdge(NarrowFrameStore target, Frame child, Frame parent) {
+        target.removeValue(child, superclassesSlot, null, false, parent);
+        target.removeValue(parent, subclassesSlot, null, false, child);
+    }
+
+    private void run() {
+        List<Frame> leaves = sample(nodes.length - width, nodes.length);
+        List<Frame> tops = sample(0, Math.min(nodes.length, 5 * width));
+
+        long coldSuper = query(leaves, superclassesSlot);
+        long coldSub = query(tops, subclassesSlot);
+        long warmSuper = query(leaves, superclassesSlot);
+        long warmSub = query(tops, subclassesSlot);
+
+        long addTime = 0;
+        long removeTime = 0;
+        for (int i = 0; i < EDIT_COUNT; ++i) {
+            int childIndex = width + random.nextInt(nodes.length - width);
+            Frame child = nodes[childIndex];
+            Frame parent = nodes[getParentIndex(childIndex)];
+            long start = System.nanoTime();
+            addEdge(store, child, parent);
+            addTime += System.nanoTime() - start;
+            start = System.nanoTime();
+            removeEdge(store, child, parent);
+            removeTime += System.nanoTime() - start;
+        }
+        long afterEditSuper = query(leaves, superclassesSlot);
+        long afterEditSub = query(tops, subclassesSlot);
+
+        System.out.println("Nodes: " + nodes.length + ", depth: " + (nodes.length / width));
+        print("superclass closure, cold", coldSuper, leaves.size());
+        print("superclass closure, cached", warmSuper, leaves.size());
+        print("superclass closure, after edits", afterEditSuper, leaves.size());
+        print("subclass closure, cold", coldSub, tops.size());
+        print("subclass closure, cached", warmSub, tops.size());
+        print("subclass closure, after edits", afterEditSub, tops.size());
+        print("add edge", addTime, EDIT_COUNT);
+        print("remove edge", removeTime, EDIT_COUNT);
+    }
+
+    private List<Frame> sample(int from, int to) {
+        List<Frame> sample = new ArrayList<Frame>();
+        for (int i = 0; i < SAMPLE_SIZE; ++i) {
+            sample.add(nodes[from + random.nextInt(to - from)]);
+        }
+        return sample;
+    }
+
+    private long query(List<Frame> frames, Slot slot) {
+        long start = System.nanoTime();
+        for (Frame frame : frames) {
+            store.getClosure(frame, slot, null, false);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void print(String label, long nanos, int count) {
+        System.out.println(label + ": " + (nanos / count / 1000.0) + " usec");
+    }
+}
@@ -0,0 +1,124 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.stanford.smi.protege.model.DefaultCls;
+import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.DefaultSimpleInstance;
+import edu.stanford.smi.protege.model.DefaultSlot;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Model;
+import edu.stanford.smi.protege.model.Slot;
+
+/**
+ * Memory footprint report comparing the InMemoryFrameDb with the CompactFrameDb.
+ * <p>
+ * Each store is filled with the same synthetic instance data (a name, a direct type
+ * and a few own slot values per instance) and the retained heap is measured after
+ * forcing garbage collection.  Run with something like
+ * <pre>
+ *     java -Xmx4g edu.stanford.smi.protege.model.framestore.CompactFrameDbFootprint 500000
+ * </pre>
+ * The numbers are only approximate because they rely on Runtime.totalMemory() and
+ * Runtime.freeMemory().
+ */
+public class CompactFrameDbFootprint {
+    private static final int CLASS_COUNT = 1000;
+    private static final int SLOT_COUNT = 20;
+
+    public static void main(String[] args) {
+        int instanceCount = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        KnowledgeBase kb = new DefaultKnowledgeBase();
+        Data data = new Data(kb, instanceCount);
+
+        long inMemory = measure(new InMemoryFrameDb("in memory"), data);
+        long compact = measure(new CompactFrameDb("compact"), data);
+
+        System.out.println("Instances:        " + instanceCount);
+        System.out.println("InMemoryFrameDb:  " + toMegabytes(inMemory) + " MB");
+        System.out.println("CompactFrameDb:   " + toMegabytes(compact) + " MB");
+        if (compact > 0) {
+            System.out.println("Ratio:            " + ((double) inMemory / compact));
+        }
+    }
+
+    private static long measure(NarrowFrameStore store, Data data) {
+        long before = usedMemory();
+        data.load(store);
+        long after = usedMemory();
+        long used = after - before;
+        if (store.getFrameCount() == 0) {  // keep the store reachable until measured
+            System.out.println("Nothing loaded into " + store);
+        }
+        store.close();
+        return used;
+    }
+
+    private static String toMegabytes(long bytes) {
+        return String.valueOf(Math.round(bytes / (1024.0 * 1024.0) * 10) / 10.0);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; ++i) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /*
+     * The frames and values are created once and shared by both stores so that only the
+     * store structures themselves are measured.
+     */
+    private static class Data {
+        private final Slot nameSlot;
+        private final Slot directTypeSlot;
+        private final Frame[] classes = new Frame[CLASS_COUNT];
+        private final Slot[] slots = new Slot[SLOT_COUNT];
+        private final Frame[] instances;
+        private final List<List<String>> stringValues;
+
+        Data(KnowledgeBase kb, int instanceCount) {
+            nameSlot = new DefaultSlot(kb, Model.SlotID.NAME);
+            directTypeSlot = new DefaultSlot(kb, Model.SlotID.DIRECT_TYPES);
+            for (int i = 0; i < CLASS_COUNT; ++i) {
+                classes[i] = new DefaultCls(kb, new FrameID("http://example.org/ontology#Class_" + i));
+            }
+            for (int i = 0; i < SLOT_COUNT; ++i) {
+                slots[i] = new DefaultSlot(kb, new FrameID("http://example.org/ontology#slot_" + i));
+            }
+            instances = new Frame[instanceCount];
+            stringValues = new ArrayList<List<String>>(instanceCount);
+            for (int i = 0; i < instanceCount; ++i) {
+                instances[i] = new DefaultSimpleInstance(kb, new FrameID("http://example.org/ontology#Instance_" + i));
+                List<String> values = new ArrayList<String>();
+                values.add("label " + i);
+                values.add("comment " + (i % 5000));
+                stringValues.add(values);
+            }
+        }
+
+        void load(NarrowFrameStore store) {
+            for (int i = 0; i < instances.length; ++i) {
+                Frame instance = instances[i];
+                store.setValues(instance, nameSlot, null, false,
+                                Collections.singletonList(instance.getFrameID().getName()));
+                store.setValues(instance, directTypeSlot, null, false,
+                                Collections.singletonList(classes[i % CLASS_COUNT]));
+                for (int j = 0; j < 3; ++j) {
+                    Slot slot = slots[(i + j) % SLOT_COUNT];
+                    store.setValues(instance, slot, null, false, stringValues.get(i));
+                }
+            }
+        }
+    }
+}
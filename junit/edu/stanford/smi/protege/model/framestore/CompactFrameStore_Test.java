@@ -0,0 +1,55 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.stanford.smi.protege.model.*;
+
+public class CompactFrameStore_Test extends InMemoryFrameStore_Test {
+
+    protected FrameStore createFrameStore(DefaultKnowledgeBase kb) {
+        return new InMemoryFrameStore(kb, new CompactFrameDb(kb.getName()));
+    }
+
+    /*
+     * The duplicate checks of records with many values use a multiset instead of a scan.
+     */
+    public void testManyDuplicateValues() {
+        KnowledgeBase kb = new DefaultKnowledgeBase();
+        Frame frame = new DefaultSimpleInstance(kb, new FrameID("frame"));
+        Slot slot = new DefaultSlot(kb, new FrameID("slot"));
+        Frame target = new DefaultSimpleInstance(kb, new FrameID("target"));
+        CompactFrameDb db = new CompactFrameDb("test");
+        List<Object> values = new ArrayList<Object>();
+        for (int i = 0; i < 100; ++i) {
+            values.add("value" + (i % 10));
+        }
+        values.add(target);
+        values.add(target);
+        db.setValues(frame, slot, null, false, values);
+        assertEquals(102, db.getValuesCount(frame, slot, null, false));
+        assertEquals(Collections.singleton(frame), db.getFrames(slot, null, false, "value3"));
+        assertEquals(1, db.getReferences(target).size());
+
+        db.removeValue(frame, slot, null, false, target);
+        assertEquals(1, db.getReferences(target).size());
+        db.removeValue(frame, slot, null, false, target);
+        assertTrue(db.getReferences(target).isEmpty());
+
+        for (int i = 0; i < 200; ++i) {
+            db.addValues(frame, slot, null, false, Collections.singleton("added" + (i % 20)));
+        }
+        assertEquals(300, db.getValuesCount(frame, slot, null, false));
+        assertEquals(Collections.singleton(frame), db.getFrames(slot, null, false, "added19"));
+        for (int i = 0; i < 10; ++i) {
+            db.removeValue(frame, slot, null, false, "added7");
+        }
+        assertTrue(db.getFrames(slot, null, false, "added7").isEmpty());
+        assertEquals(Collections.singleton(frame), db.getFrames(slot, null, false, "added8"));
+
+        db.setValues(frame, slot, null, false, Collections.singleton("value3"));
+        assertTrue(db.getFrames(slot, null, false, "added8").isEmpty());
+        assertEquals(Collections.singleton(frame), db.getFrames(slot, null, false, "value3"));
+    }
+}
@@ -0,0 +1,174 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.Collections;
+
+import edu.stanford.smi.protege.model.Cls;
+import edu.stanford.smi.protege.model.DefaultCls;
+import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.Instance;
+import edu.stanford.smi.protege.model.Slot;
+
+public class FrameDbSnapshot_Test extends SimpleTestCase {
+    private DefaultKnowledgeBase _kb;
+    private InMemoryFrameDb _frameDb;
+    private Cls _cls;
+    private Slot _slot;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        _kb = new DefaultKnowledgeBase();
+        _frameDb = (InMemoryFrameDb) MergingNarrowFrameStore.get(_kb).getActiveFrameStore();
+        _cls = _kb.createCls("A", _kb.getRootClses());
+        _slot = _kb.createSlot("s");
+        _cls.addDirectTemplateSlot(_slot);
+    }
+
+    protected void tearDown() throws Exception {
+        _kb.close();
+        super.tearDown();
+    }
+
+    public void testValues() {
+        Instance instance = _cls.createDirectInstance("i");
+        instance.setDirectOwnSlotValues(_slot, makeList("a", "b"));
+        int matchCount = _kb.getMatchingReferences("a", FrameStore.UNLIMITED_MATCHES).size();
+        FrameDbSnapshot snapshot = _frameDb.createSnapshot();
+        instance.addOwnSlotValue(_slot, "c");
+        instance.removeOwnSlotValue(_slot, "a");
+        Instance created = _cls.createDirectInstance("j");
+        created.setDirectOwnSlotValue(_slot, "b");
+
+        snapshot.activate();
+        try {
+            assertEqualsList(makeList("a", "b"), instance.getDirectOwnSlotValues(_slot));
+            assertEqualsSet(makeList(instance), _cls.getDirectInstances());
+            assertNull(_kb.getFrame("j"));
+            assertNull(_frameDb.getFrame(new FrameID("j")));
+            assertEqualsSet(makeList(instance), _kb.getFramesWithValue(_slot, null, false, "b"));
+            assertEquals(matchCount, _kb.getMatchingReferences("a", FrameStore.UNLIMITED_MATCHES).size());
+        } finally {
+            snapshot.deactivate();
+        }
+        assertEqualsList(makeList("b", "c"), instance.getDirectOwnSlotValues(_slot));
+        assertEqualsSet(makeList(instance, created), _cls.getDirectInstances());
+        assertEquals(matchCount - 1, _kb.getMatchingReferences("a", FrameStore.UNLIMITED_MATCHES).size());
+        snapshot.close();
+        assertTrue(snapshot.isClosed());
+    }
+
+    public void testDeleteFrame() {
+        Instance instance = _cls.createDirectInstance("i");
+        instance.setDirectOwnSlotValue(_slot, "a");
+        int frameCount = _frameDb.getFrameCount();
+        int simpleInstanceCount = _frameDb.getSimpleInstanceCount();
+        FrameDbSnapshot snapshot = _frameDb.createSnapshot();
+        _kb.deleteFrame(instance);
+        assertNull(_kb.getFrame("i"));
+
+        snapshot.activate();
+        try {
+            Frame frame = _kb.getFrame("i");
+            assertEquals(instance, frame);
+            assertTrue(_frameDb.getFrames().contains(instance));
+            assertEquals(frameCount, _frameDb.getFrameCount());
+            assertEquals(simpleInstanceCount, _frameDb.getSimpleInstanceCount());
+            assertEqualsList(makeList("a"), _frameDb.getValues(instance, _slot, null, false));
+            assertEquals(1, _frameDb.getReferences(instance).size());
+        } finally {
+            snapshot.close();
+        }
+        assertFalse(_frameDb.getFrames().contains(instance));
+        assertEquals(frameCount - 1, _frameDb.getFrameCount());
+    }
+
+    public void testReplaceFrame() {
+        Instance instance = _cls.createDirectInstance("i");
+        Instance referrer = _cls.createDirectInstance("j");
+        _frameDb.setValues(referrer, _slot, null, false, makeList(instance));
+        FrameDbSnapshot snapshot = _frameDb.createSnapshot();
+        Frame replacement = new DefaultCls(_kb, instance.getFrameID());
+        _frameDb.replaceFrame(replacement);
+        assertSame(replacement, _frameDb.getValues(referrer, _slot, null, false).get(0));
+
+        snapshot.activate();
+        try {
+            assertSame(instance, _frameDb.getFrame(instance.getFrameID()));
+            assertSame(instance, _frameDb.getValues(referrer, _slot, null, false).get(0));
+            assertEqualsSet(makeList(referrer), _frameDb.getFrames(_slot, null, false, instance));
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    public void testClosure() {
+        Cls b = _kb.createCls("B", Collections.singleton(_cls));
+        Cls c = _kb.createCls("C", Collections.singleton(b));
+        assertEqualsSet(makeList(b, c), _cls.getSubclasses());
+        FrameDbSnapshot snapshot = _frameDb.createSnapshot();
+        c.removeDirectSuperclass(b);
+        c.addDirectSuperclass(_kb.getRootCls());
+        assertEqualsSet(makeList(b), _cls.getSubclasses());
+        snapshot.activate();
+        try {
+            assertEqualsSet(makeList(b, c), _cls.getSubclasses());
+        } finally {
+            snapshot.close();
+        }
+        assertEqualsSet(makeList(b), _cls.getSubclasses());
+    }
+
+    public void testReadOnly() {
+        FrameDbSnapshot snapshot = _frameDb.createSnapshot();
+        snapshot.activate();
+        try {
+            _cls.createDirectInstance("i");
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    public void testReadWhileWriting() throws Exception {
+        final Instance instance = _cls.createDirectInstance("i");
+        instance.setDirectOwnSlotValues(_slot, makeList("a", "b"));
+        final int frameCount = _kb.getFrameCount();
+        final FrameDbSnapshot snapshot = _frameDb.createSnapshot();
+        final Throwable[] failure = new Throwable[1];
+        final boolean[] done = new boolean[1];
+        Thread reader = new Thread() {
+            public void run() {
+                snapshot.activate();
+                try {
+                    while (!done[0]) {
+                        assertEqualsList(makeList("a", "b"), instance.getDirectOwnSlotValues(_slot));
+                        assertEqualsSet(makeList(instance), _cls.getDirectInstances());
+                        assertEquals(frameCount, _kb.getFrameCount());
+                        assertEqualsSet(makeList(instance), _kb.getFramesWithValue(_slot, null, false, "a"));
+                    }
+                } catch (Throwable t) {
+                    failure[0] = t;
+                } finally {
+                    snapshot.deactivate();
+                }
+            }
+        };
+        reader.start();
+        for (int i = 0; i < 300 && reader.isAlive(); ++i) {
+            Instance created = _cls.createDirectInstance("j" + i);
+            created.setDirectOwnSlotValue(_slot, "a");
+            instance.setDirectOwnSlotValues(_slot, makeList("c" + i));
+            _kb.deleteFrame(created);
+        }
+        done[0] = true;
+        reader.join();
+        snapshot.close();
+        if (failure[0] != null) {
+            throw new RuntimeException(failure[0]);
+        }
+        assertEqualsList(makeList("c299"), instance.getDirectOwnSlotValues(_slot));
+    }
+}
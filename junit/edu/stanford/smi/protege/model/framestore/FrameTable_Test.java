@@ -0,0 +1,58 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.DefaultSimpleInstance;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+
+public class FrameTable_Test extends SimpleTestCase {
+    private static final int FRAME_COUNT = 20000;
+
+    private KnowledgeBase _kb = new DefaultKnowledgeBase();
+    private List<FrameID> _ids = new ArrayList<FrameID>();
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        // the ids of other frame dbs push the indexes up
+        for (int i = 0; i < FRAME_COUNT; ++i) {
+            _ids.add(new FrameID("FrameTable_Test_" + i));
+        }
+    }
+
+    private Frame createFrame(int i) {
+        return new DefaultSimpleInstance(_kb, _ids.get(i));
+    }
+
+    public void testSparseFrames() {
+        FrameTable table = new FrameTable();
+        Frame first = createFrame(0);
+        Frame last = createFrame(FRAME_COUNT - 1);
+        table.put(first);
+        table.put(last);
+        assertFalse(table.isArray());
+        assertEquals(2, table.size());
+        assertSame(first, table.get(first.getFrameID()));
+        assertSame(last, table.get(last.getFrameID()));
+        assertNull(table.get(_ids.get(1)));
+        table.remove(first.getFrameID());
+        assertNull(table.get(first.getFrameID()));
+        assertEquals(1, table.size());
+    }
+
+    public void testFramesBecomeDense() {
+        FrameTable table = new FrameTable();
+        table.put(createFrame(FRAME_COUNT - 1));
+        for (int i = 0; i < FRAME_COUNT - 1; ++i) {
+            table.put(createFrame(i));
+        }
+        assertTrue(table.isArray());
+        assertEquals(FRAME_COUNT, table.size());
+        for (int i = 0; i < FRAME_COUNT; ++i) {
+            assertEquals(_ids.get(i), table.get(_ids.get(i)).getFrameID());
+        }
+    }
+}
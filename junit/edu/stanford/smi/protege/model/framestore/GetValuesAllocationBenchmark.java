@@ -0,0 +1,59 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.stanford.smi.protege.model.Cls;
+import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Project;
+import edu.stanford.smi.protege.model.Slot;
+
+/**
+ * Time and bytes allocated per getDirectOwnSlotValues call through the whole frame store
+ * chain of an in-memory knowledge base.  The allocation is measured with the per thread
+ * allocation counter of the HotSpot ThreadMXBean.  Run with something like
+ * <pre>
+ *     java edu.stanford.smi.protege.model.framestore.GetValuesAllocationBenchmark 10000 5000000
+ * </pre>
+ * where the arguments are the number of classes and the number of calls.
+ */
+public class GetValuesAllocationBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int clsCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int callCount = args.length > 1 ? Integer.parseInt(args[1]) : 5000000;
+
+        KnowledgeBase kb = Project.createNewProject(null, new ArrayList()).getKnowledgeBase();
+        Slot slot = kb.createSlot("values");
+        slot.setAllowsMultipleValues(true);
+        Cls type = kb.createCls("Type", kb.getRootClses());
+        type.addDirectTemplateSlot(slot);
+        List<Cls> clses = new ArrayList<Cls>();
+        for (int i = 0; i < clsCount; ++i) {
+            Cls cls = kb.createCls("Cls_" + i, kb.getRootClses(), type);
+            for (int j = 0; j < i % 5 + 1; ++j) {
+                cls.addOwnSlotValue(slot, "value " + j);
+            }
+            clses.add(cls);
+        }
+        FrameStore head = ((DefaultKnowledgeBase) kb).getHeadFrameStore();
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        for (int round = 0; round < ROUNDS; ++round) {
+            long checksum = 0;
+            long bytes = bean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            for (int i = 0; i < callCount; ++i) {
+                checksum += head.getDirectOwnSlotValues(clses.get(i % clsCount), slot).size();
+            }
+            long nanos = System.nanoTime() - start;
+            bytes = bean.getThreadAllocatedBytes(threadId) - bytes;
+            System.out.println("round " + round + ": " + ((double) nanos / callCount) + " ns/call, "
+                    + ((double) bytes / callCount) + " bytes/call (" + checksum + ")");
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.DefaultSimpleInstance;
+import edu.stanford.smi.protege.model.DefaultSlot;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.Model;
+import edu.stanford.smi.protege.model.Slot;
+
+public class InMemoryFrameDbBulkLoad_Test extends SimpleTestCase {
+    private static final int FRAME_COUNT = 3000;
+
+    private DefaultKnowledgeBase _kb;
+    private Slot _nameSlot;
+    private Slot _slot;
+    private Frame[] _frames;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        _kb = new DefaultKnowledgeBase();
+        _nameSlot = _kb.getSlot(Model.Slot.NAME);
+        _slot = new DefaultSlot(_kb, new FrameID("s"));
+        _frames = new Frame[FRAME_COUNT];
+        for (int i = 0; i < FRAME_COUNT; ++i) {
+            _frames[i] = new DefaultSimpleInstance(_kb, new FrameID("f" + i));
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        _kb.close();
+        super.tearDown();
+    }
+
+    private void load(InMemoryFrameDb frameDb) {
+        Random random = new Random(7);
+        for (int i = 0; i < FRAME_COUNT; ++i) {
+            Frame frame = _frames[i];
+            frameDb.setValues(frame, _nameSlot, null, false, Collections.singleton(frame.getFrameID().getName()));
+            frameDb.addValues(frame, _slot, null, false, makeList("value" + random.nextInt(100)));
+            frameDb.addValues(frame, _slot, null, false, makeList(_frames[random.nextInt(FRAME_COUNT)]));
+            if (i % 10 == 0) {
+                frameDb.setValues(frame, _slot, null, false, makeList("reset" + i % 3));
+            }
+        }
+    }
+
+    private void assertSameIndexes(InMemoryFrameDb expected, InMemoryFrameDb actual) {
+        assertEquals(expected.getFrameCount(), actual.getFrameCount());
+        assertEquals(expected.getSimpleInstanceCount(), actual.getSimpleInstanceCount());
+        assertEqualsSet(expected.getFrames(), actual.getFrames());
+        assertEqualsSet(expected.getFramesWithAnyValue(_slot, null, false),
+                        actual.getFramesWithAnyValue(_slot, null, false));
+        for (int i = 0; i < 100; ++i) {
+            String value = "value" + i;
+            assertEqualsSet(expected.getFrames(_slot, null, false, value), actual.getFrames(_slot, null, false, value));
+        }
+        for (int i = 0; i < FRAME_COUNT; i += 7) {
+            Frame frame = _frames[i];
+            assertEqualsList(expected.getValues(frame, _slot, null, false), actual.getValues(frame, _slot, null, false));
+            assertEquals(expected.getReferences(frame), actual.getReferences(frame));
+        }
+        assertEquals(expected.getMatchingReferences("reset*", FrameStore.UNLIMITED_MATCHES),
+                     actual.getMatchingReferences("reset*", FrameStore.UNLIMITED_MATCHES));
+        assertEqualsSet(expected.getMatchingFrames(_slot, null, false, "*ue1*", FrameStore.UNLIMITED_MATCHES),
+                        actual.getMatchingFrames(_slot, null, false, "*ue1*", FrameStore.UNLIMITED_MATCHES));
+    }
+
+    public void testBulkLoadBuildsSameIndexes() {
+        InMemoryFrameDb expected = new InMemoryFrameDb("expected");
+        load(expected);
+        InMemoryFrameDb actual = new InMemoryFrameDb("actual");
+        actual.beginBulkLoad();
+        load(actual);
+        actual.endBulkLoad();
+        assertSameIndexes(expected, actual);
+    }
+
+    public void testQueriesDuringBulkLoad() {
+        InMemoryFrameDb frameDb = new InMemoryFrameDb("bulk");
+        frameDb.beginBulkLoad();
+        frameDb.beginBulkLoad();
+        frameDb.addValues(_frames[0], _slot, null, false, makeList("a", _frames[1]));
+        assertEqualsList(makeList("a", _frames[1]), frameDb.getValues(_frames[0], _slot, null, false));
+        assertEquals(_frames[0], frameDb.getFrame(_frames[0].getFrameID()));
+        assertEqualsSet(makeList(_frames[0]), frameDb.getFrames(_slot, null, false, "a"));
+
+        frameDb.addValues(_frames[2], _slot, null, false, makeList("a"));
+        assertEquals(1, frameDb.getReferences(_frames[1]).size());
+        assertEqualsSet(makeList(_frames[0], _frames[2]), frameDb.getFrames(_slot, null, false, "a"));
+
+        frameDb.addValues(_frames[3], _slot, null, false, makeList("b"));
+        frameDb.removeValue(_frames[3], _slot, null, false, "b");
+        assertNull(frameDb.getFrame(_frames[3].getFrameID()));
+
+        frameDb.endBulkLoad();
+        frameDb.addValues(_frames[4], _slot, null, false, makeList("a"));
+        frameDb.endBulkLoad();
+        assertEqualsSet(makeList(_frames[0], _frames[2], _frames[4]), frameDb.getFrames(_slot, null, false, "a"));
+        assertEqualsSet(makeList(_frames[0], _frames[2], _frames[4]), frameDb.getFramesWithAnyValue(_slot, null, false));
+    }
+
+    public void testConcurrentQueriesDuringBulkLoad() throws Exception {
+        final InMemoryFrameDb expected = new InMemoryFrameDb("expected");
+        load(expected);
+        for (int round = 0; round < 10; ++round) {
+            final InMemoryFrameDb actual = new InMemoryFrameDb("actual");
+            actual.beginBulkLoad();
+            load(actual);
+            final CountDownLatch start = new CountDownLatch(1);
+            final Throwable[] failure = new Throwable[1];
+            final Thread[] readers = new Thread[4];
+            for (int i = 0; i < readers.length; ++i) {
+                final int reader = i;
+                readers[i] = new Thread() {
+                    public void run() {
+                        try {
+                            start.await();
+                            for (int j = reader; j < 100; j += readers.length) {
+                                String value = "value" + j;
+                                assertEqualsSet(expected.getFrames(_slot, null, false, value),
+                                                actual.getFrames(_slot, null, false, value));
+                                Frame frame = _frames[j * 7];
+                                assertEquals(expected.getReferences(frame), actual.getReferences(frame));
+                            }
+                        } catch (Throwable t) {
+                            failure[0] = t;
+                        }
+                    }
+                };
+                readers[i].start();
+            }
+            start.countDown();
+            for (int i = 0; i < readers.length; ++i) {
+                readers[i].join(60000);
+                assertFalse(readers[i].isAlive());
+            }
+            if (failure[0] != null) {
+                throw new RuntimeException(failure[0]);
+            }
+            actual.endBulkLoad();
+            assertSameIndexes(expected, actual);
+        }
+    }
+
+    public void testDeleteFrameDuringBulkLoad() {
+        InMemoryFrameDb frameDb = new InMemoryFrameDb("bulk");
+        frameDb.beginBulkLoad();
+        frameDb.addValues(_frames[0], _slot, null, false, makeList("a", _frames[1]));
+        frameDb.addValues(_frames[1], _slot, null, false, makeList("a"));
+        frameDb.deleteFrame(_frames[1]);
+        frameDb.endBulkLoad();
+        assertEqualsList(makeList("a"), frameDb.getValues(_frames[0], _slot, null, false));
+        assertNull(frameDb.getFrame(_frames[1].getFrameID()));
+        assertEqualsSet(makeList(_frames[0]), frameDb.getFrames(_slot, null, false, "a"));
+    }
+}
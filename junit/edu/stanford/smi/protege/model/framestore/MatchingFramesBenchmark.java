@@ -0,0 +1,81 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.Random;
+
+import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.DefaultSimpleInstance;
+import edu.stanford.smi.protege.model.DefaultSlot;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Model;
+import edu.stanford.smi.protege.model.Slot;
+import edu.stanford.smi.protege.util.CollectionUtilities;
+import edu.stanford.smi.protege.util.SimpleStringMatcher;
+
+/**
+ * Latency of InMemoryFrameDb.getMatchingFrames, which uses the string value index, and of
+ * a scan of all of the string values with a SimpleStringMatcher (what getMatchingFrames
+ * did before the index).  The frame db holds the given number of frames, each with a
+ * random name made of a few syllables.  Run with something like
+ * <pre>
+ *     java -Xmx4g edu.stanford.smi.protege.model.framestore.MatchingFramesBenchmark 1000000
+ * </pre>
+ */
+public class MatchingFramesBenchmark {
+    private static final String[] SYLLABLES = {
+        "ka", "lo", "mi", "ner", "tos", "pra", "vel", "zu", "qui", "bar", "do", "fen", "gri", "hul", "jo", "wex"
+    };
+    private static final String[] PATTERNS = { "kalomi*", "*nertos*", "*velzu", "pra*hul*", "*gri*do*fen*", "jowexbarka" };
+    private static final int REPEAT = 5;
+
+    public static void main(String[] args) {
+        int frameCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        KnowledgeBase kb = new DefaultKnowledgeBase();
+        Slot nameSlot = new DefaultSlot(kb, Model.SlotID.NAME);
+        InMemoryFrameDb frameDb = new InMemoryFrameDb("matching benchmark");
+        Random random = new Random(3);
+        long start = System.nanoTime();
+        for (int i = 0; i < frameCount; ++i) {
+            Frame frame = new DefaultSimpleInstance(kb, new FrameID("Frame_" + i));
+            frameDb.setValues(frame, nameSlot, null, false, CollectionUtilities.createList(randomName(random)));
+        }
+        System.out.println("Loaded " + frameCount + " frames in " + (System.nanoTime() - start) / 1000000 + " msec");
+        System.out.println("pattern  matches  index msec  scan msec");
+        for (String pattern : PATTERNS) {
+            int matches = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < REPEAT; ++i) {
+                matches = frameDb.getMatchingFrames(nameSlot, null, false, pattern, FrameStore.UNLIMITED_MATCHES).size();
+            }
+            long indexTime = (System.nanoTime() - start) / REPEAT;
+            start = System.nanoTime();
+            for (int i = 0; i < REPEAT; ++i) {
+                scan(frameDb, nameSlot, pattern);
+            }
+            long scanTime = (System.nanoTime() - start) / REPEAT;
+            System.out.println(pattern + "  " + matches + "  " + indexTime / 1000000.0 + "  " + scanTime / 1000000.0);
+        }
+    }
+
+    private static int scan(InMemoryFrameDb frameDb, Slot slot, String pattern) {
+        SimpleStringMatcher matcher = new SimpleStringMatcher(pattern);
+        int matches = 0;
+        for (Frame frame : frameDb.getFramesWithAnyValue(slot, null, false)) {
+            Object value = frameDb.getValues(frame, slot, null, false).get(0);
+            if (value instanceof String && matcher.isMatch((String) value)) {
+                ++matches;
+            }
+        }
+        return matches;
+    }
+
+    private static String randomName(Random random) {
+        StringBuffer buffer = new StringBuffer();
+        int length = 3 + random.nextInt(5);
+        for (int i = 0; i < length; ++i) {
+            buffer.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return buffer.toString();
+    }
+}
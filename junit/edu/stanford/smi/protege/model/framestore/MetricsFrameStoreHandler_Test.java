@@ -0,0 +1,161 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import edu.stanford.smi.protege.model.Cls;
+import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.Instance;
+import edu.stanford.smi.protege.server.job.GetFrameStoreMetricsJob;
+
+public class MetricsFrameStoreHandler_Test extends SimpleTestCase {
+    private DefaultKnowledgeBase _kb;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        _kb = new DefaultKnowledgeBase();
+    }
+
+    protected void tearDown() throws Exception {
+        _kb.close();
+        super.tearDown();
+    }
+
+    private List<FrameStore> getChain() {
+        List<FrameStore> chain = new ArrayList<FrameStore>();
+        for (FrameStore fs = _kb.getFrameStoreManager().getHeadFrameStore(); fs != null; fs = fs.getDelegate()) {
+            chain.add(fs);
+        }
+        return chain;
+    }
+
+    private void assertWrapped(List<FrameStore> realChain) {
+        List<FrameStore> chain = getChain();
+        assertEquals(2 * realChain.size(), chain.size());
+        for (int i = 0; i < realChain.size(); ++i) {
+            assertNotNull(MetricsFrameStoreHandler.getHandler(chain.get(2 * i)));
+            assertSame(realChain.get(i), chain.get(2 * i + 1));
+        }
+    }
+
+    private static FrameStoreMethodMetrics find(List<FrameStoreMethodMetrics> metrics, String frameStoreName,
+                                                String methodName) {
+        for (FrameStoreMethodMetrics m : metrics) {
+            if (m.getFrameStoreName().equals(frameStoreName) && m.getMethodName().startsWith(methodName + "(")) {
+                return m;
+            }
+        }
+        return null;
+    }
+
+    public void testHistogramBuckets() {
+        for (long value = 0; value < 100000; value += 1 + value / 100) {
+            int index = LatencyHistogram.getIndex(value);
+            assertTrue(LatencyHistogram.getLowestValue(index) <= value);
+            assertTrue(LatencyHistogram.getHighestValue(index) >= value);
+            assertTrue(LatencyHistogram.getHighestValue(index) - LatencyHistogram.getLowestValue(index) <= value / 8);
+        }
+    }
+
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        for (int i = 1; i <= 10000; ++i) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000000, histogram.getMax());
+        assertEquals(5000000, histogram.getValueAtPercentile(50), 5000000 / 8);
+        assertEquals(9900000, histogram.getValueAtPercentile(99), 9900000 / 8);
+        assertEquals(10000000, histogram.getValueAtPercentile(100));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    public void testStripedCounters() throws InterruptedException {
+        final StripedCounters counters = new StripedCounters(2);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 1000; ++j) {
+                        int stripe = counters.getStripe();
+                        counters.add(stripe, 0, 1);
+                        counters.add(stripe, 1, 3);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i].join();
+        }
+        assertEquals(4000, counters.sum(0));
+        assertEquals(12000, counters.sum(1));
+    }
+
+    public void testEnableAndDisable() {
+        FrameStoreManager fsm = _kb.getFrameStoreManager();
+        List<FrameStore> realChain = getChain();
+        fsm.setMetricsEnabled(true);
+        assertTrue(fsm.isMetricsEnabled());
+        assertWrapped(realChain);
+
+        fsm.setCallCachingEnabled(!fsm.isCallCachingEnabled());
+        fsm.setMetricsEnabled(false);
+        List<FrameStore> toggledChain = getChain();
+        assertEquals(realChain.size() + 1, toggledChain.size());
+        fsm.setMetricsEnabled(true);
+        assertWrapped(toggledChain);
+
+        fsm.setCallCachingEnabled(!fsm.isCallCachingEnabled());
+        fsm.setMetricsEnabled(false);
+        assertEquals(realChain, getChain());
+    }
+
+    public void testRecording() {
+        FrameStoreManager fsm = _kb.getFrameStoreManager();
+        fsm.setMetricsEnabled(true);
+        FrameStoreMetrics metrics = fsm.getFrameStoreMetrics();
+        metrics.setAllocationTrackingEnabled(true);
+        Cls cls = _kb.createCls("A", _kb.getRootClses());
+        for (int i = 0; i < 100; ++i) {
+            Instance instance = cls.createDirectInstance("a" + i);
+            assertSame(instance, _kb.getFrame("a" + i));
+        }
+        List<FrameStoreMethodMetrics> methodMetrics = metrics.getMethodMetrics();
+        FrameStoreMethodMetrics head = find(methodMetrics, "ImmutableNamesFrameStore", "getFrame");
+        FrameStoreMethodMetrics terminal = find(methodMetrics, "InMemoryFrameStore", "getFrame");
+        assertNotNull(head);
+        assertNotNull(terminal);
+        assertTrue(head.getCallCount() >= 100);
+        assertTrue(terminal.getCallCount() >= 100);
+        for (FrameStoreMethodMetrics m : methodMetrics) {
+            assertTrue(m.toString(), m.getSelfNanos() <= m.getTotalNanos());
+            assertTrue(m.toString(), m.getMedianNanos() <= m.getMaxNanos());
+        }
+        assertTrue(metrics.getCallCount() >= 200);
+        assertTrue(metrics.getReport().indexOf("InMemoryFrameStore") >= 0);
+
+        List<FrameStoreMethodMetrics> fetched = GetFrameStoreMetricsJob.getMetrics(_kb, true);
+        assertEquals(methodMetrics.size(), fetched.size());
+        assertTrue(metrics.getMethodMetrics().isEmpty());
+    }
+
+    public void testJmxRegistration() throws Exception {
+        FrameStoreMetrics metrics = _kb.getFrameStoreManager().getFrameStoreMetrics();
+        metrics.register();
+        ObjectName name = metrics.getObjectName();
+        assertNotNull(name);
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        ManagementFactory.getPlatformMBeanServer().setAttribute(name, new javax.management.Attribute("Enabled",
+                                                                                                     Boolean.TRUE));
+        assertTrue(_kb.getFrameStoreManager().isMetricsEnabled());
+        _kb.close();
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        _kb = new DefaultKnowledgeBase();
+    }
+}
@@ -0,0 +1,150 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import edu.stanford.smi.protege.model.*;
+
+public class ReadWriteLockFrameStoreHandler_Test extends FrameStore_Test {
+
+    protected FrameStore createFrameStore(DefaultKnowledgeBase kb) {
+        FrameStore fs = AbstractFrameStoreInvocationHandler.newInstance(ReadWriteLockFrameStoreHandler.class);
+        fs.setDelegate(new InMemoryFrameStore(kb));
+        return fs;
+    }
+
+    private ReentrantReadWriteLock getLock() {
+        return ((ReadWriteLockFrameStoreHandler) Proxy.getInvocationHandler(getTestFrameStore())).getLock();
+    }
+
+    public void testModificationWhileHoldingReadLock() {
+        ReentrantReadWriteLock lock = getLock();
+        lock.readLock().lock();
+        try {
+            getTestFrameStore().createSimpleInstance(new FrameID(createFrameName()), null, true);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected: the read lock cannot be upgraded
+        } finally {
+            lock.readLock().unlock();
+        }
+        assertFalse(lock.isWriteLocked());
+    }
+
+    public void testQueryWhileHoldingReadLock() {
+        ReentrantReadWriteLock lock = getLock();
+        lock.readLock().lock();
+        try {
+            assertNotNull(getFrame(Model.Cls.THING));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void testKnowledgeBaseReadWriteLocking() throws InterruptedException {
+        final DefaultKnowledgeBase kb = new DefaultKnowledgeBase();
+        kb.setReadWriteLockingEnabled(true);
+        final Cls cls = kb.createCls("A", kb.getRootClses());
+        final Slot slot = kb.createSlot("s");
+        cls.addDirectTemplateSlot(slot);
+        final Instance instance = cls.createDirectInstance("a");
+        instance.setDirectOwnSlotValue(slot, "value");
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 1000; ++j) {
+                        if (!"value".equals(kb.getDirectOwnSlotValue(instance, slot))
+                                || !kb.getInstances(cls).contains(instance)) {
+                            failed[0] = true;
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i].join();
+        }
+        assertFalse(failed[0]);
+        assertFalse(kb.getFrameStoreManager().getReadWriteLock().isWriteLocked());
+        kb.close();
+    }
+
+    public void testWriterWithConcurrentReaders() throws Exception {
+        checkWriterWithConcurrentReaders(true);
+    }
+
+    public void testWriterWithConcurrentReadersSynchronized() throws Exception {
+        checkWriterWithConcurrentReaders(false);
+    }
+
+    /*
+     * The writer only ever adds instances and counts up the value of the counter instance,
+     * so each reader must see both numbers grow and every instance it sees fully created.
+     */
+    private static void checkWriterWithConcurrentReaders(boolean readWriteLocking) throws Exception {
+        final DefaultKnowledgeBase kb = new DefaultKnowledgeBase();
+        kb.setReadWriteLockingEnabled(readWriteLocking);
+        final Cls cls = kb.createCls("A", kb.getRootClses());
+        final Slot slot = kb.createSlot("s");
+        slot.setValueType(ValueType.INTEGER);
+        cls.addDirectTemplateSlot(slot);
+        final Instance counter = cls.createDirectInstance("counter");
+        counter.setDirectOwnSlotValue(slot, new Integer(0));
+        final int writes = 500;
+        final Throwable[] failure = new Throwable[1];
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    for (int i = 1; i <= writes; ++i) {
+                        Instance instance = cls.createDirectInstance("i" + i);
+                        instance.setDirectOwnSlotValue(slot, new Integer(i));
+                        counter.setDirectOwnSlotValue(slot, new Integer(i));
+                    }
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        };
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; ++i) {
+            readers[i] = new Thread() {
+                public void run() {
+                    try {
+                        int lastCount = 0;
+                        int lastValue = 0;
+                        while (lastValue < writes) {
+                            int value = ((Integer) kb.getDirectOwnSlotValue(counter, slot)).intValue();
+                            assertTrue(value >= lastValue);
+                            lastValue = value;
+                            Collection instances = kb.getDirectInstances(cls);
+                            assertTrue(instances.size() >= lastCount);
+                            lastCount = instances.size();
+                            for (Object o : instances) {
+                                Instance instance = (Instance) o;
+                                assertEquals(cls, kb.getDirectType(instance));
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure[0] = t;
+                    }
+                }
+            };
+            readers[i].start();
+        }
+        writer.start();
+        writer.join();
+        for (int i = 0; i < readers.length; ++i) {
+            readers[i].join(60000);
+            assertFalse(readers[i].isAlive());
+        }
+        if (failure[0] != null) {
+            throw new RuntimeException(failure[0]);
+        }
+        assertEquals(writes + 1, kb.getDirectInstances(cls).size());
+        kb.close();
+    }
+}
@@ -0,0 +1,84 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.stanford.smi.protege.model.DefaultCls;
+import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.DefaultSlot;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Slot;
+
+public class Record_Test extends SimpleTestCase {
+    private KnowledgeBase _kb;
+    private Record _record;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        _kb = new DefaultKnowledgeBase();
+        Frame frame = new DefaultCls(_kb, new FrameID("frame"));
+        Slot slot = new DefaultSlot(_kb, new FrameID("slot"));
+        _record = new Record(frame, slot, null, false, Arrays.asList(new Object[] { "a", "b", "c" }));
+    }
+
+    public void testValuesAreShared() {
+        List values = _record.getValues();
+        assertSame(values, _record.getValues());
+        assertEquals(Arrays.asList(new Object[] { "a", "b", "c" }), values);
+        try {
+            values.add("d");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        _record.setValues(Collections.EMPTY_LIST);
+        assertSame(Collections.EMPTY_LIST, _record.getValues());
+    }
+
+    public void testValuesHandedOutDoNotChange() {
+        List values = _record.getValues();
+        _record.addValue("d");
+        assertEquals(Arrays.asList(new Object[] { "a", "b", "c" }), values);
+        List valuesAfterAdd = _record.getValues();
+        assertEquals(Arrays.asList(new Object[] { "a", "b", "c", "d" }), valuesAfterAdd);
+
+        _record.moveValue(3, 0);
+        assertEquals(Arrays.asList(new Object[] { "a", "b", "c", "d" }), valuesAfterAdd);
+        assertEquals(Arrays.asList(new Object[] { "d", "a", "b", "c" }), _record.getValues());
+
+        List valuesAfterMove = _record.getValues();
+        assertTrue(_record.removeValue("a"));
+        assertFalse(_record.removeValue("x"));
+        assertEquals(Arrays.asList(new Object[] { "d", "a", "b", "c" }), valuesAfterMove);
+        assertEquals(Arrays.asList(new Object[] { "d", "b", "c" }), _record.getValues());
+        assertEquals(3, _record.getValueCount());
+        assertEquals(Arrays.asList(new Object[] { "a", "b", "c" }), values);
+    }
+
+    public void testMoveValue() {
+        _record.addValue("d");
+        _record.moveValue(0, 2);
+        assertEquals(Arrays.asList(new Object[] { "b", "c", "a", "d" }), _record.getValues());
+        _record.moveValue(3, 1);
+        assertEquals(Arrays.asList(new Object[] { "b", "d", "c", "a" }), _record.getValues());
+        try {
+            _record.moveValue(0, 4);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    public void testReplaceFrameValue() {
+        Frame value = new DefaultCls(_kb, new FrameID("value"));
+        Frame replacement = new DefaultCls(_kb, new FrameID("value"));
+        _record.addValue(value);
+        List values = _record.getValues();
+        _record.replaceFrameValue(replacement);
+        assertSame(value, values.get(3));
+        assertSame(replacement, _record.getValues().get(3));
+    }
+}
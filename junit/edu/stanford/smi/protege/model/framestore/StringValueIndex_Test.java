@@ -0,0 +1,127 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import edu.stanford.smi.protege.util.SimpleStringMatcher;
+
+public class StringValueIndex_Test extends SimpleTestCase {
+    private static final String ALPHABET = "abcAB .*-|$";
+
+    private StringValueIndex _index;
+    private Set<String> _strings;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        _index = new StringValueIndex();
+        _strings = new HashSet<String>();
+    }
+
+    private void add(String s) {
+        _index.add(s);
+        _strings.add(s);
+    }
+
+    private void remove(String s) {
+        _index.remove(s);
+        _strings.remove(s);
+    }
+
+    private void assertMatches(String pattern) {
+        Set<String> expected = new HashSet<String>();
+        SimpleStringMatcher matcher = new SimpleStringMatcher(pattern);
+        for (String s : _strings) {
+            if (matcher.isMatch(s)) {
+                expected.add(s);
+            }
+        }
+        if (_index.getMatches(pattern) != null) {
+            assertEqualsSet(expected, _index.getMatches(pattern));
+        }
+    }
+
+    public void testPatterns() {
+        add("Person");
+        add("person_name");
+        add("Employee");
+        add("ab");
+        add("");
+        assertEqualsSet(makeList("Person"), _index.getMatches("person"));
+        assertEqualsSet(makeList("Person", "person_name"), _index.getMatches("pers*"));
+        assertEqualsSet(makeList("Person", "person_name"), _index.getMatches("*RSO*"));
+        assertEqualsSet(makeList("Employee"), _index.getMatches("*ee"));
+        assertEqualsSet(makeList("person_name"), _index.getMatches("p*_*e"));
+        assertEqualsSet(makeList("ab"), _index.getMatches("ab"));
+        assertEqualsSet(makeList(""), _index.getMatches(""));
+        assertTrue(_index.getMatches("xyz*").isEmpty());
+        assertNull(_index.getMatches("*"));
+        assertNull(_index.getMatches("*ab*"));
+        remove("Person");
+        assertEqualsSet(makeList("person_name"), _index.getMatches("pers*"));
+        assertEquals(4, _index.size());
+    }
+
+    public void testRegexCharacters() {
+        add("a|b");
+        add("a");
+        add("b");
+        add("x$yz");
+        add("cost$");
+        add("a\\Eb|c");
+        assertFalse(new SimpleStringMatcher("a|b").isMatch("a"));
+        assertTrue(new SimpleStringMatcher("a|b").isMatch("A|B"));
+        assertEqualsSet(makeList("a|b"), _index.getMatches("a|b"));
+        assertEqualsSet(makeList("x$yz"), _index.getMatches("x$y*"));
+        assertEqualsSet(makeList("cost$"), _index.getMatches("*st$"));
+        assertEqualsSet(makeList("a\\Eb|c"), _index.getMatches("a\\E*|c"));
+        for (String pattern : new String[] { "a|b", "*|*", "*$", "$*", "x$*", "*\\E*", "a\\Eb|c" }) {
+            assertMatches(pattern);
+        }
+    }
+
+    public void testRandom() {
+        Random random = new Random(11);
+        List<String> patterns = new ArrayList<String>();
+        for (int i = 0; i < 200; ++i) {
+            patterns.add(randomString(random, 5));
+        }
+        for (int step = 0; step < 5000; ++step) {
+            String s = randomString(random, 8);
+            if (random.nextInt(3) == 0) {
+                remove(s);
+            } else {
+                add(s);
+            }
+            if (step % 100 == 0) {
+                for (String pattern : patterns) {
+                    assertMatches(pattern);
+                }
+            }
+        }
+        assertEquals(_strings.size(), _index.size());
+    }
+
+    public void testRemoveMany() {
+        for (int i = 0; i < 5000; ++i) {
+            add("value " + i);
+        }
+        for (int i = 0; i < 4900; ++i) {
+            remove("value " + i);
+        }
+        assertEquals(100, _index.size());
+        assertEqualsSet(makeList("value 4999"), _index.getMatches("*4999"));
+        assertEquals(100, _index.getMatches("value*").size());
+    }
+
+    private static String randomString(Random random, int maxLength) {
+        StringBuffer buffer = new StringBuffer();
+        int length = random.nextInt(maxLength + 1);
+        for (int i = 0; i < length; ++i) {
+            buffer.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return buffer.toString();
+    }
+}
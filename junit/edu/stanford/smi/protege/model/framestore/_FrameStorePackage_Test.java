@@ -7,11 +7,13 @@ public class _FrameStorePackage_Test {
     public static Test suite() {
         TestSuite suite = new TestSuite("model.framestore");
         suite.addTestSuite(InMemoryFrameStore_Test.class);
+        suite.addTestSuite(CompactFrameStore_Test.class);
         // suite.addTestSuite(ClientFrameStore_Test.class);
 
         suite.addTestSuite(EventGeneratorFrameStore_Test.class);
         suite.addTestSuite(JournalingFrameStoreHandler_Test.class);
         suite.addTestSuite(ReadOnlyFrameStoreHandler_Test.class);
+        suite.addTestSuite(ReadWriteLockFrameStoreHandler_Test.class);
         suite.addTestSuite(ArgumentCheckingFrameStore_Test.class);
         suite.addTestSuite(CallCachingFrameStore_Test.class);
         suite.addTestSuite(FrameStoreAdapter_Test.class);
@@ -20,6 +22,13 @@ public class _FrameStorePackage_Test {
         suite.addTestSuite(ModificationRecordFrameStore_Test.class);
         
         suite.addTestSuite(MergingNarrowFrameStore_Test.class);
+        suite.addTestSuite(ClosureCachingBasicFrameStore_Test.class);
+        suite.addTestSuite(FrameTable_Test.class);
+        suite.addTestSuite(FrameDbSnapshot_Test.class);
+        suite.addTestSuite(StringValueIndex_Test.class);
+        suite.addTestSuite(Record_Test.class);
+        suite.addTestSuite(InMemoryFrameDbBulkLoad_Test.class);
+        suite.addTestSuite(MetricsFrameStoreHandler_Test.class);
         return suite;
     }
 }
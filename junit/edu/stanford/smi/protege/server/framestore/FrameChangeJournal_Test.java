@@ -0,0 +1,67 @@
+package edu.stanford.smi.protege.server.framestore;
+
+import junit.framework.TestCase;
+import edu.stanford.smi.protege.model.FrameID;
+
+public class FrameChangeJournal_Test extends TestCase {
+    private static final FrameID A = new FrameID("A");
+    private static final FrameID B = new FrameID("B");
+    private static final FrameID C = new FrameID("C");
+
+    public void testChangesSince() {
+        FrameChangeJournal journal = new FrameChangeJournal(10);
+        String epoch = journal.getEpoch();
+        journal.recordChange(A);
+        long sequence = journal.getSequence();
+        journal.recordChange(B);
+        journal.recordChange(A);
+
+        FrameChanges changes = journal.getChangesSince(epoch, 0);
+        assertFalse(changes.isEverythingChanged());
+        assertEquals(2, changes.getChangedFrames().size());
+        assertEquals(3, changes.getSequence());
+
+        changes = journal.getChangesSince(epoch, sequence);
+        assertEquals(2, changes.getChangedFrames().size());
+
+        changes = journal.getChangesSince(epoch, journal.getSequence());
+        assertTrue(changes.getChangedFrames().isEmpty());
+    }
+
+    public void testOtherEpoch() {
+        FrameChangeJournal journal = new FrameChangeJournal(10);
+        journal.recordChange(A);
+        assertTrue(journal.getChangesSince(null, 0).isEverythingChanged());
+        assertTrue(journal.getChangesSince(new FrameChangeJournal(10).getEpoch(), 1).isEverythingChanged());
+        // a sequence number the server has not reached comes from another run
+        assertTrue(journal.getChangesSince(journal.getEpoch(), 2).isEverythingChanged());
+    }
+
+    public void testForgottenChanges() {
+        FrameChangeJournal journal = new FrameChangeJournal(2);
+        String epoch = journal.getEpoch();
+        journal.recordChange(A);
+        journal.recordChange(B);
+        journal.recordChange(C);
+
+        assertTrue(journal.getChangesSince(epoch, 0).isEverythingChanged());
+        FrameChanges changes = journal.getChangesSince(epoch, 1);
+        assertFalse(changes.isEverythingChanged());
+        assertEquals(2, changes.getChangedFrames().size());
+        assertTrue(changes.getChangedFrames().contains(C));
+    }
+
+    public void testChangeToEverything() {
+        FrameChangeJournal journal = new FrameChangeJournal(10);
+        String epoch = journal.getEpoch();
+        journal.recordChange(A);
+        journal.recordChangeToEverything();
+        long sequence = journal.getSequence();
+        journal.recordChange(B);
+
+        assertTrue(journal.getChangesSince(epoch, 1).isEverythingChanged());
+        FrameChanges changes = journal.getChangesSince(epoch, sequence);
+        assertEquals(1, changes.getChangedFrames().size());
+        assertTrue(changes.getChangedFrames().contains(B));
+    }
+}
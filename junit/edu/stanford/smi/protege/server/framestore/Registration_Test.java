@@ -0,0 +1,57 @@
+package edu.stanford.smi.protege.server.framestore;
+
+import junit.framework.TestCase;
+import edu.stanford.smi.protege.server.util.FifoWriter;
+import edu.stanford.smi.protege.util.AbstractEvent;
+
+public class Registration_Test extends TestCase {
+
+    public void testWaitForEvents() throws Exception {
+        final Registration registration = new Registration(new FifoWriter<AbstractEvent>());
+        long start = System.currentTimeMillis();
+        assertFalse(registration.waitForEvents(50));
+        assertTrue(System.currentTimeMillis() - start >= 50);
+
+        Thread signaller = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                registration.signalEvents();
+            }
+        };
+        signaller.start();
+        start = System.currentTimeMillis();
+        assertTrue(registration.waitForEvents(10000));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        signaller.join();
+
+        // the signal stays until the events are collected
+        assertTrue(registration.waitForEvents(10000));
+        registration.clearEventsSignal();
+        assertFalse(registration.waitForEvents(10));
+    }
+
+    public void testClose() throws Exception {
+        final Registration registration = new Registration(new FifoWriter<AbstractEvent>());
+        Thread closer = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                registration.close();
+            }
+        };
+        closer.start();
+        long start = System.currentTimeMillis();
+        assertFalse(registration.waitForEvents(10000));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        closer.join();
+    }
+}
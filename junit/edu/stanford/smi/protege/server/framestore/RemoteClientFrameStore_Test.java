@@ -1,10 +1,22 @@
 package edu.stanford.smi.protege.server.framestore;
 
+import java.io.File;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
+import edu.stanford.smi.protege.model.Cls;
 import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.Instance;
+import edu.stanford.smi.protege.model.Reference;
+import edu.stanford.smi.protege.model.Slot;
+import edu.stanford.smi.protege.model.ValueType;
 import edu.stanford.smi.protege.model.framestore.FrameStore;
 import edu.stanford.smi.protege.model.framestore.FrameStore_Test;
+import edu.stanford.smi.protege.model.framestore.ReferenceImpl;
+import edu.stanford.smi.protege.server.ServerProperties;
 import edu.stanford.smi.protege.server.Server_Test;
 import edu.stanford.smi.protege.util.Log;
 
@@ -28,6 +40,129 @@ public class RemoteClientFrameStore_Test extends FrameStore_Test {
         return new RemoteClientFrameStore(host, user, password, projectName, kb, false);
     }
     
+    public void testGetDirectValues() {
+        RemoteClientFrameStore frameStore = (RemoteClientFrameStore) getTestFrameStore();
+        if (frameStore == null) {
+            return;
+        }
+        Cls cls = createCls();
+        Slot slota = createSlotOnCls(cls, ValueType.STRING, true);
+        Slot slotb = createSlotOnCls(cls, ValueType.STRING, true);
+        Instance instance = createSimpleInstance(cls);
+        frameStore.setDirectOwnSlotValues(instance, slota, makeList("foo", "bar"));
+        frameStore.setDirectOwnSlotValues(instance, slotb, makeList("baz"));
+        List<Reference> references = new ArrayList<Reference>();
+        references.add(new ReferenceImpl(instance, slota, null, false));
+        references.add(new ReferenceImpl(instance, slotb, null, false));
+        references.add(new ReferenceImpl(cls, slota, null, false));
+        List<List> valuesList = frameStore.getDirectValues(references);
+        assertEquals(3, valuesList.size());
+        assertEquals(makeList("foo", "bar"), valuesList.get(0));
+        assertEquals(makeList("baz"), valuesList.get(1));
+        assertTrue(valuesList.get(2).isEmpty());
+        assertEquals(valuesList, frameStore.getDirectValues(references));
+    }
+
+    public void testAsyncValues() throws Exception {
+        RemoteClientFrameStore frameStore = (RemoteClientFrameStore) getTestFrameStore();
+        if (frameStore == null) {
+            return;
+        }
+        Cls cls = createCls();
+        Slot slot = createSlotOnCls(cls, ValueType.STRING, true);
+        Instance instance = createSimpleInstance(cls);
+        frameStore.setDirectOwnSlotValues(instance, slot, makeList("foo", "bar"));
+        List<Future<List>> futures = new ArrayList<Future<List>>();
+        for (int i = 0; i < 10; ++i) {
+            futures.add(frameStore.getDirectOwnSlotValuesAsync(instance, slot));
+        }
+        Future<List> templateValues = frameStore.getDirectTemplateSlotValuesAsync(cls, slot);
+        for (Future<List> future : futures) {
+            assertEquals(makeList("foo", "bar"), future.get());
+        }
+        assertEquals(frameStore.getDirectTemplateSlotValues(cls, slot), templateValues.get());
+    }
+
+    /*
+     * Counts the preloads that the constructor makes.
+     */
+    private static class PreloadCountingFrameStore extends RemoteClientFrameStore {
+        private int preloads;
+
+        PreloadCountingFrameStore() {
+            super("localhost", "Ray Fergerson", "claudia", "Newspaper", createKnowledgeBase(), false);
+        }
+
+        /*
+         * The cache file is named after the knowledge base.
+         */
+        private static DefaultKnowledgeBase createKnowledgeBase() {
+            DefaultKnowledgeBase kb = new DefaultKnowledgeBase();
+            kb.setName("Newspaper");
+            return kb;
+        }
+
+        @Override
+        public synchronized void preload(boolean preloadAll) throws RemoteException {
+            preloads++;
+            super.preload(preloadAll);
+        }
+    }
+
+    public void testPersistentClientCache() throws Exception {
+        RemoteClientFrameStore frameStore = (RemoteClientFrameStore) getTestFrameStore();
+        if (frameStore == null) {
+            return;
+        }
+        Cls cls = createCls();
+        Slot slot = createSlotOnCls(cls, ValueType.STRING, true);
+        Instance changed = createSimpleInstance(cls);
+        Instance unchanged = createSimpleInstance(cls);
+        frameStore.setDirectOwnSlotValues(changed, slot, makeList("before"));
+        frameStore.setDirectOwnSlotValues(unchanged, slot, makeList("same"));
+
+        File directory = File.createTempFile("cache", "");
+        directory.delete();
+        System.setProperty(ServerProperties.CLIENT_PERSISTENT_CACHE, "true");
+        System.setProperty(ServerProperties.CLIENT_PERSISTENT_CACHE_DIRECTORY, directory.getPath());
+        try {
+            PreloadCountingFrameStore first = new PreloadCountingFrameStore();
+            assertEquals(1, first.preloads);
+            Slot firstSlot = (Slot) first.getFrame(slot.getName());
+            assertEquals(makeList("before"), first.getDirectOwnSlotValues(first.getFrame(changed.getName()), firstSlot));
+            assertEquals(makeList("same"), first.getDirectOwnSlotValues(first.getFrame(unchanged.getName()), firstSlot));
+            first.close();
+            File[] files = directory.listFiles();
+            assertEquals(1, files.length);
+            assertTrue(files[0].getName().endsWith(".cache"));
+
+            // another client changes a frame while the first one is away
+            frameStore.setDirectOwnSlotValues(changed, slot, makeList("after"));
+
+            PreloadCountingFrameStore second = new PreloadCountingFrameStore();
+            try {
+                assertEquals(0, second.preloads);
+                Slot secondSlot = (Slot) second.getFrame(slot.getName());
+                assertEquals(makeList("after"), second.getDirectOwnSlotValues(second.getFrame(changed.getName()), secondSlot));
+                assertEquals(makeList("same"), second.getDirectOwnSlotValues(second.getFrame(unchanged.getName()), secondSlot));
+            }
+            finally {
+                second.close();
+            }
+        }
+        finally {
+            System.getProperties().remove(ServerProperties.CLIENT_PERSISTENT_CACHE);
+            System.getProperties().remove(ServerProperties.CLIENT_PERSISTENT_CACHE_DIRECTORY);
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
     public void tearDown() throws Exception {
         super.tearDown();
     }
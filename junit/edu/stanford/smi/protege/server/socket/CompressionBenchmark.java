@@ -0,0 +1,122 @@
+package edu.stanford.smi.protege.server.socket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Project;
+import edu.stanford.smi.protege.model.Slot;
+import edu.stanford.smi.protege.server.socket.deflate.BlockCompressingInputStream;
+import edu.stanford.smi.protege.server.socket.deflate.BlockCompressingOutputStream;
+import edu.stanford.smi.protege.server.socket.deflate.CompressingInputStream;
+import edu.stanford.smi.protege.server.socket.deflate.CompressingOutputStream;
+import edu.stanford.smi.protege.server.socket.deflate.DictionaryDeflateCodec;
+import edu.stanford.smi.protege.server.socket.deflate.Lz4Codec;
+
+/**
+ * Compression ratio and codec throughput of the server.compression.codec choices on the
+ * kind of traffic a client makes while it browses a project: one small message per call,
+ * each flushed as its own packet.  A message here is the serialized frame name, slot name
+ * and values of one own slot of one frame.  Run with something like
+ * <pre>
+ *     java edu.stanford.smi.protege.server.socket.CompressionBenchmark examples/newspaper/newspaper.pprj
+ * </pre>
+ */
+public class CompressionBenchmark {
+    private static final int REPEAT = 20;
+
+    public static void main(String[] args) throws Exception {
+        String projectFile = args.length > 0 ? args[0] : "examples/newspaper/newspaper.pprj";
+        Collection errors = new ArrayList();
+        Project project = Project.loadProjectFromFile(projectFile, errors);
+        if (!errors.isEmpty()) {
+            System.out.println("Errors loading " + projectFile + ": " + errors);
+            return;
+        }
+        List<byte[]> messages = createMessages(project.getKnowledgeBase());
+        long bytes = 0;
+        for (byte[] message : messages) {
+            bytes += message.length;
+        }
+        System.out.println(messages.size() + " messages, " + bytes + " bytes");
+        for (int i = 0; i < 2; ++i) {
+            for (String codec : new String[] { CompressionAspect.DEFLATE,
+                                               CompressionAspect.DEFLATE_DICTIONARY,
+                                               CompressionAspect.LZ4 }) {
+                run(codec, messages);
+            }
+        }
+    }
+
+    private static List<byte[]> createMessages(KnowledgeBase kb) throws Exception {
+        List<byte[]> messages = new ArrayList<byte[]>();
+        for (Object o : kb.getFrames()) {
+            Frame frame = (Frame) o;
+            for (Object s : frame.getOwnSlots()) {
+                Slot slot = (Slot) s;
+                List<String> values = new ArrayList<String>();
+                for (Object value : frame.getDirectOwnSlotValues(slot)) {
+                    values.add(value instanceof Frame ? ((Frame) value).getName() : value.toString());
+                }
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                ObjectOutputStream out = new ObjectOutputStream(buffer);
+                out.writeObject(frame.getName());
+                out.writeObject(slot.getName());
+                out.writeObject(values);
+                out.close();
+                messages.add(buffer.toByteArray());
+            }
+        }
+        return messages;
+    }
+
+    private static void run(String codec, List<byte[]> messages) throws Exception {
+        CompressionMetrics metrics = MonitoringAspect.getCompressionMetrics();
+        metrics.reset();
+        for (int i = 0; i < REPEAT; ++i) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            OutputStream os = createOutputStream(codec, bytes);
+            for (byte[] message : messages) {
+                os.write(message);
+                os.flush();
+            }
+            os.close();
+            InputStream is = createInputStream(codec, new ByteArrayInputStream(bytes.toByteArray()));
+            for (byte[] message : messages) {
+                int bytesRead = 0;
+                while (bytesRead < message.length) {
+                    bytesRead += is.read(message, bytesRead, message.length - bytesRead);
+                }
+            }
+            is.close();
+        }
+        System.out.println(codec + ": " + metrics);
+    }
+
+    private static OutputStream createOutputStream(String codec, OutputStream os) {
+        if (codec.equals(CompressionAspect.DEFLATE_DICTIONARY)) {
+            return new BlockCompressingOutputStream(os, new DictionaryDeflateCodec());
+        }
+        else if (codec.equals(CompressionAspect.LZ4)) {
+            return new BlockCompressingOutputStream(os, new Lz4Codec());
+        }
+        return new CompressingOutputStream(os);
+    }
+
+    private static InputStream createInputStream(String codec, InputStream is) {
+        if (codec.equals(CompressionAspect.DEFLATE_DICTIONARY)) {
+            return new BlockCompressingInputStream(is, new DictionaryDeflateCodec());
+        }
+        else if (codec.equals(CompressionAspect.LZ4)) {
+            return new BlockCompressingInputStream(is, new Lz4Codec());
+        }
+        return new CompressingInputStream(is);
+    }
+}
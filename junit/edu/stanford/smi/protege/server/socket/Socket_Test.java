@@ -2,21 +2,29 @@ package edu.stanford.smi.protege.server.socket;
 
 import static edu.stanford.smi.protege.server.socket.deflate.HybridCompressingOutputStream.TOO_SMALL_TO_COMPRESS;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import junit.framework.TestCase;
+import edu.stanford.smi.protege.server.socket.deflate.BlockCodec;
+import edu.stanford.smi.protege.server.socket.deflate.BlockCompressingInputStream;
+import edu.stanford.smi.protege.server.socket.deflate.BlockCompressingOutputStream;
 import edu.stanford.smi.protege.server.socket.deflate.CompressingInputStream;
 import edu.stanford.smi.protege.server.socket.deflate.CompressingOutputStream;
+import edu.stanford.smi.protege.server.socket.deflate.DictionaryDeflateCodec;
 import edu.stanford.smi.protege.server.socket.deflate.HybridCompressingInputStream;
 import edu.stanford.smi.protege.server.socket.deflate.HybridCompressingOutputStream;
+import edu.stanford.smi.protege.server.socket.deflate.Lz4Codec;
 import edu.stanford.smi.protege.util.Log;
 
 public class Socket_Test extends TestCase {
@@ -82,6 +90,92 @@ public class Socket_Test extends TestCase {
         cleanup(cin,cout);
     }
     
+    public void testBlockCodecs() throws IOException, InterruptedException {
+        BlockCodec[][] codecs = {
+                { new DictionaryDeflateCodec(), new DictionaryDeflateCodec() },
+                { new Lz4Codec(), new Lz4Codec() }
+        };
+        for (BlockCodec[] pair : codecs) {
+            PipedInputStream in = new PipedInputStream();
+            PipedOutputStream out = new PipedOutputStream(in);
+            DebufferingInputStream din = new DebufferingInputStream(in);
+            BlockCompressingInputStream cin = new BlockCompressingInputStream(din, pair[0]);
+            BlockCompressingOutputStream cout = new BlockCompressingOutputStream(out, pair[1]);
+            doReadWriteAndCheck(cin, cout, createTestBuffer(368));
+            doReadWriteAndCheck(cin, cout, createRepetitiveBuffer(5000));
+            cleanup(cin, cout);
+        }
+    }
+    
+    /*
+     * Small similar packets, large packets and packets that push the earlier ones out of
+     * the codec's history, written and read back without a pipe.
+     */
+    public void testBlockCodecHistory() throws IOException {
+        byte[][] packets = new byte[300][];
+        for (int i = 0; i < packets.length; i++) {
+            if (i % 100 == 50) {
+                packets[i] = createRepetitiveBuffer(3 * BlockCompressingOutputStream.BUFFER_SIZE / 2);
+            }
+            else if (i % 100 == 75) {
+                packets[i] = createTestBuffer(Lz4Codec.WINDOW_SIZE + 10);
+            }
+            else {
+                packets[i] = createSmallPacket(i);
+            }
+        }
+        BlockCodec[][] codecs = {
+                { new DictionaryDeflateCodec(), new DictionaryDeflateCodec() },
+                { new Lz4Codec(), new Lz4Codec() }
+        };
+        for (BlockCodec[] pair : codecs) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writePackets(new BlockCompressingOutputStream(bytes, pair[0]), packets);
+            InputStream is = new BlockCompressingInputStream(new ByteArrayInputStream(bytes.toByteArray()), pair[1]);
+            for (byte[] packet : packets) {
+                byte[] read = new byte[packet.length];
+                int bytesRead = 0;
+                while (bytesRead < read.length) {
+                    int readThisTime = is.read(read, bytesRead, read.length - bytesRead);
+                    assertTrue(readThisTime > 0);
+                    bytesRead += readThisTime;
+                }
+                assertTrue(Arrays.equals(packet, read));
+            }
+            assertEquals(-1, is.read());
+            is.close();
+        }
+    }
+    
+    /*
+     * A packet deflated on its own is hardly smaller than it started but the codecs that
+     * remember the earlier packets should do much better.
+     */
+    public void testSmallPacketCompression() throws IOException {
+        byte[][] packets = new byte[200][];
+        for (int i = 0; i < packets.length; i++) {
+            packets[i] = createSmallPacket(i);
+        }
+        long deflateSize = writePackets(new CompressingOutputStream(new ByteArrayOutputStream()), packets);
+        long dictionarySize = writePackets(new BlockCompressingOutputStream(new ByteArrayOutputStream(), 
+                                                                            new DictionaryDeflateCodec()), packets);
+        long lz4Size = writePackets(new BlockCompressingOutputStream(new ByteArrayOutputStream(), 
+                                                                     new Lz4Codec()), packets);
+        assertTrue(2 * dictionarySize < deflateSize);
+        assertTrue(2 * lz4Size < deflateSize);
+    }
+    
+    private long writePackets(OutputStream os, byte[][] packets) throws IOException {
+        CompressionMetrics metrics = MonitoringAspect.getCompressionMetrics();
+        long before = metrics.getCompressedBytesWritten();
+        for (byte[] packet : packets) {
+            os.write(packet);
+            os.flush();
+        }
+        os.close();
+        return metrics.getCompressedBytesWritten() - before;
+    }
+
     public void badTestHybrid() throws IOException, InterruptedException {
         // debug();
         PipedInputStream in = new PipedInputStream();
@@ -214,6 +308,19 @@ public class Socket_Test extends TestCase {
         return testBuffer;
     }
     
+    private byte [] createSmallPacket(int i) {
+        return ("<frame name=\"Newspaper_Instance_" + i + "\" type=\"Article\"" 
+                + " slot=\"headline\" value=\"Headline " + (i % 7) + "\"/>").getBytes();
+    }
+    
+    private byte [] createRepetitiveBuffer(int size) {
+        byte [] testBuffer = new byte[size];
+        for (int i = 0; i < size; i++) {
+            testBuffer[i] = (byte) ((i % 37 == 0) ? r.nextInt() : 'a' + (i % 11));
+        }
+        return testBuffer;
+    }
+    
     private void cleanup(InputStream in, OutputStream os)  {
         try {
             os.close();
@@ -0,0 +1,106 @@
+package edu.stanford.smi.protege.server.update;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Project;
+import edu.stanford.smi.protege.model.Slot;
+import edu.stanford.smi.protege.model.framestore.Sft;
+import edu.stanford.smi.protege.server.RemoteSession;
+import edu.stanford.smi.protege.server.ServerProperties;
+import edu.stanford.smi.protege.server.Session;
+import edu.stanford.smi.protege.util.transaction.cache.CacheResult;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheRead;
+
+/**
+ * Size and latency of the responses that a server sends while a client preloads a project,
+ * written with Java serialization and with the CompactCodec.  Each response carries the own
+ * slot values of a batch of frames as the value updates that the server would send, and the
+ * frames themselves as the response.  Run with something like
+ * <pre>
+ *     java edu.stanford.smi.protege.server.update.CompactCodecBenchmark examples/newspaper/newspaper.pprj 100
+ * </pre>
+ */
+public class CompactCodecBenchmark {
+    private static final int REPEAT = 20;
+
+    public static void main(String[] args) throws Exception {
+        String projectFile = args.length > 0 ? args[0] : "examples/newspaper/newspaper.pprj";
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        Collection errors = new ArrayList();
+        Project project = Project.loadProjectFromFile(projectFile, errors);
+        if (!errors.isEmpty()) {
+            System.out.println("Errors loading " + projectFile + ": " + errors);
+            return;
+        }
+        List<RemoteResponse<List<Frame>>> responses = createResponses(project.getKnowledgeBase(), batchSize);
+        System.out.println(responses.size() + " responses of " + batchSize + " frames");
+        System.out.println("encoding  bytes  write msec  read msec");
+        for (int i = 0; i < 2; ++i) {
+            run("serialized", false, responses);
+            run("compact", true, responses);
+        }
+    }
+
+    private static List<RemoteResponse<List<Frame>>> createResponses(KnowledgeBase kb, int batchSize) {
+        RemoteSession session = new Session("benchmark", "127.0.0.1");
+        List<RemoteResponse<List<Frame>>> responses = new ArrayList<RemoteResponse<List<Frame>>>();
+        List<Frame> frames = new ArrayList<Frame>();
+        List<ValueUpdate> updates = new ArrayList<ValueUpdate>();
+        for (Object o : kb.getFrames()) {
+            Frame frame = (Frame) o;
+            for (Object s : frame.getOwnSlots()) {
+                Slot slot = (Slot) s;
+                List values = new ArrayList(frame.getDirectOwnSlotValues(slot));
+                CacheResult<List> result = new CacheResult<List>(values, true);
+                updates.add(new ValueUpdate(frame, new CacheRead<RemoteSession, Sft, List>(session, new Sft(slot, null, false), result)));
+            }
+            frames.add(frame);
+            if (frames.size() == batchSize) {
+                responses.add(new RemoteResponse<List<Frame>>(frames, updates));
+                frames = new ArrayList<Frame>();
+                updates = new ArrayList<ValueUpdate>();
+            }
+        }
+        if (!frames.isEmpty()) {
+            responses.add(new RemoteResponse<List<Frame>>(frames, updates));
+        }
+        return responses;
+    }
+
+    private static void run(String name, boolean compact, List<RemoteResponse<List<Frame>>> responses) throws Exception {
+        System.setProperty(ServerProperties.COMPACT_ENCODING, Boolean.toString(compact));
+        List<byte[]> messages = new ArrayList<byte[]>();
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < REPEAT; ++i) {
+            messages.clear();
+            bytes = 0;
+            for (RemoteResponse<List<Frame>> response : responses) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                ObjectOutputStream out = new ObjectOutputStream(buffer);
+                out.writeObject(response);
+                out.close();
+                messages.add(buffer.toByteArray());
+                bytes += buffer.size();
+            }
+        }
+        long writeTime = (System.nanoTime() - start) / REPEAT;
+        start = System.nanoTime();
+        for (int i = 0; i < REPEAT; ++i) {
+            for (byte[] message : messages) {
+                ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(message));
+                in.readObject();
+            }
+        }
+        long readTime = (System.nanoTime() - start) / REPEAT;
+        System.out.println(name + "  " + bytes + "  " + writeTime / 1000000.0 + "  " + readTime / 1000000.0);
+    }
+}
@@ -0,0 +1,177 @@
+package edu.stanford.smi.protege.server.update;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import edu.stanford.smi.protege.model.Cls;
+import edu.stanford.smi.protege.model.DefaultCls;
+import edu.stanford.smi.protege.model.DefaultFacet;
+import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.DefaultSimpleInstance;
+import edu.stanford.smi.protege.model.DefaultSlot;
+import edu.stanford.smi.protege.model.Facet;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Slot;
+import edu.stanford.smi.protege.model.framestore.Sft;
+import edu.stanford.smi.protege.server.RemoteSession;
+import edu.stanford.smi.protege.server.ServerProperties;
+import edu.stanford.smi.protege.server.Session;
+import edu.stanford.smi.protege.util.transaction.cache.CacheResult;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheCompleted;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheDelete;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheModify;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheRead;
+
+public class CompactCodec_Test extends TestCase {
+    private KnowledgeBase kb;
+    private RemoteSession session;
+    private Cls cls;
+    private Slot slot;
+    private Facet facet;
+    private Frame instance;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        kb = new DefaultKnowledgeBase();
+        session = new Session("user", "127.0.0.1");
+        cls = new DefaultCls(kb, new FrameID("Person"));
+        slot = new DefaultSlot(kb, new FrameID("name"));
+        facet = new DefaultFacet(kb, new FrameID("VALUE-TYPE"));
+        instance = new DefaultSimpleInstance(kb, new FrameID("Person_1"));
+        instance.setIncluded(true);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        System.getProperties().remove(ServerProperties.COMPACT_ENCODING);
+        super.tearDown();
+    }
+
+    private List<ValueUpdate> createUpdates() {
+        List<ValueUpdate> updates = new ArrayList<ValueUpdate>();
+        List values = new ArrayList();
+        values.add("Mary");
+        values.add(new Integer(-42));
+        values.add(new Integer(1 << 30));
+        values.add(new Float(2.5));
+        values.add(Boolean.TRUE);
+        values.add(cls);
+        values.add(null);
+        values.add(new Date(0));
+        values.add("Mary");
+        updates.add(new ValueUpdate(instance, new CacheRead<RemoteSession, Sft, List>(session, new Sft(slot, null, false),
+                                                                                      new CacheResult<List>(values, true))));
+        updates.add(new ValueUpdate(cls, new CacheModify<RemoteSession, Sft, List>(session, new Sft(slot, facet, true),
+                                                                                   CacheResult.<List>getInvalid())));
+        updates.add(new ValueUpdate(instance, new CacheDelete<RemoteSession, Sft, List>(session)));
+        updates.add(new ValueUpdate(null, new CacheCompleted<RemoteSession, Sft, List>()));
+        return updates;
+    }
+
+    private byte[] write(Object o) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(o);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private RemoteResponse<Set<Frame>> read(byte[] bytes) throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        RemoteResponse<Set<Frame>> response = (RemoteResponse<Set<Frame>>) in.readObject();
+        response.localize(kb);
+        return response;
+    }
+
+    private RemoteResponse<Set<Frame>> createResponse() {
+        Set<Frame> frames = new HashSet<Frame>();
+        frames.add(cls);
+        frames.add(instance);
+        return new RemoteResponse<Set<Frame>>(frames, createUpdates());
+    }
+
+    private void checkResponse(RemoteResponse<Set<Frame>> response) {
+        assertEquals(createResponse().getResponse(), response.getResponse());
+        List<ValueUpdate> expected = createUpdates();
+        List<ValueUpdate> updates = response.getValueUpdates();
+        assertEquals(expected.size(), updates.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(expected.get(i).getFrame(), updates.get(i).getFrame());
+            assertEquals(expected.get(i).getUpdate().getClass(), updates.get(i).getUpdate().getClass());
+            assertEquals(expected.get(i).getUpdate().getSession(), updates.get(i).getUpdate().getSession());
+        }
+
+        CacheRead<RemoteSession, Sft, List> read = (CacheRead<RemoteSession, Sft, List>) updates.get(0).getUpdate();
+        assertEquals(new Sft(slot, null, false), read.getVar());
+        assertEquals(((CacheRead) expected.get(0).getUpdate()).getValue(), read.getValue());
+        assertTrue(updates.get(0).getFrame() instanceof DefaultSimpleInstance);
+        assertTrue(updates.get(0).getFrame().isIncluded());
+        assertSame(updates.get(0).getFrame(), updates.get(2).getFrame());
+        assertSame(read.getValue().getResult().get(0), read.getValue().getResult().get(8));
+
+        CacheModify<RemoteSession, Sft, List> modify = (CacheModify<RemoteSession, Sft, List>) updates.get(1).getUpdate();
+        assertEquals(new Sft(slot, facet, true), modify.getVar());
+        assertFalse(modify.getNewValue().isValid());
+        assertTrue(updates.get(1).getFrame() instanceof Cls);
+        assertNull(updates.get(3).getFrame());
+    }
+
+    public void testRoundTrip() throws Exception {
+        System.setProperty(ServerProperties.COMPACT_ENCODING, "true");
+        checkResponse(read(write(createResponse())));
+    }
+
+    public void testSerializedRoundTrip() throws Exception {
+        System.setProperty(ServerProperties.COMPACT_ENCODING, "false");
+        checkResponse(read(write(createResponse())));
+    }
+
+    public void testSize() throws Exception {
+        System.setProperty(ServerProperties.COMPACT_ENCODING, "false");
+        int serializedSize = write(createResponse()).length;
+        System.setProperty(ServerProperties.COMPACT_ENCODING, "true");
+        int compactSize = write(createResponse()).length;
+        assertTrue(compactSize < serializedSize / 2);
+    }
+
+    public void testNullUpdates() throws Exception {
+        System.setProperty(ServerProperties.COMPACT_ENCODING, "true");
+        RemoteResponse<Set<Frame>> response = read(write(new RemoteResponse<Set<Frame>>(null, null)));
+        assertNull(response.getValueUpdates());
+        assertNull(response.getResponse());
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testFailedWrite() throws Exception {
+        System.setProperty(ServerProperties.COMPACT_ENCODING, "true");
+        List<Object> values = new ArrayList<Object>();
+        values.add("Mary");
+        values.add(new Object());
+        RemoteResponse<List<Object>> response = new RemoteResponse<List<Object>>(values, createUpdates());
+        try {
+            write(response);
+            fail();
+        }
+        catch (NotSerializableException e) {
+            // expected
+        }
+        values.remove(1);
+        System.setProperty(ServerProperties.COMPACT_ENCODING, "false");
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(write(response)));
+        RemoteResponse<List<Object>> copy = (RemoteResponse<List<Object>>) in.readObject();
+        assertEquals(values, copy.getResponse());
+    }
+}
@@ -1,12 +1,22 @@
 package edu.stanford.smi.protege.storage.database;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
 
 import edu.stanford.smi.protege.model.Cls;
 import edu.stanford.smi.protege.model.DefaultCls;
 import edu.stanford.smi.protege.model.DefaultKnowledgeBase_Test;
+import edu.stanford.smi.protege.model.DefaultSimpleInstance;
 import edu.stanford.smi.protege.model.Frame;
 import edu.stanford.smi.protege.model.FrameID;
 import edu.stanford.smi.protege.model.Instance;
@@ -16,8 +26,13 @@ import edu.stanford.smi.protege.model.Reference;
 import edu.stanford.smi.protege.model.Slot;
 import edu.stanford.smi.protege.model.SystemFrames;
 import edu.stanford.smi.protege.model.ValueType;
+import edu.stanford.smi.protege.model.framestore.MergingNarrowFrameStore;
+import edu.stanford.smi.protege.model.framestore.ReferenceImpl;
+import edu.stanford.smi.protege.model.framestore.NarrowFrameStore;
+import edu.stanford.smi.protege.model.framestore.Sft;
 import edu.stanford.smi.protege.model.framestore.SimpleFrameStore;
 import edu.stanford.smi.protege.test.APITestCase;
+import edu.stanford.smi.protege.util.PropertyList;
 
 public class DatabaseKnowledgeBase_Test extends APITestCase {
   
@@ -263,5 +278,602 @@ public class DatabaseKnowledgeBase_Test extends APITestCase {
           assertTrue(foundC2);
       }
   }
+  
+  public void testBatchedFrameValues() {
+      for (DBType dbt : DBType.values()) {
+          setDBType(dbt);
+          if (!dbConfigured()) {
+            continue;
+          }
+          setDatabaseProject();
+          KnowledgeBase kb = getDomainKB();
+          Slot s = createMultiValuedSlot(ValueType.STRING);
+          Cls cls = createCls();
+          cls.addDirectTemplateSlot(s);
+          StringBuffer longValue = new StringBuffer();
+          while (longValue.length() < 5000) {
+              longValue.append("long value ");
+          }
+          List<Frame> frames = new ArrayList<Frame>();
+          for (int i = 0; i < 700; ++i) {
+              Instance instance = createInstance(cls);
+              instance.addOwnSlotValue(s, "value" + i);
+              if (i % 100 == 0) {
+                  instance.addOwnSlotValue(s, longValue.toString());
+              }
+              frames.add(instance);
+          }
+          frames.add(cls);
+          frames.add(cls);
+          DatabaseFrameDb db = (DatabaseFrameDb) MergingNarrowFrameStore.getNarrowFrameStore(kb, DatabaseFrameDb.class);
+          Map<Frame, Map<Sft, List>> frameValues = db.getFrameValues(frames);
+          assertEquals(701, frameValues.size());
+          for (Frame frame : frames) {
+              assertEquals(db.getFrameValues(frame), frameValues.get(frame));
+          }
+          assertEquals(Arrays.asList(new Object[] { "value100", longValue.toString() }),
+                       frameValues.get(frames.get(100)).get(new Sft(s, null, false)));
+
+          Collection<Cls> subclasses = new ArrayList<Cls>();
+          for (int i = 0; i < 5; ++i) {
+              subclasses.add(createSubCls(cls));
+          }
+          kb.flushCache();
+          ValueCachingNarrowFrameStore vcnfs = (ValueCachingNarrowFrameStore) MergingNarrowFrameStore.getNarrowFrameStore(kb, ValueCachingNarrowFrameStore.class);
+          vcnfs.getMetrics().reset();
+          assertEqualsSet(subclasses, cls.getDirectSubclasses());
+          for (Cls subclass : subclasses) {
+              assertEquals(Collections.singletonList(cls), subclass.getDirectSuperclasses());
+          }
+          ValueCacheMetrics metrics = vcnfs.getMetrics();
+          assertEquals(6, metrics.getBuildCount());
+          assertTrue(metrics.getHitCount() >= 5);
+          assertEquals(0, metrics.getEvictionCount());
+      }
+  }
+  
+  public void testStreamFrameValues() throws Exception {
+      for (DBType dbt : DBType.values()) {
+          setDBType(dbt);
+          if (!dbConfigured()) {
+            continue;
+          }
+          setDatabaseProject();
+          KnowledgeBase kb = getDomainKB();
+          Slot s = createMultiValuedSlot(ValueType.STRING);
+          Cls cls = createCls();
+          cls.addDirectTemplateSlot(s);
+          for (int i = 0; i < 50; ++i) {
+              Instance instance = createInstance(cls);
+              instance.addOwnSlotValue(s, "value" + i);
+              instance.addOwnSlotValue(s, "other value" + i);
+          }
+          DefaultDatabaseFrameDb db = (DefaultDatabaseFrameDb) MergingNarrowFrameStore.getNarrowFrameStore(kb, DefaultDatabaseFrameDb.class);
+          db.setWriteBehind(true);
+          Instance pending = createInstance(cls);
+          pending.addOwnSlotValue(s, "pending");
+
+          final List<Frame> streamedFrames = new ArrayList<Frame>();
+          final Map<Frame, Map<Sft, List>> streamed = new HashMap<Frame, Map<Sft, List>>();
+          db.streamFrameValues(new FrameValuesCallback() {
+              public void handleFrameValues(Frame frame, Map<Sft, List> sftToValues) {
+                  streamedFrames.add(frame);
+                  streamed.put(frame, sftToValues);
+              }
+          });
+          db.setWriteBehind(false);
+          assertEquals(streamed.size(), streamedFrames.size());
+          assertEqualsSet(db.getFrames(), streamedFrames);
+          assertEquals(Collections.singletonList("pending"), streamed.get(pending).get(new Sft(s, null, false)));
+          assertEquals(db.getFrameValues(pending), streamed.get(pending));
+
+          PropertyList sources = getProject().getSources();
+          String table = DatabaseKnowledgeBaseFactory.getTableName(sources) + "_copy";
+          DefaultDatabaseFrameDb copy = new DefaultDatabaseFrameDb();
+          copy.initialize(kb.getFrameFactory(), DatabaseKnowledgeBaseFactory.getDriver(sources),
+                          DatabaseKnowledgeBaseFactory.getURL(sources), DatabaseKnowledgeBaseFactory.getUsername(sources),
+                          DatabaseKnowledgeBaseFactory.getPassword(sources), table, false);
+          try {
+              copy.overwriteKB(kb, true);
+              assertEquals(db.getFrameValues(), copy.getFrameValues());
+          } finally {
+              copy.close();
+          }
+      }
+  }
+  
+  public void testClosure() {
+      for (DBType dbt : DBType.values()) {
+          setDBType(dbt);
+          if (!dbConfigured()) {
+            continue;
+          }
+          setDatabaseProject();
+          KnowledgeBase kb = getDomainKB();
+          Slot subclassesSlot = kb.getSystemFrames().getDirectSubclassesSlot();
+          Cls root = createCls();
+          Set<Cls> expected = new HashSet<Cls>();
+          // wider than one batch of the level at a time traversal
+          List<Cls> level = new ArrayList<Cls>();
+          for (int i = 0; i < 600; ++i) {
+              level.add(createSubCls(root));
+          }
+          expected.addAll(level);
+          Cls parent = level.get(0);
+          for (int i = 0; i < 3; ++i) {
+              parent = createSubCls(parent);
+              expected.add(parent);
+          }
+          Cls otherParent = createSubCls(level.get(1));
+          expected.add(otherParent);
+          otherParent.addDirectSuperclass(parent);
+
+          DatabaseFrameDb db = (DatabaseFrameDb) MergingNarrowFrameStore.getNarrowFrameStore(kb, DatabaseFrameDb.class);
+          assertEquals(expected, db.getClosure(root, subclassesSlot, null, false));
+          assertEquals(Collections.EMPTY_SET, db.getClosure(otherParent, subclassesSlot, null, false));
+          assertEquals(expected, new HashSet(root.getSubclasses()));
+          assertEquals(getSuperclassClosure(new HashSet(), otherParent), new HashSet(otherParent.getSuperclasses()));
+
+          ValueCachingNarrowFrameStore vcnfs = (ValueCachingNarrowFrameStore) MergingNarrowFrameStore.getNarrowFrameStore(kb, ValueCachingNarrowFrameStore.class);
+          Set closure = vcnfs.getClosure(root, subclassesSlot, null, false);
+          assertSame(closure, vcnfs.getClosure(root, subclassesSlot, null, false));
+          Cls leaf = createSubCls(otherParent);
+          expected.add(leaf);
+          assertEquals(expected, vcnfs.getClosure(root, subclassesSlot, null, false));
+          assertEquals(expected, new HashSet(root.getSubclasses()));
+      }
+  }
+
+  private static Set getSuperclassClosure(Set closure, Cls cls) {
+      for (Object o : cls.getDirectSuperclasses()) {
+          if (closure.add(o)) {
+              getSuperclassClosure(closure, (Cls) o);
+          }
+      }
+      return closure;
+  }
+  
+  public void testWriteBehind() {
+      for (DBType dbt : DBType.values()) {
+          setDBType(dbt);
+          if (!dbConfigured()) {
+            continue;
+          }
+          setDatabaseProject();
+          KnowledgeBase kb = getDomainKB();
+          Slot s = createMultiValuedSlot(ValueType.STRING);
+          Cls cls = createCls();
+          cls.addDirectTemplateSlot(s);
+          Instance instance = createInstance(cls);
+          DefaultDatabaseFrameDb db = (DefaultDatabaseFrameDb) MergingNarrowFrameStore.getNarrowFrameStore(kb, DefaultDatabaseFrameDb.class);
+          db.setWriteBehind(true);
+          db.setWriteBehindThresholds(Integer.MAX_VALUE, Long.MAX_VALUE);
+          try {
+              db.setValues(instance, s, null, false, Arrays.asList(new Object[] { "a", "b" }));
+              db.addValues(instance, s, null, false, Collections.singleton("c"));
+              db.removeValue(instance, s, null, false, "b");
+              assertEquals(Arrays.asList(new Object[] { "a", "c" }), db.getValues(instance, s, null, false));
+              assertEquals(2, db.getValuesCount(instance, s, null, false));
+              assertEqualsSet(Collections.singleton(instance), db.getFrames(s, null, false, "c"));
+
+              db.addValues(instance, s, null, false, Collections.singleton("d"));
+              db.moveValue(instance, s, null, false, 2, 0);
+              assertEquals(Arrays.asList(new Object[] { "d", "a", "c" }), db.getValues(instance, s, null, false));
+              assertEquals(Arrays.asList(new Object[] { "d", "a", "c" }),
+                           db.getFrameValues(instance).get(new Sft(s, null, false)));
+
+              db.setWriteBehindThresholds(10, Long.MAX_VALUE);
+              for (int i = 0; i < 25; ++i) {
+                  db.addValues(instance, s, null, false, Collections.singleton("value" + i));
+              }
+              db.setWriteBehind(false);
+              List values = db.getValues(instance, s, null, false);
+              assertEquals(28, values.size());
+              assertEquals("value24", values.get(27));
+
+              db.setWriteBehind(true);
+              db.removeValues(instance, s, null, false);
+              kb.beginTransaction("write behind");
+              assertEquals(0, db.getValuesCount(instance, s, null, false));
+              db.addValues(instance, s, null, false, Collections.singleton("e"));
+              kb.rollbackTransaction();
+              assertEquals(Collections.EMPTY_LIST, db.getValues(instance, s, null, false));
+          } finally {
+              db.setWriteBehind(false);
+          }
+      }
+  }
+  
+  public void testManualCommitHoldsConnection() throws SQLException {
+      for (DBType dbt : DBType.values()) {
+          setDBType(dbt);
+          if (!dbConfigured()) {
+            continue;
+          }
+          setDatabaseProject();
+          KnowledgeBase kb = getDomainKB();
+          DefaultDatabaseFrameDb db = (DefaultDatabaseFrameDb) MergingNarrowFrameStore.getNarrowFrameStore(kb, DefaultDatabaseFrameDb.class);
+          RobustConnection connection = db.getCurrentConnection();
+          connection.beginManualCommit();
+          boolean committed = false;
+          try {
+              // the statements of the span do not give the connection back to the pool
+              connection.getStatement();
+              connection.setIdle(true);
+              assertFalse(connection.getIdle());
+              committed = true;
+          } finally {
+              connection.endManualCommit(committed);
+          }
+          assertTrue(connection.getIdle());
+      }
+  }
+
+  public void testWriteBehindFailedFlush() throws SQLException {
+      for (DBType dbt : DBType.values()) {
+          setDBType(dbt);
+          if (!dbConfigured()) {
+            continue;
+          }
+          setDatabaseProject();
+          KnowledgeBase kb = getDomainKB();
+          Slot s = createMultiValuedSlot(ValueType.STRING);
+          Cls cls = createCls();
+          cls.addDirectTemplateSlot(s);
+          Instance instance = createInstance(cls);
+          DefaultDatabaseFrameDb db = (DefaultDatabaseFrameDb) MergingNarrowFrameStore.getNarrowFrameStore(kb, DefaultDatabaseFrameDb.class);
+          String table = DatabaseKnowledgeBaseFactory.getTableName(getProject().getSources());
+          db.setWriteBehind(true);
+          db.setWriteBehindThresholds(Integer.MAX_VALUE, Long.MAX_VALUE);
+          try {
+              db.setValues(instance, s, null, false, Arrays.asList(new Object[] { "a", "b" }));
+              renameTable(db, table, table + "_moved");
+              try {
+                  // the flush that is due fails but is not thrown to the writer
+                  db.setWriteBehindThresholds(1, Long.MAX_VALUE);
+                  db.setValues(instance, s, null, false, Arrays.asList(new Object[] { "a", "c" }));
+                  try {
+                      db.flushPendingWrites();
+                      fail();
+                  } catch (RuntimeException expected) {
+                      // the table is gone
+                  }
+                  assertEquals(Arrays.asList(new Object[] { "a", "c" }), db.getValues(instance, s, null, false));
+              } finally {
+                  renameTable(db, table + "_moved", table);
+              }
+              db.setWriteBehind(false);
+              assertEquals(Arrays.asList(new Object[] { "a", "c" }), db.getValues(instance, s, null, false));
+          } finally {
+              db.setWriteBehind(false);
+          }
+      }
+  }
+
+  private static void renameTable(DefaultDatabaseFrameDb db, String from, String to) throws SQLException {
+      RobustConnection connection = db.getCurrentConnection();
+      connection.getStatement().executeUpdate("ALTER TABLE " + from + " RENAME TO " + to);
+      connection.closeStatements();  // some drivers invalidate the prepared statements
+  }
+
+  public void testMoveValue() {
+      for (DBType dbt : DBType.values()) {
+          setDBType(dbt);
+          if (!dbConfigured()) {
+            continue;
+          }
+          setDatabaseProject();
+          KnowledgeBase kb = getDomainKB();
+          Slot s = createMultiValuedSlot(ValueType.STRING);
+          Cls cls = createCls();
+          cls.addDirectTemplateSlot(s);
+          DefaultDatabaseFrameDb db = (DefaultDatabaseFrameDb) MergingNarrowFrameStore.getNarrowFrameStore(kb, DefaultDatabaseFrameDb.class);
+          int originalGap = db.getValueIndexGap();
+          try {
+              for (int gap : new int[] { 1, 2, 16 }) {
+                  db.setValueIndexGap(gap);
+                  Instance instance = createInstance(cls);
+                  List<Object> expected = new ArrayList<Object>();
+                  for (int i = 0; i < 30; ++i) {
+                      expected.add("value" + i);
+                  }
+                  db.setValues(instance, s, null, false, expected);
+                  db.removeValue(instance, s, null, false, "value10");
+                  expected.remove("value10");
+                  db.addValues(instance, s, null, false, Collections.singleton("value30"));
+                  expected.add("value30");
+                  Random random = new Random(gap);
+                  for (int i = 0; i < 200; ++i) {
+                      int from = random.nextInt(expected.size());
+                      int to = random.nextInt(expected.size());
+                      db.moveValue(instance, s, null, false, from, to);
+                      expected.add(to, expected.remove(from));
+                      assertEquals(expected, db.getValues(instance, s, null, false));
+                  }
+              }
+              Instance instance = createInstance(cls);
+              db.setValues(instance, s, null, false, Arrays.asList(new Object[] { "a", "b" }));
+              try {
+                  db.moveValue(instance, s, null, false, 0, 2);
+                  fail();
+              } catch (IndexOutOfBoundsException e) {
+                  // expected
+              }
+          } finally {
+              db.setValueIndexGap(originalGap);
+          }
+      }
+  }
+  
+  public void testNormalizedDatabaseFrameDb() {
+      for (DBType dbt : DBType.values()) {
+          setDBType(dbt);
+          if (!dbConfigured()) {
+            continue;
+          }
+          System.setProperty(DatabaseKnowledgeBaseFactory.FRAME_DB_CLASS_PROPERTY, NormalizedDatabaseFrameDb.class.getName());
+          try {
+              setDatabaseProject();
+              KnowledgeBase kb = getDomainKB();
+              assertNotNull(MergingNarrowFrameStore.getNarrowFrameStore(kb, NormalizedDatabaseFrameDb.class));
+              Slot s1 = createMultiValuedSlot(ValueType.STRING);
+              Slot s2 = createMultiValuedSlot(ValueType.INSTANCE);
+              Cls cls = createCls();
+              cls.addDirectTemplateSlot(s1);
+              cls.addDirectTemplateSlot(s2);
+              Instance inst1 = createInstance(cls);
+              Instance inst2 = createInstance(cls);
+              StringBuffer longValue = new StringBuffer();
+              while (longValue.length() < 5000) {
+                  longValue.append("long value ");
+              }
+              inst1.addOwnSlotValue(s1, "abc1");
+              inst1.addOwnSlotValue(s1, longValue.toString());
+              inst2.addOwnSlotValue(s1, "ABC12");
+              inst2.addOwnSlotValue(s2, inst1);
+              kb.flushCache();
+
+              assertEquals(Arrays.asList(new Object[] { "abc1", longValue.toString() }),
+                           new ArrayList(inst1.getOwnSlotValues(s1)));
+              assertEquals(Collections.singletonList(inst1), new ArrayList(inst2.getOwnSlotValues(s2)));
+              assertEquals(Collections.singleton(inst1), kb.getFramesWithValue(s1, null, false, "abc1"));
+              assertEquals(Collections.singleton(inst2), kb.getFramesWithValue(s2, null, false, inst1));
+              assertEquals(2, kb.getMatchingFrames(s1, null, false, "*1*", -1).size());
+              boolean found = false;
+              for (Reference reference : kb.getReferences(inst1, -1)) {
+                  found |= reference.getFrame().equals(inst2) && reference.getSlot().equals(s2);
+              }
+              assertTrue(found);
+              assertEqualsSet(Arrays.asList(new Object[] { inst1, inst2 }), cls.getDirectInstances());
+              Cls subclass = createSubCls(cls);
+              Cls subsubclass = createSubCls(subclass);
+              NarrowFrameStore db = MergingNarrowFrameStore.getNarrowFrameStore(kb, NormalizedDatabaseFrameDb.class);
+              assertEqualsSet(Arrays.asList(new Object[] { subclass, subsubclass }),
+                              db.getClosure(cls, kb.getSystemFrames().getDirectSubclassesSlot(), null, false));
+              assertEqualsSet(Arrays.asList(new Object[] { subclass, subsubclass }), cls.getSubclasses());
+              subsubclass.delete();
+              subclass.delete();
+
+              String name = inst1.getName();
+              inst1 = (Instance) inst1.rename(name + "_renamed");
+              kb.flushCache();
+              assertNull(kb.getFrame(name));
+              assertEquals(Collections.singletonList(inst1), new ArrayList(inst2.getOwnSlotValues(s2)));
+              assertEquals(2, inst1.getOwnSlotValues(s1).size());
+
+              int count = kb.getSimpleInstanceCount();
+              inst1.delete();
+              kb.flushCache();
+              assertEquals(count - 1, kb.getSimpleInstanceCount());
+              assertTrue(inst2.getOwnSlotValues(s2).isEmpty());
+
+              String clsName = cls.getName();
+              saveAndReload();
+              kb = getDomainKB();
+              assertNotNull(MergingNarrowFrameStore.getNarrowFrameStore(kb, NormalizedDatabaseFrameDb.class));
+              cls = kb.getCls(clsName);
+              assertEquals(1, cls.getDirectInstanceCount());
+              Instance instance = (Instance) cls.getDirectInstances().iterator().next();
+              assertEquals(Collections.singletonList("ABC12"), new ArrayList(instance.getOwnSlotValues(kb.getSlot(s1.getName()))));
+          } finally {
+              System.getProperties().remove(DatabaseKnowledgeBaseFactory.FRAME_DB_CLASS_PROPERTY);
+          }
+      }
+  }
+  
+  public void testNormalizedIdsFromTwoFrameDbs() {
+      for (DBType dbt : DBType.values()) {
+          setDBType(dbt);
+          if (!dbConfigured()) {
+            continue;
+          }
+          System.setProperty(DatabaseKnowledgeBaseFactory.FRAME_DB_CLASS_PROPERTY, NormalizedDatabaseFrameDb.class.getName());
+          try {
+              setDatabaseProject();
+              KnowledgeBase kb = getDomainKB();
+              Slot s = createMultiValuedSlot(ValueType.STRING);
+              Cls cls = createCls();
+              NarrowFrameStore db = MergingNarrowFrameStore.getNarrowFrameStore(kb, NormalizedDatabaseFrameDb.class);
+              PropertyList sources = getProject().getSources();
+              // another writer of the same tables, as if it were in another process
+              NormalizedDatabaseFrameDb other = new NormalizedDatabaseFrameDb();
+              other.initialize(kb.getFrameFactory(), DatabaseKnowledgeBaseFactory.getDriver(sources),
+                               DatabaseKnowledgeBaseFactory.getURL(sources), DatabaseKnowledgeBaseFactory.getUsername(sources),
+                               DatabaseKnowledgeBaseFactory.getPassword(sources), DatabaseKnowledgeBaseFactory.getTableName(sources), false);
+              try {
+                  List<Instance> instances = new ArrayList<Instance>();
+                  for (int i = 0; i < 250; ++i) {
+                      Instance instance = new DefaultSimpleInstance(kb, new FrameID(cls.getName() + "_instance" + i));
+                      NarrowFrameStore writer = i % 3 == 0 ? other : db;
+                      writer.setValues(instance, s, null, false, Collections.singleton("value" + i));
+                      instances.add(instance);
+                  }
+                  for (int i = 0; i < instances.size(); ++i) {
+                      List expected = Collections.singletonList("value" + i);
+                      assertEquals(expected, db.getValues(instances.get(i), s, null, false));
+                      assertEquals(expected, other.getValues(instances.get(i), s, null, false));
+                  }
+              } finally {
+                  other.close();
+              }
+          } finally {
+              System.getProperties().remove(DatabaseKnowledgeBaseFactory.FRAME_DB_CLASS_PROPERTY);
+          }
+      }
+  }
+
+  public void testNormalizedIdsAfterRollback() {
+      for (DBType dbt : DBType.values()) {
+          setDBType(dbt);
+          if (!dbConfigured()) {
+            continue;
+          }
+          System.setProperty(DatabaseKnowledgeBaseFactory.FRAME_DB_CLASS_PROPERTY, NormalizedDatabaseFrameDb.class.getName());
+          try {
+              setDatabaseProject();
+              KnowledgeBase kb = getDomainKB();
+              Slot s = createMultiValuedSlot(ValueType.STRING);
+              Cls cls = createCls();
+              NarrowFrameStore db = MergingNarrowFrameStore.getNarrowFrameStore(kb, NormalizedDatabaseFrameDb.class);
+              Instance rolledBack = new DefaultSimpleInstance(kb, new FrameID(cls.getName() + "_rolledBack"));
+              assertTrue(db.beginTransaction("rolled back"));
+              db.setValues(rolledBack, s, null, false, Collections.singleton("rolledBack"));
+              assertTrue(db.rollbackTransaction());
+              assertTrue(db.getValues(rolledBack, s, null, false).isEmpty());
+              List<Instance> instances = new ArrayList<Instance>();
+              for (int i = 0; i < 150; ++i) {
+                  Instance instance = new DefaultSimpleInstance(kb, new FrameID(cls.getName() + "_instance" + i));
+                  db.setValues(instance, s, null, false, Collections.singleton("value" + i));
+                  instances.add(instance);
+              }
+              for (int i = 0; i < instances.size(); ++i) {
+                  assertEquals(Collections.singletonList("value" + i), db.getValues(instances.get(i), s, null, false));
+              }
+              assertTrue(db.getValues(rolledBack, s, null, false).isEmpty());
+          } finally {
+              System.getProperties().remove(DatabaseKnowledgeBaseFactory.FRAME_DB_CLASS_PROPERTY);
+          }
+      }
+  }
+
+  public void testFullTextIndex() {
+      for (DBType dbt : DBType.values()) {
+          setDBType(dbt);
+          if (!dbConfigured()) {
+            continue;
+          }
+          System.setProperty(DatabaseKnowledgeBaseFactory.FULL_TEXT_INDEX_PROPERTY, "true");
+          try {
+              setDatabaseProject();
+              KnowledgeBase kb = getDomainKB();
+              FullTextIndexNarrowFrameStore nfs = (FullTextIndexNarrowFrameStore)
+                  MergingNarrowFrameStore.getNarrowFrameStore(kb, FullTextIndexNarrowFrameStore.class);
+              assertNotNull(nfs);
+              Slot s1 = createMultiValuedSlot(ValueType.STRING);
+              Slot s2 = createMultiValuedSlot(ValueType.STRING);
+              Cls cls = createCls();
+              cls.addDirectTemplateSlot(s1);
+              cls.addDirectTemplateSlot(s2);
+              Instance inst1 = createInstance(cls);
+              Instance inst2 = createInstance(cls);
+              StringBuffer longValue = new StringBuffer();
+              while (longValue.length() < 5000) {
+                  longValue.append("long documentation ");
+              }
+              longValue.append("Needle in a haystack");
+              inst1.addOwnSlotValue(s1, "Apple pie");
+              inst1.addOwnSlotValue(s2, longValue.toString());
+              inst2.addOwnSlotValue(s1, "apple tart");
+              kb.flushCache();
+
+              // the first search builds the index from the database
+              assertEqualsSet(Arrays.asList(new Object[] { inst1, inst2 }), nfs.getMatchingFrames(s1, null, false, "apple*", -1));
+              assertEquals(Collections.singleton(inst1), nfs.getMatchingFrames(s2, null, false, "*needle*", -1));
+              assertTrue(nfs.getMatchingFrames(s1, null, false, "*needle*", -1).isEmpty());
+              assertEquals(1, nfs.getMatchingFrames(s1, null, false, "apple*", 1).size());
+              assertTrue(nfs.getMatchingFrames(s1, null, false, "apple", -1).isEmpty());
+              assertEquals(Collections.singleton(new ReferenceImpl(inst1, s2, null, false)),
+                           nfs.getMatchingReferences("*HAYSTACK", -1));
+              assertEquals(Collections.singleton(inst2), kb.getMatchingFrames(s1, null, false, "*TART", -1));
+
+              // writes keep the index up to date
+              inst2.addOwnSlotValue(s2, "a needle");
+              assertEqualsSet(Arrays.asList(new Object[] { inst1, inst2 }), nfs.getMatchingFrames(s2, null, false, "*needle*", -1));
+              inst1.setOwnSlotValues(s2, Collections.singleton("no longer"));
+              assertEquals(Collections.singleton(inst2), nfs.getMatchingFrames(s2, null, false, "*needle*", -1));
+              inst2.removeOwnSlotValue(s2, "a needle");
+              assertTrue(nfs.getMatchingFrames(s2, null, false, "*needle*", -1).isEmpty());
+              inst1.delete();
+              assertEquals(Collections.singleton(inst2), nfs.getMatchingFrames(s1, null, false, "apple*", -1));
+
+              // the index rows roll back with the values
+              kb.beginTransaction("full text index");
+              inst2.addOwnSlotValue(s2, "rolled back needle");
+              assertEquals(Collections.singleton(inst2), nfs.getMatchingFrames(s2, null, false, "*needle*", -1));
+              kb.rollbackTransaction();
+              assertTrue(nfs.getMatchingFrames(s2, null, false, "*needle*", -1).isEmpty());
+
+              assertEquals(Collections.singleton(inst2), nfs.getMatchingFrames(s1, null, false, "ap*", -1));
+              // patterns without a literal part that the index can use go to the database
+              assertEquals(Collections.singleton(inst2), nfs.getMatchingFrames(s1, null, false, "*pl*", -1));
+
+              String s1Name = s1.getName();
+              String inst2Name = inst2.getName();
+              saveAndReload();
+              kb = getDomainKB();
+              nfs = (FullTextIndexNarrowFrameStore)
+                  MergingNarrowFrameStore.getNarrowFrameStore(kb, FullTextIndexNarrowFrameStore.class);
+              assertEquals(Collections.singleton(kb.getFrame(inst2Name)),
+                           nfs.getMatchingFrames(kb.getSlot(s1Name), null, false, "*TART", -1));
+          } finally {
+              System.getProperties().remove(DatabaseKnowledgeBaseFactory.FULL_TEXT_INDEX_PROPERTY);
+          }
+      }
+  }
+
+  public void testNormalizedSchemaMigration() throws Exception {
+      for (DBType dbt : DBType.values()) {
+          setDBType(dbt);
+          if (!dbConfigured()) {
+            continue;
+          }
+          setDatabaseProject();
+          KnowledgeBase kb = getDomainKB();
+          Slot s1 = createMultiValuedSlot(ValueType.STRING);
+          Slot s2 = createMultiValuedSlot(ValueType.INSTANCE);
+          Cls cls = createCls();
+          cls.addDirectTemplateSlot(s1);
+          cls.addDirectTemplateSlot(s2);
+          for (int i = 0; i < 20; ++i) {
+              Instance instance = createInstance(cls);
+              instance.addOwnSlotValue(s1, "value" + i);
+              instance.addOwnSlotValue(s2, cls);
+          }
+          DefaultDatabaseFrameDb db = (DefaultDatabaseFrameDb) MergingNarrowFrameStore.getNarrowFrameStore(kb, DefaultDatabaseFrameDb.class);
+          PropertyList sources = getProject().getSources();
+          String table = DatabaseKnowledgeBaseFactory.getTableName(sources);
+          String driver = DatabaseKnowledgeBaseFactory.getDriver(sources);
+          String url = DatabaseKnowledgeBaseFactory.getURL(sources);
+          String user = DatabaseKnowledgeBaseFactory.getUsername(sources);
+          String password = DatabaseKnowledgeBaseFactory.getPassword(sources);
+          NormalizedSchemaMigration.migrate(kb.getFrameFactory(), driver, url, user, password, table, table + "_migrated");
+
+          NormalizedDatabaseFrameDb migrated = new NormalizedDatabaseFrameDb();
+          migrated.initialize(kb.getFrameFactory(), driver, url, user, password, table + "_migrated", false);
+          try {
+              assertEquals(db.getFrames(), migrated.getFrames());
+              assertEquals(db.getFrameCount(), migrated.getFrameCount());
+              assertEquals(db.getClsCount(), migrated.getClsCount());
+              assertEquals(db.getSlotCount(), migrated.getSlotCount());
+              for (Object o : db.getFrames()) {
+                  Frame frame = (Frame) o;
+                  assertEquals(db.getFrameValues(frame), migrated.getFrameValues(frame));
+              }
+              assertEquals(db.getFrameValues(), migrated.getFrameValues());
+          } finally {
+              migrated.close();
+          }
+      }
+  }
 
 }
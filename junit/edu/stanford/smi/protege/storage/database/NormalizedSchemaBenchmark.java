@@ -0,0 +1,155 @@
+package edu.stanford.smi.protege.storage.database;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Random;
+
+import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.DefaultSimpleInstance;
+import edu.stanford.smi.protege.model.DefaultSlot;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Model;
+import edu.stanford.smi.protege.model.Slot;
+import edu.stanford.smi.protege.model.framestore.NarrowFrameStore;
+
+/**
+ * Compares the single table schema of DefaultDatabaseFrameDb with the frames and values
+ * tables of NormalizedDatabaseFrameDb.  The same instances (with long, ontology like names,
+ * a type, two strings and a reference to another instance) are written to an embedded HSQLDB
+ * database in a temporary directory for each schema.  The benchmark then reports the size of
+ * the database files and the average latency of the common reads.  Run it with
+ * dbdrivers/hsqldb.jar on the class path:
+ * <pre>
+ *     java edu.stanford.smi.protege.storage.database.NormalizedSchemaBenchmark 20000
+ * </pre>
+ */
+public class NormalizedSchemaBenchmark {
+    private static final String DRIVER = "org.hsqldb.jdbcDriver";
+    private static final String NAME_PREFIX = "http://www.example.org/ontologies/benchmark.owl#Instance_";
+    private static final int QUERIES = 2000;
+
+    private final KnowledgeBase kb = new DefaultKnowledgeBase();
+    private final Slot nameSlot;
+    private final Slot typeSlot;
+    private final Slot stringSlot;
+    private final Slot otherSlot;
+    private final Slot referenceSlot;
+    private final Frame type;
+    private final Frame[] frames;
+
+    public static void main(String[] args) throws Exception {
+        int frameCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        Class.forName(DRIVER);
+        new NormalizedSchemaBenchmark(frameCount).run();
+    }
+
+    private NormalizedSchemaBenchmark(int frameCount) {
+        nameSlot = new DefaultSlot(kb, Model.SlotID.NAME);
+        typeSlot = new DefaultSlot(kb, Model.SlotID.DIRECT_TYPES);
+        stringSlot = new DefaultSlot(kb, new FrameID("http://www.example.org/ontologies/benchmark.owl#label"));
+        otherSlot = new DefaultSlot(kb, new FrameID("http://www.example.org/ontologies/benchmark.owl#comment"));
+        referenceSlot = new DefaultSlot(kb, new FrameID("http://www.example.org/ontologies/benchmark.owl#related"));
+        type = new DefaultSimpleInstance(kb, new FrameID("http://www.example.org/ontologies/benchmark.owl#Type"));
+        frames = new Frame[frameCount];
+        for (int i = 0; i < frameCount; ++i) {
+            frames[i] = new DefaultSimpleInstance(kb, new FrameID(NAME_PREFIX + i));
+        }
+    }
+
+    private void run() throws Exception {
+        System.out.println("Instances: " + frames.length);
+        DefaultDatabaseFrameDb defaultDb = new DefaultDatabaseFrameDb();
+        String defaultUrl = initialize(defaultDb, "single_table");
+        defaultDb.ensureEmptyTableExists();
+        defaultDb.setWriteBehind(true);
+        write(defaultDb);
+        defaultDb.flushPendingWrites();
+
+        NormalizedDatabaseFrameDb normalizedDb = new NormalizedDatabaseFrameDb();
+        String normalizedUrl = initialize(normalizedDb, "normalized");
+        normalizedDb.ensureEmptyTablesExist();
+        write(normalizedDb);
+
+        for (int round = 0; round < 3; ++round) {
+            System.out.println("single table: " + read(defaultDb));
+            System.out.println("normalized:   " + read(normalizedDb));
+        }
+        defaultDb.close();
+        normalizedDb.close();
+        System.out.println("single table size: " + getSize(defaultUrl) / 1024 + " KB");
+        System.out.println("normalized size:   " + getSize(normalizedUrl) / 1024 + " KB");
+    }
+
+    private String initialize(DatabaseFrameDb db, String name) {
+        File file = new File(System.getProperty("java.io.tmpdir"), "normalized_schema_benchmark_" + name);
+        String url = "jdbc:hsqldb:file:" + file;
+        db.initialize(kb.getFrameFactory(), DRIVER, url, "sa", "", "benchmark", false);
+        return url;
+    }
+
+    private void write(NarrowFrameStore db) {
+        for (int i = 0; i < frames.length; ++i) {
+            Frame frame = frames[i];
+            db.setValues(frame, nameSlot, null, false, Collections.singleton(frame.getFrameID().getName()));
+            db.setValues(frame, typeSlot, null, false, Collections.singleton(type));
+            db.setValues(frame, stringSlot, null, false, Collections.singleton("value " + i));
+            db.setValues(frame, otherSlot, null, false, Collections.singleton("some other value"));
+            db.setValues(frame, referenceSlot, null, false, Collections.singleton(frames[(i + 1) % frames.length]));
+        }
+    }
+
+    private String read(DatabaseFrameDb db) {
+        Random random = new Random(0);
+        long getValues = 0;
+        long getFrames = 0;
+        long getMatchingFrames = 0;
+        long getFrameValues = 0;
+        for (int i = 0; i < QUERIES; ++i) {
+            int index = random.nextInt(frames.length);
+            long start = System.nanoTime();
+            db.getValues(frames[index], stringSlot, null, false);
+            long time = System.nanoTime();
+            getValues += time - start;
+            start = time;
+            db.getFrames(referenceSlot, null, false, frames[index]);
+            time = System.nanoTime();
+            getFrames += time - start;
+            start = time;
+            db.getMatchingFrames(stringSlot, null, false, "value " + index + "*", 10);
+            time = System.nanoTime();
+            getMatchingFrames += time - start;
+            start = time;
+            db.getFrameValues(frames[index]);
+            getFrameValues += System.nanoTime() - start;
+        }
+        return "getValues " + getValues / QUERIES / 1000 + " us, getFrames " + getFrames / QUERIES / 1000
+                + " us, getMatchingFrames " + getMatchingFrames / QUERIES / 1000 + " us, getFrameValues "
+                + getFrameValues / QUERIES / 1000 + " us";
+    }
+
+    /*
+     * Compacts the database and adds up the sizes of its files.
+     */
+    private static long getSize(String url) throws SQLException {
+        Connection connection = DriverManager.getConnection(url, "sa", "");
+        Statement stmt = connection.createStatement();
+        stmt.execute("SHUTDOWN COMPACT");
+        stmt.close();
+        connection.close();
+        File file = new File(url.substring("jdbc:hsqldb:file:".length()));
+        long size = 0;
+        File[] files = file.getParentFile().listFiles();
+        for (int i = 0; i < files.length; ++i) {
+            if (files[i].getName().startsWith(file.getName() + ".")) {
+                size += files[i].length();
+            }
+        }
+        return size;
+    }
+}
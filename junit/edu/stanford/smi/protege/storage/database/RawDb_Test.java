@@ -1,12 +1,19 @@
 package edu.stanford.smi.protege.storage.database;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.logging.Level;
 
 import edu.stanford.smi.protege.exception.TransactionException;
+import edu.stanford.smi.protege.storage.database.pool.ConnectionInfo;
+import edu.stanford.smi.protege.storage.database.pool.ConnectionPool;
+import edu.stanford.smi.protege.storage.database.pool.ConnectionPoolMetrics;
 import edu.stanford.smi.protege.test.APITestCase;
 import edu.stanford.smi.protege.util.Log;
 import edu.stanford.smi.protege.util.transaction.TransactionIsolationLevel;
@@ -114,6 +121,105 @@ public class RawDb_Test extends APITestCase {
         }
     }
     
+    public void testStatementCache() {
+        try {
+            for (DBType dbt : DBType.values()) {
+                setDBType(dbt);
+                if (!dbConfigured()) {
+                    continue;
+                }
+                RobustConnection connection = createRobustConnection();
+                Statement stmt = connection.getStatement();
+                try {
+                    stmt.executeUpdate("DROP TABLE test");
+                }
+                catch (SQLException sqle) {
+                    ;
+                }
+                createFrameNameTable(connection, stmt);
+                ConnectionPoolMetrics metrics = connection.getConnectionPoolMetrics();
+                metrics.reset();
+                for (int i = 0; i < 10; i++) {
+                    PreparedStatement pstmt = connection.getPreparedStatement("SELECT str FROM test WHERE str = ?");
+                    pstmt.setString(1, "a" + i);
+                    pstmt.executeQuery().close();
+                }
+                assertEquals(1, metrics.getPrepareCount());
+                assertEquals(9, metrics.getStatementHitCount());
+
+                ConnectionInfo ci = new ConnectionInfo(DriverManager.getConnection(getDBProperty(JUNIT_DB_URL_PROPERTY),
+                                                                                   getDBProperty(JUNIT_DB_USER_PROPERTY),
+                                                                                   getDBProperty(JUNIT_DB_PASSWORD_PROPERTY)),
+                                                       2, metrics);
+                metrics.reset();
+                String text1 = "SELECT str FROM test WHERE str = ?";
+                String text2 = "SELECT COUNT(*) FROM test";
+                String text3 = "SELECT str FROM test";
+                PreparedStatement first = ci.getPreparedStatement(text1);
+                ci.getPreparedStatement(text2);
+                assertSame(first, ci.getPreparedStatement(text1));
+                ci.getPreparedStatement(text3);
+                assertEquals(Arrays.asList(new String[] { text1, text3 }), ci.getStatementTexts());
+                assertEquals(3, metrics.getPrepareCount());
+                assertEquals(1, metrics.getStatementHitCount());
+                assertEquals(1, metrics.getStatementEvictionCount());
+                ci.close();
+                connection.dispose();
+            }
+        }
+        catch (Throwable t) {
+            Log.getLogger().log(Level.WARNING, "Exception caught", t);
+            fail(t.getMessage());
+        }
+    }
+    
+    public void testStatementsSurviveRefresh() {
+        try {
+            for (DBType dbt : DBType.values()) {
+                setDBType(dbt);
+                if (!dbConfigured()) {
+                    continue;
+                }
+                ConnectionPool pool = ConnectionPool.getConnectionPool(getDBProperty(JUNIT_DB_DRIVER_PROPERTY),
+                                                                       getDBProperty(JUNIT_DB_URL_PROPERTY),
+                                                                       getDBProperty(JUNIT_DB_USER_PROPERTY),
+                                                                       getDBProperty(JUNIT_DB_PASSWORD_PROPERTY));
+                Connection connection = pool.getConnection();
+                Statement stmt = pool.getStatement(connection);
+                try {
+                    stmt.executeUpdate("DROP TABLE test");
+                }
+                catch (SQLException sqle) {
+                    ;
+                }
+                stmt.executeUpdate("CREATE TABLE test ( str VARCHAR(20) )");
+                String text = "SELECT str FROM test WHERE str = ?";
+                pool.getPreparedStatement(connection, text);
+                pool.ungetConnection(connection);
+                pool.refreshIdleConnections();
+
+                ConnectionPoolMetrics metrics = pool.getMetrics();
+                metrics.reset();
+                connection = pool.getConnection();
+                assertEquals(1, metrics.getConnectionsOpened());
+                assertEquals(1, metrics.getConnectionRequestCount());
+                long prepareCount = metrics.getPrepareCount();
+                assertTrue(prepareCount >= 1);
+                pool.getPreparedStatement(connection, text);
+                assertEquals(prepareCount, metrics.getPrepareCount());
+                assertEquals(1, metrics.getStatementHitCount());
+                pool.ungetConnection(connection);
+                assertTrue(metrics.getReservedMillis() >= 0);
+                assertEquals(0, metrics.getLongRunningCount());
+                pool.dereference();
+            }
+        }
+        catch (Throwable t) {
+            Log.getLogger().log(Level.WARNING, "Exception caught", t);
+            fail(t.getMessage());
+        }
+    }
+    
     private void createFrameNameTable(RobustConnection connection, Statement stmt) throws SQLException {
         String cmd = "CREATE TABLE test ( str " + connection.getFrameNameType() + ")";
         if (connection.isMySql() && (connection.getDatabaseMajorVersion() == 5)) {
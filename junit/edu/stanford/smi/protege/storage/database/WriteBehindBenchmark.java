@@ -0,0 +1,102 @@
+package edu.stanford.smi.protege.storage.database;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.Collections;
+
+import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.DefaultSimpleInstance;
+import edu.stanford.smi.protege.model.DefaultSlot;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Model;
+import edu.stanford.smi.protege.model.Slot;
+
+/**
+ * Sustained write throughput of a DefaultDatabaseFrameDb with and without write behind.
+ * Each instance gets a name, a type and two string values, and then one of the string
+ * values is overwritten, the way an import followed by a scripted edit would.  By default
+ * this writes to an embedded HSQLDB database in a temporary directory, so run it with
+ * dbdrivers/hsqldb.jar on the class path:
+ * <pre>
+ *     java edu.stanford.smi.protege.storage.database.WriteBehindBenchmark 20000
+ * </pre>
+ * Another database can be given as driver, url, user and password after the number of
+ * instances.
+ */
+public class WriteBehindBenchmark {
+    private static final int ROUNDS = 3;
+
+    private final String driver;
+    private final String url;
+    private final String user;
+    private final String password;
+    private final KnowledgeBase kb = new DefaultKnowledgeBase();
+    private final Slot nameSlot;
+    private final Slot typeSlot;
+    private final Slot stringSlot;
+    private final Slot otherSlot;
+    private final Frame type;
+    private final Frame[] frames;
+
+    public static void main(String[] args) throws SQLException {
+        int frameCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        String driver = "org.hsqldb.jdbcDriver";
+        String url = "jdbc:hsqldb:file:" + new File(System.getProperty("java.io.tmpdir"), "write_behind_benchmark");
+        String user = "sa";
+        String password = "";
+        if (args.length > 4) {
+            driver = args[1];
+            url = args[2];
+            user = args[3];
+            password = args[4];
+        }
+        new WriteBehindBenchmark(frameCount, driver, url, user, password).run();
+    }
+
+    private WriteBehindBenchmark(int frameCount, String driver, String url, String user, String password) {
+        this.driver = driver;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        nameSlot = new DefaultSlot(kb, Model.SlotID.NAME);
+        typeSlot = new DefaultSlot(kb, Model.SlotID.DIRECT_TYPES);
+        stringSlot = new DefaultSlot(kb, new FrameID("string"));
+        otherSlot = new DefaultSlot(kb, new FrameID("other"));
+        type = new DefaultSimpleInstance(kb, new FrameID("Type"));
+        frames = new Frame[frameCount];
+        for (int i = 0; i < frameCount; ++i) {
+            frames[i] = new DefaultSimpleInstance(kb, new FrameID("Instance_" + i));
+        }
+    }
+
+    private void run() throws SQLException {
+        System.out.println("Instances: " + frames.length + ", database: " + url);
+        for (int round = 0; round < ROUNDS; ++round) {
+            System.out.println("write through: " + write(false) + " writes/s, write behind: " + write(true) + " writes/s");
+        }
+    }
+
+    private long write(boolean writeBehind) throws SQLException {
+        DefaultDatabaseFrameDb db = new DefaultDatabaseFrameDb();
+        db.initialize(kb.getFrameFactory(), driver, url, user, password, "write_behind_benchmark", false);
+        db.ensureEmptyTableExists();
+        db.setWriteBehind(writeBehind);
+        long start = System.currentTimeMillis();
+        for (Frame frame : frames) {
+            db.setValues(frame, nameSlot, null, false, Collections.singleton(frame.getFrameID().getName()));
+            db.setValues(frame, typeSlot, null, false, Collections.singleton(type));
+            db.addValues(frame, stringSlot, null, false, Collections.singleton("value"));
+            db.addValues(frame, otherSlot, null, false, Collections.singleton("other value"));
+            db.setValues(frame, stringSlot, null, false, Collections.singleton("new value"));
+        }
+        db.flushPendingWrites();
+        long time = Math.max(1, System.currentTimeMillis() - start);
+        if (db.getFrameCount() != frames.length) {
+            throw new IllegalStateException("Lost writes");
+        }
+        db.close();
+        return 5L * frames.length * 1000 / time;
+    }
+}
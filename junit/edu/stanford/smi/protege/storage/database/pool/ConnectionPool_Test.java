@@ -0,0 +1,253 @@
+package edu.stanford.smi.protege.storage.database.pool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import edu.stanford.smi.protege.util.SystemUtilities;
+
+/**
+ * Runs against an in-memory HSQLDB database and does nothing if dbdrivers/hsqldb.jar is not
+ * on the class path.
+ */
+public class ConnectionPool_Test extends TestCase {
+    private static final String DRIVER = "org.hsqldb.jdbcDriver";
+    private static final String URL = "jdbc:hsqldb:mem:connection_pool_test";
+
+    private List<ConnectionPool> pools = new ArrayList<ConnectionPool>();
+
+    private boolean driverAvailable() {
+        return SystemUtilities.forName(DRIVER) != null;
+    }
+
+    private ConnectionPool createPool(int maxActive, long waitTimeout, int maxWaiting) {
+        ConnectionPool pool = new ConnectionPool(DRIVER, URL, "sa", "", 1, 2, maxActive, waitTimeout, maxWaiting);
+        pools.add(pool);
+        return pool;
+    }
+
+    protected void tearDown() throws Exception {
+        for (ConnectionPool pool : pools) {
+            pool.close();
+        }
+        super.tearDown();
+    }
+
+    private void waitForWaiters(ConnectionPool pool, int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (pool.getWaitingCount() < count && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, pool.getWaitingCount());
+    }
+
+    public void testStress() throws Exception {
+        if (!driverAvailable()) {
+            return;
+        }
+        final int maxActive = 4;
+        final int threadCount = 24;
+        final int iterations = 200;
+        final ConnectionPool pool = createPool(maxActive, 30000, threadCount);
+        Connection connection = pool.getConnection();
+        pool.getStatement(connection).executeUpdate("CREATE TABLE pool_stress (session INTEGER, i INTEGER)");
+        pool.ungetConnection(connection);
+        pool.getMetrics().reset();
+
+        final AtomicInteger inUse = new AtomicInteger();
+        final AtomicInteger maxInUse = new AtomicInteger();
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; ++t) {
+            final int session = t;
+            // half of the threads behave like sessions, the others like anonymous readers
+            final Object affinity = t % 2 == 0 ? new Object() : null;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < iterations; ++i) {
+                            Connection c = pool.getConnection(affinity);
+                            try {
+                                int count = inUse.incrementAndGet();
+                                int max = maxInUse.get();
+                                while (count > max && !maxInUse.compareAndSet(max, count)) {
+                                    max = maxInUse.get();
+                                }
+                                PreparedStatement stmt = pool.getPreparedStatement(c, "INSERT INTO pool_stress VALUES (?, ?)");
+                                stmt.setInt(1, session);
+                                stmt.setInt(2, i);
+                                stmt.executeUpdate();
+                                stmt = pool.getPreparedStatement(c, "SELECT COUNT(*) FROM pool_stress WHERE session = ?");
+                                stmt.setInt(1, session);
+                                ResultSet rs = stmt.executeQuery();
+                                rs.next();
+                                if (rs.getInt(1) != i + 1) {
+                                    throw new IllegalStateException("Lost an insert for session " + session);
+                                }
+                                rs.close();
+                                inUse.decrementAndGet();
+                            }
+                            finally {
+                                pool.ungetConnection(c);
+                            }
+                        }
+                    }
+                    catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertTrue(maxInUse.get() <= maxActive);
+        assertEquals(0, pool.getActiveCount());
+        assertTrue(pool.getIdleCount() <= 2);
+        ConnectionPoolMetrics metrics = pool.getMetrics();
+        assertEquals(threadCount * iterations, metrics.getConnectionRequestCount());
+        assertEquals(0, metrics.getConnectionTimeoutCount());
+        assertTrue(metrics.getStatementHitRate() > 0.9);
+
+        connection = pool.getConnection();
+        ResultSet rs = pool.getStatement(connection).executeQuery("SELECT COUNT(*) FROM pool_stress");
+        rs.next();
+        assertEquals(threadCount * iterations, rs.getInt(1));
+        rs.close();
+        pool.getStatement(connection).executeUpdate("DROP TABLE pool_stress");
+        pool.ungetConnection(connection);
+    }
+
+    public void testTimeoutAndRejection() throws Exception {
+        if (!driverAvailable()) {
+            return;
+        }
+        final ConnectionPool pool = createPool(1, 200, 1);
+        Connection held = pool.getConnection();
+        try {
+            pool.getConnection();
+            fail();
+        }
+        catch (SQLException e) {
+            // expected
+        }
+        assertEquals(1, pool.getMetrics().getConnectionTimeoutCount());
+
+        final ConnectionPool slowPool = createPool(1, 10000, 1);
+        Connection slowHeld = slowPool.getConnection();
+        final List<Connection> acquired = Collections.synchronizedList(new ArrayList<Connection>());
+        Thread waiter = new Thread() {
+            public void run() {
+                try {
+                    acquired.add(slowPool.getConnection());
+                }
+                catch (SQLException e) {
+                    // checked below
+                }
+            }
+        };
+        waiter.start();
+        waitForWaiters(slowPool, 1);
+        try {
+            slowPool.getConnection();
+            fail();
+        }
+        catch (SQLException e) {
+            // expected
+        }
+        assertEquals(1, slowPool.getMetrics().getConnectionRejectedCount());
+        slowPool.ungetConnection(slowHeld);
+        waiter.join();
+        assertEquals(Collections.singletonList(slowHeld), acquired);
+        slowPool.ungetConnection(slowHeld);
+        pool.ungetConnection(held);
+    }
+
+    public void testAffinity() throws Exception {
+        if (!driverAvailable()) {
+            return;
+        }
+        ConnectionPool pool = createPool(4, 1000, 10);
+        Object session1 = new Object();
+        Object session2 = new Object();
+        Connection c1 = pool.getConnection(session1);
+        Connection c2 = pool.getConnection(session2);
+        assertNotSame(c1, c2);
+        pool.ungetConnection(c1);
+        pool.ungetConnection(c2);
+        assertSame(c1, pool.getConnection(session1));
+        assertSame(c2, pool.getConnection(null));
+        assertEquals(2, pool.getActiveCount());
+        pool.ungetConnection(c1);
+        pool.ungetConnection(c2);
+        // returning a connection twice does not free two slots
+        pool.ungetConnection(c2);
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(2, pool.getIdleCount());
+    }
+
+    public void testFairness() throws Exception {
+        if (!driverAvailable()) {
+            return;
+        }
+        final ConnectionPool pool = createPool(1, 10000, 10);
+        Connection held = pool.getConnection();
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        Thread[] threads = new Thread[5];
+        for (int i = 0; i < threads.length; ++i) {
+            final int index = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        Connection c = pool.getConnection();
+                        order.add(index);
+                        pool.ungetConnection(c);
+                    }
+                    catch (SQLException e) {
+                        // checked below
+                    }
+                }
+            };
+            threads[i].start();
+            waitForWaiters(pool, i + 1);
+        }
+        pool.ungetConnection(held);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Arrays.asList(new Integer[] { 0, 1, 2, 3, 4 }), order);
+    }
+
+    public void testAutoCommitReset() throws Exception {
+        if (!driverAvailable()) {
+            return;
+        }
+        ConnectionPool pool = createPool(1, 10000, 10);
+        Connection c = pool.getConnection();
+        pool.getStatement(c).executeUpdate("CREATE TABLE pool_auto_commit (i INTEGER)");
+        c.setAutoCommit(false);
+        pool.getStatement(c).executeUpdate("INSERT INTO pool_auto_commit (i) VALUES (1)");
+        pool.ungetConnection(c);
+
+        c = pool.getConnection();
+        try {
+            assertTrue(c.getAutoCommit());
+            ResultSet rs = pool.getStatement(c).executeQuery("SELECT COUNT(*) FROM pool_auto_commit");
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+            rs.close();
+        }
+        finally {
+            pool.ungetConnection(c);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package edu.stanford.smi.protege.util;
+
+import edu.stanford.smi.protege.model.framestore.SimpleTestCase;
+
+public class TinyLfuCache_Test extends SimpleTestCase {
+
+    public void testSizeLimit() {
+        int limit = 200;
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<Integer, String>(limit);
+        for (int i = 0; i < 10 * limit; i++) {
+            cache.put(i, "value" + i);
+            assertTrue(cache.size() <= limit);
+            assertEquals("value" + i, cache.get(i));
+        }
+        assertEquals(limit, cache.size());
+        assertEquals(9 * limit, cache.getEvictionCount());
+    }
+
+    public void testScanResistance() {
+        int limit = 100;
+        TinyLfuCache<String, Integer> cache = new TinyLfuCache<String, Integer>(limit);
+        for (int i = 0; i < limit / 2; i++) {
+            cache.put("hot" + i, i);
+        }
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < limit / 2; i++) {
+                assertEquals(new Integer(i), cache.get("hot" + i));
+            }
+        }
+        for (int i = 0; i < 5 * limit; i++) {
+            cache.put("scan" + i, i);
+        }
+        for (int i = 0; i < limit / 2; i++) {
+            assertEquals(new Integer(i), cache.get("hot" + i));
+        }
+        assertTrue(cache.getRejectionCount() > 0);
+        assertTrue(cache.size() <= limit);
+    }
+
+    public void testUpdateRemoveAndClear() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<String, String>(10);
+        cache.put("a", "1");
+        cache.put("a", "2");
+        assertEquals(1, cache.size());
+        assertEquals("2", cache.get("a"));
+        cache.put("b", "3");
+        assertTrue(cache.containsKey("b"));
+        assertEquals("3", cache.remove("b"));
+        assertFalse(cache.containsKey("b"));
+        assertNull(cache.remove("b"));
+        assertNull(cache.get("b"));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get("a"));
+    }
+
+    public void testSingleEntry() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<String, String>(1);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals(1, cache.size());
+        assertEquals("2", cache.get("b"));
+        assertNull(cache.get("a"));
+    }
+}
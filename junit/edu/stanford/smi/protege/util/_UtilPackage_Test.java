@@ -14,6 +14,7 @@ public class _UtilPackage_Test {
         suite.addTestSuite(Log_Test.class);
         suite.addTestSuite(FileUtilities_Test.class);
         suite.addTestSuite(Tree_Test.class);
+        suite.addTestSuite(TinyLfuCache_Test.class);
         return suite;
     }
 }
@@ -85,6 +85,18 @@ public abstract class DefaultFrame implements Frame, Localizable, Serializable {
         return (state & mask) != 0;
     }
 
+    /**
+     * The read only, included and deletion flags of this frame packed into an int.  This is
+     * for code that writes frames in its own wire format (see the server CompactCodec).
+     */
+    public int getStateFlags() {
+        return state;
+    }
+
+    public void setStateFlags(int flags) {
+        state = flags;
+    }
+
     public boolean isBeingDeleted() {
         return getState(DELETING_MASK);
     }
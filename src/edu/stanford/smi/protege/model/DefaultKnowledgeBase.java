@@ -57,8 +57,8 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
     private static final int GENERATED_NAME_LENGTH = 8;
 
     private FrameStoreManager _frameStoreManager;
-    private SystemFrames _systemFrames;
-    private FrameFactory _frameFactory;
+    private volatile SystemFrames _systemFrames;
+    private volatile FrameFactory _frameFactory;
 
     private Cls _defaultClsMetaCls;
     private Cls _defaultSlotMetaCls;
@@ -73,6 +73,7 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
     private String _versionString;
     private FrameNameValidator _frameNameValidator;
     private ServerCacheStateMachine cacheMachine;
+    private volatile boolean _readWriteLocking;
 
     {
         initializeKBName();
@@ -113,6 +114,34 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return _frameStoreManager.getHeadFrameStore();
     }
 
+    /*
+     * The simple queries go straight to the head frame store under the locking that is in
+     * use, either the knowledge base monitor or the read lock.
+     */
+    private FrameStore getQueryFrameStore() {
+        if (_frameStoreManager == null) {
+            throw new RuntimeException("Method called on closed knowledgeBase: " + getName());
+        }
+        return _frameStoreManager.getQueryFrameStore();
+    }
+
+    /**
+     * Enables read/write locking.  By default every call synchronizes on the knowledge
+     * base.  With read/write locking the simple queries that go straight to the head frame
+     * store skip the knowledge base monitor and run concurrently under the read lock of
+     * the frame store chain while modifications remain exclusive.  It is meant for
+     * in-memory knowledge bases that are read by many threads.  Frame stores on the read
+     * path must not call back into synchronized knowledge base methods when this is on.
+     */
+    public synchronized void setReadWriteLockingEnabled(boolean enabled) {
+        _frameStoreManager.setReadWriteLockingEnabled(enabled);
+        _readWriteLocking = enabled;
+    }
+
+    public boolean isReadWriteLockingEnabled() {
+        return _readWriteLocking;
+    }
+
     public DefaultKnowledgeBase(KnowledgeBaseFactory factory) {
         if (log.isLoggable(Level.FINE)) {
           log.fine("Phase 1 Initialization of Model starts");
@@ -123,11 +152,11 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
     public DefaultKnowledgeBase() {
     }
 
-    public synchronized SystemFrames getSystemFrames() {
+    public SystemFrames getSystemFrames() {
         return _systemFrames;
     }
 
-    public synchronized FrameFactory getFrameFactory() {
+    public FrameFactory getFrameFactory() {
         return _frameFactory;
     }
 
@@ -184,8 +213,8 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
       _frameStoreManager.flushEvents();
     }
 
-    public synchronized List getDirectOwnSlotValues(Frame frame, Slot slot) {
-        return getHeadFrameStore().getDirectOwnSlotValues(frame, slot);
+    public List getDirectOwnSlotValues(Frame frame, Slot slot) {
+        return getQueryFrameStore().getDirectOwnSlotValues(frame, slot);
     }
 
     public synchronized Cls createCls(String name, Collection directSuperclasses, Collection directTypes,
@@ -246,16 +275,16 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         }
     }
 
-    public synchronized Frame getFrame(FrameID id) {
-        return getHeadFrameStore().getFrame(id);
+    public Frame getFrame(FrameID id) {
+        return getQueryFrameStore().getFrame(id);
     }
 
-    public synchronized Frame getFrame(String name) {
-        return getHeadFrameStore().getFrame(name);
+    public Frame getFrame(String name) {
+        return getQueryFrameStore().getFrame(name);
     }
 
-    public synchronized Collection getOwnSlotValues(Frame frame, Slot slot) {
-        return getHeadFrameStore().getOwnSlotValues(frame, slot);
+    public Collection getOwnSlotValues(Frame frame, Slot slot) {
+        return getQueryFrameStore().getOwnSlotValues(frame, slot);
     }
 
     public synchronized Object getDirectOwnSlotValue(Frame frame, Slot slot) {
@@ -263,16 +292,16 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return CollectionUtilities.getFirstItem(values);
     }
 
-    public synchronized Collection<Slot> getOwnSlots(Frame frame) {
-        return getHeadFrameStore().getOwnSlots(frame);
+    public Collection<Slot> getOwnSlots(Frame frame) {
+        return getQueryFrameStore().getOwnSlots(frame);
     }
 
-    public synchronized Collection getTemplateSlots(Cls cls) {
-        return getHeadFrameStore().getTemplateSlots(cls);
+    public Collection getTemplateSlots(Cls cls) {
+        return getQueryFrameStore().getTemplateSlots(cls);
     }
 
-    public synchronized Collection<Reference> getReferences(Frame frame) {
-        return getHeadFrameStore().getReferences(frame);
+    public Collection<Reference> getReferences(Frame frame) {
+        return getQueryFrameStore().getReferences(frame);
     }
 
     public synchronized void deleteFrame(Frame frame) {
@@ -324,12 +353,12 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return (Cls) CollectionUtilities.getFirstItem(types);
     }
 
-    public synchronized Collection<Cls> getDirectSuperclasses(Cls cls) {
-        return getHeadFrameStore().getDirectSuperclasses(cls);
+    public Collection<Cls> getDirectSuperclasses(Cls cls) {
+        return getQueryFrameStore().getDirectSuperclasses(cls);
     }
 
-    public synchronized String getName(Frame frame) {
-        return getHeadFrameStore().getFrameName(frame);
+    public String getName(Frame frame) {
+        return getQueryFrameStore().getFrameName(frame);
     }
 
     public synchronized void addJavaLoadPackage(String packageName) {
@@ -567,16 +596,16 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return frame;
     }
 
-    public synchronized int getClsCount() {
-        return getHeadFrameStore().getClsCount();
+    public int getClsCount() {
+        return getQueryFrameStore().getClsCount();
     }
 
-    public synchronized int getSimpleInstanceCount() {
-        return getHeadFrameStore().getSimpleInstanceCount();
+    public int getSimpleInstanceCount() {
+        return getQueryFrameStore().getSimpleInstanceCount();
     }
 
-    public synchronized Collection<Cls> getClses() {
-        return getHeadFrameStore().getClses();
+    public Collection<Cls> getClses() {
+        return getQueryFrameStore().getClses();
     }
 
     public synchronized Collection getClsNameMatches(String name, int maxMatches) {
@@ -607,16 +636,16 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return (Facet) getFrameOfType(name, Facet.class);
     }
 
-    public synchronized int getFacetCount() {
-        return getHeadFrameStore().getFacetCount();
+    public int getFacetCount() {
+        return getQueryFrameStore().getFacetCount();
     }
 
-    public synchronized Collection getFacets() {
-        return getHeadFrameStore().getFacets();
+    public Collection getFacets() {
+        return getQueryFrameStore().getFacets();
     }
 
-    public synchronized int getFrameCount() {
-        return getHeadFrameStore().getFrameCount();
+    public int getFrameCount() {
+        return getQueryFrameStore().getFrameCount();
     }
 
     public synchronized String getFrameCreationTimestamp(Frame frame) {
@@ -653,16 +682,16 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return frames;
     }
 
-    public synchronized Set getFramesWithMatchingDirectOwnSlotValue(Slot slot, String value, int maxMatches) {
-        return getHeadFrameStore().getFramesWithMatchingDirectOwnSlotValue(slot, value, maxMatches);
+    public Set getFramesWithMatchingDirectOwnSlotValue(Slot slot, String value, int maxMatches) {
+        return getQueryFrameStore().getFramesWithMatchingDirectOwnSlotValue(slot, value, maxMatches);
     }
 
     public synchronized String getFrameNamePrefix() {
         return _frameNamePrefix;
     }
 
-    public synchronized Collection getFrames() {
-        return getHeadFrameStore().getFrames();
+    public Collection getFrames() {
+        return getQueryFrameStore().getFrames();
     }
 
     public synchronized Instance getInstance(String name) {
@@ -681,8 +710,8 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
      * @deprecated
      */
     @Deprecated
-    public synchronized Collection<Instance> getInstances(Cls cls) {
-        return getHeadFrameStore().getInstances(cls);
+    public Collection<Instance> getInstances(Cls cls) {
+        return getQueryFrameStore().getInstances(cls);
     }
 
     public synchronized String getInvalidOwnSlotValuesText(Frame frame, Slot slot, Collection values) {
@@ -773,16 +802,16 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         }
     }
 
-    public synchronized Collection getReferences(Object object, int maxRefs) {
-        return getHeadFrameStore().getReferences(object);
+    public Collection getReferences(Object object, int maxRefs) {
+        return getQueryFrameStore().getReferences(object);
     }
 
-    public synchronized Collection<Reference> getMatchingReferences(String s, int maxRefs) {
-        return getHeadFrameStore().getMatchingReferences(s, maxRefs);
+    public Collection<Reference> getMatchingReferences(String s, int maxRefs) {
+        return getQueryFrameStore().getMatchingReferences(s, maxRefs);
     }
 
-    public synchronized Collection<Cls> getClsesWithMatchingBrowserText(String s, Collection superclasses, int maxMatches) {
-        return getHeadFrameStore().getClsesWithMatchingBrowserText(s, superclasses, maxMatches);
+    public Collection<Cls> getClsesWithMatchingBrowserText(String s, Collection superclasses, int maxMatches) {
+        return getQueryFrameStore().getClsesWithMatchingBrowserText(s, superclasses, maxMatches);
     }
 
     public synchronized Cls getRootCls() {
@@ -821,12 +850,12 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return (Slot) getFrameOfType(name, Slot.class);
     }
 
-    public synchronized int getSlotCount() {
-        return getHeadFrameStore().getSlotCount();
+    public int getSlotCount() {
+        return getQueryFrameStore().getSlotCount();
     }
 
-    public synchronized Collection<Slot> getSlots() {
-        return getHeadFrameStore().getSlots();
+    public Collection<Slot> getSlots() {
+        return getQueryFrameStore().getSlots();
     }
 
     /**
@@ -845,8 +874,8 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return null;
     }
 
-    public synchronized Collection getSubclasses(Cls cls) {
-        return getHeadFrameStore().getSubclasses(cls);
+    public Collection getSubclasses(Cls cls) {
+        return getQueryFrameStore().getSubclasses(cls);
     }
 
     public synchronized Collection getUnreachableSimpleInstances(Collection rootInstances) {
@@ -1128,12 +1157,12 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return getOwnFacetValues(frame, slot, facet);
     }
 
-    public synchronized Collection getOwnFacets(Frame frame, Slot slot) {
-        return getHeadFrameStore().getOwnFacets(frame, slot);
+    public Collection getOwnFacets(Frame frame, Slot slot) {
+        return getQueryFrameStore().getOwnFacets(frame, slot);
     }
 
-    public synchronized Collection getOwnFacetValues(Frame frame, Slot slot, Facet facet) {
-        return getHeadFrameStore().getOwnFacetValues(frame, slot, facet);
+    public Collection getOwnFacetValues(Frame frame, Slot slot, Facet facet) {
+        return getQueryFrameStore().getOwnFacetValues(frame, slot, facet);
     }
 
     public synchronized Object getOwnSlotValue(Frame frame, Slot slot) {
@@ -1257,8 +1286,8 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return getDirectInstances(cls).size();
     }
 
-    public synchronized Collection<Instance> getDirectInstances(Cls cls) {
-        return getHeadFrameStore().getDirectInstances(cls);
+    public Collection<Instance> getDirectInstances(Cls cls) {
+        return getQueryFrameStore().getDirectInstances(cls);
     }
 
     public synchronized int getDirectSubclassCount(Cls cls) {
@@ -1266,36 +1295,36 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return getHeadFrameStore().getDirectOwnSlotValuesCount(cls, _systemFrames.getDirectSubclassesSlot());
     }
 
-    public synchronized Collection getDirectSubclasses(Cls cls) {
-        return getHeadFrameStore().getDirectSubclasses(cls);
+    public Collection getDirectSubclasses(Cls cls) {
+        return getQueryFrameStore().getDirectSubclasses(cls);
     }
 
     public synchronized int getDirectSuperclassCount(Cls cls) {
         return getDirectSuperclasses(cls).size();
     }
 
-    public synchronized List getDirectTemplateFacetValues(Cls cls, Slot slot, Facet facet) {
-        return getHeadFrameStore().getDirectTemplateFacetValues(cls, slot, facet);
+    public List getDirectTemplateFacetValues(Cls cls, Slot slot, Facet facet) {
+        return getQueryFrameStore().getDirectTemplateFacetValues(cls, slot, facet);
     }
 
-    public synchronized Collection getDirectTemplateSlots(Cls cls) {
-        return getHeadFrameStore().getDirectTemplateSlots(cls);
+    public Collection getDirectTemplateSlots(Cls cls) {
+        return getQueryFrameStore().getDirectTemplateSlots(cls);
     }
 
-    public synchronized List getDirectTemplateSlotValues(Cls cls, Slot slot) {
-        return getHeadFrameStore().getDirectTemplateSlotValues(cls, slot);
+    public List getDirectTemplateSlotValues(Cls cls, Slot slot) {
+        return getQueryFrameStore().getDirectTemplateSlotValues(cls, slot);
     }
 
     public synchronized int getInstanceCount(Cls cls) {
         return getInstances(cls).size();
     }
 
-    public synchronized Collection getSuperclasses(Cls cls) {
-        return getHeadFrameStore().getSuperclasses(cls);
+    public Collection getSuperclasses(Cls cls) {
+        return getQueryFrameStore().getSuperclasses(cls);
     }
 
-    public synchronized Collection getTemplateFacets(Cls cls, Slot slot) {
-        return getHeadFrameStore().getTemplateFacets(cls, slot);
+    public Collection getTemplateFacets(Cls cls, Slot slot) {
+        return getQueryFrameStore().getTemplateFacets(cls, slot);
     }
 
     public synchronized Object getTemplateFacetValue(Cls cls, Slot slot, Facet facet) {
@@ -1303,8 +1332,8 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return CollectionUtilities.getFirstItem(values);
     }
 
-    public synchronized Collection getTemplateFacetValues(Cls cls, Slot slot, Facet facet) {
-        return getHeadFrameStore().getTemplateFacetValues(cls, slot, facet);
+    public Collection getTemplateFacetValues(Cls cls, Slot slot, Facet facet) {
+        return getQueryFrameStore().getTemplateFacetValues(cls, slot, facet);
     }
 
     public synchronized Collection getTemplateSlotAllowedClses(Cls cls, Slot slot) {
@@ -1366,8 +1395,8 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return CollectionUtilities.getFirstItem(values);
     }
 
-    public synchronized Collection getTemplateSlotValues(Cls cls, Slot slot) {
-        return getHeadFrameStore().getTemplateSlotValues(cls, slot);
+    public Collection getTemplateSlotValues(Cls cls, Slot slot) {
+        return getQueryFrameStore().getTemplateSlotValues(cls, slot);
     }
 
     public synchronized ValueType getTemplateSlotValueType(Cls cls, Slot slot) {
@@ -1384,12 +1413,12 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return getDirectlyOverriddenTemplateSlots(cls).contains(slot);
     }
 
-    public synchronized Collection getDirectlyOverriddenTemplateSlots(Cls cls) {
-        return getHeadFrameStore().getDirectlyOverriddenTemplateSlots(cls);
+    public Collection getDirectlyOverriddenTemplateSlots(Cls cls) {
+        return getQueryFrameStore().getDirectlyOverriddenTemplateSlots(cls);
     }
 
-    public synchronized Collection getDirectlyOverriddenTemplateFacets(Cls cls, Slot slot) {
-        return getHeadFrameStore().getDirectlyOverriddenTemplateFacets(cls, slot);
+    public Collection getDirectlyOverriddenTemplateFacets(Cls cls, Slot slot) {
+        return getQueryFrameStore().getDirectlyOverriddenTemplateFacets(cls, slot);
     }
 
     public synchronized boolean hasDirectSuperslot(Slot slot, Slot superslot) {
@@ -1422,16 +1451,16 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return getOverriddenTemplateSlots(cls).contains(slot);
     }
 
-    public synchronized Collection getOverriddenTemplateSlots(Cls cls) {
-        return getHeadFrameStore().getOverriddenTemplateSlots(cls);
+    public Collection getOverriddenTemplateSlots(Cls cls) {
+        return getQueryFrameStore().getOverriddenTemplateSlots(cls);
     }
 
     public synchronized boolean hasOverriddenTemplateFacet(Cls cls, Slot slot, Facet facet) {
         return getOverriddenTemplateFacets(cls, slot).contains(facet);
     }
 
-    public synchronized Collection getOverriddenTemplateFacets(Cls cls, Slot slot) {
-        return getHeadFrameStore().getOverriddenTemplateFacets(cls, slot);
+    public Collection getOverriddenTemplateFacets(Cls cls, Slot slot) {
+        return getQueryFrameStore().getOverriddenTemplateFacets(cls, slot);
     }
 
     /** @deprecated renamed to #removeDirectTemplateFacetOverrides */
@@ -1681,8 +1710,8 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return o.toString();
     }
 
-    public synchronized Collection getDirectTypes(Instance instance) {
-        return getHeadFrameStore().getDirectTypes(instance);
+    public Collection getDirectTypes(Instance instance) {
+        return getQueryFrameStore().getDirectTypes(instance);
     }
 
     public synchronized boolean hasDirectType(Instance instance, Cls cls) {
@@ -1693,8 +1722,8 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return getTypes(instance).contains(cls);
     }
 
-    public synchronized Collection getTypes(Instance instance) {
-        return getHeadFrameStore().getTypes(instance);
+    public Collection getTypes(Instance instance) {
+        return getQueryFrameStore().getTypes(instance);
     }
 
     /**
@@ -1788,12 +1817,12 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return getDirectSubslots(slot).size();
     }
 
-    public synchronized Collection getDirectSubslots(Slot slot) {
-        return getHeadFrameStore().getDirectSubslots(slot);
+    public Collection getDirectSubslots(Slot slot) {
+        return getQueryFrameStore().getDirectSubslots(slot);
     }
 
-    public synchronized Collection getDirectSuperslots(Slot slot) {
-        return getHeadFrameStore().getDirectSuperslots(slot);
+    public Collection getDirectSuperslots(Slot slot) {
+        return getQueryFrameStore().getDirectSuperslots(slot);
     }
 
     public synchronized int getDirectSuperslotCount(Slot slot) {
@@ -1826,20 +1855,20 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         return (Number) getOwnSlotValue(slot, _systemFrames.getMinimumValueSlot());
     }
 
-    public synchronized Collection getSubslots(Slot slot) {
-        return getHeadFrameStore().getSubslots(slot);
+    public Collection getSubslots(Slot slot) {
+        return getQueryFrameStore().getSubslots(slot);
     }
 
-    public synchronized Collection getSuperslots(Slot slot) {
-        return getHeadFrameStore().getSuperslots(slot);
+    public Collection getSuperslots(Slot slot) {
+        return getQueryFrameStore().getSuperslots(slot);
     }
 
-    public synchronized Collection getDirectDomain(Slot slot) {
-        return getHeadFrameStore().getDirectDomain(slot);
+    public Collection getDirectDomain(Slot slot) {
+        return getQueryFrameStore().getDirectDomain(slot);
     }
 
-    public synchronized Collection getDomain(Slot slot) {
-        return getHeadFrameStore().getDomain(slot);
+    public Collection getDomain(Slot slot) {
+        return getQueryFrameStore().getDomain(slot);
     }
 
     public synchronized Collection getValues(Slot slot) {
@@ -2317,8 +2346,8 @@ public class DefaultKnowledgeBase implements KnowledgeBase {
         getProject().setDirectBrowserSlotPattern(cls, pattern);
     }
 
-    public synchronized Set getDirectOwnSlotValuesClosure(Frame frame, Slot slot) {
-        return getHeadFrameStore().getDirectOwnSlotValuesClosure(frame, slot);
+    public Set getDirectOwnSlotValuesClosure(Frame frame, Slot slot) {
+        return getQueryFrameStore().getDirectOwnSlotValuesClosure(frame, slot);
     }
 
     /**
@@ -1,19 +1,23 @@
 package edu.stanford.smi.protege.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.lang.ref.WeakReference;
-import java.util.WeakHashMap;
 
 
 /**
- 
+ * The identity of a frame.  Names are interned in a FrameIDDictionary so that two FrameIDs
+ * are equal exactly when they have the same index.  The index is dense and only valid in
+ * this vm (it is assigned again when a FrameID is deserialized) so frame stores can use it
+ * as a key into int indexed tables.
  */
 public class FrameID implements Serializable, Localizable {
     private static final long serialVersionUID = -3804918126573053937L;
     private String name;
     private int hashCode;
-    
-    private static WeakHashMap<String, WeakReference<String>> identityMap = new WeakHashMap<String, WeakReference<String>>();
+    private transient int index = -1;
+
+    private static final FrameIDDictionary dictionary = new FrameIDDictionary();
 
     public FrameID(String name) {
         this.name = name;
@@ -36,7 +40,18 @@ public class FrameID implements Serializable, Localizable {
             return false;
         }
         FrameID other = (FrameID) o;
-        return name == other.name;
+        return index == other.index;
+    }
+
+    /**
+     * @return the index of the name in the FrameIDDictionary or -1 if the name is null.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public static FrameIDDictionary getDictionary() {
+        return dictionary;
     }
 
     @Override
@@ -57,15 +72,15 @@ public class FrameID implements Serializable, Localizable {
     
 
     private void intern() {
-        synchronized (identityMap) {
-            WeakReference<String> genericReference = identityMap.get(name);
-            String genericName = null;
-            if (genericReference != null && (genericName = genericReference.get()) != null) {
-                name = genericName;
-            }
-            else {
-                identityMap.put(name, new WeakReference<String>(name));
-            }
+        name = dictionary.intern(name);
+        index = dictionary.getIndex(name);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        index = -1;
+        if (name != null) {
+            intern();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+package edu.stanford.smi.protege.model;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * The string to int dictionary behind the FrameIDs.  Each distinct frame name is stored
+ * once and is given a dense int index.  Indexes are handed out from 0 upwards and are
+ * recycled once the name is no longer referenced (a FrameID holds on to its name so an
+ * index can not be recycled while a FrameID with that index is reachable).  This lets
+ * frame stores key their tables by an int (e.g. use it as an array index) instead of
+ * hashing and comparing names.
+ * <p>
+ * All of the methods are thread safe.
+ */
+public class FrameIDDictionary {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final WeakHashMap<String, NameReference> nameToReference = new WeakHashMap<String, NameReference>();
+    private final ReferenceQueue<String> releasedNames = new ReferenceQueue<String>();
+    private NameReference[] references = new NameReference[INITIAL_CAPACITY];
+    private int[] freeIndexes = new int[16];
+    private int freeCount = 0;
+    private int nextIndex = 0;
+
+    private static class NameReference extends WeakReference<String> {
+        final int index;
+
+        NameReference(String name, int index, ReferenceQueue<String> queue) {
+            super(name, queue);
+            this.index = index;
+        }
+    }
+
+    /**
+     * Adds a name to the dictionary if it is not already there.  The caller has to hold on
+     * to the returned instance for as long as it uses the index of the name.
+     *
+     * @return the canonical instance of the name.
+     */
+    public synchronized String intern(String name) {
+        NameReference reference = nameToReference.get(name);
+        String canonicalName = reference == null ? null : reference.get();
+        if (canonicalName != null) {
+            return canonicalName;
+        }
+        releaseNames();
+        int index = allocateIndex();
+        reference = new NameReference(name, index, releasedNames);
+        references[index] = reference;
+        nameToReference.put(name, reference);
+        return name;
+    }
+
+    /**
+     * @return the index of the name or -1 if it is not in the dictionary.
+     */
+    public synchronized int getIndex(String name) {
+        NameReference reference = name == null ? null : nameToReference.get(name);
+        return (reference == null || reference.get() == null) ? -1 : reference.index;
+    }
+
+    /**
+     * @return the canonical instance of the name with this index or null if there is none.
+     */
+    public synchronized String getName(int index) {
+        NameReference reference = (index < 0 || index >= nextIndex) ? null : references[index];
+        return reference == null ? null : reference.get();
+    }
+
+    /**
+     * @return one more than the largest index that is in use.  This is the array size
+     * needed to hold an entry for every index.
+     */
+    public synchronized int getIndexLimit() {
+        return nextIndex;
+    }
+
+    public synchronized int size() {
+        releaseNames();
+        return nextIndex - freeCount;
+    }
+
+    private int allocateIndex() {
+        if (freeCount > 0) {
+            return freeIndexes[--freeCount];
+        }
+        if (nextIndex == references.length) {
+            NameReference[] newReferences = new NameReference[references.length * 2];
+            System.arraycopy(references, 0, newReferences, 0, references.length);
+            references = newReferences;
+        }
+        return nextIndex++;
+    }
+
+    private void releaseNames() {
+        Reference<? extends String> released;
+        while ((released = releasedNames.poll()) != null) {
+            int index = ((NameReference) released).index;
+            if (references[index] == released) {
+                references[index] = null;
+                if (freeCount == freeIndexes.length) {
+                    int[] newFreeIndexes = new int[freeCount * 2];
+                    System.arraycopy(freeIndexes, 0, newFreeIndexes, 0, freeCount);
+                    freeIndexes = newFreeIndexes;
+                }
+                freeIndexes[freeCount++] = index;
+            }
+        }
+    }
+
+    public String toString() {
+        return "FrameIDDictionary(" + size() + " names)";
+    }
+}
@@ -41,6 +41,9 @@ import edu.stanford.smi.protege.event.ProjectEventDispatcher;
 import edu.stanford.smi.protege.event.ProjectListener;
 import edu.stanford.smi.protege.event.WidgetAdapter;
 import edu.stanford.smi.protege.event.WidgetEvent;
+import edu.stanford.smi.protege.model.framestore.BulkLoadable;
+import edu.stanford.smi.protege.model.framestore.CompactFrameDb;
+import edu.stanford.smi.protege.model.framestore.InMemoryFrameDb;
 import edu.stanford.smi.protege.model.framestore.MergingNarrowFrameStore;
 import edu.stanford.smi.protege.model.framestore.NarrowFrameStore;
 import edu.stanford.smi.protege.plugin.PluginUtilities;
@@ -1162,12 +1165,23 @@ public class Project {
         KnowledgeBaseFactory factory = (KnowledgeBaseFactory) SystemUtilities.newInstance(factoryName);
         PropertyList sources = getSources(projectInstance);
         // TODO remove this fragment of code and include it in the
+        BulkLoadable bulkLoadable = null;
         if (factory instanceof KnowledgeBaseFactory2) {
-            NarrowFrameStore nfs = ((KnowledgeBaseFactory2)factory).createNarrowFrameStore(name);
+            NarrowFrameStore nfs = createNarrowFrameStore((KnowledgeBaseFactory2) factory, name, sources);
             MergingNarrowFrameStore mergingFrameStore = getMergingFrameStore();
             mergingFrameStore.addActiveFrameStore(nfs, uris);
+            if (nfs instanceof BulkLoadable) {
+                bulkLoadable = (BulkLoadable) nfs;
+                bulkLoadable.beginBulkLoad();
+            }
+        }
+        try {
+            factory.includeKnowledgeBase(_domainKB, sources, errors);
+        } finally {
+            if (bulkLoadable != null) {
+                bulkLoadable.endBulkLoad();
+            }
         }
-        factory.includeKnowledgeBase(_domainKB, sources, errors);
     }
 
     public void includeProject(String path, Collection errors) {
@@ -1335,19 +1349,44 @@ public class Project {
             boolean enabled = _domainKB.setGenerateEventsEnabled(false);
 
             // TODO - remove this fragment and include it in the factory
+            BulkLoadable bulkLoadable = null;
             if (factory instanceof KnowledgeBaseFactory2) {
                 URI uri = getProjectURI();
                 String name = (uri == null) ? "<new>" : uri.toString();
-                NarrowFrameStore nfs = ((KnowledgeBaseFactory2)factory).createNarrowFrameStore(name);
+                NarrowFrameStore nfs = createNarrowFrameStore((KnowledgeBaseFactory2) factory, name, getSources());
                 MergingNarrowFrameStore mergingFrameStore = getMergingFrameStore();
                 mergingFrameStore.addActiveFrameStore(nfs, uris);
+                if (nfs instanceof BulkLoadable) {
+                    bulkLoadable = (BulkLoadable) nfs;
+                    bulkLoadable.beginBulkLoad();
+                }
             }
             // TODO - remove this fragment of code by merging the new interface with the old
-            factory.loadKnowledgeBase(_domainKB, getSources(), errors);
+            try {
+                factory.loadKnowledgeBase(_domainKB, getSources(), errors);
+            } finally {
+                if (bulkLoadable != null) {
+                    bulkLoadable.endBulkLoad();
+                }
+            }
             _domainKB.setGenerateEventsEnabled(enabled);
         }
     }
 
+    /*
+     * The in memory narrow frame store can be replaced by the compact one on a per project basis.
+     */
+    private static NarrowFrameStore createNarrowFrameStore(KnowledgeBaseFactory2 factory, String name, PropertyList sources) {
+        NarrowFrameStore nfs = factory.createNarrowFrameStore(name);
+        if (nfs instanceof InMemoryFrameDb) {
+            Boolean useCompactStore = sources.getBoolean(CompactFrameDb.SOURCES_PROPERTY);
+            if (useCompactStore != null && useCompactStore.booleanValue()) {
+                nfs = new CompactFrameDb(name);
+            }
+        }
+        return nfs;
+    }
+
     private void loadHiddenFrameFlags(Instance projectInstance) {
         Iterator i = getProjectSlotValues(projectInstance, SLOT_HIDDEN_FRAMES).iterator();
         while (i.hasNext()) {
@@ -0,0 +1,20 @@
+package edu.stanford.smi.protege.model.framestore;
+
+/**
+ * Implemented by narrow frame stores that can load a large number of values faster when
+ * they know that a load is in progress.  Frame stores that wrap another narrow frame store
+ * pass the calls on if the delegate is also BulkLoadable.
+ */
+public interface BulkLoadable {
+
+    /**
+     * Tells the frame store that a large number of values is about to be added, e.g. while a
+     * project is loaded.  The frame store may put off work such as maintaining its indexes
+     * until endBulkLoad() but all of the values must be visible to queries in between.
+     * Calls may be nested and every call must be matched by a call to endBulkLoad().  The
+     * caller must have exclusive access to the frame store until then.
+     */
+    void beginBulkLoad();
+
+    void endBulkLoad();
+}
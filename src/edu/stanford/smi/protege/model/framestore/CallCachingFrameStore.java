@@ -1,26 +1,79 @@
 package edu.stanford.smi.protege.model.framestore;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 import edu.stanford.smi.protege.exception.TransactionException;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.Model;
+import edu.stanford.smi.protege.model.Slot;
 import edu.stanford.smi.protege.model.query.Query;
 import edu.stanford.smi.protege.model.query.QueryCallback;
-import edu.stanford.smi.protege.util.CacheMap;
+import edu.stanford.smi.protege.util.ApplicationProperties;
 import edu.stanford.smi.protege.util.transaction.TransactionIsolationLevel;
 import edu.stanford.smi.protege.util.transaction.TransactionMonitor;
 
+/**
+ * Caches the results of queries.  The cache is bounded by the number of entries
+ * (call.cache.max.size) and optionally by the total size of the cached results
+ * (call.cache.max.weight) and evicts the least recently used entries.
+ * <p>
+ * The results of the direct queries listed in LOCAL_QUERIES only depend on the records
+ * of their first argument.  A modification listed in LOCAL_MODIFICATIONS only changes the
+ * records of its first argument (of its first two arguments for the LINKING_MODIFICATIONS
+ * and of the types and superclasses for the create methods) so it only drops the cached
+ * direct queries for those frames and all of the other cached queries.  Any other
+ * modification clears the cache.
+ */
 public class CallCachingFrameStore extends AbstractFrameStoreInvocationHandler {
+    public static final String MAX_SIZE_PROPERTY = "call.cache.max.size";
+    public static final String MAX_WEIGHT_PROPERTY = "call.cache.max.weight";
     private static final int MAX_SIZE = 100 * 1000;
-    private CacheMap _cache = new CacheMap(MAX_SIZE);
-    private MethodCall _lookupMethodCall = new MethodCall();
+
+    private static final Set<String> LOCAL_QUERIES = new HashSet<String>(Arrays.asList(new String[] {
+        "getDirectOwnSlotValues", "getDirectOwnSlotValuesCount", "getFrameName",
+        "getDirectSuperclasses", "getDirectSubclasses", "getDirectSuperslots", "getDirectSubslots",
+        "getDirectTypes", "getDirectInstances", "getDirectTemplateSlots", "getDirectDomain",
+        "getDirectTemplateSlotValues", "getDirectTemplateFacetValues"
+    }));
+
+    /*
+     * setDirectOwnSlotValues is only local if the slot has no inverse.  Creating a frame
+     * is only local if defaults are not loaded because a default value for a slot with an
+     * inverse changes the value frame.
+     */
+    private static final Set<String> LOCAL_MODIFICATIONS = new HashSet<String>(Arrays.asList(new String[] {
+        "setDirectOwnSlotValues", "moveDirectOwnSlotValue",
+        "addDirectTemplateSlot", "removeDirectTemplateSlot", "moveDirectTemplateSlot",
+        "setDirectTemplateSlotValues", "setDirectTemplateFacetValues", "removeDirectTemplateFacetOverrides",
+        "addDirectSuperclass", "removeDirectSuperclass", "moveDirectSubclass",
+        "addDirectSuperslot", "removeDirectSuperslot", "moveDirectSubslot",
+        "addDirectType", "removeDirectType", "moveDirectType",
+        "createCls", "createSlot", "createFacet", "createSimpleInstance"
+    }));
+
+    private static final Set<String> LINKING_MODIFICATIONS = new HashSet<String>(Arrays.asList(new String[] {
+        "addDirectTemplateSlot", "removeDirectTemplateSlot",
+        "addDirectSuperclass", "removeDirectSuperclass",
+        "addDirectSuperslot", "removeDirectSuperslot",
+        "addDirectType", "removeDirectType"
+    }));
+
+    private final MethodCallCache _cache = new MethodCallCache(
+            ApplicationProperties.getIntegerProperty(MAX_SIZE_PROPERTY, MAX_SIZE),
+            ApplicationProperties.getIntegerProperty(MAX_WEIGHT_PROPERTY, 0));
     private TransactionMonitor transactionMonitor;
+    private Slot inverseSlotSlot;
 
     protected Object handleInvoke(Method method, Object[] args) {
         Object result;
         /*
-         * I think that the theory is that this first check (for events) will make the 
-         * call caching work with the client-server but I don't think it is sufficient.  
+         * I think that the theory is that this first check (for events) will make the
+         * call caching work with the client-server but I don't think it is sufficient.
          * For now we are disabling the call caching on the client.
          */
         if (isGetEvents(method)) {
@@ -32,12 +85,12 @@ public class CallCachingFrameStore extends AbstractFrameStoreInvocationHandler {
         } else if (isQuery(method)) {
             result = query(method, args);
         } else {
-            _cache.clear();
+            invalidate(method, args);
             result = invoke(method, args);
         }
         return result;
     }
-    
+
     public void executeQuery(Query q, QueryCallback qc) {
       getDelegate().executeQuery(q, qc);
     }
@@ -46,9 +99,6 @@ public class CallCachingFrameStore extends AbstractFrameStoreInvocationHandler {
         return m.getName().equals("getEvents");
     }
 
-    private int hit = 0;
-    private int miss = 0;
-
     private Object query(Method method, Object[] args) {
         /*
          * If the transaction isolation level is serializable then we must go to the database
@@ -57,40 +107,122 @@ public class CallCachingFrameStore extends AbstractFrameStoreInvocationHandler {
         boolean mustRead = false;
         try {
           mustRead = transactionMonitor != null &&
-                     transactionMonitor.inTransaction() && 
+                     transactionMonitor.inTransaction() &&
                      transactionMonitor.getTransationIsolationLevel() == TransactionIsolationLevel.SERIALIZABLE;
         } catch (TransactionException te) {
           mustRead = true;
         }
-        _lookupMethodCall.set(method, args);
-        Object o = _cache.get(_lookupMethodCall);
-        if (o == null || mustRead) {
-            ++miss;
+        Object o = mustRead ? null : _cache.get(method, args);
+        if (o == null) {
             o = invoke(method, args);
             /*
              * Don't update the cache during a transaction.  Different clients see
              * different values.
              */
             if (transactionMonitor == null || !transactionMonitor.existsTransaction()) {
-              _cache.put(new MethodCall(method, args), o);
+              Frame[] frames = null;
+              if (LOCAL_QUERIES.contains(method.getName()) && args[0] instanceof Frame) {
+                  frames = new Frame[] { (Frame) args[0] };
+              }
+              _cache.put(new MethodCall(method, args), o, frames);
             }
-        } else {
-            ++hit;
         }
         return o;
     }
 
+    private void invalidate(Method method, Object[] args) {
+        if (isLocalModification(method, args)) {
+            _cache.invalidate(getModifiedFrames(method, args));
+        } else {
+            _cache.clear();
+        }
+    }
+
+    private boolean isLocalModification(Method method, Object[] args) {
+        String name = method.getName();
+        if (!LOCAL_MODIFICATIONS.contains(name)) {
+            return false;
+        }
+        if (name.startsWith("create")) {
+            return Boolean.FALSE.equals(args[args.length - 1]);
+        }
+        if (name.equals("setDirectOwnSlotValues")) {
+            return !hasInverse((Slot) args[1]);
+        }
+        return true;
+    }
+
+    private boolean hasInverse(Slot slot) {
+        if (inverseSlotSlot == null) {
+            inverseSlotSlot = (Slot) getDelegate().getFrame(Model.SlotID.INVERSE);
+            if (inverseSlotSlot == null) {
+                return true;
+            }
+        }
+        return slot == null || getDelegate().getDirectOwnSlotValuesCount(slot, inverseSlotSlot) != 0;
+    }
+
+    private static Collection<Frame> getModifiedFrames(Method method, Object[] args) {
+        Collection<Frame> frames = new ArrayList<Frame>();
+        String name = method.getName();
+        if (name.startsWith("create")) {
+            for (Object arg : args) {
+                if (arg instanceof Collection) {
+                    addFrames(frames, (Collection) arg);
+                }
+            }
+        } else {
+            addFrame(frames, args[0]);
+            if (LINKING_MODIFICATIONS.contains(name)) {
+                addFrame(frames, args[1]);
+            }
+        }
+        return frames;
+    }
+
+    private static void addFrames(Collection<Frame> frames, Collection values) {
+        for (Object o : values) {
+            addFrame(frames, o);
+        }
+    }
+
+    private static void addFrame(Collection<Frame> frames, Object o) {
+        if (o instanceof Frame) {
+            frames.add((Frame) o);
+        }
+    }
+
     private void clearCache() {
         _cache.clear();
     }
 
+    public long getHitCount() {
+        return _cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return _cache.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return _cache.getEvictionCount();
+    }
+
+    public long getInvalidationCount() {
+        return _cache.getInvalidationCount();
+    }
+
+    public int getCacheSize() {
+        return _cache.size();
+    }
+
     public void handleClose() {
         _cache.clear();
-        _cache = null;
     }
 
     protected void handleReinitialize() {
         _cache.clear();
+        inverseSlotSlot = null;
     }
 
     protected void setDelegate(FrameStore delegate) {
@@ -98,5 +230,6 @@ public class CallCachingFrameStore extends AbstractFrameStoreInvocationHandler {
       if (delegate != null) {
         transactionMonitor = delegate.getTransactionStatusMonitor();
       }
+      inverseSlotSlot = null;
     }
 }
@@ -1,8 +1,11 @@
 package edu.stanford.smi.protege.model.framestore;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -28,15 +31,22 @@ import edu.stanford.smi.protege.util.transaction.TransactionMonitor;
 /**
  * @author Ray Fergerson
  *
- * Description of this class
+ * Caches the closures of slot values (e.g. the superclass and subclass closures).
+ * <p>
+ * The cached closures are maintained incrementally.  When values are added to a frame the
+ * cached closures that contain the frame (or belong to it) are replaced by copies that
+ * include the new values and their closures.  When values are removed only those same
+ * closures are dropped; they are recomputed the next time they are asked for.  Closures
+ * are not maintained incrementally inside a transaction because other sessions must not
+ * see the uncommitted values, so the affected closures are dropped instead.
  */
-public class ClosureCachingBasicFrameStore implements NarrowFrameStore {
+public class ClosureCachingBasicFrameStore implements NarrowFrameStore, BulkLoadable {
     private static Logger log = Log.getLogger(ClosureCachingBasicFrameStore.class);
 
     private NarrowFrameStore _delegate;
 
-    private final CacheMap<Sft, Map<Frame,Set>> _sftToFrameToClosureMap
-      = new CacheMap<Sft, Map<Frame, Set>>();
+    private final CacheMap<Sft, ClosureTable> _sftToFrameToClosureMap
+      = new CacheMap<Sft, ClosureTable>();
 
     public ClosureCachingBasicFrameStore(NarrowFrameStore delegate) {
     	if (log.isLoggable(Level.FINEST)) {
@@ -71,18 +81,29 @@ public class ClosureCachingBasicFrameStore implements NarrowFrameStore {
     }
 
     public void setValues(Frame frame, Slot slot, Facet facet, boolean isTemplate, Collection values) {
+        if (!isCached(slot, facet, isTemplate)) {
+            _delegate.setValues(frame, slot, facet, isTemplate, values);
+            return;
+        }
+        List oldValues = _delegate.getValues(frame, slot, facet, isTemplate);
         _delegate.setValues(frame, slot, facet, isTemplate, values);
-        updateClosureCache(slot, facet, isTemplate);
+        if (values.containsAll(oldValues)) {
+            Collection newValues = new ArrayList(values);
+            newValues.removeAll(oldValues);
+            updateClosureCacheForAddedValues(frame, slot, facet, isTemplate, newValues);
+        } else {
+            updateClosureCacheForRemovedValues(frame, slot, facet, isTemplate);
+        }
     }
 
     public void addValues(Frame frame, Slot slot, Facet facet, boolean isTemplate, Collection values) {
         _delegate.addValues(frame, slot, facet, isTemplate, values);
-        updateClosureCache(slot, facet, isTemplate);
+        updateClosureCacheForAddedValues(frame, slot, facet, isTemplate, values);
     }
 
     public void removeValue(Frame frame, Slot slot, Facet facet, boolean isTemplate, Object value) {
         _delegate.removeValue(frame, slot, facet, isTemplate, value);
-        updateClosureCache(slot, facet, isTemplate);
+        updateClosureCacheForRemovedValues(frame, slot, facet, isTemplate);
     }
 
     public void moveValue(Frame frame, Slot slot, Facet facet, boolean isTemplate, int from, int to) {
@@ -150,7 +171,7 @@ public class ClosureCachingBasicFrameStore implements NarrowFrameStore {
     public Set getClosure(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
         Set closure = lookup(frame, slot, facet, isTemplate);
         if (closure == null) {
-            closure = ClosureUtils.calculateClosure(this, frame, slot, facet, isTemplate);
+            closure = _delegate.getClosure(frame, slot, facet, isTemplate);
             TransactionMonitor transactionMonitor = getTransactionStatusMonitor();
             if (transactionMonitor == null || !transactionMonitor.existsTransaction()) {
               insert(frame, slot, facet, isTemplate, closure);
@@ -164,53 +185,104 @@ public class ClosureCachingBasicFrameStore implements NarrowFrameStore {
         return closure;
     }
 
-    private Map<Frame,Set> lookup(Slot slot, Facet facet, boolean isTemplate) {
+    private ClosureTable lookup(Slot slot, Facet facet, boolean isTemplate) {
         Sft lookupSft = new Sft(slot, facet, isTemplate);
         return _sftToFrameToClosureMap.get(lookupSft);
     }
 
+    /*
+     * The cache is filled in by queries so it is guarded by its own lock for the case
+     * where several readers share the knowledge base (see ReadWriteLockFrameStoreHandler).
+     */
     private Set lookup(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
         Set closure = null;
-        Map<Frame,Set> frameToClosureMap = lookup(slot, facet, isTemplate);
-        if (frameToClosureMap != null) {
-            closure = frameToClosureMap.get(frame);
+        synchronized (_sftToFrameToClosureMap) {
+            ClosureTable frameToClosureMap = lookup(slot, facet, isTemplate);
+            if (frameToClosureMap != null) {
+                closure = frameToClosureMap.get(frame);
+            }
         }
         return closure;
     }
 
     private void insert(Frame frame, Slot slot, Facet facet, boolean isTemplate, Set closure) {
-        Map<Frame, Set> frameToClosureMap = lookup(slot, facet, isTemplate);
-        if (frameToClosureMap == null) {
-            frameToClosureMap = new HashMap();
-            _sftToFrameToClosureMap.put(new Sft(slot, facet, isTemplate), frameToClosureMap);
+        synchronized (_sftToFrameToClosureMap) {
+            ClosureTable frameToClosureMap = lookup(slot, facet, isTemplate);
+            if (frameToClosureMap == null) {
+                frameToClosureMap = new ClosureTable();
+                _sftToFrameToClosureMap.put(new Sft(slot, facet, isTemplate), frameToClosureMap);
+            }
+            frameToClosureMap.put(frame, closure);
         }
-        frameToClosureMap.put(frame, closure);
     }
 
-    private void updateClosureCache(Slot slot, Facet facet, boolean isTemplate) {
-        Sft lookupSft = new Sft(slot, facet, isTemplate);
-        _sftToFrameToClosureMap.remove(lookupSft);
+    private boolean isCached(Slot slot, Facet facet, boolean isTemplate) {
+        synchronized (_sftToFrameToClosureMap) {
+            return lookup(slot, facet, isTemplate) != null;
+        }
     }
 
-    private void deleteFrameFromCache(Frame frame) {
-        removeFrameFromSft(frame);
-        Iterator<Sft> i = _sftToFrameToClosureMap.keySet().iterator();
-        while (i.hasNext()) {
-            Sft sft = i.next();
-            Map<Frame, Set> frameToClosureMap =  _sftToFrameToClosureMap.get(sft);
+    private boolean existsTransaction() {
+        TransactionMonitor transactionMonitor = getTransactionStatusMonitor();
+        return transactionMonitor != null && transactionMonitor.existsTransaction();
+    }
+
+    private void updateClosureCacheForAddedValues(Frame frame, Slot slot, Facet facet, boolean isTemplate,
+                                                  Collection values) {
+        if (existsTransaction()) {
+            updateClosureCacheForRemovedValues(frame, slot, facet, isTemplate);
+            return;
+        }
+        synchronized (_sftToFrameToClosureMap) {
+            ClosureTable frameToClosureMap = lookup(slot, facet, isTemplate);
+            if (frameToClosureMap == null || values.isEmpty()) {
+                return;
+            }
+            Collection<Frame> affectedFrames = frameToClosureMap.getAffectedFrames(frame);
+            if (affectedFrames.isEmpty()) {
+                return;
+            }
+            Set added = new LinkedHashSet();
+            for (Object value : values) {
+                if (added.add(value) && value instanceof Frame) {
+                    added.addAll(getClosure((Frame) value, slot, facet, isTemplate));
+                }
+            }
+            for (Frame affectedFrame : affectedFrames) {
+                Set closure = frameToClosureMap.get(affectedFrame);
+                if (!closure.containsAll(added)) {
+                    // callers may still hold the old closure so it is copied rather than changed
+                    closure = new LinkedHashSet(closure);
+                    closure.addAll(added);
+                    frameToClosureMap.put(affectedFrame, closure);
+                }
+            }
+        }
+    }
+
+    private void updateClosureCacheForRemovedValues(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        synchronized (_sftToFrameToClosureMap) {
+            ClosureTable frameToClosureMap = lookup(slot, facet, isTemplate);
             if (frameToClosureMap != null) {
-                frameToClosureMap.remove(frame);
-                removeFrameAsValueFromMap(frame, frameToClosureMap);
+                for (Frame affectedFrame : frameToClosureMap.getAffectedFrames(frame)) {
+                    frameToClosureMap.remove(affectedFrame);
+                }
             }
         }
     }
 
-    private static void removeFrameAsValueFromMap(Frame frame, Map frameToClosureMap) {
-        Iterator<Sft> i = frameToClosureMap.values().iterator();
-        while (i.hasNext()) {
-            Set closure = (Set) i.next();
-            if (closure.contains(frame)) {
-                i.remove();
+    private void deleteFrameFromCache(Frame frame) {
+        synchronized (_sftToFrameToClosureMap) {
+            removeFrameFromSft(frame);
+            Iterator<Sft> i = _sftToFrameToClosureMap.keySet().iterator();
+            while (i.hasNext()) {
+                Sft sft = i.next();
+                ClosureTable frameToClosureMap =  _sftToFrameToClosureMap.get(sft);
+                if (frameToClosureMap != null) {
+                    for (Frame affectedFrame : frameToClosureMap.getAffectedFrames(frame)) {
+                        frameToClosureMap.remove(affectedFrame);
+                    }
+                }
             }
         }
     }
@@ -267,7 +339,9 @@ public class ClosureCachingBasicFrameStore implements NarrowFrameStore {
 
 
     private void clearCache() {
-        _sftToFrameToClosureMap.clear();
+        synchronized (_sftToFrameToClosureMap) {
+            _sftToFrameToClosureMap.clear();
+        }
     }
 
     public void replaceFrame(Frame frame) {
@@ -295,4 +369,85 @@ public class ClosureCachingBasicFrameStore implements NarrowFrameStore {
         return _delegate.setCaching(session, doCache);
     }
 
+    public void beginBulkLoad() {
+        if (_delegate instanceof BulkLoadable) {
+            ((BulkLoadable) _delegate).beginBulkLoad();
+        }
+    }
+
+    public void endBulkLoad() {
+        if (_delegate instanceof BulkLoadable) {
+            ((BulkLoadable) _delegate).endBulkLoad();
+        }
+    }
+
+    /*
+     * The cached closures for one slot.  Each frame in a cached closure is indexed to the
+     * frames whose closures contain it so that an edit only visits the closures that it can
+     * change instead of every cached closure.
+     */
+    private static class ClosureTable {
+        private final Map<Frame, Set> closures = new HashMap<Frame, Set>();
+        private final Map<Frame, Set<Frame>> containingFrames = new HashMap<Frame, Set<Frame>>();
+
+        public Set get(Frame frame) {
+            return closures.get(frame);
+        }
+
+        public void put(Frame frame, Set closure) {
+            Set oldClosure = closures.put(frame, closure);
+            if (oldClosure != null) {
+                for (Object o : oldClosure) {
+                    if (!closure.contains(o)) {
+                        unindex(frame, o);
+                    }
+                }
+            }
+            for (Object o : closure) {
+                if (o instanceof Frame && (oldClosure == null || !oldClosure.contains(o))) {
+                    Set<Frame> frames = containingFrames.get(o);
+                    if (frames == null) {
+                        frames = new HashSet<Frame>();
+                        containingFrames.put((Frame) o, frames);
+                    }
+                    frames.add(frame);
+                }
+            }
+        }
+
+        public void remove(Frame frame) {
+            Set closure = closures.remove(frame);
+            if (closure != null) {
+                for (Object o : closure) {
+                    unindex(frame, o);
+                }
+            }
+        }
+
+        private void unindex(Frame frame, Object o) {
+            Set<Frame> frames = containingFrames.get(o);
+            if (frames != null) {
+                frames.remove(frame);
+                if (frames.isEmpty()) {
+                    containingFrames.remove(o);
+                }
+            }
+        }
+
+        /*
+         * The closures that can change when the values of frame change: the closure of frame
+         * itself and the closures that contain frame.
+         */
+        public Collection<Frame> getAffectedFrames(Frame frame) {
+            Set<Frame> affected = new LinkedHashSet<Frame>();
+            if (closures.containsKey(frame)) {
+                affected.add(frame);
+            }
+            Set<Frame> frames = containingFrames.get(frame);
+            if (frames != null) {
+                affected.addAll(frames);
+            }
+            return affected;
+        }
+    }
 }
@@ -0,0 +1,980 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.stanford.smi.protege.exception.ProtegeError;
+import edu.stanford.smi.protege.model.Cls;
+import edu.stanford.smi.protege.model.Facet;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.Model;
+import edu.stanford.smi.protege.model.Reference;
+import edu.stanford.smi.protege.model.SimpleInstance;
+import edu.stanford.smi.protege.model.Slot;
+import edu.stanford.smi.protege.model.query.Query;
+import edu.stanford.smi.protege.model.query.QueryCallback;
+import edu.stanford.smi.protege.server.RemoteSession;
+import edu.stanford.smi.protege.util.Log;
+import edu.stanford.smi.protege.util.SimpleStringMatcher;
+import edu.stanford.smi.protege.util.StringUtilities;
+import edu.stanford.smi.protege.util.SystemUtilities;
+import edu.stanford.smi.protege.util.transaction.TransactionMonitor;
+
+/**
+ * An in memory narrow frame store that holds the same information as the InMemoryFrameDb
+ * in a much smaller heap footprint.
+ * <p>
+ * Frames are interned to dense int ids.  Each (frame, slot, facet, isTemplate) combination
+ * is a record id and the record columns are kept in parallel int arrays.  The records are
+ * found through an open addressing table of record ids hashed on the int key so that a
+ * lookup never hashes a frame name.  The secondary indexes (frame, slot, facet and value to
+ * records) are int posting lists.  The frame, slot and facet postings are exact and each
+ * record remembers its position in them.  The value postings are maintained lazily: removing
+ * a value only counts the entry as stale and the list is compacted once half of it is stale,
+ * so readers check each posting against the record values.
+ * <p>
+ * This store is selected for a project by setting the {@link #SOURCES_PROPERTY} property
+ * in the project sources.
+ */
+public class CompactFrameDb implements NarrowFrameStore {
+    private static Logger log = Log.getLogger(CompactFrameDb.class);
+
+    /**
+     * Project sources property that selects this store in place of the InMemoryFrameDb.
+     */
+    public static final String SOURCES_PROPERTY = "compact_frame_store";
+
+    private static final int INITIAL_RECORD_CAPACITY = 1024;
+    private static final int NO_FACET = -1;
+    private static final Object[] NO_VALUES = new Object[0];
+    /*
+     * Records with more values than this keep their values in a hash multiset as well.
+     */
+    private static final int MAX_SCANNED_VALUES = 16;
+
+    private String frameDBName;
+
+    private IdTable<Frame> frames = new IdTable<Frame>() {
+        @Override
+        protected Object getKey(Frame frame) {
+            return frame.getFrameID();
+        }
+    };
+    private IdTable<Object> objectValues = new IdTable<Object>();
+
+    /*
+     * Record columns indexed by record id.  A record id is live iff recordValues[id] != null.
+     */
+    private int[] recordFrame = new int[INITIAL_RECORD_CAPACITY];
+    private int[] recordSlot = new int[INITIAL_RECORD_CAPACITY];
+    private int[] recordFacet = new int[INITIAL_RECORD_CAPACITY];
+    private boolean[] recordIsTemplate = new boolean[INITIAL_RECORD_CAPACITY];
+    private Object[][] recordValues = new Object[INITIAL_RECORD_CAPACITY][];
+    private int[] recordValueCount = new int[INITIAL_RECORD_CAPACITY];
+    private int[] recordFramePosition = new int[INITIAL_RECORD_CAPACITY];
+    private int[] recordSlotPosition = new int[INITIAL_RECORD_CAPACITY];
+    private int[] recordFacetPosition = new int[INITIAL_RECORD_CAPACITY];
+    private int recordLimit = 0;
+    private int recordCount = 0;
+    private int[] freeRecords = new int[16];
+    private int freeRecordCount = 0;
+
+    private int[] recordTable = new int[INITIAL_RECORD_CAPACITY * 2];
+
+    private IntPostings frameToRecords = new IntPostings();
+    private IntPostings slotToRecords = new IntPostings();
+    private IntPostings facetToRecords = new IntPostings();
+    private ValuePostings frameValueToRecords = new ValuePostings();
+    private ValuePostings objectValueToRecords = new ValuePostings();
+
+    /*
+     * The duplicate checks of small records scan the values.  The records with more than
+     * MAX_SCANNED_VALUES values count their values here so that loading or appending n
+     * values is not quadratic.
+     */
+    private Map<Integer, ValueCounts> largeRecordValues = new HashMap<Integer, ValueCounts>();
+
+    public CompactFrameDb(String name) {
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Constructing CompactFrameDb with name " + name);
+        }
+        frameDBName = name;
+    }
+
+    @Override
+    public String toString() {
+        return StringUtilities.getClassName(this) + "(" + frameDBName + ")";
+    }
+
+    private static boolean equals(Object o1, Object o2) {
+        return SystemUtilities.equals(o1, o2);
+    }
+
+    /*
+     * Frame ids
+     */
+
+    private int getFrameId(Frame frame) {
+        return frame == null ? NO_FACET : frames.getId(frame.getFrameID());
+    }
+
+    private int internFrame(Frame frame) {
+        return frame == null ? NO_FACET : frames.intern(frame);
+    }
+
+    private boolean isFrameUnused(int id) {
+        return frameToRecords.size(id) == 0 && slotToRecords.size(id) == 0
+                && facetToRecords.size(id) == 0 && frameValueToRecords.size(id) == 0;
+    }
+
+    /*
+     * Record table
+     */
+
+    private static int hash(int frame, int slot, int facet, boolean isTemplate) {
+        int h = frame;
+        h = h * 31 + slot;
+        h = h * 31 + facet;
+        h = h * 2 + (isTemplate ? 1 : 0);
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        return h ^ (h >>> 13);
+    }
+
+    private int hash(int record) {
+        return hash(recordFrame[record], recordSlot[record], recordFacet[record], recordIsTemplate[record]);
+    }
+
+    private int lookup(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        int frameId = getFrameId(frame);
+        int slotId = getFrameId(slot);
+        if (frameId < 0 || slotId < 0) {
+            return -1;
+        }
+        int facetId = NO_FACET;
+        if (facet != null) {
+            facetId = getFrameId(facet);
+            if (facetId < 0) {
+                return -1;
+            }
+        }
+        return lookup(frameId, slotId, facetId, isTemplate);
+    }
+
+    private int lookup(int frameId, int slotId, int facetId, boolean isTemplate) {
+        int mask = recordTable.length - 1;
+        for (int index = hash(frameId, slotId, facetId, isTemplate) & mask; ; index = (index + 1) & mask) {
+            int entry = recordTable[index];
+            if (entry == 0) {
+                return -1;
+            }
+            int record = entry - 1;
+            if (recordFrame[record] == frameId && recordSlot[record] == slotId
+                    && recordFacet[record] == facetId && recordIsTemplate[record] == isTemplate) {
+                return record;
+            }
+        }
+    }
+
+    private void insertIntoRecordTable(int record) {
+        if ((recordCount + 1) * 2 > recordTable.length) {
+            rehashRecordTable(recordTable.length * 2);
+        }
+        int mask = recordTable.length - 1;
+        int index = hash(record) & mask;
+        while (recordTable[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        recordTable[index] = record + 1;
+    }
+
+    private void rehashRecordTable(int newLength) {
+        int[] oldTable = recordTable;
+        recordTable = new int[newLength];
+        int mask = newLength - 1;
+        for (int entry : oldTable) {
+            if (entry != 0) {
+                int index = hash(entry - 1) & mask;
+                while (recordTable[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                recordTable[index] = entry;
+            }
+        }
+    }
+
+    private void removeFromRecordTable(int record) {
+        int mask = recordTable.length - 1;
+        int hole = hash(record) & mask;
+        while (recordTable[hole] != record + 1) {
+            hole = (hole + 1) & mask;
+        }
+        int index = hole;
+        while (true) {
+            index = (index + 1) & mask;
+            int entry = recordTable[index];
+            if (entry == 0) {
+                break;
+            }
+            int home = hash(entry - 1) & mask;
+            boolean movable = (hole <= index) ? (home <= hole || home > index) : (home <= hole && home > index);
+            if (movable) {
+                recordTable[hole] = entry;
+                hole = index;
+            }
+        }
+        recordTable[hole] = 0;
+    }
+
+    /*
+     * Creating and removing records
+     */
+
+    private int allocateRecord() {
+        if (freeRecordCount > 0) {
+            return freeRecords[--freeRecordCount];
+        }
+        if (recordLimit == recordValues.length) {
+            growRecordColumns(recordValues.length * 2);
+        }
+        return recordLimit++;
+    }
+
+    private void growRecordColumns(int capacity) {
+        recordFrame = Arrays.copyOf(recordFrame, capacity);
+        recordSlot = Arrays.copyOf(recordSlot, capacity);
+        recordFacet = Arrays.copyOf(recordFacet, capacity);
+        recordIsTemplate = Arrays.copyOf(recordIsTemplate, capacity);
+        recordValues = Arrays.copyOf(recordValues, capacity);
+        recordValueCount = Arrays.copyOf(recordValueCount, capacity);
+        recordFramePosition = Arrays.copyOf(recordFramePosition, capacity);
+        recordSlotPosition = Arrays.copyOf(recordSlotPosition, capacity);
+        recordFacetPosition = Arrays.copyOf(recordFacetPosition, capacity);
+    }
+
+    private int createRecord(Frame frame, Slot slot, Facet facet, boolean isTemplate, Object[] values, int count) {
+        return createRecord(internFrame(frame), internFrame(slot), internFrame(facet), isTemplate, values, count);
+    }
+
+    private int createRecord(int frameId, int slotId, int facetId, boolean isTemplate, Object[] values, int count) {
+        int record = allocateRecord();
+        recordFrame[record] = frameId;
+        recordSlot[record] = slotId;
+        recordFacet[record] = facetId;
+        recordIsTemplate[record] = isTemplate;
+        recordValues[record] = values;
+        recordValueCount[record] = count;
+        insertIntoRecordTable(record);
+        ++recordCount;
+        recordFramePosition[record] = frameToRecords.add(frameId, record);
+        recordSlotPosition[record] = slotToRecords.add(slotId, record);
+        if (facetId != NO_FACET) {
+            recordFacetPosition[record] = facetToRecords.add(facetId, record);
+        }
+        ValueCounts counts = count > MAX_SCANNED_VALUES ? new ValueCounts() : null;
+        for (int i = 0; i < count; ++i) {
+            boolean first = counts == null ? indexOf(values, i, values[i]) < 0 : counts.add(values[i]);
+            if (first) {
+                indexValue(record, values[i]);
+            }
+        }
+        if (counts != null) {
+            largeRecordValues.put(record, counts);
+        }
+        return record;
+    }
+
+    private void removeRecord(int record) {
+        removeFromRecordTable(record);
+        --recordCount;
+        removePosting(frameToRecords, recordFrame[record], recordFramePosition[record], recordFramePosition);
+        removePosting(slotToRecords, recordSlot[record], recordSlotPosition[record], recordSlotPosition);
+        if (recordFacet[record] != NO_FACET) {
+            removePosting(facetToRecords, recordFacet[record], recordFacetPosition[record], recordFacetPosition);
+        }
+        Object[] values = recordValues[record];
+        int count = recordValueCount[record];
+        recordValues[record] = null;
+        recordValueCount[record] = 0;
+        ValueCounts counts = largeRecordValues.remove(record);
+        if (counts != null) {
+            for (Object value : counts.values()) {
+                unindexValue(value);
+            }
+        } else {
+            for (int i = 0; i < count; ++i) {
+                if (indexOf(values, i, values[i]) < 0) {
+                    unindexValue(values[i]);
+                }
+            }
+        }
+        if (freeRecordCount == freeRecords.length) {
+            freeRecords = IdTable.grow(freeRecords);
+        }
+        freeRecords[freeRecordCount++] = record;
+    }
+
+    private static void removePosting(IntPostings postings, int key, int position, int[] positions) {
+        int moved = postings.removeAt(key, position);
+        if (moved >= 0) {
+            positions[moved] = position;
+        }
+    }
+
+    private boolean isLive(int record) {
+        return record < recordLimit && recordValues[record] != null;
+    }
+
+    private List getValueList(int record) {
+        int count = recordValueCount[record];
+        List values = new ArrayList(count);
+        Object[] array = recordValues[record];
+        for (int i = 0; i < count; ++i) {
+            values.add(array[i]);
+        }
+        return values;
+    }
+
+    /*
+     * Value arrays
+     */
+
+    private static int indexOf(Object[] values, int count, Object value) {
+        for (int i = 0; i < count; ++i) {
+            if (equals(value, values[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean recordContains(int record, Object value) {
+        return isLive(record) && containsValue(record, value);
+    }
+
+    private boolean containsValue(int record, Object value) {
+        ValueCounts counts = largeRecordValues.get(record);
+        if (counts == null) {
+            return indexOf(recordValues[record], recordValueCount[record], value) >= 0;
+        }
+        return counts.contains(value);
+    }
+
+    private static Object[] toArray(Collection values) {
+        return values.isEmpty() ? NO_VALUES : values.toArray();
+    }
+
+    private void appendValue(int record, Object value) {
+        Object[] values = recordValues[record];
+        int count = recordValueCount[record];
+        ValueCounts counts = largeRecordValues.get(record);
+        boolean alreadyPresent = counts == null ? indexOf(values, count, value) >= 0 : !counts.add(value);
+        if (count == values.length) {
+            values = Arrays.copyOf(values, Math.max(4, count + (count >> 1)));
+            recordValues[record] = values;
+        }
+        values[count] = value;
+        recordValueCount[record] = count + 1;
+        if (counts == null && count + 1 > MAX_SCANNED_VALUES) {
+            largeRecordValues.put(record, ValueCounts.of(values, count + 1));
+        }
+        if (!alreadyPresent) {
+            indexValue(record, value);
+        }
+    }
+
+    private void removeValueAt(int record, int index) {
+        Object[] values = recordValues[record];
+        int count = recordValueCount[record];
+        Object value = values[index];
+        System.arraycopy(values, index + 1, values, index, count - index - 1);
+        values[--count] = null;
+        recordValueCount[record] = count;
+        ValueCounts counts = largeRecordValues.get(record);
+        boolean lastOccurrence = counts == null ? indexOf(values, count, value) < 0 : counts.remove(value);
+        if (counts != null && count <= MAX_SCANNED_VALUES / 2) {
+            largeRecordValues.remove(record);
+        }
+        if (lastOccurrence) {
+            unindexValue(value);
+        }
+    }
+
+    /*
+     * Value postings
+     */
+
+    private void indexValue(int record, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Frame) {
+            frameValueToRecords.add(internFrame((Frame) value), record);
+        } else {
+            objectValueToRecords.add(objectValues.intern(value), record);
+        }
+    }
+
+    private void unindexValue(Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Frame) {
+            int id = getFrameId((Frame) value);
+            if (id >= 0) {
+                frameValueToRecords.markStale(id, value);
+            }
+        } else {
+            int id = objectValues.getId(value);
+            if (id >= 0) {
+                objectValueToRecords.markStale(id, value);
+                if (objectValueToRecords.size(id) == 0) {
+                    objectValues.release(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the distinct live records that contain the value.
+     */
+    private int[] getRecordsWithValue(Object value) {
+        int[] records;
+        if (value instanceof Frame) {
+            records = frameValueToRecords.toArray(getFrameId((Frame) value));
+        } else {
+            records = objectValueToRecords.toArray(objectValues.getId(value));
+        }
+        Arrays.sort(records);
+        int count = 0;
+        for (int i = 0; i < records.length; ++i) {
+            int record = records[i];
+            if ((i == 0 || records[i - 1] != record) && recordContains(record, value)) {
+                records[count++] = record;
+            }
+        }
+        return Arrays.copyOf(records, count);
+    }
+
+    private class ValuePostings extends IntPostings {
+        private int[] stale = new int[64];
+
+        public void markStale(int key, Object value) {
+            if (key >= stale.length) {
+                stale = Arrays.copyOf(stale, Math.max(key + 1, stale.length * 2));
+            }
+            if (++stale[key] * 2 >= size(key)) {
+                compact(key, value);
+            }
+        }
+
+        /*
+         * Drops the postings that no longer hold the value along with any duplicates.
+         */
+        private void compact(int key, Object value) {
+            int[] records = toArray(key);
+            Arrays.sort(records);
+            int count = 0;
+            for (int i = 0; i < records.length; ++i) {
+                int record = records[i];
+                if ((i == 0 || records[i - 1] != record) && recordContains(record, value)) {
+                    set(key, count++, record);
+                }
+            }
+            truncate(key, count);
+            stale[key] = 0;
+        }
+
+        @Override
+        public void clear(int key) {
+            super.clear(key);
+            if (key < stale.length) {
+                stale[key] = 0;
+            }
+        }
+    }
+
+    /*
+     * Search
+     */
+
+    private boolean matches(int record, int slotId, int facetId, boolean isTemplate) {
+        return recordSlot[record] == slotId && recordFacet[record] == facetId && recordIsTemplate[record] == isTemplate;
+    }
+
+    private int getFacetId(Facet facet) {
+        return facet == null ? NO_FACET : getFrameId(facet);
+    }
+
+    private Set<Integer> getMatchingRecords(String value, int maxMatches) {
+        if (maxMatches < 1) {
+            maxMatches = Integer.MAX_VALUE;
+        }
+        SimpleStringMatcher matcher = new SimpleStringMatcher(value);
+        Set<Integer> matches = new LinkedHashSet<Integer>();
+        int limit = objectValues.getIdLimit();
+        for (int id = 0; id < limit && matches.size() < maxMatches; ++id) {
+            Object o = objectValues.get(id);
+            if (o instanceof String && matcher.isMatch((String) o)) {
+                for (int record : getRecordsWithValue(o)) {
+                    matches.add(record);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private Reference recordToReference(int record) {
+        Frame frame = frames.get(recordFrame[record]);
+        Slot slot = (Slot) frames.get(recordSlot[record]);
+        Facet facet = (Facet) frames.get(recordFacet[record]);
+        return new ReferenceImpl(frame, slot, facet, recordIsTemplate[record]);
+    }
+
+    private int getNameSlotId() {
+        return frames.getId(Model.SlotID.NAME);
+    }
+
+    private int countFrames(Class clas) {
+        int frameCount = 0;
+        int nameSlot = getNameSlotId();
+        for (int record : slotToRecords.toArray(nameSlot)) {
+            if (clas.isInstance(frames.get(recordFrame[record]))) {
+                ++frameCount;
+            }
+        }
+        return frameCount;
+    }
+
+    /**
+     * @return a rough estimate of the heap used by this store, for comparison with other
+     * narrow frame store implementations.
+     */
+    public long getEstimatedSize() {
+        long bytes = 9L * 4 * recordValues.length + 4L * recordTable.length;
+        for (int record = 0; record < recordLimit; ++record) {
+            if (recordValues[record] != null) {
+                bytes += 16L + 4L * recordValues[record].length;
+            }
+        }
+        bytes += frameToRecords.getAllocatedBytes() + slotToRecords.getAllocatedBytes()
+                + facetToRecords.getAllocatedBytes() + frameValueToRecords.getAllocatedBytes()
+                + objectValueToRecords.getAllocatedBytes();
+        return bytes;
+    }
+
+    /* ---------------------------------------------------------------
+     * Narrow Frame Store methods
+     */
+
+    public String getName() {
+        return frameDBName;
+    }
+
+    public void setName(String name) {
+        frameDBName = name;
+    }
+
+    public NarrowFrameStore getDelegate() {
+        return null;
+    }
+
+    public int getFrameCount() {
+        return slotToRecords.size(getNameSlotId());
+    }
+
+    public int getClsCount() {
+        return countFrames(Cls.class);
+    }
+
+    public int getSlotCount() {
+        return countFrames(Slot.class);
+    }
+
+    public int getFacetCount() {
+        return countFrames(Facet.class);
+    }
+
+    public int getSimpleInstanceCount() {
+        return countFrames(SimpleInstance.class);
+    }
+
+    public Set<Frame> getFrames() {
+        Set<Frame> result = new HashSet<Frame>();
+        int limit = frames.getIdLimit();
+        for (int id = 0; id < limit; ++id) {
+            if (frameToRecords.size(id) > 0) {
+                result.add(frames.get(id));
+            }
+        }
+        return result;
+    }
+
+    public Frame getFrame(FrameID id) {
+        int frameId = frames.getId(id);
+        return frameToRecords.size(frameId) > 0 ? frames.get(frameId) : null;
+    }
+
+    public List getValues(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        int record = lookup(frame, slot, facet, isTemplate);
+        if (record < 0 || recordValueCount[record] == 0) {
+            return Collections.EMPTY_LIST;
+        }
+        return getValueList(record);
+    }
+
+    public int getValuesCount(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        int record = lookup(frame, slot, facet, isTemplate);
+        return record < 0 ? 0 : recordValueCount[record];
+    }
+
+    public void addValues(Frame frame, Slot slot, Facet facet, boolean isTemplate, Collection values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        int record = lookup(frame, slot, facet, isTemplate);
+        if (record < 0) {
+            Object[] array = toArray(values);
+            createRecord(frame, slot, facet, isTemplate, array, array.length);
+        } else {
+            for (Object value : values) {
+                appendValue(record, value);
+            }
+        }
+    }
+
+    public void moveValue(Frame frame, Slot slot, Facet facet, boolean isTemplate, int from, int to) {
+        int record = lookup(frame, slot, facet, isTemplate);
+        if (record >= 0) {
+            Object[] values = recordValues[record];
+            int count = recordValueCount[record];
+            if (from < 0 || from >= count || to < 0 || to >= count) {
+                throw new IndexOutOfBoundsException("from = " + from + ", to = " + to + ", size = " + count);
+            }
+            Object value = values[from];
+            if (from < to) {
+                System.arraycopy(values, from + 1, values, from, to - from);
+            } else {
+                System.arraycopy(values, to, values, to + 1, from - to);
+            }
+            values[to] = value;
+        }
+    }
+
+    public void removeValue(Frame frame, Slot slot, Facet facet, boolean isTemplate, Object value) {
+        int record = lookup(frame, slot, facet, isTemplate);
+        if (record >= 0) {
+            int index = indexOf(recordValues[record], recordValueCount[record], value);
+            if (index >= 0) {
+                removeValueAt(record, index);
+            }
+            if (recordValueCount[record] == 0) {
+                removeRecord(record);
+            }
+        }
+    }
+
+    public void setValues(Frame frame, Slot slot, Facet facet, boolean isTemplate, Collection values) {
+        int record = lookup(frame, slot, facet, isTemplate);
+        if (record >= 0) {
+            removeRecord(record);
+        }
+        if (!values.isEmpty()) {
+            Object[] array = toArray(values);
+            createRecord(frame, slot, facet, isTemplate, array, array.length);
+        }
+    }
+
+    public Set<Frame> getFrames(Slot slot, Facet facet, boolean isTemplate, Object value) {
+        Set<Frame> result = new HashSet<Frame>();
+        int slotId = getFrameId(slot);
+        int facetId = getFacetId(facet);
+        if (slotId >= 0 && (facet == null || facetId >= 0)) {
+            for (int record : getRecordsWithValue(value)) {
+                if (matches(record, slotId, facetId, isTemplate)) {
+                    result.add(frames.get(recordFrame[record]));
+                }
+            }
+        }
+        return result;
+    }
+
+    public Set<Frame> getFramesWithAnyValue(Slot slot, Facet facet, boolean isTemplate) {
+        Set<Frame> result = new HashSet<Frame>();
+        int slotId = getFrameId(slot);
+        int facetId = getFacetId(facet);
+        if (slotId >= 0 && (facet == null || facetId >= 0)) {
+            int[] records = facet == null ? slotToRecords.toArray(slotId) : facetToRecords.toArray(facetId);
+            for (int record : records) {
+                if (matches(record, slotId, facetId, isTemplate)) {
+                    result.add(frames.get(recordFrame[record]));
+                }
+            }
+        }
+        return result;
+    }
+
+    public Set<Frame> getMatchingFrames(Slot slot, Facet facet, boolean isTemplate, String value, int maxMatches) {
+        if (maxMatches < 1) {
+            maxMatches = Integer.MAX_VALUE;
+        }
+        Set<Frame> result = new HashSet<Frame>();
+        int slotId = getFrameId(slot);
+        int facetId = getFacetId(facet);
+        if (slotId >= 0 && (facet == null || facetId >= 0)) {
+            for (int record : getMatchingRecords(value, FrameStore.UNLIMITED_MATCHES)) {
+                if (result.size() >= maxMatches) {
+                    break;
+                }
+                if (matches(record, slotId, facetId, isTemplate)) {
+                    result.add(frames.get(recordFrame[record]));
+                }
+            }
+        }
+        return result;
+    }
+
+    public Set<Reference> getReferences(Object value) {
+        Set<Reference> references = new HashSet<Reference>();
+        for (int record : getRecordsWithValue(value)) {
+            references.add(recordToReference(record));
+        }
+        return references;
+    }
+
+    public Set<Reference> getMatchingReferences(String value, int maxMatches) {
+        Set<Reference> references = new HashSet<Reference>();
+        for (int record : getMatchingRecords(value, maxMatches)) {
+            references.add(recordToReference(record));
+        }
+        return references;
+    }
+
+    public void executeQuery(Query query, final QueryCallback callback) {
+        new Thread(new Runnable() {
+            public void run() {
+                callback.handleError(new ProtegeError("Not implemented yet"));
+            }
+        }, "Vacuous CompactFrameDb callback thread").start();
+    }
+
+    public void deleteFrame(Frame frame) {
+        int id = getFrameId(frame);
+        if (id < 0) {
+            return;
+        }
+        removeRecords(frameToRecords.toArray(id));
+        removeRecords(slotToRecords.toArray(id));
+        removeRecords(facetToRecords.toArray(id));
+        for (int record : getRecordsWithValue(frame)) {
+            int index;
+            while ((index = indexOf(recordValues[record], recordValueCount[record], frame)) >= 0) {
+                removeValueAt(record, index);
+            }
+            if (recordValueCount[record] == 0) {
+                removeRecord(record);
+            }
+        }
+        frameValueToRecords.clear(id);
+        if (isFrameUnused(id)) {
+            frames.release(id);
+        }
+    }
+
+    private void removeRecords(int[] records) {
+        for (int record : records) {
+            if (isLive(record)) {
+                removeRecord(record);
+            }
+        }
+    }
+
+    public void close() {
+        frames = null;
+        objectValues = null;
+        recordFrame = null;
+        recordSlot = null;
+        recordFacet = null;
+        recordIsTemplate = null;
+        recordValues = null;
+        recordValueCount = null;
+        recordFramePosition = null;
+        recordSlotPosition = null;
+        recordFacetPosition = null;
+        recordTable = null;
+        frameToRecords = null;
+        slotToRecords = null;
+        facetToRecords = null;
+        frameValueToRecords = null;
+        objectValueToRecords = null;
+        largeRecordValues = null;
+    }
+
+    public Set getClosure(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        return ClosureUtils.calculateClosure(this, frame, slot, facet, isTemplate);
+    }
+
+    public void replaceFrame(Frame frame) {
+        int id = getFrameId(frame);
+        if (id < 0) {
+            return;
+        }
+        frames.set(id, frame);
+        for (int record : getRecordsWithValue(frame)) {
+            Object[] values = recordValues[record];
+            int count = recordValueCount[record];
+            for (int i = 0; i < count; ++i) {
+                if (frame.equals(values[i])) {
+                    values[i] = frame;
+                }
+            }
+        }
+    }
+
+    public void replaceFrame(Frame original, Frame replacement) {
+        if (original.equals(replacement)) {
+            return;
+        }
+        int originalId = getFrameId(original);
+        if (originalId < 0) {
+            return;
+        }
+        Set<Integer> recordsToChange = new LinkedHashSet<Integer>();
+        addAll(recordsToChange, frameToRecords.toArray(originalId));
+        addAll(recordsToChange, slotToRecords.toArray(originalId));
+        addAll(recordsToChange, facetToRecords.toArray(originalId));
+        if (!recordsToChange.isEmpty()) {
+            replaceRecords(originalId, internFrame(replacement), replacement, recordsToChange);
+            original.markDeleted(true);
+        }
+        for (int record : getRecordsWithValue(original)) {
+            Object[] values = recordValues[record];
+            int count = recordValueCount[record];
+            boolean hadReplacement = containsValue(record, replacement);
+            for (int i = 0; i < count; ++i) {
+                if (original.equals(values[i])) {
+                    values[i] = replacement;
+                }
+            }
+            if (largeRecordValues.containsKey(record)) {
+                largeRecordValues.put(record, ValueCounts.of(values, count));
+            }
+            unindexValue(original);
+            if (!hadReplacement) {
+                indexValue(record, replacement);
+            }
+        }
+        deleteFrame(original);
+    }
+
+    private static void addAll(Set<Integer> set, int[] records) {
+        for (int record : records) {
+            set.add(record);
+        }
+    }
+
+    private void replaceRecords(int originalId, int replacementId, Frame replacement, Set<Integer> records) {
+        int nameSlotId = getNameSlotId();
+        for (int record : records) {
+            int frameId = recordFrame[record] == originalId ? replacementId : recordFrame[record];
+            int slotId = recordSlot[record] == originalId ? replacementId : recordSlot[record];
+            int facetId = recordFacet[record] == originalId ? replacementId : recordFacet[record];
+            boolean isTemplate = recordIsTemplate[record];
+            Object[] values = Arrays.copyOf(recordValues[record], recordValueCount[record]);
+            if (frameId == replacementId && slotId == nameSlotId && facetId == NO_FACET && !isTemplate) {
+                values = new Object[] { replacement.getName() };
+            }
+            removeRecord(record);
+            int existing = lookup(frameId, slotId, facetId, isTemplate);
+            if (existing >= 0) {
+                removeRecord(existing);
+            }
+            createRecord(frameId, slotId, facetId, isTemplate, values, values.length);
+        }
+    }
+
+    public boolean beginTransaction(String name) {
+        return false;
+    }
+
+    public boolean commitTransaction() {
+        return true;
+    }
+
+    public boolean rollbackTransaction() {
+        return false;
+    }
+
+    public TransactionMonitor getTransactionStatusMonitor() {
+        return null;
+    }
+
+    public void reinitialize() {
+    }
+
+    public boolean setCaching(RemoteSession session, boolean doCache) {
+        return false;
+    }
+
+    /*
+     * A multiset of the values of a record.
+     */
+    private static class ValueCounts {
+        private final Map<Object, int[]> counts = new HashMap<Object, int[]>();
+
+        static ValueCounts of(Object[] values, int count) {
+            ValueCounts counts = new ValueCounts();
+            for (int i = 0; i < count; ++i) {
+                counts.add(values[i]);
+            }
+            return counts;
+        }
+
+        /**
+         * @return true if this is the first occurrence of the value.
+         */
+        boolean add(Object value) {
+            int[] count = counts.get(value);
+            if (count == null) {
+                counts.put(value, new int[] { 1 });
+                return true;
+            }
+            ++count[0];
+            return false;
+        }
+
+        /**
+         * @return true if this was the last occurrence of the value.
+         */
+        boolean remove(Object value) {
+            int[] count = counts.get(value);
+            if (count == null) {
+                return false;
+            }
+            if (--count[0] == 0) {
+                counts.remove(value);
+                return true;
+            }
+            return false;
+        }
+
+        boolean contains(Object value) {
+            return counts.containsKey(value);
+        }
+
+        Set<Object> values() {
+            return counts.keySet();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Slot;
+
+/**
+ * A point in time view of an InMemoryFrameDb.  Creating a snapshot copies nothing.  While
+ * the snapshot is open the frame db saves a copy of each record (and the state of its
+ * frame) just before the first change to it, so the cost of a snapshot is proportional to
+ * the number of records changed while it is open.
+ * <p>
+ * A thread sees the snapshot instead of the current state of the frame db after calling
+ * activate().  The thread can then go through the usual knowledge base calls without
+ * holding the knowledge base lock between calls while writers on other threads keep going.
+ * The FrameStoreManager hands such a thread a frame store chain of its own (see
+ * getFrameStore()) that skips the caches of the knowledge base and only allows queries.
+ * While snapshots are open the frame db makes its changes under a write lock and the
+ * snapshot readers read under the read lock, so a thread that reads a snapshot while others
+ * write must go through the knowledge base rather than call the frame db directly.
+ * <p>
+ * A snapshot must be created while no one is writing to the frame db (e.g. while holding
+ * the knowledge base lock) and should be closed as soon as it is no longer needed.
+ */
+public class FrameDbSnapshot {
+    private static final ThreadLocal<FrameDbSnapshot> activeSnapshot = new ThreadLocal<FrameDbSnapshot>();
+    /*
+     * Lets getActiveSnapshot() skip the thread local while no snapshot is open, which is
+     * nearly always.
+     */
+    private static final AtomicInteger openSnapshotCount = new AtomicInteger();
+
+    private final InMemoryFrameDb frameDb;
+    private final Map<Record, Record> savedRecords = new HashMap<Record, Record>();
+    /*
+     * The saved records by slot and by value, so that a query only looks at the saved
+     * records that can match it.
+     */
+    private final Map<Slot, List<Record>> savedRecordsBySlot = new HashMap<Slot, List<Record>>();
+    private final Map<Object, List<Record>> savedRecordsByValue = new HashMap<Object, List<Record>>();
+    private final Map<FrameID, Frame> savedFrames = new HashMap<FrameID, Frame>();
+    private volatile boolean closed;
+    private KnowledgeBase frameStoreKb;
+    private FrameStore frameStore;
+
+    FrameDbSnapshot(InMemoryFrameDb frameDb) {
+        this.frameDb = frameDb;
+        openSnapshotCount.incrementAndGet();
+    }
+
+    /**
+     * @return the snapshot that the current thread sees or null if it sees the current state.
+     */
+    public static FrameDbSnapshot getActiveSnapshot() {
+        return openSnapshotCount.get() == 0 ? null : activeSnapshot.get();
+    }
+
+    public InMemoryFrameDb getFrameDb() {
+        return frameDb;
+    }
+
+    /**
+     * Makes the current thread see this snapshot.
+     */
+    public void activate() {
+        if (closed) {
+            throw new IllegalStateException("Snapshot is closed");
+        }
+        activeSnapshot.set(this);
+    }
+
+    /**
+     * Makes the current thread see the current state of the frame db again.
+     */
+    public void deactivate() {
+        if (activeSnapshot.get() == this) {
+            activeSnapshot.remove();
+        }
+    }
+
+    /**
+     * Releases the saved records.  The snapshot is deactivated on the current thread and
+     * can not be activated again.
+     */
+    public void close() {
+        deactivate();
+        if (!closed) {
+            closed = true;
+            openSnapshotCount.decrementAndGet();
+            frameDb.closeSnapshot(this);
+        }
+    }
+
+    /**
+     * @return the frame store that the knowledge base uses for a thread that sees this
+     * snapshot or null if the frame db is not the active frame store of the knowledge base.
+     */
+    synchronized FrameStore getFrameStore(KnowledgeBase kb) {
+        if (closed) {
+            return null;
+        }
+        if (frameStoreKb != kb) {
+            MergingNarrowFrameStore merging = MergingNarrowFrameStore.get(kb);
+            frameStore = null;
+            if (merging != null && merging.getActiveFrameStore() == frameDb) {
+                NarrowFrameStore helper = new ImmutableNamesNarrowFrameStore(kb, merging);
+                frameStore = SnapshotFrameStoreHandler.newInstance(new SimpleFrameStore(kb, helper),
+                                                                   frameDb.getSnapshotLock().readLock());
+            }
+            frameStoreKb = kb;
+        }
+        return frameStore;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return the number of records that have been saved because they changed since the
+     * snapshot was taken.
+     */
+    public int getSavedRecordCount() {
+        return savedRecords.size();
+    }
+
+    /*
+     * Called by the frame db just before the record with this key changes.  The current
+     * record is null if there is none.
+     */
+    void save(Record key, Record current, Frame currentFrame) {
+        if (!savedRecords.containsKey(key)) {
+            Record saved = current == null ? null : new Record(current.getFrame(), current.getSlot(), current.getFacet(),
+                                                               current.isTemplate(), current.getInternalValues());
+            savedRecords.put(key, saved);
+            if (saved != null) {
+                index(savedRecordsBySlot, saved.getSlot(), saved);
+                for (Object value : new HashSet<Object>(saved.getInternalValues())) {
+                    index(savedRecordsByValue, value, saved);
+                }
+            }
+        }
+        saveFrame(key.getFrame().getFrameID(), currentFrame);
+    }
+
+    private static <X> void index(Map<X, List<Record>> map, X key, Record record) {
+        List<Record> records = map.get(key);
+        if (records == null) {
+            records = new ArrayList<Record>();
+            map.put(key, records);
+        }
+        records.add(record);
+    }
+
+    /*
+     * Called by the frame db just before the frame with this id may appear or disappear.
+     */
+    void saveFrame(FrameID id, Frame currentFrame) {
+        if (!savedFrames.containsKey(id)) {
+            savedFrames.put(id, currentFrame);
+        }
+    }
+
+    boolean isSaved(Record key) {
+        return savedRecords.containsKey(key);
+    }
+
+    /**
+     * @return the saved record or null if the record did not exist when the snapshot was taken.
+     */
+    Record getSavedRecord(Record key) {
+        return savedRecords.get(key);
+    }
+
+    /**
+     * @return the saved records.  There is a null for each record that did not exist when
+     * the snapshot was taken.
+     */
+    Collection<Record> getSavedRecords() {
+        return savedRecords.values();
+    }
+
+    /**
+     * @return the saved records with this slot.
+     */
+    Collection<Record> getSavedRecordsWithSlot(Slot slot) {
+        return getIndexed(savedRecordsBySlot, slot);
+    }
+
+    /**
+     * @return the saved records that contain this value.
+     */
+    Collection<Record> getSavedRecordsWithValue(Object value) {
+        return getIndexed(savedRecordsByValue, value);
+    }
+
+    private static Collection<Record> getIndexed(Map<?, List<Record>> map, Object key) {
+        List<Record> records = map.get(key);
+        return records == null ? Collections.<Record>emptyList() : records;
+    }
+
+    boolean isSaved(FrameID id) {
+        return savedFrames.containsKey(id);
+    }
+
+    /**
+     * @return the frame with this id when the snapshot was taken or null if there was none.
+     */
+    Frame getSavedFrame(FrameID id) {
+        return savedFrames.get(id);
+    }
+
+    Map<FrameID, Frame> getSavedFrames() {
+        return savedFrames;
+    }
+
+    public String toString() {
+        return "FrameDbSnapshot(" + frameDb + ", " + savedRecords.size() + " saved records)";
+    }
+}
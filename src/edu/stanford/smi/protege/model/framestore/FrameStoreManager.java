@@ -5,12 +5,16 @@ package edu.stanford.smi.protege.model.framestore;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EventListener;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,6 +49,12 @@ public class FrameStoreManager {
     private UndoFrameStore undoFrameStore;
     private ChangeMonitorFrameStore changeMonitorFrameStore;
     private FrameStore traceFrameStore;
+    private FrameStore readWriteLockFrameStore;
+    private FrameStore synchronizedFrameStore;
+    private boolean readWriteLockingEnabled;
+    private FrameStoreMetrics metrics;
+    private boolean metricsEnabled;
+    private Map<FrameStore, FrameStore> metricsFrameStores = new IdentityHashMap<FrameStore, FrameStore>();
 
     private FrameStore terminalFrameStore;
     private FrameStore headFrameStore;
@@ -56,12 +66,188 @@ public class FrameStoreManager {
         this.kb = kb;
         createSystemFrameStores();
         terminalFrameStore = create(InMemoryFrameStore.class);
-        headFrameStore = terminalFrameStore;
+        setHeadFrameStore(terminalFrameStore);
         addSystemFrameStores();
     }
 
     public FrameStore getHeadFrameStore() {
-        return headFrameStore;
+        FrameStore snapshotFrameStore = getSnapshotFrameStore();
+        if (snapshotFrameStore != null) {
+            return snapshotFrameStore;
+        }
+        return readWriteLockingEnabled ? readWriteLockFrameStore : headFrameStore;
+    }
+
+    /**
+     * @return the head frame store behind the locking of the knowledge base: the calls to
+     * the frame store that is returned synchronize on the knowledge base or, when read/write
+     * locking is enabled, take the read or write lock.  Callers that make single queries
+     * should use it instead of locking themselves.
+     */
+    public FrameStore getQueryFrameStore() {
+        FrameStore snapshotFrameStore = getSnapshotFrameStore();
+        if (snapshotFrameStore != null) {
+            return snapshotFrameStore;
+        }
+        return readWriteLockingEnabled ? readWriteLockFrameStore : synchronizedFrameStore;
+    }
+
+    /*
+     * A thread that sees a snapshot of the frame db goes around the whole chain, so none of
+     * the caches in it see the snapshot or have to know about it.
+     */
+    private FrameStore getSnapshotFrameStore() {
+        FrameDbSnapshot snapshot = FrameDbSnapshot.getActiveSnapshot();
+        return snapshot == null ? null : snapshot.getFrameStore(kb);
+    }
+
+    /*
+     * The read/write lock frame store is not in the list of frame stores because its
+     * position must not change the meaning of the positions used by insertFrameStore().
+     * It always sits in front of the real head frame store.
+     */
+    private void setHeadFrameStore(FrameStore frameStore) {
+        headFrameStore = frameStore;
+        readWriteLockFrameStore.setDelegate(frameStore);
+        synchronizedFrameStore.setDelegate(frameStore);
+    }
+
+    /**
+     * Switches between the default locking, where callers synchronize on the knowledge
+     * base, and read/write locking, where queries from different threads run concurrently
+     * and modifications are exclusive.  This should be called before the head frame
+     * store is handed out to other threads since callers that have already fetched
+     * the head frame store will not see the change.
+     */
+    public void setReadWriteLockingEnabled(boolean enabled) {
+        readWriteLockingEnabled = enabled;
+    }
+
+    public boolean isReadWriteLockingEnabled() {
+        return readWriteLockingEnabled;
+    }
+
+    /**
+     * @return the lock guarding the frame store chain when read/write locking is enabled.
+     */
+    public ReentrantReadWriteLock getReadWriteLock() {
+        return getReadWriteLockHandler().getLock();
+    }
+
+    private ReadWriteLockFrameStoreHandler getReadWriteLockHandler() {
+        return (ReadWriteLockFrameStoreHandler) getHandler(readWriteLockFrameStore);
+    }
+
+    /*
+     * Changes to the chain of frame stores must not happen underneath concurrent readers.
+     * The metrics frame stores are taken out of the chain while it changes so that the
+     * code that changes it only sees the real frame stores.
+     */
+    private boolean lockChain() {
+        boolean locked = false;
+        if (readWriteLockingEnabled) {
+            getReadWriteLockHandler().lockForWrite();
+            locked = true;
+        }
+        if (metricsEnabled) {
+            removeMetricsFrameStores();
+        }
+        return locked;
+    }
+
+    private void unlockChain(boolean locked) {
+        try {
+            if (metricsEnabled) {
+                addMetricsFrameStores();
+            }
+        } finally {
+            if (locked) {
+                getReadWriteLockHandler().unlockForWrite();
+            }
+        }
+    }
+
+    /**
+     * @return the metrics of the frame store chain.  They are only recorded while metrics
+     * are enabled.
+     */
+    public FrameStoreMetrics getFrameStoreMetrics() {
+        if (metrics == null) {
+            metrics = new FrameStoreMetrics(this, kb);
+        }
+        return metrics;
+    }
+
+    /**
+     * Puts a metrics frame store in front of each frame store in the chain (or takes them
+     * out again).  Like setReadWriteLockingEnabled() this should be called before the head
+     * frame store is handed out to other threads since callers that have already fetched
+     * the head frame store will not see the change.
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        boolean locked = lockChain();
+        try {
+            metricsEnabled = enabled;
+            if (!enabled) {
+                metricsFrameStores.clear();
+                getFrameStoreMetrics().setHandlers(Collections.<MetricsFrameStoreHandler>emptyList());
+            }
+        } finally {
+            unlockChain(locked);
+        }
+    }
+
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    private void addMetricsFrameStores() {
+        FrameStoreMetrics frameStoreMetrics = getFrameStoreMetrics();
+        Map<FrameStore, FrameStore> wrappers = new IdentityHashMap<FrameStore, FrameStore>();
+        List<MetricsFrameStoreHandler> handlers = new ArrayList<MetricsFrameStoreHandler>();
+        FrameStore previous = null;
+        FrameStore frameStore = headFrameStore;
+        while (frameStore != null) {
+            FrameStore wrapper = metricsFrameStores.get(frameStore);
+            if (wrapper == null) {
+                wrapper = MetricsFrameStoreHandler.newInstance(frameStore, frameStoreMetrics);
+            }
+            wrappers.put(frameStore, wrapper);
+            handlers.add(MetricsFrameStoreHandler.getHandler(wrapper));
+            wrapper.setDelegate(frameStore);
+            if (previous == null) {
+                setHeadFrameStore(wrapper);
+            } else {
+                previous.setDelegate(wrapper);
+            }
+            if (frameStore == terminalFrameStore) {
+                break;
+            }
+            previous = frameStore;
+            frameStore = frameStore.getDelegate();
+        }
+        metricsFrameStores = wrappers;
+        frameStoreMetrics.setHandlers(handlers);
+    }
+
+    private void removeMetricsFrameStores() {
+        FrameStore frameStore = headFrameStore;
+        if (MetricsFrameStoreHandler.getHandler(frameStore) != null) {
+            FrameStore wrapper = frameStore;
+            frameStore = wrapper.getDelegate();
+            wrapper.setDelegate(null);
+            setHeadFrameStore(frameStore);
+        }
+        while (frameStore != null && frameStore != terminalFrameStore) {
+            FrameStore delegate = frameStore.getDelegate();
+            if (MetricsFrameStoreHandler.getHandler(delegate) != null) {
+                FrameStore wrapper = delegate;
+                delegate = wrapper.getDelegate();
+                wrapper.setDelegate(null);
+                frameStore.setDelegate(delegate);
+            }
+            frameStore = delegate;
+        }
     }
 
     public<X> X getFrameStoreFromClass(Class<? extends X> clazz) {
@@ -172,7 +358,7 @@ public class FrameStoreManager {
         if (wasEnabled) {
             FrameStore preceeding = getPreceedingEnabledFrameStore(frameStore);
             if (preceeding == null) {
-                headFrameStore = frameStore.getDelegate();
+                setHeadFrameStore(frameStore.getDelegate());
                 frameStore.setDelegate(null);
             } else {
                 disconnect(preceeding, frameStore);
@@ -187,6 +373,11 @@ public class FrameStoreManager {
     }
 
     public void close() {
+        if (metrics != null) {
+            metrics.unregister();
+            metrics = null;
+        }
+        metricsFrameStores = null;
         eventDispatchFrameStore.clearListeners();
         closeFrameStores();
         frameStores = null;
@@ -206,6 +397,8 @@ public class FrameStoreManager {
         undoFrameStore = null;
         changeMonitorFrameStore = null;
         traceFrameStore = null;
+        readWriteLockFrameStore = null;
+        synchronizedFrameStore = null;
         terminalFrameStore = null;
         headFrameStore = null;
     }
@@ -217,6 +410,8 @@ public class FrameStoreManager {
             frameStore.close();
         }
         frameStores.clear();
+        readWriteLockFrameStore.close();
+        synchronizedFrameStore.close();
         terminalFrameStore.close();
     }
 
@@ -242,15 +437,20 @@ public class FrameStoreManager {
     }
 
     public void insertFrameStore(FrameStore newFrameStore, int position) {
-        frameStores.add(position, newFrameStore);
-        FrameStore fs = getPreceedingEnabledFrameStore(position);
-        connect(fs, newFrameStore);
+        boolean locked = lockChain();
+        try {
+            frameStores.add(position, newFrameStore);
+            FrameStore fs = getPreceedingEnabledFrameStore(position);
+            connect(fs, newFrameStore);
+        } finally {
+            unlockChain(locked);
+        }
     }
 
     private void connect(FrameStore frameStore1, FrameStore frameStore2) {
         if (frameStore1 == null) {
             frameStore2.setDelegate(headFrameStore);
-            headFrameStore = frameStore2;
+            setHeadFrameStore(frameStore2);
         } else {
             frameStore2.setDelegate(frameStore1.getDelegate());
             frameStore1.setDelegate(frameStore2);
@@ -264,7 +464,7 @@ public class FrameStoreManager {
 
     private void disconnect(FrameStore frameStore1, FrameStore frameStore2) {
         if (frameStore1 == null) {
-            headFrameStore = frameStore2.getDelegate();
+            setHeadFrameStore(frameStore2.getDelegate());
         } else {
             frameStore1.setDelegate(frameStore2.getDelegate());
         }
@@ -276,11 +476,16 @@ public class FrameStoreManager {
     }
 
     public void removeFrameStore(FrameStore frameStore) {
-        int position = frameStores.indexOf(frameStore);
-        FrameStore preceeding = getPreceedingEnabledFrameStore(position);
-        disconnect(preceeding, frameStore);
-        frameStore.close();
-        frameStores.remove(frameStore);
+        boolean locked = lockChain();
+        try {
+            int position = frameStores.indexOf(frameStore);
+            FrameStore preceeding = getPreceedingEnabledFrameStore(position);
+            disconnect(preceeding, frameStore);
+            frameStore.close();
+            frameStores.remove(frameStore);
+        } finally {
+            unlockChain(locked);
+        }
     }
 
     public void insertFrameStore(FrameStore newFrameStore) {
@@ -297,7 +502,12 @@ public class FrameStoreManager {
 
 
     public boolean setEnabled(FrameStore fs, boolean b) {
-        return b ? enable(fs) : disable(fs);
+        boolean locked = lockChain();
+        try {
+            return b ? enable(fs) : disable(fs);
+        } finally {
+            unlockChain(locked);
+        }
     }
 
     public boolean setArgumentCheckingEnabled(boolean b) {
@@ -398,15 +608,22 @@ public class FrameStoreManager {
         undoFrameStore = (UndoFrameStore) create(UndoFrameStore.class);
         changeMonitorFrameStore = (ChangeMonitorFrameStore) create(ChangeMonitorFrameStore.class);
         traceFrameStore = create(TraceFrameStoreHandler.class);
+        readWriteLockFrameStore = create(ReadWriteLockFrameStoreHandler.class);
+        synchronizedFrameStore = create(SynchronizedFrameStoreHandler.class);
     }
 
     public void setTerminalFrameStore(FrameStore newTerminalFrameStore) {
-        FrameStore preceedingFrameStore = getPreceedingEnabledFrameStore(frameStores.size());
-        preceedingFrameStore.setDelegate(newTerminalFrameStore);
-        if (terminalFrameStore != newTerminalFrameStore) {
-            terminalFrameStore.close();
+        boolean locked = lockChain();
+        try {
+            FrameStore preceedingFrameStore = getPreceedingEnabledFrameStore(frameStores.size());
+            preceedingFrameStore.setDelegate(newTerminalFrameStore);
+            if (terminalFrameStore != newTerminalFrameStore) {
+                terminalFrameStore.close();
+            }
+            terminalFrameStore = newTerminalFrameStore;
+        } finally {
+            unlockChain(locked);
         }
-        terminalFrameStore = newTerminalFrameStore;
     }
 
     public void reinitialize() {
@@ -0,0 +1,93 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.io.Serializable;
+
+/**
+ * The metrics recorded for one method of one frame store in the chain (see
+ * FrameStoreMetrics).  The self time of a call is the time spent in the frame store itself,
+ * i.e. the time of the call less the time spent in the frame stores further down the
+ * chain.  The latency percentiles are of the self time.  Times are in nanoseconds.
+ */
+public class FrameStoreMethodMetrics implements Serializable {
+    private static final long serialVersionUID = -3467271820318830421L;
+
+    private final String frameStoreName;
+    private final String methodName;
+    private final long callCount;
+    private final long totalNanos;
+    private final long selfNanos;
+    private final long allocatedBytes;
+    private final long medianNanos;
+    private final long percentile90Nanos;
+    private final long percentile99Nanos;
+    private final long maxNanos;
+
+    public FrameStoreMethodMetrics(String frameStoreName, String methodName, long callCount, long totalNanos,
+                                   long selfNanos, long allocatedBytes, long medianNanos, long percentile90Nanos,
+                                   long percentile99Nanos, long maxNanos) {
+        this.frameStoreName = frameStoreName;
+        this.methodName = methodName;
+        this.callCount = callCount;
+        this.totalNanos = totalNanos;
+        this.selfNanos = selfNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.medianNanos = medianNanos;
+        this.percentile90Nanos = percentile90Nanos;
+        this.percentile99Nanos = percentile99Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    public String getFrameStoreName() {
+        return frameStoreName;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public long getCallCount() {
+        return callCount;
+    }
+
+    /**
+     * @return the cumulative time of the calls including the frame stores further down
+     * the chain.
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getSelfNanos() {
+        return selfNanos;
+    }
+
+    /**
+     * @return the bytes allocated by the frame store itself or 0 if allocation tracking is
+     * off.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getMedianNanos() {
+        return medianNanos;
+    }
+
+    public long getPercentile90Nanos() {
+        return percentile90Nanos;
+    }
+
+    public long getPercentile99Nanos() {
+        return percentile99Nanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public String toString() {
+        return frameStoreName + "." + methodName + "(calls=" + callCount + ", self=" + selfNanos + "ns, total="
+                + totalNanos + "ns, p50=" + medianNanos + "ns, p90=" + percentile90Nanos + "ns, p99="
+                + percentile99Nanos + "ns, max=" + maxNanos + "ns, allocated=" + allocatedBytes + ")";
+    }
+}
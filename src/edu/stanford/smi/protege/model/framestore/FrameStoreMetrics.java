@@ -0,0 +1,177 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.util.Log;
+
+/**
+ * Per method call counts, latencies and allocations for each frame store in the chain of
+ * a knowledge base.  While metrics are enabled the FrameStoreManager puts a
+ * MetricsFrameStoreHandler in front of each frame store (including the head and the
+ * terminal frame store) and these metrics add up what they record.  Metrics are off by
+ * default.  They are turned on with FrameStoreManager.setMetricsEnabled(), through JMX
+ * once register() has been called, or on the server with the server.kb.frame.store.metrics
+ * property.
+ * <p>
+ * The counters are striped and the latencies go into lock free histograms so that
+ * concurrent readers (see ReadWriteLockFrameStoreHandler) do not contend on them.  The
+ * remaining cost is a reflective call and a couple of System.nanoTime() calls per frame
+ * store per call, plus two ThreadMXBean calls if allocation tracking is on.
+ */
+public class FrameStoreMetrics implements FrameStoreMetricsMBean {
+    private static final Logger log = Log.getLogger(FrameStoreMetrics.class);
+    public static final String MBEAN_DOMAIN = "edu.stanford.smi.protege";
+
+    private final FrameStoreManager frameStoreManager;
+    private final KnowledgeBase kb;
+    private volatile List<MetricsFrameStoreHandler> handlers = Collections.emptyList();
+    private volatile boolean allocationTracking;
+    private ObjectName objectName;
+
+    public FrameStoreMetrics(FrameStoreManager frameStoreManager, KnowledgeBase kb) {
+        this.frameStoreManager = frameStoreManager;
+        this.kb = kb;
+    }
+
+    public boolean isEnabled() {
+        return frameStoreManager.isMetricsEnabled();
+    }
+
+    public void setEnabled(boolean enabled) {
+        synchronized (kb) {
+            frameStoreManager.setMetricsEnabled(enabled);
+        }
+    }
+
+    public boolean isAllocationTrackingEnabled() {
+        return allocationTracking;
+    }
+
+    /**
+     * Allocation tracking needs a HotSpot VM.  It stays off if the VM can not measure the
+     * bytes allocated by a thread.
+     */
+    public void setAllocationTrackingEnabled(boolean enabled) {
+        boolean supported;
+        try {
+            supported = MetricsFrameStoreHandler.AllocationMeter.isSupported();
+        } catch (Throwable t) {
+            supported = false;
+        }
+        if (enabled && !supported) {
+            log.warning("Allocation tracking is not supported by this VM");
+        }
+        allocationTracking = enabled && supported;
+    }
+
+    /*
+     * Called by the frame store manager with the metrics frame stores in chain order.
+     */
+    void setHandlers(List<MetricsFrameStoreHandler> handlers) {
+        this.handlers = Collections.unmodifiableList(new ArrayList<MetricsFrameStoreHandler>(handlers));
+    }
+
+    public long getCallCount() {
+        long count = 0;
+        List<MetricsFrameStoreHandler> currentHandlers = handlers;
+        if (!currentHandlers.isEmpty()) {
+            for (FrameStoreMethodMetrics m : currentHandlers.get(0).getMethodMetrics()) {
+                count += m.getCallCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the metrics of the frame stores in chain order.  The methods of each frame
+     * store are sorted by decreasing self time.
+     */
+    public List<FrameStoreMethodMetrics> getMethodMetrics() {
+        List<FrameStoreMethodMetrics> result = new ArrayList<FrameStoreMethodMetrics>();
+        for (MetricsFrameStoreHandler handler : handlers) {
+            List<FrameStoreMethodMetrics> methodMetrics = handler.getMethodMetrics();
+            Collections.sort(methodMetrics, new Comparator<FrameStoreMethodMetrics>() {
+                public int compare(FrameStoreMethodMetrics m1, FrameStoreMethodMetrics m2) {
+                    long self1 = m1.getSelfNanos();
+                    long self2 = m2.getSelfNanos();
+                    return self1 > self2 ? -1 : (self1 == self2 ? 0 : 1);
+                }
+            });
+            result.addAll(methodMetrics);
+        }
+        return result;
+    }
+
+    public String getReport() {
+        return getReport(getMethodMetrics());
+    }
+
+    public static String getReport(List<FrameStoreMethodMetrics> methodMetrics) {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append(String.format("%-32s %-48s %10s %10s %10s %9s %9s %9s %9s %12s%n", "frame store", "method",
+                                    "calls", "self ms", "total ms", "p50 us", "p90 us", "p99 us", "max us",
+                                    "bytes"));
+        for (FrameStoreMethodMetrics m : methodMetrics) {
+            buffer.append(String.format("%-32s %-48s %10d %10.1f %10.1f %9.1f %9.1f %9.1f %9.1f %12d%n",
+                                        m.getFrameStoreName(), m.getMethodName(), m.getCallCount(),
+                                        m.getSelfNanos() / 1e6, m.getTotalNanos() / 1e6,
+                                        m.getMedianNanos() / 1e3, m.getPercentile90Nanos() / 1e3,
+                                        m.getPercentile99Nanos() / 1e3, m.getMaxNanos() / 1e3,
+                                        m.getAllocatedBytes()));
+        }
+        return buffer.toString();
+    }
+
+    public void reset() {
+        for (MetricsFrameStoreHandler handler : handlers) {
+            handler.reset();
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server.
+     */
+    public synchronized void register() {
+        if (objectName != null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_DOMAIN + ":type=FrameStoreMetrics,name="
+                    + ObjectName.quote(String.valueOf(kb.getName())));
+            if (server.isRegistered(name)) {
+                name = new ObjectName(name + ",id=" + System.identityHashCode(this));
+            }
+            server.registerMBean(this, name);
+            objectName = name;
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Unable to register the frame store metrics with JMX", e);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            Log.emptyCatchBlock(e);
+        }
+        objectName = null;
+    }
+
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+}
@@ -0,0 +1,27 @@
+package edu.stanford.smi.protege.model.framestore;
+
+/**
+ * The JMX view of the FrameStoreMetrics of a knowledge base.
+ */
+public interface FrameStoreMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    boolean isAllocationTrackingEnabled();
+
+    void setAllocationTrackingEnabled(boolean enabled);
+
+    /**
+     * @return the number of calls that have entered the frame store chain.
+     */
+    long getCallCount();
+
+    /**
+     * @return a table with a line for each method of each frame store that has been called.
+     */
+    String getReport();
+
+    void reset();
+}
@@ -0,0 +1,138 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+
+/**
+ * A map from FrameIDs to frames that is a plain array indexed by FrameID.getIndex().  A
+ * lookup is an array access instead of hashing and comparing the FrameID and there is no
+ * per-entry object.  The frames in the table keep their FrameIDs (and so their indexes)
+ * alive.
+ * <p>
+ * The indexes are shared by every FrameID in the VM, so a table that only holds a few of
+ * them (an included project, a temporary frame db) could need an array as long as the
+ * largest index ever given out.  When the array would be more than MAXIMUM_SPARSENESS
+ * times longer than the number of frames the table falls back to a HashMap, and it goes
+ * back to the array once the frames are dense enough again.
+ */
+class FrameTable {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAXIMUM_SPARSENESS = 4;
+
+    private Frame[] frames = new Frame[INITIAL_CAPACITY];
+    private Map<FrameID, Frame> frameMap;
+    private int size = 0;
+    private int maximumIndex = -1;
+    private int nextDensityCheck;
+
+    public Frame get(FrameID id) {
+        if (frameMap != null) {
+            return frameMap.get(id);
+        }
+        int index = id == null ? -1 : id.getIndex();
+        return (index < 0 || index >= frames.length) ? null : frames[index];
+    }
+
+    public boolean containsKey(FrameID id) {
+        return get(id) != null;
+    }
+
+    public void put(Frame frame) {
+        FrameID id = frame.getFrameID();
+        int index = id.getIndex();
+        if (index < 0) {
+            throw new IllegalArgumentException("Frame without a name: " + frame);
+        }
+        maximumIndex = Math.max(maximumIndex, index);
+        if (frameMap == null && index >= frames.length) {
+            int length = getCapacity(index);
+            if (isTooSparse(length, size + 1)) {
+                switchToMap();
+            }
+            else {
+                Frame[] newFrames = new Frame[length];
+                System.arraycopy(frames, 0, newFrames, 0, frames.length);
+                frames = newFrames;
+            }
+        }
+        if (frameMap != null) {
+            if (frameMap.put(id, frame) == null) {
+                ++size;
+            }
+            if (size >= nextDensityCheck) {
+                nextDensityCheck = 2 * size;
+                if (!isTooSparse(getCapacity(maximumIndex), size)) {
+                    switchToArray();
+                }
+            }
+            return;
+        }
+        if (frames[index] == null) {
+            ++size;
+        }
+        frames[index] = frame;
+    }
+
+    public void remove(FrameID id) {
+        if (frameMap != null) {
+            if (frameMap.remove(id) != null) {
+                --size;
+            }
+            return;
+        }
+        int index = id == null ? -1 : id.getIndex();
+        if (index >= 0 && index < frames.length && frames[index] != null) {
+            frames[index] = null;
+            --size;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        frames = new Frame[INITIAL_CAPACITY];
+        frameMap = null;
+        size = 0;
+        maximumIndex = -1;
+    }
+
+    boolean isArray() {
+        return frameMap == null;
+    }
+
+    private static int getCapacity(int index) {
+        int length = INITIAL_CAPACITY;
+        while (length <= index) {
+            length *= 2;
+        }
+        return length;
+    }
+
+    private static boolean isTooSparse(int length, int frameCount) {
+        return length > INITIAL_CAPACITY && length / MAXIMUM_SPARSENESS > frameCount;
+    }
+
+    private void switchToMap() {
+        frameMap = new HashMap<FrameID, Frame>();
+        for (Frame frame : frames) {
+            if (frame != null) {
+                frameMap.put(frame.getFrameID(), frame);
+            }
+        }
+        frames = null;
+        nextDensityCheck = 2 * Math.max(size, 1);
+    }
+
+    private void switchToArray() {
+        frames = new Frame[getCapacity(maximumIndex)];
+        for (Frame frame : frameMap.values()) {
+            frames[frame.getFrameID().getIndex()] = frame;
+        }
+        frameMap = null;
+    }
+}
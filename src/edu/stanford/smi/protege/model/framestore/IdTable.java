@@ -0,0 +1,176 @@
+package edu.stanford.smi.protege.model.framestore;
+
+/**
+ * Interns objects to dense int ids.  The ids are handed out from 0 upwards and are
+ * recycled when released so that they can be used as indexes into plain arrays.
+ *
+ * The lookup table is an open addressing (linear probing) table of ints rather than a
+ * HashMap so that there is no per-entry object overhead.  Subclasses can override
+ * getKey() when the entries are looked up by something other than themselves (e.g.
+ * frames are looked up by FrameID).
+ */
+class IdTable<T> {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private Object[] entries = new Object[INITIAL_CAPACITY];
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+    private int[] freeIds = new int[16];
+    private int freeCount = 0;
+    private int nextId = 0;
+    private int size = 0;
+
+    protected Object getKey(T entry) {
+        return entry;
+    }
+
+    private static int spread(int h) {
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        return h ^ (h >>> 13);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object keyAt(int id) {
+        return getKey((T) entries[id]);
+    }
+
+    /**
+     * @return the id of the entry with this key or -1 if there is none.
+     */
+    public int getId(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        int mask = table.length - 1;
+        for (int index = spread(key.hashCode()) & mask; ; index = (index + 1) & mask) {
+            int slot = table[index];
+            if (slot == 0) {
+                return -1;
+            }
+            if (key.equals(keyAt(slot - 1))) {
+                return slot - 1;
+            }
+        }
+    }
+
+    public int intern(T entry) {
+        Object key = getKey(entry);
+        int id = getId(key);
+        if (id < 0) {
+            id = allocateId();
+            entries[id] = entry;
+            insert(key, id);
+        }
+        return id;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int id) {
+        return (id < 0 || id >= nextId) ? null : (T) entries[id];
+    }
+
+    /**
+     * Replaces the entry with the given id by an entry with an equal key.
+     */
+    public void set(int id, T entry) {
+        entries[id] = entry;
+    }
+
+    public void release(int id) {
+        int mask = table.length - 1;
+        int index = spread(keyAt(id).hashCode()) & mask;
+        while (table[index] != id + 1) {
+            index = (index + 1) & mask;
+        }
+        deleteSlot(index);
+        entries[id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = grow(freeIds);
+        }
+        freeIds[freeCount++] = id;
+        --size;
+    }
+
+    /**
+     * @return one more than the largest id that has been handed out.  Ids less than this
+     * value may have been released in which case get() returns null.
+     */
+    public int getIdLimit() {
+        return nextId;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int allocateId() {
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            if (nextId == entries.length) {
+                Object[] newEntries = new Object[entries.length * 2];
+                System.arraycopy(entries, 0, newEntries, 0, entries.length);
+                entries = newEntries;
+            }
+            id = nextId++;
+        }
+        ++size;
+        return id;
+    }
+
+    private void insert(Object key, int id) {
+        if ((size + 1) * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        int mask = table.length - 1;
+        int index = spread(key.hashCode()) & mask;
+        while (table[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        table[index] = id + 1;
+    }
+
+    private void rehash(int newLength) {
+        int[] oldTable = table;
+        table = new int[newLength];
+        int mask = newLength - 1;
+        for (int slot : oldTable) {
+            if (slot != 0) {
+                int index = spread(keyAt(slot - 1).hashCode()) & mask;
+                while (table[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = slot;
+            }
+        }
+    }
+
+    /*
+     * Backward shift deletion so that linear probing does not need tombstones.
+     */
+    private void deleteSlot(int hole) {
+        int mask = table.length - 1;
+        int index = hole;
+        while (true) {
+            index = (index + 1) & mask;
+            int slot = table[index];
+            if (slot == 0) {
+                break;
+            }
+            int home = spread(keyAt(slot - 1).hashCode()) & mask;
+            boolean movable = (hole <= index) ? (home <= hole || home > index) : (home <= hole && home > index);
+            if (movable) {
+                table[hole] = slot;
+                hole = index;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    static int[] grow(int[] array) {
+        int[] newArray = new int[Math.max(4, array.length * 2)];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+}
@@ -21,7 +21,7 @@ import edu.stanford.smi.protege.util.transaction.TransactionMonitor;
  * svn revision 8468 had code that did not rely on the frame name being set correctly in the
  * delegate.  But this code is pretty trivial to add...
  */
-public class ImmutableNamesNarrowFrameStore implements NarrowFrameStore {
+public class ImmutableNamesNarrowFrameStore implements NarrowFrameStore, BulkLoadable {
 
 	private String name;
 
@@ -163,6 +163,18 @@ public class ImmutableNamesNarrowFrameStore implements NarrowFrameStore {
         return delegate.setCaching(session, doCache);
     }
 
+    public void beginBulkLoad() {
+        if (delegate instanceof BulkLoadable) {
+            ((BulkLoadable) delegate).beginBulkLoad();
+        }
+    }
+
+    public void endBulkLoad() {
+        if (delegate instanceof BulkLoadable) {
+            ((BulkLoadable) delegate).endBulkLoad();
+        }
+    }
+
 	public void removeValue(Frame frame, Slot slot, Facet facet, boolean isTemplate, Object value) {
 		checkNotNameSft(slot, facet, isTemplate);
 		delegate.removeValue(frame, slot, facet, isTemplate, value);
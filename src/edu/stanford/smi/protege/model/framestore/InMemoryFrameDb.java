@@ -10,6 +10,12 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,19 +40,25 @@ import edu.stanford.smi.protege.util.SystemUtilities;
 import edu.stanford.smi.protege.util.transaction.TransactionMonitor;
 
 //ESCA-JAVA0100
-public class InMemoryFrameDb implements NarrowFrameStore {
+public class InMemoryFrameDb implements NarrowFrameStore, BulkLoadable {
     private static Logger log = Log.getLogger(InMemoryFrameDb.class);
 
     private static final int INITIAL_MAP_SIZE = 32771;
-    private final Map<FrameID, Frame> idToFrameMap = new HashMap<FrameID, Frame>(INITIAL_MAP_SIZE);
+    private static final int PARALLEL_INDEXING_THRESHOLD = 10000;
+    private final FrameTable idToFrameMap = new FrameTable();
     private Map<Record, Record> referenceToRecordMap = new HashMap<Record, Record>(INITIAL_MAP_SIZE);
     private Map<Frame, Set<Record>> frameToRecordsMap = new HashMap<Frame, Set<Record>>(INITIAL_MAP_SIZE);
     private Map<Slot, Set<Record>> slotToRecordsMap = new HashMap<Slot, Set<Record>>(INITIAL_MAP_SIZE);
     private Map<Facet, Set<Record>> facetToRecordsMap = new HashMap<Facet, Set<Record>>(INITIAL_MAP_SIZE);
     private Map<Object, Set<Record>> valueToRecordsMap = new LinkedHashMap<Object, Set<Record>>(INITIAL_MAP_SIZE);
+    private StringValueIndex stringValueIndex = new StringValueIndex();
 
-    private Record lookupRecord = new Record();
     private String frameDBName;
+    private final List<FrameDbSnapshot> snapshots = new CopyOnWriteArrayList<FrameDbSnapshot>();
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private int bulkLoadDepth = 0;
+    private volatile List<Record> pendingRecords = new ArrayList<Record>();
+    private final Object pendingRecordsLock = new Object();
 
     public InMemoryFrameDb(String name) {
     	if (log.isLoggable(Level.FINE)) {
@@ -70,7 +82,8 @@ public class InMemoryFrameDb implements NarrowFrameStore {
                 Record record = (Record) i.next();
                 Frame frame = record.getFrame();
                 KnowledgeBase kb = frame.getKnowledgeBase();
-                cachedNameSlot = kb.getSlot(Model.Slot.NAME);
+                // not kb.getSlot(): a snapshot reader must not wait for the kb lock here
+                cachedNameSlot = kb.getSystemFrames().getNameSlot();
             }
         }
         return cachedNameSlot;
@@ -92,8 +105,16 @@ public class InMemoryFrameDb implements NarrowFrameStore {
         if (maxMatches < 1) {
             maxMatches = Integer.MAX_VALUE;
         }
-        SimpleStringMatcher matcher = new SimpleStringMatcher(value);
         Set<Record> matches = new HashSet<Record>();
+        Collection<String> strings = stringValueIndex.getMatches(value);
+        if (strings != null) {
+            Iterator<String> i = strings.iterator();
+            while (i.hasNext() && matches.size() < maxMatches) {
+                matches.addAll(valueToRecordsMap.get(i.next()));
+            }
+            return matches;
+        }
+        SimpleStringMatcher matcher = new SimpleStringMatcher(value);
         Iterator<Map.Entry<Object, Set<Record>>> i = valueToRecordsMap.entrySet().iterator();
         while (i.hasNext() && matches.size() < maxMatches) {
             Map.Entry<Object, Set<Record>> entry = i.next();
@@ -113,10 +134,19 @@ public class InMemoryFrameDb implements NarrowFrameStore {
     }
 
 
-    private int countFrames(Class clas) {
+    private int countFrames(final Class clas) {
+        indexPendingRecords();
         int frameCount = 0;
-        Slot nameSlot = getNameSlot();
-        if (nameSlot != null) {
+        final Slot nameSlot = getNameSlot();
+        FrameDbSnapshot snapshot = getSnapshot();
+        if (snapshot != null && nameSlot != null) {
+            frameCount = getSnapshotRecords(snapshot, slotToRecordsMap.get(nameSlot),
+                                            snapshot.getSavedRecordsWithSlot(nameSlot), new RecordFilter() {
+                public boolean accept(Record record) {
+                    return matches(record, nameSlot, null, false) && clas.isInstance(record.getFrame());
+                }
+            }).size();
+        } else if (nameSlot != null) {
             Collection records = slotToRecordsMap.get(nameSlot);
             Iterator i = records.iterator();
             while (i.hasNext()) {
@@ -130,9 +160,173 @@ public class InMemoryFrameDb implements NarrowFrameStore {
     }
 
 
+    /*
+     * Snapshots
+     */
+
+    private interface RecordFilter {
+        boolean accept(Record record);
+    }
+
+    /**
+     * Creates a point in time view of this frame db.  The caller must make sure that no one
+     * is writing to the frame db while the snapshot is created.
+     */
+    public FrameDbSnapshot createSnapshot() {
+        snapshotLock.writeLock().lock();
+        try {
+            indexPendingRecords();
+            FrameDbSnapshot snapshot = new FrameDbSnapshot(this);
+            snapshots.add(snapshot);
+            return snapshot;
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    void closeSnapshot(FrameDbSnapshot snapshot) {
+        snapshotLock.writeLock().lock();
+        try {
+            snapshots.remove(snapshot);
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * The snapshot that the current thread sees if it is one of ours.
+     */
+    private FrameDbSnapshot getSnapshot() {
+        if (snapshots.isEmpty()) {
+            return null;
+        }
+        FrameDbSnapshot snapshot = FrameDbSnapshot.getActiveSnapshot();
+        return (snapshot != null && snapshot.getFrameDb() == this && !snapshot.isClosed()) ? snapshot : null;
+    }
+
+    /*
+     * The records that the snapshot sees: the current records that have not changed since
+     * the snapshot was taken and the saved records.  The saved records passed in must
+     * include all of the saved records that the filter accepts.
+     */
+    private static Collection<Record> getSnapshotRecords(FrameDbSnapshot snapshot,
+                                                         Collection<Record> currentRecords,
+                                                         Collection<Record> savedRecords,
+                                                         RecordFilter filter) {
+        Collection<Record> records = new ArrayList<Record>();
+        if (currentRecords != null) {
+            for (Record record : currentRecords) {
+                if (!snapshot.isSaved(record) && filter.accept(record)) {
+                    records.add(record);
+                }
+            }
+        }
+        for (Record record : savedRecords) {
+            if (record != null && filter.accept(record)) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private static Set<Frame> getRecordFrames(Collection<Record> records, int maxMatches) {
+        Set<Frame> frames = new HashSet<Frame>();
+        Iterator<Record> i = records.iterator();
+        while (i.hasNext() && frames.size() < maxMatches) {
+            frames.add(i.next().getFrame());
+        }
+        return frames;
+    }
+
+    private static boolean containsMatch(Record record, SimpleStringMatcher matcher) {
+        for (Object o : record.getInternalValues()) {
+            if (o instanceof String && matcher.isMatch((String) o)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void beforeChange(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        if (!snapshots.isEmpty()) {
+            Record key = new Record();
+            key.set(frame, slot, facet, isTemplate);
+            beforeChange(key, referenceToRecordMap.get(key));
+        }
+    }
+
+    private void beforeChange(Collection<Record> records) {
+        if (records != null && !snapshots.isEmpty()) {
+            for (Record record : records) {
+                beforeChange(record, record);
+            }
+        }
+    }
+
+    private void beforeFrameChange(Frame frame) {
+        if (!snapshots.isEmpty()) {
+            FrameID id = frame.getFrameID();
+            Frame currentFrame = idToFrameMap.get(id);
+            for (FrameDbSnapshot snapshot : snapshots) {
+                snapshot.saveFrame(id, currentFrame);
+            }
+        }
+    }
+
+    /*
+     * Saves the current state of a record in the open snapshots before it changes.
+     */
+    private void beforeChange(Record key, Record current) {
+        if (!snapshots.isEmpty()) {
+            if (getSnapshot() != null) {
+                throw new IllegalStateException("Modification of " + this + " by a thread with an active snapshot");
+            }
+            Frame currentFrame = idToFrameMap.get(key.getFrame().getFrameID());
+            for (FrameDbSnapshot snapshot : snapshots) {
+                snapshot.save(key, current, currentFrame);
+            }
+        }
+    }
+
+    ReentrantReadWriteLock getSnapshotLock() {
+        return snapshotLock;
+    }
+
+    /*
+     * The threads that read a snapshot do not hold the knowledge base lock, so while
+     * snapshots are open a change holds the write lock of the snapshot lock and the
+     * snapshot readers hold its read lock (see SnapshotFrameStoreHandler).
+     */
+    private boolean lockForChange() {
+        if (snapshots.isEmpty()) {
+            return false;
+        }
+        snapshotLock.writeLock().lock();
+        return true;
+    }
+
+    private void unlockForChange(boolean locked) {
+        if (locked) {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * One lookup record per thread so that concurrent readers do not share one and a
+     * lookup does not allocate.
+     */
+    private static final ThreadLocal<Record> lookupRecords = new ThreadLocal<Record>() {
+        protected Record initialValue() {
+            return new Record();
+        }
+    };
+
     private Record lookup(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        Record lookupRecord = lookupRecords.get();
         lookupRecord.set(frame, slot, facet, isTemplate);
-        return referenceToRecordMap.get(lookupRecord);
+        Record record = referenceToRecordMap.get(lookupRecord);
+        lookupRecord.clear();
+        return record;
     }
 
 
@@ -146,12 +340,18 @@ public class InMemoryFrameDb implements NarrowFrameStore {
 
 
     public void addValue(Frame frame, Slot slot, Facet facet, boolean isTemplate, Object value) {
-        Record record = lookup(frame, slot, facet, isTemplate);
-        if (record == null) {
-            createRecord(frame, slot, facet, isTemplate, CollectionUtilities.createList(value));
-        } else {
-            record.addValue(value);
-            addRecord(valueToRecordsMap, value, record);
+        boolean locked = lockForChange();
+        try {
+            beforeChange(frame, slot, facet, isTemplate);
+            Record record = lookup(frame, slot, facet, isTemplate);
+            if (record == null) {
+                createRecord(frame, slot, facet, isTemplate, CollectionUtilities.createList(value));
+            } else {
+                record.addValue(value);
+                addValueRecord(value, record);
+            }
+        } finally {
+            unlockForChange(locked);
         }
     }
 
@@ -172,7 +372,7 @@ public class InMemoryFrameDb implements NarrowFrameStore {
         Iterator i = record.getInternalValues().iterator();
         while (i.hasNext()) {
             Object value = i.next();
-            addRecord(valueToRecordsMap, value, record);
+            addValueRecord(value, record);
         }
     }
 
@@ -181,7 +381,7 @@ public class InMemoryFrameDb implements NarrowFrameStore {
         Iterator i = record.getInternalValues().iterator();
         while (i.hasNext()) {
             Object value = i.next();
-            removeRecord(valueToRecordsMap, value, record);
+            removeValueRecord(value, record);
         }
     }
 
@@ -193,12 +393,19 @@ public class InMemoryFrameDb implements NarrowFrameStore {
 
     private void addRecord(Record record) {
         referenceToRecordMap.put(record, record);
-        idToFrameMap.put(record.getFrame().getFrameID(), record.getFrame());
-        addRecord(frameToRecordsMap, record.getFrame(), record);
-        addRecord(slotToRecordsMap, record.getSlot(), record);
-        addRecord(facetToRecordsMap, record.getFacet(), record);
-        for (Object value : record.getValues()) {
-            addRecord(valueToRecordsMap, value, record);
+        idToFrameMap.put(record.getFrame());
+        synchronized (pendingRecordsLock) {
+            if (bulkLoadDepth > 0 && snapshots.isEmpty()) {
+                record.setIndexPending(true);
+                pendingRecords.add(record);
+            } else {
+                addRecord(frameToRecordsMap, record.getFrame(), record);
+                addRecord(slotToRecordsMap, record.getSlot(), record);
+                addRecord(facetToRecordsMap, record.getFacet(), record);
+                for (Object value : record.getValues()) {
+                    addValueRecord(value, record);
+                }
+            }
         }
     }
 
@@ -213,13 +420,47 @@ public class InMemoryFrameDb implements NarrowFrameStore {
         }
     }
 
+    /*
+     * The string values are also kept in the string value index so the entry for a value
+     * is removed when its last record goes.  The values of a record that is waiting for the
+     * end of a bulk load are indexed then.
+     */
+    private void addValueRecord(Object value, Record record) {
+        if (value != null && !record.isIndexPending()) {
+            Set<Record> set = valueToRecordsMap.get(value);
+            if (set == null) {
+                set = new HashSet<Record>();
+                valueToRecordsMap.put(value, set);
+                if (value instanceof String) {
+                    stringValueIndex.add((String) value);
+                }
+            }
+            set.add(record);
+        }
+    }
+
+    private void removeValueRecord(Object value, Record record) {
+        if (value != null && !record.isIndexPending()) {
+            Set<Record> set = valueToRecordsMap.get(value);
+            if (set != null) {
+                set.remove(record);
+                if (set.isEmpty()) {
+                    valueToRecordsMap.remove(value);
+                    if (value instanceof String) {
+                        stringValueIndex.remove((String) value);
+                    }
+                }
+            }
+        }
+    }
+
     private void removeRecord(Record record) {
         referenceToRecordMap.remove(record);
         removeRecord(frameToRecordsMap, record.getFrame(), record);
         removeRecord(slotToRecordsMap, record.getSlot(), record);
         removeRecord(facetToRecordsMap, record.getFacet(), record);
         for (Object value : record.getValues()) {
-            removeRecord(valueToRecordsMap, value, record);
+            removeValueRecord(value, record);
         }
         Set<Record> records = lookupRecords(frameToRecordsMap, record.getFrame());
         if (records == null || records.isEmpty()) {
@@ -252,6 +493,128 @@ public class InMemoryFrameDb implements NarrowFrameStore {
         }
     }
 
+    /*
+     * Bulk loading.  While a bulk load is in progress a new record only goes into the record
+     * map and the frame table.  The frame, slot, facet, value and string indexes are built
+     * for all of the pending records at once when the bulk load ends, one index per thread.
+     * Anything that needs these indexes before then builds them first.  Queries may do
+     * this from several reader threads at once so the indexes are built while holding
+     * pendingRecordsLock and the pending list is only replaced once they are complete.  The
+     * bulk load depth and the pending list are only changed while holding the same lock.
+     */
+
+    public void beginBulkLoad() {
+        synchronized (pendingRecordsLock) {
+            ++bulkLoadDepth;
+        }
+    }
+
+    public void endBulkLoad() {
+        boolean locked = lockForChange();
+        try {
+            synchronized (pendingRecordsLock) {
+                if (bulkLoadDepth > 0) {
+                    --bulkLoadDepth;
+                }
+                if (bulkLoadDepth == 0) {
+                    indexPendingRecords();
+                }
+            }
+        } finally {
+            unlockForChange(locked);
+        }
+    }
+
+    private void indexPendingRecords() {
+        if (pendingRecords.isEmpty()) {
+            return;
+        }
+        synchronized (pendingRecordsLock) {
+            List<Record> records = pendingRecords;
+            if (!records.isEmpty()) {
+                indexRecords(records);
+                pendingRecords = new ArrayList<Record>();
+            }
+        }
+    }
+
+    private void indexRecords(final List<Record> records) {
+        for (Record record : records) {
+            record.setIndexPending(false);
+            record.getValues();  // create the shared value list before the threads read it
+        }
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        tasks.add(new Runnable() {
+            public void run() {
+                for (Record record : records) {
+                    addRecord(frameToRecordsMap, record.getFrame(), record);
+                }
+            }
+        });
+        tasks.add(new Runnable() {
+            public void run() {
+                for (Record record : records) {
+                    addRecord(slotToRecordsMap, record.getSlot(), record);
+                }
+            }
+        });
+        tasks.add(new Runnable() {
+            public void run() {
+                for (Record record : records) {
+                    addRecord(facetToRecordsMap, record.getFacet(), record);
+                }
+            }
+        });
+        tasks.add(new Runnable() {
+            public void run() {
+                for (Record record : records) {
+                    for (Object value : record.getValues()) {
+                        addRecord(valueToRecordsMap, value, record);
+                    }
+                }
+            }
+        });
+        tasks.add(new Runnable() {
+            public void run() {
+                for (Record record : records) {
+                    for (Object value : record.getValues()) {
+                        if (value instanceof String) {
+                            stringValueIndex.add((String) value);
+                        }
+                    }
+                }
+            }
+        });
+        int threadCount = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+        if (threadCount < 2 || records.size() < PARALLEL_INDEXING_THRESHOLD) {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+        } else {
+            runInParallel(tasks, threadCount);
+        }
+    }
+
+    private static void runInParallel(List<Runnable> tasks, int threadCount) {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (Runnable task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProtegeError("Interrupted while building the indexes", e);
+        } catch (ExecutionException e) {
+            throw new ProtegeError("Failed to build the indexes", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     /*
      * Frame Replacement
      */
@@ -285,6 +648,7 @@ public class InMemoryFrameDb implements NarrowFrameStore {
           List values = Collections.singletonList(replacement.getName());
           newRecord.setValues(values);
         }
+        beforeChange(newRecord, referenceToRecordMap.get(newRecord));
         removeRecord(r);
         addRecord(newRecord);
       }
@@ -297,6 +661,14 @@ public class InMemoryFrameDb implements NarrowFrameStore {
 
 
     public Collection<Record> getRecords() {
+        FrameDbSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return getSnapshotRecords(snapshot, referenceToRecordMap.keySet(), snapshot.getSavedRecords(), new RecordFilter() {
+                public boolean accept(Record record) {
+                    return true;
+                }
+            });
+        }
         return new ArrayList<Record>(referenceToRecordMap.keySet());
     }
 
@@ -343,9 +715,12 @@ public class InMemoryFrameDb implements NarrowFrameStore {
     }
 
     public int getFrameCount() {
+        indexPendingRecords();
         int count = 0;
         Slot slot = getNameSlot();
-        if (slot != null) {
+        if (slot != null && getSnapshot() != null) {
+            count = countFrames(Frame.class);
+        } else if (slot != null) {
             Collection records = slotToRecordsMap.get(slot);
             if (records != null) {
                 count = records.size();
@@ -373,16 +748,47 @@ public class InMemoryFrameDb implements NarrowFrameStore {
     }
 
     public Set<Frame> getFrames() {
-        return new HashSet<Frame>(frameToRecordsMap.keySet());
+        indexPendingRecords();
+        Set<Frame> frames = new HashSet<Frame>(frameToRecordsMap.keySet());
+        FrameDbSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            for (Map.Entry<FrameID, Frame> entry : snapshot.getSavedFrames().entrySet()) {
+                Frame current = idToFrameMap.get(entry.getKey());
+                if (current != null) {
+                    frames.remove(current);
+                }
+                if (entry.getValue() != null) {
+                    frames.add(entry.getValue());
+                }
+            }
+        }
+        return frames;
     }
 
     public Frame getFrame(FrameID id) {
+      FrameDbSnapshot snapshot = getSnapshot();
+      if (snapshot != null && snapshot.isSaved(id)) {
+          return snapshot.getSavedFrame(id);
+      }
       return idToFrameMap.get(id);
     }
 
+    /*
+     * The record that the current thread sees.
+     */
+    private Record lookupVisible(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        FrameDbSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            Record key = new Record();
+            key.set(frame, slot, facet, isTemplate);
+            return snapshot.isSaved(key) ? snapshot.getSavedRecord(key) : referenceToRecordMap.get(key);
+        }
+        return lookup(frame, slot, facet, isTemplate);
+    }
+
     public List getValues(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
       List values = Collections.EMPTY_LIST;
-      Record record = lookup(frame, slot, facet, isTemplate);
+      Record record = lookupVisible(frame, slot, facet, isTemplate);
       if (record != null) {
         values = record.getValues();
       }
@@ -391,7 +797,7 @@ public class InMemoryFrameDb implements NarrowFrameStore {
 
     public int getValuesCount(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
         int count = 0;
-        Record record = lookup(frame, slot, facet, isTemplate);
+        Record record = lookupVisible(frame, slot, facet, isTemplate);
         if (record != null) {
             count = record.getValueCount();
         }
@@ -407,36 +813,65 @@ public class InMemoryFrameDb implements NarrowFrameStore {
     }
 
     public void moveValue(Frame frame, Slot slot, Facet facet, boolean isTemplate, int from, int to) {
-        Record record = lookup(frame, slot, facet, isTemplate);
-        if (record != null) {
-            record.moveValue(from, to);
+        boolean locked = lockForChange();
+        try {
+            beforeChange(frame, slot, facet, isTemplate);
+            Record record = lookup(frame, slot, facet, isTemplate);
+            if (record != null) {
+                record.moveValue(from, to);
+            }
+        } finally {
+            unlockForChange(locked);
         }
     }
 
     public void removeValue(Frame frame, Slot slot, Facet facet, boolean isTemplate, Object value) {
-        Record record = lookup(frame, slot, facet, isTemplate);
-        if (record != null) {
-            record.removeValue(value);
-            removeRecord(valueToRecordsMap, value, record);
-            if (record.isEmpty()) {
-                removeRecord(record);
+        boolean locked = lockForChange();
+        try {
+            indexPendingRecords();
+            beforeChange(frame, slot, facet, isTemplate);
+            Record record = lookup(frame, slot, facet, isTemplate);
+            if (record != null) {
+                record.removeValue(value);
+                removeValueRecord(value, record);
+                if (record.isEmpty()) {
+                    removeRecord(record);
+                }
             }
+        } finally {
+            unlockForChange(locked);
         }
-
     }
 
     public void setValues(Frame frame, Slot slot, Facet facet, boolean isTemplate, Collection values) {
-        Record record = lookup(frame, slot, facet, isTemplate);
-        if (record == null) {
-            createRecord(frame, slot, facet, isTemplate, values);
-        } else {
-            removeRecordValues(record);
-            record.setValues(values);
-            addRecordValues(record);
+        boolean locked = lockForChange();
+        try {
+            beforeChange(frame, slot, facet, isTemplate);
+            Record record = lookup(frame, slot, facet, isTemplate);
+            if (record == null) {
+                createRecord(frame, slot, facet, isTemplate, values);
+            } else {
+                removeRecordValues(record);
+                record.setValues(values);
+                addRecordValues(record);
+            }
+        } finally {
+            unlockForChange(locked);
         }
     }
 
-    public Set<Frame>getFrames(Slot slot, Facet facet, boolean isTemplate, Object value) {
+    public Set<Frame>getFrames(final Slot slot, final Facet facet, final boolean isTemplate, final Object value) {
+        indexPendingRecords();
+        FrameDbSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            Collection<Record> records = getSnapshotRecords(snapshot, lookupRecords(valueToRecordsMap, value),
+                                                              snapshot.getSavedRecordsWithValue(value), new RecordFilter() {
+                public boolean accept(Record record) {
+                    return matches(record, slot, facet, isTemplate) && record.getInternalValues().contains(value);
+                }
+            });
+            return getRecordFrames(records, Integer.MAX_VALUE);
+        }
         Set<Frame> frames = new HashSet<Frame>();
         Set<Record> records = lookupRecords(valueToRecordsMap, value);
         if (records != null) {
@@ -452,7 +887,8 @@ public class InMemoryFrameDb implements NarrowFrameStore {
     }
 
 
-    public Set<Frame> getFramesWithAnyValue(Slot slot, Facet facet, boolean isTemplate) {
+    public Set<Frame> getFramesWithAnyValue(final Slot slot, final Facet facet, final boolean isTemplate) {
+        indexPendingRecords();
         Set<Frame> frames = new HashSet<Frame>();
         Collection<Record> records;
         if (facet != null) {
@@ -460,6 +896,14 @@ public class InMemoryFrameDb implements NarrowFrameStore {
         } else {
             records = lookupRecords(slotToRecordsMap, slot);
         }
+        FrameDbSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            records = getSnapshotRecords(snapshot, records, snapshot.getSavedRecordsWithSlot(slot), new RecordFilter() {
+                public boolean accept(Record record) {
+                    return matches(record, slot, facet, isTemplate);
+                }
+            });
+        }
         if (records != null) {
             Iterator<Record> i = records.iterator();
             while (i.hasNext()) {
@@ -472,10 +916,22 @@ public class InMemoryFrameDb implements NarrowFrameStore {
         return frames;
     }
 
-    public Set<Frame> getMatchingFrames(Slot slot, Facet facet, boolean isTemplate, String value, int maxMatches) {
+    public Set<Frame> getMatchingFrames(final Slot slot, final Facet facet, final boolean isTemplate, String value, int maxMatches) {
+        indexPendingRecords();
         if (maxMatches < 1) {
             maxMatches = Integer.MAX_VALUE;
         }
+        FrameDbSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            final SimpleStringMatcher matcher = new SimpleStringMatcher(value);
+            Collection<Record> records = getSnapshotRecords(snapshot, slotToRecordsMap.get(slot),
+                                                              snapshot.getSavedRecordsWithSlot(slot), new RecordFilter() {
+                public boolean accept(Record record) {
+                    return matches(record, slot, facet, isTemplate) && containsMatch(record, matcher);
+                }
+            });
+            return getRecordFrames(records, maxMatches);
+        }
         Set<Frame> frames = new HashSet<Frame>();
         Iterator<Record> i = getMatchingRecords(value, FrameStore.UNLIMITED_MATCHES).iterator();
         while (i.hasNext() && frames.size() < maxMatches) {
@@ -487,13 +943,38 @@ public class InMemoryFrameDb implements NarrowFrameStore {
         return frames;
     }
 
-    public Set<Reference> getReferences(Object value) {
+    public Set<Reference> getReferences(final Object value) {
+        indexPendingRecords();
         Set<Record> records = lookupRecords(valueToRecordsMap, value);
+        FrameDbSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            records = new HashSet<Record>(getSnapshotRecords(snapshot, records, snapshot.getSavedRecordsWithValue(value), new RecordFilter() {
+                public boolean accept(Record record) {
+                    return record.getInternalValues().contains(value);
+                }
+            }));
+        }
         return recordsToReferences(records);
     }
 
     public Set<Reference> getMatchingReferences(String value, int maxMatches) {
-        Set<Record> records = getMatchingRecords(value, maxMatches);
+        indexPendingRecords();
+        Set<Record> records;
+        FrameDbSnapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            final SimpleStringMatcher matcher = new SimpleStringMatcher(value);
+            records = new HashSet<Record>();
+            Iterator<Record> i = getSnapshotRecords(snapshot, referenceToRecordMap.keySet(), snapshot.getSavedRecords(), new RecordFilter() {
+                public boolean accept(Record record) {
+                    return containsMatch(record, matcher);
+                }
+            }).iterator();
+            while (i.hasNext() && (maxMatches < 1 || records.size() < maxMatches)) {
+                records.add(i.next());
+            }
+        } else {
+            records = getMatchingRecords(value, maxMatches);
+        }
         return recordsToReferences(records);
     }
 
@@ -508,19 +989,31 @@ public class InMemoryFrameDb implements NarrowFrameStore {
     }
 
     public void deleteFrame(Frame frame) {
-        removeRecords(frameToRecordsMap, frame);
-        removeRecords(slotToRecordsMap, frame);
-        removeRecords(facetToRecordsMap, frame);
-        removeFrameValue(valueToRecordsMap, frame);
+        boolean locked = lockForChange();
+        try {
+            indexPendingRecords();
+            beforeChange(lookupRecords(frameToRecordsMap, frame));
+            beforeChange(lookupRecords(slotToRecordsMap, frame));
+            beforeChange(lookupRecords(facetToRecordsMap, frame));
+            beforeChange(lookupRecords(valueToRecordsMap, frame));
+            removeRecords(frameToRecordsMap, frame);
+            removeRecords(slotToRecordsMap, frame);
+            removeRecords(facetToRecordsMap, frame);
+            removeFrameValue(valueToRecordsMap, frame);
+        } finally {
+            unlockForChange(locked);
+        }
     }
 
     public void close() {
+        idToFrameMap.clear();
         referenceToRecordMap = null;
         frameToRecordsMap = null;
         slotToRecordsMap = null;
         facetToRecordsMap = null;
         valueToRecordsMap = null;
-        lookupRecord = null;
+        stringValueIndex = null;
+        pendingRecords = null;
     }
 
     public Set getClosure(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
@@ -528,19 +1021,30 @@ public class InMemoryFrameDb implements NarrowFrameStore {
     }
 
     public void replaceFrame(Frame frame) {
-        if (idToFrameMap.get(frame.getFrameID()) != null) {
-            idToFrameMap.put(frame.getFrameID(), frame);
-        }
-        replaceFrameKey(frameToRecordsMap, frame);
-        replaceFrameKey(slotToRecordsMap, frame);
-        replaceFrameKey(facetToRecordsMap, frame);
-        replaceFrameKey(valueToRecordsMap, frame);
+        boolean locked = lockForChange();
+        try {
+            indexPendingRecords();
+            beforeChange(lookupRecords(frameToRecordsMap, frame));
+            beforeChange(lookupRecords(slotToRecordsMap, frame));
+            beforeChange(lookupRecords(facetToRecordsMap, frame));
+            beforeChange(lookupRecords(valueToRecordsMap, frame));
+            beforeFrameChange(frame);
+            if (idToFrameMap.get(frame.getFrameID()) != null) {
+                idToFrameMap.put(frame);
+            }
+            replaceFrameKey(frameToRecordsMap, frame);
+            replaceFrameKey(slotToRecordsMap, frame);
+            replaceFrameKey(facetToRecordsMap, frame);
+            replaceFrameKey(valueToRecordsMap, frame);
 
-        Set<Record> records = valueToRecordsMap.get(frame);
-        if (records != null) {
-            for (Record record : records)  {
-                record.replaceFrameValue(frame);
+            Set<Record> records = valueToRecordsMap.get(frame);
+            if (records != null) {
+                for (Record record : records)  {
+                    record.replaceFrameValue(frame);
+                }
             }
+        } finally {
+            unlockForChange(locked);
         }
     }
 
@@ -572,43 +1076,54 @@ public class InMemoryFrameDb implements NarrowFrameStore {
       if (original.equals(replacement)) {
         return;
       }
-      if (idToFrameMap.containsKey(original.getFrameID())) {
-        idToFrameMap.remove(original.getFrameID());
-        idToFrameMap.put(replacement.getFrameID(),  replacement);
-      }
+      boolean locked = lockForChange();
+      try {
+          indexPendingRecords();
+          beforeFrameChange(replacement);
+          beforeChange(lookupRecords(frameToRecordsMap, original));
+          beforeChange(lookupRecords(slotToRecordsMap, original));
+          beforeChange(lookupRecords(facetToRecordsMap, original));
+          beforeChange(lookupRecords(valueToRecordsMap, original));
+          if (idToFrameMap.containsKey(original.getFrameID())) {
+            idToFrameMap.remove(original.getFrameID());
+            idToFrameMap.put(replacement);
+          }
 
-      Set<Record> recordsToChange = new HashSet<Record>();
-      if (frameToRecordsMap.get(original) != null) {
-        for (Record r : frameToRecordsMap.get(original)) {
-          recordsToChange.add(r);
-        }
-      }
-      if (slotToRecordsMap.get(original) != null) {
-        for (Record r : slotToRecordsMap.get(original)) {
-          recordsToChange.add(r);
-        }
-      }
-      if (facetToRecordsMap.get(original) != null) {
-        for (Record r : facetToRecordsMap.get(original)) {
-          recordsToChange.add(r);
-        }
-      }
-      replaceRecords(original, replacement, recordsToChange);
-
-      if (valueToRecordsMap.get(original) != null) {
-        for (Record r : valueToRecordsMap.get(original)) {
-          List values = r.getValues();
-          int index;
-          while ((index = values.indexOf(original)) != -1) {
-            values.remove(index);
-            values.add(index, replacement);
+          Set<Record> recordsToChange = new HashSet<Record>();
+          if (frameToRecordsMap.get(original) != null) {
+            for (Record r : frameToRecordsMap.get(original)) {
+              recordsToChange.add(r);
+            }
           }
-          r.setValues(values);
-        }
-        valueToRecordsMap.put(replacement, valueToRecordsMap.get(original));
-        valueToRecordsMap.remove(original);
+          if (slotToRecordsMap.get(original) != null) {
+            for (Record r : slotToRecordsMap.get(original)) {
+              recordsToChange.add(r);
+            }
+          }
+          if (facetToRecordsMap.get(original) != null) {
+            for (Record r : facetToRecordsMap.get(original)) {
+              recordsToChange.add(r);
+            }
+          }
+          replaceRecords(original, replacement, recordsToChange);
+
+          if (valueToRecordsMap.get(original) != null) {
+            for (Record r : valueToRecordsMap.get(original)) {
+              List values = new ArrayList(r.getValues());
+              int index;
+              while ((index = values.indexOf(original)) != -1) {
+                values.remove(index);
+                values.add(index, replacement);
+              }
+              r.setValues(values);
+            }
+            valueToRecordsMap.put(replacement, valueToRecordsMap.get(original));
+            valueToRecordsMap.remove(original);
+          }
+          deleteFrame(original);
+      } finally {
+        unlockForChange(locked);
       }
-      deleteFrame(original);
     }
 
 
@@ -7,13 +7,22 @@ import edu.stanford.smi.protege.model.Project;
 
 public class InMemoryFrameStore extends SimpleFrameStore {
     public InMemoryFrameStore(KnowledgeBase kb) {
+        this(kb, new InMemoryFrameDb(getName(kb)));
+    }
+
+    /**
+     * Creates an in memory frame store whose user frames are kept in the given narrow frame
+     * store (e.g. an InMemoryFrameDb or a CompactFrameDb).  The system frames are always kept
+     * in the system frame store of the merging frame store.
+     */
+    public InMemoryFrameStore(KnowledgeBase kb, NarrowFrameStore activeFrameStore) {
         super(kb, buildNarrowFrameStore(kb));
         addSystemFrames();
         NarrowFrameStore mfs;
         for (mfs = getHelper(); !(mfs instanceof MergingNarrowFrameStore); mfs = mfs.getDelegate()) {
         	;
         }
-        ((MergingNarrowFrameStore) mfs).addActiveFrameStore(new InMemoryFrameDb(getName(kb)));
+        ((MergingNarrowFrameStore) mfs).addActiveFrameStore(activeFrameStore);
     }
     
     private static NarrowFrameStore buildNarrowFrameStore(KnowledgeBase kb) {
@@ -0,0 +1,117 @@
+package edu.stanford.smi.protege.model.framestore;
+
+/**
+ * A map from int keys to growable lists of ints.  This is used for the secondary indexes
+ * of the CompactFrameDb where the keys are frame or value ids and the list elements are
+ * record ids.  Order within a list is not significant: removal moves the last element
+ * into the hole so callers that keep back pointers must be told which element moved.
+ */
+class IntPostings {
+    private static final int[] EMPTY = new int[0];
+
+    private int[][] lists = new int[64][];
+    private int[] sizes = new int[64];
+
+    private void ensureKey(int key) {
+        if (key >= lists.length) {
+            int newLength = Math.max(key + 1, lists.length * 2);
+            int[][] newLists = new int[newLength][];
+            System.arraycopy(lists, 0, newLists, 0, lists.length);
+            lists = newLists;
+            int[] newSizes = new int[newLength];
+            System.arraycopy(sizes, 0, newSizes, 0, sizes.length);
+            sizes = newSizes;
+        }
+    }
+
+    /**
+     * @return the position at which the value was stored
+     */
+    public int add(int key, int value) {
+        ensureKey(key);
+        int[] list = lists[key];
+        int size = sizes[key];
+        if (list == null) {
+            list = new int[2];
+            lists[key] = list;
+        } else if (size == list.length) {
+            list = IdTable.grow(list);
+            lists[key] = list;
+        }
+        list[size] = value;
+        sizes[key] = size + 1;
+        return size;
+    }
+
+    /**
+     * Removes the element at the given position.
+     *
+     * @return the element that was moved into that position or -1 if no element was moved.
+     */
+    public int removeAt(int key, int position) {
+        int last = --sizes[key];
+        int[] list = lists[key];
+        int moved = -1;
+        if (position != last) {
+            moved = list[last];
+            list[position] = moved;
+        }
+        if (last == 0) {
+            lists[key] = null;
+        }
+        return moved;
+    }
+
+    public int size(int key) {
+        return key < 0 || key >= sizes.length ? 0 : sizes[key];
+    }
+
+    public int get(int key, int position) {
+        return lists[key][position];
+    }
+
+    public void set(int key, int position, int value) {
+        lists[key][position] = value;
+    }
+
+    /**
+     * @return a copy of the list for the key.  Callers iterate over the copy when they
+     * intend to modify the postings.
+     */
+    public int[] toArray(int key) {
+        int size = size(key);
+        if (size == 0) {
+            return EMPTY;
+        }
+        int[] copy = new int[size];
+        System.arraycopy(lists[key], 0, copy, 0, size);
+        return copy;
+    }
+
+    public void truncate(int key, int size) {
+        sizes[key] = size;
+        if (size == 0) {
+            lists[key] = null;
+        }
+    }
+
+    public void clear(int key) {
+        if (key < lists.length) {
+            lists[key] = null;
+            sizes[key] = 0;
+        }
+    }
+
+    /**
+     * @return an estimate of the bytes used by the lists.
+     */
+    public long getAllocatedBytes() {
+        long bytes = 16L + 4L * lists.length + 16L + 4L * sizes.length;
+        for (int[] list : lists) {
+            if (list != null) {
+                bytes += 16L + 4L * list.length;
+            }
+        }
+        return bytes;
+    }
+}
@@ -3,10 +3,13 @@ package edu.stanford.smi.protege.model.framestore;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -37,7 +40,7 @@ import edu.stanford.smi.protege.util.transaction.TransactionMonitor;
  *
  * @author Ray Fergerson <fergerson@smi.stanford.edu>
  */
-public class MergingNarrowFrameStore implements NarrowFrameStore {
+public class MergingNarrowFrameStore implements NarrowFrameStore, BulkLoadable {
     private static Logger log = Log.getLogger(MergingNarrowFrameStore.class);
 
     private final Object kbLock;
@@ -49,6 +52,11 @@ public class MergingNarrowFrameStore implements NarrowFrameStore {
                                 = new LinkedHashSet<NarrowFrameStore>();
     private final Collection<NarrowFrameStore> availableFrameStores
                                = new LinkedHashSet<NarrowFrameStore>();
+    /*
+     * The available frame stores as an array so that the value queries can go through
+     * them without allocating an iterator.
+     */
+    private NarrowFrameStore[] availableFrameStoreArray = new NarrowFrameStore[0];
     private NarrowFrameStore topFrameStore;
     private final NarrowFrameStore systemFrameStore;
 
@@ -214,6 +222,7 @@ public class MergingNarrowFrameStore implements NarrowFrameStore {
     public void removeFrameStore(NarrowFrameStore frameStore) {
         frameStoreTree.removeNode(frameStore);
         availableFrameStores.remove(frameStore);
+        updateAvailableFrameStoreArray();
         removeFrameStores.remove(frameStore);
         if (log.isLoggable(Level.FINE)) {
             log.fine("removing frame store " + frameStore);
@@ -290,9 +299,14 @@ public class MergingNarrowFrameStore implements NarrowFrameStore {
         } else {
             availableFrameStores.addAll(frameStoreTree.getNodeAndDescendents(getTopFrameStore()));
         }
+        updateAvailableFrameStoreArray();
         checkAvailable();
     }
 
+    private void updateAvailableFrameStoreArray() {
+        availableFrameStoreArray = availableFrameStores.toArray(new NarrowFrameStore[availableFrameStores.size()]);
+    }
+
     private void checkAvailable() {
         Iterator<NarrowFrameStore> i = availableFrameStores.iterator();
         while (i.hasNext()) {
@@ -400,19 +414,24 @@ public class MergingNarrowFrameStore implements NarrowFrameStore {
     @SuppressWarnings("unchecked")
     private List getValues(Frame frame, Slot slot, Facet facet, boolean isTemplate, boolean skipActive) {
         Collection values = null;
-        Iterator<NarrowFrameStore> i = availableFrameStores.iterator();
-        while (i.hasNext()) {
-            NarrowFrameStore fs = i.next();
+        boolean isShared = false;
+        for (NarrowFrameStore fs : availableFrameStoreArray) {
             if (fs != activeFrameStore || !skipActive) {
                 List fsValues = fs.getValues(frame, slot, facet, isTemplate);
                 if (!fsValues.isEmpty()) {
                     if (values == null && !suppressDuplicates) {
                         values = fsValues;
+                        isShared = true;
                     }
                     else if (values == null && suppressDuplicates) {
                         values = new LinkedHashSet(fsValues);
                     }
                     else {
+                        // the list from a frame store may be shared and unmodifiable
+                        if (isShared) {
+                            values = new ArrayList(values);
+                            isShared = false;
+                        }
                         values.addAll(fsValues);
                     }
                 }
@@ -429,9 +448,7 @@ public class MergingNarrowFrameStore implements NarrowFrameStore {
 
     public int getValuesCount(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
         int count = 0;
-        Iterator<NarrowFrameStore> i = availableFrameStores.iterator();
-        while (i.hasNext()) {
-            NarrowFrameStore fs = i.next();
+        for (NarrowFrameStore fs : availableFrameStoreArray) {
             count += fs.getValuesCount(frame, slot, facet, isTemplate);
         }
         return count;
@@ -578,14 +595,42 @@ public class MergingNarrowFrameStore implements NarrowFrameStore {
 
     }
 
+    /**
+     * Each frame store computes the closure of its own values (a database frame store does this
+     * with a few queries).  A frame that is reached through one frame store may have values in
+     * another, so every frame of the closure is also looked up in the frame stores that have not
+     * already reached it.
+     */
     public Set getClosure(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
-        Set frames = new HashSet();
-        Iterator<NarrowFrameStore> i = availableFrameStores.iterator();
-        while (i.hasNext()) {
-            NarrowFrameStore fs = i.next();
-            frames.addAll(fs.getClosure(frame, slot, facet, isTemplate));
+        NarrowFrameStore[] frameStores = availableFrameStoreArray;
+        Set closure = new LinkedHashSet();
+        Map<NarrowFrameStore, Set<Frame>> expandedFrames = new HashMap<NarrowFrameStore, Set<Frame>>();
+        for (NarrowFrameStore fs : frameStores) {
+            expandedFrames.put(fs, new HashSet<Frame>());
+        }
+        LinkedList<Frame> pending = new LinkedList<Frame>();
+        pending.add(frame);
+        while (!pending.isEmpty()) {
+            Frame pendingFrame = pending.removeFirst();
+            for (NarrowFrameStore fs : frameStores) {
+                Set<Frame> expanded = expandedFrames.get(fs);
+                if (!expanded.add(pendingFrame)) {
+                    continue;
+                }
+                for (Object value : fs.getClosure(pendingFrame, slot, facet, isTemplate)) {
+                    if (value instanceof Frame) {
+                        // the closure in this frame store already includes the values of value
+                        expanded.add((Frame) value);
+                        if (closure.add(value)) {
+                            pending.add((Frame) value);
+                        }
+                    } else {
+                        closure.add(value);
+                    }
+                }
+            }
         }
-        return frames;
+        return closure;
     }
 
     public void deleteFrame(Frame frame) {
@@ -599,6 +644,7 @@ public class MergingNarrowFrameStore implements NarrowFrameStore {
             fs.close();
         }
         availableFrameStores.clear();
+        updateAvailableFrameStoreArray();
     }
 
     public void replaceFrame(Frame frame) {
@@ -644,5 +690,19 @@ public class MergingNarrowFrameStore implements NarrowFrameStore {
         nfs.replaceFrame(original, replacement);
       }
     }
+
+    public void beginBulkLoad() {
+        NarrowFrameStore delegate = getDelegate();
+        if (delegate instanceof BulkLoadable) {
+            ((BulkLoadable) delegate).beginBulkLoad();
+        }
+    }
+
+    public void endBulkLoad() {
+        NarrowFrameStore delegate = getDelegate();
+        if (delegate instanceof BulkLoadable) {
+            ((BulkLoadable) delegate).endBulkLoad();
+        }
+    }
 }
 
@@ -0,0 +1,192 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import edu.stanford.smi.protege.model.Frame;
+
+/**
+ * The cache behind the CallCachingFrameStore.  Entries are kept in access order and the
+ * least recently used entries are evicted when either the number of entries or the total
+ * weight goes over its limit.  The weight of an entry is one plus the size of the result
+ * if the result is a collection.
+ * <p>
+ * An entry can be put with the frames that it depends on.  Such an entry is only dropped
+ * by invalidate() for one of those frames (or by eviction or clear()).  An entry put
+ * without frames depends on the whole knowledge base and is dropped by every invalidation.
+ * <p>
+ * All methods are synchronized because queries may fill in the cache concurrently.
+ */
+class MethodCallCache {
+    private final int maxSize;
+    private final long maxWeight;
+
+    private final LinkedHashMap<MethodCall, Entry> entries = new LinkedHashMap<MethodCall, Entry>(1024, 0.75f, true);
+    private final Map<Frame, Set<MethodCall>> frameToCalls = new HashMap<Frame, Set<MethodCall>>();
+    private final Set<MethodCall> globalCalls = new HashSet<MethodCall>();
+    private final MethodCall lookupCall = new MethodCall();
+    private long weight;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long invalidationCount;
+
+    private static class Entry {
+        final Object value;
+        final int weight;
+        final Frame[] frames;
+
+        Entry(Object value, int weight, Frame[] frames) {
+            this.value = value;
+            this.weight = weight;
+            this.frames = frames;
+        }
+    }
+
+    /**
+     * @param maxSize the maximum number of entries
+     * @param maxWeight the maximum total weight of the entries or 0 for no limit
+     */
+    MethodCallCache(int maxSize, long maxWeight) {
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * @return the cached result or null if there is none.  Each call counts as either a hit
+     * or a miss.
+     */
+    public synchronized Object get(Method method, Object[] args) {
+        lookupCall.set(method, args);
+        Entry entry = entries.get(lookupCall);
+        if (entry == null) {
+            ++missCount;
+            return null;
+        }
+        ++hitCount;
+        return entry.value;
+    }
+
+    /**
+     * @param frames the frames that the result depends on or null if it may depend on anything.
+     */
+    public synchronized void put(MethodCall call, Object value, Frame[] frames) {
+        Entry entry = new Entry(value, getWeight(value), frames);
+        remove(call, entries.put(call, entry));
+        weight += entry.weight;
+        if (frames == null) {
+            globalCalls.add(call);
+        } else {
+            for (Frame frame : frames) {
+                Set<MethodCall> calls = frameToCalls.get(frame);
+                if (calls == null) {
+                    calls = new HashSet<MethodCall>();
+                    frameToCalls.put(frame, calls);
+                }
+                calls.add(call);
+            }
+        }
+        evict();
+    }
+
+    private static int getWeight(Object value) {
+        return (value instanceof Collection) ? 1 + ((Collection) value).size() : 1;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<MethodCall, Entry>> i = entries.entrySet().iterator();
+        while (i.hasNext() && (entries.size() > maxSize || (maxWeight > 0 && weight > maxWeight))) {
+            Map.Entry<MethodCall, Entry> eldest = i.next();
+            i.remove();
+            remove(eldest.getKey(), eldest.getValue());
+            ++evictionCount;
+        }
+    }
+
+    /*
+     * Removes the index entries and weight of an entry that is no longer in the map.
+     */
+    private void remove(MethodCall call, Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        weight -= entry.weight;
+        if (entry.frames == null) {
+            globalCalls.remove(call);
+        } else {
+            for (Frame frame : entry.frames) {
+                Set<MethodCall> calls = frameToCalls.get(frame);
+                if (calls != null) {
+                    calls.remove(call);
+                    if (calls.isEmpty()) {
+                        frameToCalls.remove(frame);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the entries that depend on any of the given frames and all of the entries that
+     * were put without frames.
+     */
+    public synchronized void invalidate(Collection<Frame> frames) {
+        for (Frame frame : frames) {
+            Set<MethodCall> calls = frameToCalls.get(frame);
+            if (calls != null) {
+                for (MethodCall call : calls.toArray(new MethodCall[calls.size()])) {
+                    remove(call, entries.remove(call));
+                    ++invalidationCount;
+                }
+            }
+        }
+        for (MethodCall call : globalCalls.toArray(new MethodCall[globalCalls.size()])) {
+            remove(call, entries.remove(call));
+            ++invalidationCount;
+        }
+    }
+
+    public synchronized void clear() {
+        invalidationCount += entries.size();
+        entries.clear();
+        frameToCalls.clear();
+        globalCalls.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    public String toString() {
+        return "MethodCallCache(size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + ")";
+    }
+}
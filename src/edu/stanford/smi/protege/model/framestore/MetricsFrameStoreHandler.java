@@ -0,0 +1,219 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import edu.stanford.smi.protege.model.query.Query;
+import edu.stanford.smi.protege.model.query.QueryCallback;
+import edu.stanford.smi.protege.util.Log;
+import edu.stanford.smi.protege.util.StringUtilities;
+
+/**
+ * Records the calls made to one frame store in the chain.  The FrameStoreManager puts
+ * one of these in front of each frame store while metrics are enabled (see
+ * FrameStoreMetrics).
+ * <p>
+ * Each call is timed and, if allocation tracking is on, the bytes allocated by the calling
+ * thread are measured.  The time and bytes of the calls that reach the next metrics
+ * frame store are subtracted so that what is left is what the wrapped frame store itself
+ * added.  The overhead of the wrapper (a reflective call and a few atomic additions) is
+ * counted against the frame store in front of it.
+ */
+public class MetricsFrameStoreHandler extends AbstractFrameStoreInvocationHandler {
+    private static final int CALL_COUNT = 0;
+    private static final int TOTAL_NANOS = 1;
+    private static final int SELF_NANOS = 2;
+    private static final int ALLOCATED_BYTES = 3;
+
+    private static Method executeQueryMethod;
+    static {
+        try {
+            executeQueryMethod = FrameStore.class.getMethod("executeQuery", new Class[] { Query.class,
+                    QueryCallback.class });
+        } catch (Exception e) {
+            Log.getLogger().warning("Non-fatal Problem encountered finding executeQuery method - contact developers");
+        }
+    }
+
+    /*
+     * The time and bytes of the calls made by the current call to the next metrics frame
+     * store down the chain.
+     */
+    private static final ThreadLocal<long[]> nestedCosts = new ThreadLocal<long[]>() {
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+
+    private final String frameStoreName;
+    private final FrameStoreMetrics metrics;
+    private final ConcurrentHashMap<Method, MethodMetrics> methodMetrics = new ConcurrentHashMap<Method, MethodMetrics>();
+
+    private static class MethodMetrics {
+        final StripedCounters counters = new StripedCounters(4);
+        final LatencyHistogram selfLatency = new LatencyHistogram();
+    }
+
+    public MetricsFrameStoreHandler(String frameStoreName, FrameStoreMetrics metrics) {
+        this.frameStoreName = frameStoreName;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return a frame store that records the calls to the given frame store.  Its delegate
+     * still has to be set.
+     */
+    public static FrameStore newInstance(FrameStore frameStore, FrameStoreMetrics metrics) {
+        MetricsFrameStoreHandler handler = new MetricsFrameStoreHandler(getName(frameStore), metrics);
+        return (FrameStore) Proxy.newProxyInstance(MetricsFrameStoreHandler.class.getClassLoader(),
+                                                   new Class[] { FrameStore.class }, handler);
+    }
+
+    /**
+     * @return the handler if the frame store is a metrics frame store and null otherwise.
+     */
+    public static MetricsFrameStoreHandler getHandler(FrameStore frameStore) {
+        if (frameStore != null && Proxy.isProxyClass(frameStore.getClass())) {
+            Object handler = Proxy.getInvocationHandler(frameStore);
+            if (handler instanceof MetricsFrameStoreHandler) {
+                return (MetricsFrameStoreHandler) handler;
+            }
+        }
+        return null;
+    }
+
+    private static String getName(FrameStore frameStore) {
+        Object o = frameStore;
+        if (Proxy.isProxyClass(frameStore.getClass())) {
+            o = Proxy.getInvocationHandler(frameStore);
+        }
+        return StringUtilities.getClassName(o);
+    }
+
+    public String getFrameStoreName() {
+        return frameStoreName;
+    }
+
+    public Object handleInvoke(Method method, Object[] args) {
+        MethodMetrics m = methodMetrics.get(method);
+        if (m == null) {
+            MethodMetrics newMetrics = new MethodMetrics();
+            m = methodMetrics.putIfAbsent(method, newMetrics);
+            if (m == null) {
+                m = newMetrics;
+            }
+        }
+        long[] nested = nestedCosts.get();
+        long outerNanos = nested[0];
+        long outerBytes = nested[1];
+        nested[0] = 0;
+        nested[1] = 0;
+        boolean trackAllocation = metrics.isAllocationTrackingEnabled();
+        long startBytes = trackAllocation ? AllocationMeter.getAllocatedBytes() : 0;
+        long start = System.nanoTime();
+        try {
+            return invoke(method, args);
+        } finally {
+            long nanos = System.nanoTime() - start;
+            long bytes = trackAllocation ? AllocationMeter.getAllocatedBytes() - startBytes : 0;
+            long selfNanos = nanos - nested[0];
+            int stripe = m.counters.getStripe();
+            m.counters.add(stripe, CALL_COUNT, 1);
+            m.counters.add(stripe, TOTAL_NANOS, nanos);
+            m.counters.add(stripe, SELF_NANOS, selfNanos);
+            m.counters.add(stripe, ALLOCATED_BYTES, bytes - nested[1]);
+            m.selfLatency.record(selfNanos);
+            nested[0] = outerNanos + nanos;
+            nested[1] = outerBytes + bytes;
+        }
+    }
+
+    protected void executeQuery(Query q, QueryCallback qc) {
+        handleInvoke(executeQueryMethod, new Object[] { q, qc });
+    }
+
+    /**
+     * @return the metrics of each method that has been called since the last reset.
+     */
+    public List<FrameStoreMethodMetrics> getMethodMetrics() {
+        List<FrameStoreMethodMetrics> result = new ArrayList<FrameStoreMethodMetrics>();
+        for (Map.Entry<Method, MethodMetrics> entry : methodMetrics.entrySet()) {
+            MethodMetrics m = entry.getValue();
+            long callCount = m.counters.sum(CALL_COUNT);
+            if (callCount > 0) {
+                LatencyHistogram h = m.selfLatency;
+                result.add(new FrameStoreMethodMetrics(frameStoreName, getSignature(entry.getKey()), callCount,
+                                                       m.counters.sum(TOTAL_NANOS), m.counters.sum(SELF_NANOS),
+                                                       m.counters.sum(ALLOCATED_BYTES), h.getValueAtPercentile(50),
+                                                       h.getValueAtPercentile(90), h.getValueAtPercentile(99),
+                                                       h.getMax()));
+            }
+        }
+        return result;
+    }
+
+    private static String getSignature(Method method) {
+        StringBuffer buffer = new StringBuffer(method.getName());
+        buffer.append('(');
+        Class[] types = method.getParameterTypes();
+        for (int i = 0; i < types.length; ++i) {
+            if (i > 0) {
+                buffer.append(", ");
+            }
+            buffer.append(StringUtilities.getClassName(types[i]));
+        }
+        buffer.append(')');
+        return buffer.toString();
+    }
+
+    public void reset() {
+        for (MethodMetrics m : methodMetrics.values()) {
+            m.counters.reset();
+            m.selfLatency.reset();
+        }
+    }
+
+    public String toString() {
+        return "MetricsFrameStoreHandler(" + frameStoreName + ")";
+    }
+
+    /*
+     * The bytes allocated by the current thread as reported by the HotSpot extension of
+     * the ThreadMXBean.  In a separate class so that nothing breaks on a VM without it.
+     */
+    static class AllocationMeter {
+        private static final com.sun.management.ThreadMXBean threadBean = getThreadBean();
+
+        private static com.sun.management.ThreadMXBean getThreadBean() {
+            try {
+                Object bean = ManagementFactory.getThreadMXBean();
+                if (bean instanceof com.sun.management.ThreadMXBean) {
+                    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+                    if (threadBean.isThreadAllocatedMemorySupported()) {
+                        threadBean.setThreadAllocatedMemoryEnabled(true);
+                        return threadBean;
+                    }
+                }
+            } catch (Throwable t) {
+                if (Log.getLogger().isLoggable(Level.FINE)) {
+                    Log.getLogger().log(Level.FINE, "Allocation tracking is not available", t);
+                }
+            }
+            return null;
+        }
+
+        static boolean isSupported() {
+            return threadBean != null;
+        }
+
+        static long getAllocatedBytes() {
+            return threadBean == null ? 0 : threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+}
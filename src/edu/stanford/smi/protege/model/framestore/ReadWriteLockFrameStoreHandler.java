@@ -0,0 +1,72 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import edu.stanford.smi.protege.model.query.Query;
+import edu.stanford.smi.protege.model.query.QueryCallback;
+
+/**
+ * Serializes access to the frame store chain with a read/write lock instead of the
+ * knowledge base monitor.  Queries from any number of threads run concurrently
+ * under the read lock while modifications and transactions take the write lock.
+ * <p>
+ * This frame store is disabled by default.  It is enabled by
+ * DefaultKnowledgeBase.setReadWriteLockingEnabled() and it only makes sense for
+ * in-memory knowledge bases whose read path is safe for concurrent readers.
+ */
+public class ReadWriteLockFrameStoreHandler extends AbstractFrameStoreInvocationHandler {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ReentrantReadWriteLock getLock() {
+        return lock;
+    }
+
+    /*
+     * getEvents() removes the events that it returns so it is really a modification.
+     */
+    private static boolean isReadOnly(Method method) {
+        return isQuery(method) && !method.getName().equals("getEvents");
+    }
+
+    public Object handleInvoke(Method method, Object[] args) {
+        if (isReadOnly(method)) {
+            lock.readLock().lock();
+            try {
+                return invoke(method, args);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        lockForWrite();
+        try {
+            return invoke(method, args);
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    /**
+     * Acquires the write lock.  A ReentrantReadWriteLock cannot be upgraded so a
+     * thread that already holds the read lock would wait for itself forever.
+     */
+    public void lockForWrite() {
+        if (lock.getReadHoldCount() > 0) {
+            throw new IllegalStateException("Cannot modify the knowledge base while holding the read lock");
+        }
+        lock.writeLock().lock();
+    }
+
+    public void unlockForWrite() {
+        lock.writeLock().unlock();
+    }
+
+    public void executeQuery(Query q, QueryCallback qc) {
+        lock.readLock().lock();
+        try {
+            getDelegate().executeQuery(q, qc);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -15,9 +15,20 @@ public class Record {
     private Slot slot;
     private Facet facet;
     private boolean isTemplate;
-    private List values;
     private int hashCode;
 
+    /*
+     * The values are kept in an array that is shared with the ValueList handed out by
+     * getValues().  Appending writes past the end of any list that has been handed out so
+     * it is done in place.  Any other change copies the array first if a list has been
+     * handed out for it (copy on write), so a list handed out never changes.
+     */
+    private Object[] values;
+    private int size;
+    private List view;
+    private boolean shared;
+    private boolean indexPending;
+
     public Record(Frame frame, Slot slot, Facet facet, boolean isTemplate, Collection values) {
         set(frame, slot, facet, isTemplate);
         setValues(values);
@@ -34,6 +45,15 @@ public class Record {
         this.hashCode = HashUtils.getHash(frame, slot, facet, isTemplate);
     }
 
+    /*
+     * Drops the references held by a lookup record.
+     */
+    void clear() {
+        this.frame = null;
+        this.slot = null;
+        this.facet = null;
+    }
+
     public int hashCode() {
         return hashCode;
     }
@@ -54,34 +74,92 @@ public class Record {
         return isTemplate;
     }
 
+    /**
+     * Same as getValues().  Kept for the callers in this package that only read the values.
+     */
     public List getInternalValues() {
-        //ESCA-JAVA0259 
-        return values;
+        return getValues();
     }
 
     public int getValueCount() {
-        return values.size();
+        return size;
     }
 
+    /**
+     * @return an unmodifiable list of the values.  The list is shared between the callers
+     * and is not affected by later changes to the record, so it is safe to hold on to it.
+     */
     public List getValues() {
-        return (values.isEmpty()) ? Collections.EMPTY_LIST : new ArrayList(values);
+        if (size == 0) {
+            return Collections.EMPTY_LIST;
+        }
+        if (view == null) {
+            view = new ValueList(values, size);
+            shared = true;
+        }
+        return view;
     }
 
     public void setValues(Collection values) {
-        this.values = new ArrayList(values);
+        this.values = values.toArray();
+        this.size = this.values.length;
+        this.view = null;
+        this.shared = false;
     }
 
     public void addValue(Object o) {
-        values.add(o);
+        if (size == values.length) {
+            Object[] newValues = new Object[Math.max(4, size + (size >> 1) + 1)];
+            System.arraycopy(values, 0, newValues, 0, size);
+            values = newValues;
+            shared = false;
+        }
+        values[size++] = o;
+        view = null;
     }
 
     public boolean removeValue(Object o) {
-        return values.remove(o);
+        int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        prepareForChange();
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        values[--size] = null;
+        return true;
     }
 
     public void moveValue(int from, int to) {
-        Object value = values.remove(from);
-        values.add(to, value);
+        if (from < 0 || from >= size || to < 0 || to >= size) {
+            throw new IndexOutOfBoundsException("from: " + from + ", to: " + to + ", size: " + size);
+        }
+        prepareForChange();
+        Object value = values[from];
+        if (from < to) {
+            System.arraycopy(values, from + 1, values, from, to - from);
+        } else {
+            System.arraycopy(values, to, values, to + 1, from - to);
+        }
+        values[to] = value;
+    }
+
+    private int indexOf(Object o) {
+        for (int i = 0; i < size; ++i) {
+            if (o == null ? values[i] == null : o.equals(values[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void prepareForChange() {
+        if (shared) {
+            Object[] newValues = new Object[values.length];
+            System.arraycopy(values, 0, newValues, 0, size);
+            values = newValues;
+            shared = false;
+        }
+        view = null;
     }
 
     @SuppressWarnings("unchecked")
@@ -98,17 +176,27 @@ public class Record {
     }
 
     public void replaceFrameValue(Frame replacementFrame) {
-        ListIterator i = values.listIterator();
-        while (i.hasNext()) {
-            Object o = i.next();
-            if (replacementFrame.equals(o)) {
-                i.set(replacementFrame);
+        for (int i = 0; i < size; ++i) {
+            if (replacementFrame.equals(values[i])) {
+                prepareForChange();
+                values[i] = replacementFrame;
             }
         }
     }
 
+    /*
+     * Set by the InMemoryFrameDb while the record is not yet in its indexes (bulk load).
+     */
+    boolean isIndexPending() {
+        return indexPending;
+    }
+
+    void setIndexPending(boolean indexPending) {
+        this.indexPending = indexPending;
+    }
+
     public boolean isEmpty() {
-        return values.isEmpty();
+        return size == 0;
     }
     
     public String toString() {
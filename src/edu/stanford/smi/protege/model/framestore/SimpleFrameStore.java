@@ -377,7 +377,14 @@ public class SimpleFrameStore implements FrameStore {
     }
 
     private static List unmodifiableList(List list) {
-        return list == null ? Collections.EMPTY_LIST : Collections.unmodifiableList(list);
+        if (list == null) {
+            return Collections.EMPTY_LIST;
+        }
+        // value lists from the in-memory frame db are already unmodifiable and shared
+        if (list instanceof ValueList || list == Collections.EMPTY_LIST) {
+            return list;
+        }
+        return Collections.unmodifiableList(list);
     }
 
     private static Collection unmodifiableCollection(Collection collection) {
@@ -395,12 +402,22 @@ public class SimpleFrameStore implements FrameStore {
         return values;
     }
 
+    /*
+     * Queries can run concurrently under a read lock (see ReadWriteLockFrameStoreHandler)
+     * and this query fills in the name cache.  Modifications are exclusive so only the
+     * cache accesses made here need the lock.
+     */
     public Frame getFrame(String name) {
-        Frame frame = nameToFrameMap.get(name);
+        Frame frame;
+        synchronized (nameToFrameMap) {
+            frame = nameToFrameMap.get(name);
+        }
         if (frame == null) {
         	frame = getFrame(new FrameID(name));
             if (frame != null) {
-                nameToFrameMap.put(name, frame);
+                synchronized (nameToFrameMap) {
+                    nameToFrameMap.put(name, frame);
+                }
             }
         }
         return frame;
@@ -905,7 +922,7 @@ public class SimpleFrameStore implements FrameStore {
 
     public List getDirectTemplateSlotValues(Cls cls, Slot slot) {
         // return getValues(cls, slot, null, true);
-        return getValues(cls, slot, _systemFrames.getValuesFacet(), true);
+        return unmodifiableList(getValues(cls, slot, _systemFrames.getValuesFacet(), true));
     }
 
     public void setDirectTemplateSlotValues(Cls cls, Slot slot, Collection values) {
@@ -914,7 +931,7 @@ public class SimpleFrameStore implements FrameStore {
     }
 
     public List getDirectTemplateFacetValues(Cls cls, Slot slot, Facet facet) {
-        return getValues(cls, slot, facet, true);
+        return unmodifiableList(getValues(cls, slot, facet, true));
     }
 
     private Slot getAssociatedSlot(Facet facet) {
@@ -0,0 +1,51 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.locks.Lock;
+
+import edu.stanford.smi.protege.model.query.Query;
+import edu.stanford.smi.protege.model.query.QueryCallback;
+
+/**
+ * The front of the frame store chain that a thread with an active FrameDbSnapshot sees.
+ * The chain has none of the caches of the knowledge base, which hold the current state,
+ * and it only allows queries.  Each query holds the read lock of the frame db so that it
+ * never sees a change half made by a writer on another thread.
+ */
+public class SnapshotFrameStoreHandler extends AbstractFrameStoreInvocationHandler {
+    private final Lock readLock;
+
+    private SnapshotFrameStoreHandler(Lock readLock) {
+        this.readLock = readLock;
+    }
+
+    public static FrameStore newInstance(FrameStore delegate, Lock readLock) {
+        FrameStore frameStore = (FrameStore) Proxy.newProxyInstance(SnapshotFrameStoreHandler.class.getClassLoader(),
+                                                                    new Class[] { FrameStore.class },
+                                                                    new SnapshotFrameStoreHandler(readLock));
+        frameStore.setDelegate(delegate);
+        return frameStore;
+    }
+
+    public Object handleInvoke(Method method, Object[] args) {
+        if (!isQuery(method)) {
+            throw new IllegalStateException("Modification of the knowledge base by a thread with an active snapshot");
+        }
+        readLock.lock();
+        try {
+            return invoke(method, args);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public void executeQuery(Query q, QueryCallback qc) {
+        readLock.lock();
+        try {
+            getDelegate().executeQuery(q, qc);
+        } finally {
+            readLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.stanford.smi.protege.util.SimpleStringMatcher;
+
+/**
+ * A trigram index over a set of strings that finds the strings matching a
+ * SimpleStringMatcher pattern without testing every string.
+ * <p>
+ * Each string is folded to lower case (ASCII only, like the case insensitive matching of
+ * SimpleStringMatcher) and padded with two start and two end markers, so that the
+ * trigrams that contain a marker index the prefixes and suffixes.  The literal parts of a
+ * pattern (the parts between the wildcards) are padded in the same way where the pattern
+ * is anchored and the strings in the shortest posting list of their trigrams are the
+ * candidates.  Each candidate is then checked with the matcher, so the index only has to
+ * find a superset of the matches.
+ * <p>
+ * Removed strings are not taken out of the posting lists; their ids are just marked free.
+ * A posting that refers to a freed (or reused) id is weeded out by the check against the
+ * matcher.  The posting lists are rebuilt once there are more stale postings than live
+ * strings.
+ * <p>
+ * The trigrams of a string and of a pattern are also used by the database full text
+ * index (see FullTextIndexNarrowFrameStore).
+ */
+public class StringValueIndex {
+    private static final char START = '\u0001';
+    private static final char END = '\u0002';
+    private static final char WILDCARD = '*';
+
+    private IdTable<String> strings = new IdTable<String>();
+    private IdTable<Long> trigrams = new IdTable<Long>();
+    private IntPostings trigramToStrings = new IntPostings();
+    private int staleCount = 0;
+
+    public void add(String s) {
+        if (strings.getId(s) < 0) {
+            int id = strings.intern(s);
+            for (Long trigram : getStringTrigrams(s)) {
+                trigramToStrings.add(trigrams.intern(trigram), id);
+            }
+        }
+    }
+
+    public void remove(String s) {
+        int id = strings.getId(s);
+        if (id >= 0) {
+            strings.release(id);
+            ++staleCount;
+            if (staleCount > strings.size() + 1024) {
+                rebuild();
+            }
+        }
+    }
+
+    public int size() {
+        return strings.size();
+    }
+
+    /**
+     * @return the strings that match the pattern or null if the pattern has no literal
+     * part long enough to use the index (e.g. "*ab*") and the caller has to test every
+     * string.
+     */
+    public Collection<String> getMatches(String pattern) {
+        List<Long> patternTrigrams = getPatternTrigrams(pattern);
+        if (patternTrigrams.isEmpty()) {
+            return null;
+        }
+        int bestTrigram = -1;
+        for (Long trigram : patternTrigrams) {
+            int trigramId = trigrams.getId(trigram);
+            if (trigramId < 0) {
+                return Collections.emptySet();
+            }
+            if (bestTrigram < 0 || trigramToStrings.size(trigramId) < trigramToStrings.size(bestTrigram)) {
+                bestTrigram = trigramId;
+            }
+        }
+        SimpleStringMatcher matcher = new SimpleStringMatcher(pattern);
+        Set<String> matches = new HashSet<String>();
+        int size = trigramToStrings.size(bestTrigram);
+        for (int i = 0; i < size; ++i) {
+            String s = strings.get(trigramToStrings.get(bestTrigram, i));
+            if (s != null && matcher.isMatch(s)) {
+                matches.add(s);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return the trigrams that a string which matches the pattern must have.  The list is
+     * empty if the pattern has no literal part that is long enough.
+     */
+    public static List<Long> getPatternTrigrams(String pattern) {
+        List<Long> patternTrigrams = new ArrayList<Long>();
+        int start = 0;
+        while (start <= pattern.length()) {
+            int end = pattern.indexOf(WILDCARD, start);
+            if (end < 0) {
+                end = pattern.length();
+            }
+            String literal = pattern.substring(start, end);
+            boolean anchoredStart = start == 0;
+            boolean anchoredEnd = end == pattern.length();
+            patternTrigrams.addAll(getTrigrams(pad(literal, anchoredStart, anchoredEnd)));
+            start = end + 1;
+        }
+        return patternTrigrams;
+    }
+
+    /**
+     * @return the trigrams of the string, including those of its start and end.
+     */
+    public static Collection<Long> getStringTrigrams(String s) {
+        return getTrigrams(pad(s, true, true));
+    }
+
+    private static String pad(String s, boolean atStart, boolean atEnd) {
+        StringBuffer buffer = new StringBuffer(s.length() + 4);
+        if (atStart) {
+            buffer.append(START).append(START);
+        }
+        for (int i = 0; i < s.length(); ++i) {
+            buffer.append(fold(s.charAt(i)));
+        }
+        if (atEnd) {
+            buffer.append(END).append(END);
+        }
+        return buffer.toString();
+    }
+
+    private static char fold(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static Collection<Long> getTrigrams(String s) {
+        Set<Long> result = new HashSet<Long>();
+        for (int i = 0; i + 3 <= s.length(); ++i) {
+            long trigram = ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+            result.add(Long.valueOf(trigram));
+        }
+        return result;
+    }
+
+    private void rebuild() {
+        List<String> live = new ArrayList<String>(strings.size());
+        for (int id = 0; id < strings.getIdLimit(); ++id) {
+            String s = strings.get(id);
+            if (s != null) {
+                live.add(s);
+            }
+        }
+        strings = new IdTable<String>();
+        trigrams = new IdTable<Long>();
+        trigramToStrings = new IntPostings();
+        staleCount = 0;
+        for (String s : live) {
+            add(s);
+        }
+    }
+}
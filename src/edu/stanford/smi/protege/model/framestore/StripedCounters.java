@@ -0,0 +1,66 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A small fixed set of counters that many threads add to at once.  Each thread adds to
+ * one of several stripes (picked by its thread id) and a sum adds up the stripes, so
+ * threads on different cores rarely update the same cache line.  The counters of a stripe
+ * share a cache line since the caller usually updates all of them together.
+ * <p>
+ * The number of stripes is the number of processors rounded up to a power of two (at most
+ * 16).  A sum taken while counters are being updated may or may not include the updates.
+ */
+class StripedCounters {
+    private static final int STRIDE = 8;
+    private static final int STRIPES = getStripeCount();
+
+    private final int counterCount;
+    private final AtomicLongArray cells;
+
+    public StripedCounters(int counterCount) {
+        if (counterCount > STRIDE) {
+            throw new IllegalArgumentException("At most " + STRIDE + " counters");
+        }
+        this.counterCount = counterCount;
+        cells = new AtomicLongArray(STRIPES * STRIDE);
+    }
+
+    private static int getStripeCount() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+        int stripes = 1;
+        while (stripes < processors) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    /**
+     * @return the offset of the stripe of the current thread.  Pass it to add() when
+     * updating several counters.
+     */
+    public int getStripe() {
+        return (int) (Thread.currentThread().getId() & (STRIPES - 1)) * STRIDE;
+    }
+
+    public void add(int stripe, int counter, long delta) {
+        cells.getAndAdd(stripe + counter, delta);
+    }
+
+    public long sum(int counter) {
+        if (counter < 0 || counter >= counterCount) {
+            throw new IndexOutOfBoundsException("counter: " + counter);
+        }
+        long sum = 0;
+        for (int stripe = 0; stripe < STRIPES; ++stripe) {
+            sum += cells.get(stripe * STRIDE + counter);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < cells.length(); ++i) {
+            cells.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.lang.reflect.Method;
+
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.query.Query;
+import edu.stanford.smi.protege.model.query.QueryCallback;
+
+/**
+ * Synchronizes every call on the knowledge base, the default locking of the knowledge base
+ * methods.  FrameStoreManager.getQueryFrameStore() hands out this frame store, or the
+ * ReadWriteLockFrameStoreHandler when read/write locking is enabled, so that the callers
+ * that only query do not need to know which kind of locking is in use.
+ */
+public class SynchronizedFrameStoreHandler extends AbstractFrameStoreInvocationHandler {
+    private final Object lock;
+
+    public SynchronizedFrameStoreHandler(KnowledgeBase kb) {
+        lock = kb;
+    }
+
+    public Object handleInvoke(Method method, Object[] args) {
+        synchronized (lock) {
+            return invoke(method, args);
+        }
+    }
+
+    public void executeQuery(Query q, QueryCallback qc) {
+        synchronized (lock) {
+            getDelegate().executeQuery(q, qc);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package edu.stanford.smi.protege.model.framestore;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable list over the first elements of an array that it shares with the Record
+ * that handed it out.  The record never changes these elements (see Record), so the list
+ * can be returned to any number of callers without copying and without wrapping it again.
+ * <p>
+ * It is sent over the wire as an unmodifiable ArrayList, which is what the frame stores
+ * returned before.
+ */
+final class ValueList extends AbstractList implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Object[] values;
+    private final int size;
+
+    ValueList(Object[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    public Object get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    public int indexOf(Object o) {
+        for (int i = 0; i < size; ++i) {
+            if (o == null ? values[i] == null : o.equals(values[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public Object[] toArray() {
+        Object[] array = new Object[size];
+        System.arraycopy(values, 0, array, 0, size);
+        return array;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object writeReplace() throws ObjectStreamException {
+        return Collections.unmodifiableList(new ArrayList(this));
+    }
+}
@@ -1,5 +1,6 @@
 package edu.stanford.smi.protege.server;
 
+import java.io.File;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -37,8 +38,21 @@ public class ServerProperties {
   public final static String SERVER_NEW_PROJECTS_SAVE_DIRECTORY_PROTEGE_PROPERTY = "server.newproject.save.directory";
 
   public final static String PROTEGE_RMI_USE_COMPRESSION = "server.use.compression";
+  public final static String COMPRESSION_CODEC = "server.compression.codec";
   public final static String PROTEGE_RMI_TOO_SMALL_TO_COMPRESS = "server.too.small.to.compress";
   
+  public final static String READ_WRITE_LOCKING = "server.kb.read.write.locking";
+
+  public final static String FRAME_STORE_METRICS = "server.kb.frame.store.metrics";
+
+  public final static String PUSH_EVENTS = "server.client.push.events";
+
+  public final static String COMPACT_ENCODING = "server.use.compact.encoding";
+
+  public final static String CLIENT_PERSISTENT_CACHE = "server.client.persistent.cache";
+  public final static String CLIENT_PERSISTENT_CACHE_DIRECTORY = "server.client.persistent.cache.dir";
+  public final static String CHANGE_JOURNAL_SIZE = "server.change.journal.size";
+
   public final static String METAPROJECT_LAST_ACCESS_TIME_UPDATE_FREQUENCY = "metaproject.last.accesstime.update.freq"; //default 15 secs
   
   public static boolean skipPreload() {
@@ -102,6 +116,17 @@ public class ServerProperties {
       return val.toLowerCase().equals("true");
   }
   
+  /**
+   * The codec used by compressed connections: deflate (each packet deflated on its own),
+   * deflate-dictionary (each packet deflated with the packets before it as a dictionary) or
+   * lz4 (a faster codec that also refers back to the packets before it).  The client and the
+   * server must agree on this.
+   */
+  public static String compressionCodec() {
+      String val = ApplicationProperties.getApplicationOrSystemProperty(COMPRESSION_CODEC, "deflate");
+      return val.toLowerCase();
+  }
+  
   public static int tooSmallToCompress() {
       int defaultValue = 1024;
       String small = System.getProperty(PROTEGE_RMI_TOO_SMALL_TO_COMPRESS, 
@@ -114,6 +139,69 @@ public class ServerProperties {
       }
   }
   
+  /**
+   * When true the server lets queries on in-memory knowledge bases run concurrently
+   * under a read lock instead of serializing every call on the knowledge base.
+   */
+  public static boolean useReadWriteLocking() {
+      String val = ApplicationProperties.getApplicationOrSystemProperty(READ_WRITE_LOCKING, "false");
+      return val.toLowerCase().equals("true");
+  }
+  
+  /**
+   * When true the server records call counts and latencies for each frame store in the
+   * chain of the knowledge bases it serves (see FrameStoreMetrics).
+   */
+  public static boolean useFrameStoreMetrics() {
+      String val = ApplicationProperties.getApplicationOrSystemProperty(FRAME_STORE_METRICS, "false");
+      return val.toLowerCase().equals("true");
+  }
+  
+  /**
+   * When true a client waits on the server for events (see RemoteServerFrameStore.waitForEvents())
+   * instead of asking for them every few seconds.
+   */
+  public static boolean pushEvents() {
+      String val = ApplicationProperties.getApplicationOrSystemProperty(PUSH_EVENTS, "true");
+      return val.toLowerCase().equals("true");
+  }
+  
+  /**
+   * When true the value updates and the responses that are sent back with each call are
+   * written in a compact encoding (see OntologyUpdate) instead of with plain Java serialization.
+   */
+  public static boolean useCompactEncoding() {
+      String val = ApplicationProperties.getApplicationOrSystemProperty(COMPACT_ENCODING, "false");
+      return val.toLowerCase().equals("true");
+  }
+  
+  /**
+   * When true a client saves its value cache to disk when it disconnects and, when it
+   * connects to the same project again, only drops the frames that the server has changed
+   * since instead of preloading the project again.
+   */
+  public static boolean usePersistentClientCache() {
+      String val = ApplicationProperties.getApplicationOrSystemProperty(CLIENT_PERSISTENT_CACHE, "false");
+      return val.toLowerCase().equals("true");
+  }
+  
+  public static File getPersistentClientCacheDirectory() {
+      String dir = ApplicationProperties.getApplicationOrSystemProperty(CLIENT_PERSISTENT_CACHE_DIRECTORY);
+      if (dir != null) {
+          return new File(dir);
+      }
+      return new File(new File(System.getProperty("user.home"), ".protege"), "cache");
+  }
+  
+  /**
+   * The number of changed frames that the server remembers for clients that come back with
+   * a persistent cache.  A client whose cache is older than the oldest change remembered
+   * starts with an empty cache.
+   */
+  public static int getChangeJournalSize() {
+      return SystemUtilities.getSystemIntegerProperty(CHANGE_JOURNAL_SIZE, 100000);
+  }
+  
   public static int delayInMilliseconds() {
       return SystemUtilities.getSystemIntegerProperty(DELAY_MSEC , 0);
     }
@@ -29,6 +29,10 @@ public class BandWidthPolicy {
         this.bandwidthCap = bandwidthCap;
     }
     
+    public long getSamplingInterval() {
+        return samplingInterval;
+    }
+
     public static int getCap() {
         return ApplicationProperties.getIntegerProperty(BANDWIDTH_CAP_PROPERTY, 7000);
     }
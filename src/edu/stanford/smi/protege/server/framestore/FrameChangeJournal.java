@@ -0,0 +1,75 @@
+package edu.stanford.smi.protege.server.framestore;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import edu.stanford.smi.protege.model.FrameID;
+
+/**
+ * Remembers which frames the ServerFrameStore has told its clients to change, numbered in
+ * order, so that a client that comes back with a cache saved earlier can be told which of the
+ * cached frames to drop.  Only the last maximumSize frames are remembered.  A client whose
+ * cache is older than the changes that have been forgotten must drop everything.
+ * <p></p>
+ * The caller holds the kb lock.
+ */
+class FrameChangeJournal {
+    private final String epoch = UUID.randomUUID().toString();
+    private final int maximumSize;
+    private long sequence = 0;
+    /*
+     * Changes at or before this sequence number are not all in the journal any more.
+     */
+    private long forgotten = 0;
+    /*
+     * In the order of their last change, so the eldest entry is the first forgotten.
+     */
+    private final Map<FrameID, Long> lastChanges = new LinkedHashMap<FrameID, Long>();
+
+    FrameChangeJournal(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public void recordChange(FrameID id) {
+        lastChanges.remove(id);
+        lastChanges.put(id, ++sequence);
+        if (lastChanges.size() > maximumSize) {
+            Iterator<Long> i = lastChanges.values().iterator();
+            forgotten = i.next();
+            i.remove();
+        }
+    }
+
+    /*
+     * For changes that may touch any frame, such as the deletion of a slot.
+     */
+    public void recordChangeToEverything() {
+        lastChanges.clear();
+        forgotten = ++sequence;
+    }
+
+    public FrameChanges getChangesSince(String clientEpoch, long clientSequence) {
+        if (!epoch.equals(clientEpoch) || clientSequence < forgotten || clientSequence > sequence) {
+            return new FrameChanges(epoch, sequence, null);
+        }
+        Set<FrameID> changedFrames = new HashSet<FrameID>();
+        for (Map.Entry<FrameID, Long> entry : lastChanges.entrySet()) {
+            if (entry.getValue() > clientSequence) {
+                changedFrames.add(entry.getKey());
+            }
+        }
+        return new FrameChanges(epoch, sequence, changedFrames);
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+}
@@ -0,0 +1,71 @@
+package edu.stanford.smi.protege.server.framestore;
+
+import java.io.Serializable;
+import java.util.Set;
+
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Localizable;
+import edu.stanford.smi.protege.util.LocalizeUtils;
+
+/**
+ * The answer of RemoteServerFrameStore.getFrameChanges(): the position of the server in its
+ * sequence of changes and the frames that have changed since the position that the client
+ * asked about.
+ * <p></p>
+ * The epoch names one run of the server project.  The sequence numbers of one epoch mean
+ * nothing in another, so a client that asks about another epoch (or about a position so old
+ * that the server no longer remembers the changes since) is told that everything has changed.
+ */
+public class FrameChanges implements Serializable, Localizable {
+    private static final long serialVersionUID = 4062185524730817245L;
+
+    private String epoch;
+    private long sequence;
+    private Set<FrameID> changedFrames;
+
+    public FrameChanges(String epoch, long sequence, Set<FrameID> changedFrames) {
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.changedFrames = changedFrames;
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return the sequence number of the last change that the server has seen.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return true if the server can not say which frames have changed, in which case
+     * nothing cached before should be used.
+     */
+    public boolean isEverythingChanged() {
+        return changedFrames == null;
+    }
+
+    /**
+     * @return the frames that have changed since the position the client asked about, or
+     * null if everything may have changed.
+     */
+    public Set<FrameID> getChangedFrames() {
+        return changedFrames;
+    }
+
+    public void localize(KnowledgeBase kb) {
+        if (changedFrames != null) {
+            LocalizeUtils.localize(changedFrames, kb);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FrameChanges[epoch=" + epoch + ", sequence=" + sequence + ", "
+            + (changedFrames == null ? "everything" : changedFrames.size() + " frames") + " changed]";
+    }
+}
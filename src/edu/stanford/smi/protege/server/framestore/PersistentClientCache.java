@@ -0,0 +1,197 @@
+package edu.stanford.smi.protege.server.framestore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.framestore.Sft;
+import edu.stanford.smi.protege.server.RemoteSession;
+import edu.stanford.smi.protege.server.update.DeferredOperationCache;
+import edu.stanford.smi.protege.server.update.OntologyUpdate;
+import edu.stanford.smi.protege.server.update.ValueUpdate;
+import edu.stanford.smi.protege.util.Log;
+import edu.stanford.smi.protege.util.transaction.cache.CacheResult;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheCompleted;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheRead;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheStartComplete;
+
+/**
+ * The file in which a RemoteClientFrameStore keeps its value caches between sessions.  The
+ * caches are written as the value updates that would fill them again, together with the
+ * epoch and sequence number of the server (see FrameChanges) at the time they were written.
+ * When the client connects again it asks the server which frames have changed since then
+ * and only replays the updates of the other frames.
+ * <p></p>
+ * A file that can not be read is deleted and the client starts with an empty cache.
+ */
+class PersistentClientCache {
+    private static Logger log = Log.getLogger(PersistentClientCache.class);
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+
+    PersistentClientCache(File directory, String projectName, String userName) {
+        file = new File(directory, toFileName(projectName) + "-" + toFileName(userName) + ".cache");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void save(String epoch,
+                     long sequence,
+                     Map<Frame, DeferredOperationCache> cacheMap,
+                     RemoteSession session) throws IOException {
+        List<ValueUpdate> updates = new ArrayList<ValueUpdate>();
+        int frameCount = 0;
+        for (Map.Entry<Frame, DeferredOperationCache> entry : cacheMap.entrySet()) {
+            if (addUpdates(entry.getKey(), entry.getValue(), session, updates)) {
+                frameCount++;
+            }
+        }
+        file.getParentFile().mkdirs();
+        // a file of its own so that two clients saving the same cache do not write into each other
+        File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        boolean written = false;
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(epoch);
+                out.writeLong(sequence);
+                out.writeObject(new OntologyUpdate(updates));
+            }
+            finally {
+                out.close();
+            }
+            written = true;
+        }
+        finally {
+            if (!written) {
+                tmp.delete();
+            }
+        }
+        if ((file.exists() && !file.delete()) || !tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+        if (log.isLoggable(Level.CONFIG)) {
+            log.config("Saved the cached values of " + frameCount + " frames to " + file);
+        }
+    }
+
+    /*
+     * Returns false if nothing was added.
+     */
+    private static boolean addUpdates(Frame frame,
+                                      DeferredOperationCache cache,
+                                      RemoteSession session,
+                                      List<ValueUpdate> updates) {
+        if (cache.isInvalid() || cache.getTransactionNesting(session) != 0) {
+            return false;
+        }
+        boolean complete = cache.isCacheComplete();
+        int start = updates.size();
+        if (complete) {
+            updates.add(new ValueUpdate(frame, new CacheStartComplete<RemoteSession, Sft, List>()));
+        }
+        for (Sft var : cache.getVars()) {
+            CacheResult<List> result = cache.readCache(session, var);
+            if (result.isValid() || complete) {
+                updates.add(new ValueUpdate(frame, new CacheRead<RemoteSession, Sft, List>(session, var, result)));
+            }
+        }
+        if (complete) {
+            updates.add(new ValueUpdate(frame, new CacheCompleted<RemoteSession, Sft, List>()));
+        }
+        return updates.size() > start;
+    }
+
+    /**
+     * @return the saved caches or null if there are none that can be used.
+     */
+    public Snapshot load(KnowledgeBase kb, final ClassLoader loader) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            InputStream is = new BufferedInputStream(new FileInputStream(file));
+            ObjectInputStream in = new ObjectInputStream(is) {
+                @Override
+                protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                    try {
+                        return Class.forName(desc.getName(), false, loader);
+                    }
+                    catch (ClassNotFoundException cnfe) {
+                        return super.resolveClass(desc);
+                    }
+                }
+            };
+            try {
+                if (in.readInt() != FORMAT_VERSION) {
+                    throw new IOException("Unknown format");
+                }
+                String epoch = in.readUTF();
+                long sequence = in.readLong();
+                OntologyUpdate updates = (OntologyUpdate) in.readObject();
+                updates.localize(kb);
+                return new Snapshot(epoch, sequence, updates.getValueUpdates());
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (Throwable t) {
+            log.log(Level.WARNING, "Could not read the cached values in " + file + ", starting with an empty cache", t);
+            file.delete();
+            return null;
+        }
+    }
+
+    private static String toFileName(String name) {
+        StringBuffer sb = new StringBuffer();
+        for (char c : String.valueOf(name).toCharArray()) {
+            sb.append(Character.isLetterOrDigit(c) || c == '.' || c == '_' ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    public static class Snapshot {
+        private final String epoch;
+        private final long sequence;
+        private final List<ValueUpdate> updates;
+
+        Snapshot(String epoch, long sequence, List<ValueUpdate> updates) {
+            this.epoch = epoch;
+            this.sequence = sequence;
+            this.updates = updates;
+        }
+
+        public String getEpoch() {
+            return epoch;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public List<ValueUpdate> getValueUpdates() {
+            return updates;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package edu.stanford.smi.protege.server.framestore;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.stanford.smi.protege.exception.ProtegeIOException;
+import edu.stanford.smi.protege.model.Reference;
+import edu.stanford.smi.protege.util.Log;
+
+/**
+ * Collects the value reads that are made with the RemoteClientFrameStore get...Async() calls
+ * and sends them to the server in batches with RemoteServerFrameStore.getDirectValues().  A
+ * caller only queues its read and gets a future back; it never waits for the client frame
+ * store or the server.  While one batch is on its way to the server the reads that come in
+ * are queued for the next one, so a caller that asks for the values of forty slots in a row
+ * pays for one or two round trips instead of forty.
+ * <p></p>
+ * The batches themselves go through RemoteClientFrameStore.getDirectValues(), which, like
+ * every other call, holds the client frame store while it talks to the server.  The value
+ * updates in the responses have to be applied in the order the server sent them.
+ */
+class PipelinedValueReader {
+    private static Logger log = Log.getLogger(PipelinedValueReader.class);
+
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    private static final Runnable NOTHING = new Runnable() {
+        public void run() {
+        }
+    };
+
+    private final RemoteClientFrameStore frameStore;
+    private final String name;
+    private final List<PendingRead> pendingReads = new ArrayList<PendingRead>();
+    private boolean reading = false;
+    private boolean closed = false;
+
+    PipelinedValueReader(RemoteClientFrameStore frameStore, String name) {
+        this.frameStore = frameStore;
+        this.name = name;
+    }
+
+    public Future<List> read(Reference reference) {
+        PendingRead read = new PendingRead(reference);
+        synchronized (pendingReads) {
+            if (closed) {
+                read.fail(new ProtegeIOException("Connection to the server is closed"));
+                return read;
+            }
+            pendingReads.add(read);
+            if (!reading) {
+                reading = true;
+                startReaderThread();
+            }
+        }
+        return read;
+    }
+
+    private void startReaderThread() {
+        Thread reader = new Thread("Value reader thread [" + name + "]") {
+            @Override
+            public void run() {
+                List<PendingRead> batch;
+                while ((batch = nextBatch()) != null) {
+                    readBatch(batch);
+                }
+            }
+        };
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private List<PendingRead> nextBatch() {
+        synchronized (pendingReads) {
+            List<PendingRead> batch = new ArrayList<PendingRead>();
+            Iterator<PendingRead> i = pendingReads.iterator();
+            while (i.hasNext() && batch.size() < MAX_BATCH_SIZE) {
+                PendingRead read = i.next();
+                i.remove();
+                if (!read.isCancelled()) {
+                    batch.add(read);
+                }
+            }
+            if (batch.isEmpty()) {
+                reading = false;
+                return null;
+            }
+            return batch;
+        }
+    }
+
+    private void readBatch(List<PendingRead> batch) {
+        List<Reference> references = new ArrayList<Reference>(batch.size());
+        for (PendingRead read : batch) {
+            references.add(read.reference);
+        }
+        try {
+            List<List> valuesList = frameStore.getDirectValues(references);
+            for (int i = 0; i < batch.size(); ++i) {
+                batch.get(i).complete(valuesList.get(i));
+            }
+        }
+        catch (Throwable t) {
+            if (log.isLoggable(Level.FINE)) {
+                log.log(Level.FINE, "Batch of " + batch.size() + " value reads failed", t);
+            }
+            for (PendingRead read : batch) {
+                read.fail(t);
+            }
+        }
+    }
+
+    public void close() {
+        synchronized (pendingReads) {
+            closed = true;
+            for (PendingRead read : pendingReads) {
+                read.fail(new ProtegeIOException("Connection to the server is closed"));
+            }
+            pendingReads.clear();
+        }
+    }
+
+    /*
+     * A future that is completed by the reader thread rather than by running it.
+     */
+    private static class PendingRead extends FutureTask<List> {
+        private final Reference reference;
+
+        PendingRead(Reference reference) {
+            super(NOTHING, null);
+            this.reference = reference;
+        }
+
+        void complete(List values) {
+            set(values);
+        }
+
+        void fail(Throwable t) {
+            setException(t);
+        }
+    }
+}
@@ -24,6 +24,8 @@ public class Registration {
     private List<ValueUpdate> commitableUpdates = new ArrayList<ValueUpdate>();
     private BandWidthPolicy bandwidthPolicy = new BandWidthPolicy();
     private long lastHeartbeat = 0;
+    private boolean eventsPending = false;
+    private boolean closed = false;
 
 
     public Registration(FifoWriter<AbstractEvent> events) {
@@ -75,5 +77,39 @@ public class Registration {
       this.lastHeartbeat = lastHeartbeat;
     }
 
+    /**
+     * Notes that there are events or value updates that the client will only see when it
+     * calls getEvents() and wakes up the waitForEvents() call of the client.
+     */
+    public synchronized void signalEvents() {
+      eventsPending = true;
+      notifyAll();
+    }
+
+    public synchronized void clearEventsSignal() {
+      eventsPending = false;
+    }
+
+    /**
+     * Waits without holding any other lock until signalEvents() is called, close() is called
+     * or the timeout expires.
+     *
+     * @return true if there are events or value updates for the client.
+     */
+    public synchronized boolean waitForEvents(long timeout) throws InterruptedException {
+      long end = System.currentTimeMillis() + timeout;
+      long remaining = timeout;
+      while (!eventsPending && !closed && remaining > 0) {
+        wait(remaining);
+        remaining = end - System.currentTimeMillis();
+      }
+      return eventsPending;
+    }
+
+    public synchronized void close() {
+      closed = true;
+      notifyAll();
+    }
+
 
 }
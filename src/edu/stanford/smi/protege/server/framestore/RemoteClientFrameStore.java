@@ -18,6 +18,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,6 +40,7 @@ import edu.stanford.smi.protege.model.Slot;
 import edu.stanford.smi.protege.model.SystemFrames;
 import edu.stanford.smi.protege.model.framestore.FrameStore;
 import edu.stanford.smi.protege.model.framestore.FrameStoreManager;
+import edu.stanford.smi.protege.model.framestore.ReferenceImpl;
 import edu.stanford.smi.protege.model.framestore.Sft;
 import edu.stanford.smi.protege.model.query.Query;
 import edu.stanford.smi.protege.model.query.QueryCallback;
@@ -115,6 +117,21 @@ public class RemoteClientFrameStore implements FrameStore {
     private TransactionIsolationLevel transactionLevel;
     private int transactionNesting = 0;
 
+    /*
+     * Set while the event listener thread is waiting on the server for events.  getEvents()
+     * only asks the server when the listener has seen a signal.
+     */
+    private volatile boolean listeningForEvents = false;
+    private boolean eventsSignalled = false;
+    private final Object eventsSignalLock = new Object();
+
+    private PipelinedValueReader valueReader;
+
+    /*
+     * Where the caches are saved between sessions, or null if they are not.
+     */
+    private PersistentClientCache persistentCache;
+
     //FIXME: frameNameToFrameMap may not handle transactions or type updates correctly
     // Any positive result from this map is checked against the cache (more reliable)
     // The negative cache is aggressively cleared and hopefully is accurate.
@@ -166,9 +183,19 @@ public class RemoteClientFrameStore implements FrameStore {
       // precalculate these to avoid deadlock with the getEvents thread
       systemFrames = kb.getSystemFrames();
       kbClassLoader = kb.getClass().getClassLoader();
+      valueReader = new PipelinedValueReader(this, kb.toString());
+      if (ServerProperties.usePersistentClientCache()) {
+          persistentCache = new PersistentClientCache(ServerProperties.getPersistentClientCacheDirectory(),
+                                                      kb.getName(), session.getUserName());
+      }
+      // the saved caches go in before the updates that the server sends from now on
+      boolean restored = restorePersistentCache();
       // disabled for now - if we need we will try it.
       startHeartbeatThread();
-      preload(preloadAll);
+      startEventListenerThread();
+      if (!restored) {
+          preload(preloadAll);
+      }
     }
     
     private static RemoteClientFrameStore getMeFromKb(KnowledgeBase kb) {
@@ -260,6 +287,55 @@ public class RemoteClientFrameStore implements FrameStore {
     }
 
 
+    /*
+     * The listener does not fetch the events itself.  It wakes up the event dispatch thread
+     * (which waits on the knowledge base) and that thread calls getEvents() so the events and
+     * value updates are still processed in order with the value updates of the other calls.
+     * A timeout wakes the dispatch thread as well, which covers events the server has not
+     * signalled.  If the server cannot wait for events the client goes back to polling.
+     */
+    private void startEventListenerThread() {
+      if (!ServerProperties.pushEvents()) {
+        return;
+      }
+      listeningForEvents = true;
+      new Thread("Event listener thread [" + kb + "]") {
+        @Override
+		public void run() {
+          try {
+            while (true) {
+              RemoteServerFrameStore remote;
+              synchronized (RemoteClientFrameStore.this) {
+                remote = remoteDelegate;
+              }
+              if (remote == null) {
+                return;
+              }
+              remote.waitForEvents(session, RemoteServerFrameStore.EVENT_WAIT_TIMEOUT);
+              synchronized (eventsSignalLock) {
+                eventsSignalled = true;
+              }
+              synchronized (kb) {
+                kb.notifyAll();
+              }
+              synchronized (eventsSignalLock) {
+                while (eventsSignalled && listeningForEvents) {
+                  eventsSignalLock.wait();
+                }
+              }
+            }
+          } catch (ServerSessionLost ssl) {
+            Log.emptyCatchBlock(ssl);
+          } catch (Exception e) {
+            Log.getLogger().info("Server does not push events - polling for events instead");
+            log.log(Level.FINE, "Exception caught", e);
+          } finally {
+            listeningForEvents = false;
+          }
+        }
+      }.start();
+    }
+
     public String getName() {
       return getClass().getName();
     }
@@ -804,6 +880,67 @@ public class RemoteClientFrameStore implements FrameStore {
         }
     }
 
+    /**
+     * The values of several getDirectOwnSlotValues(), getDirectTemplateSlotValues() and
+     * getDirectTemplateFacetValues() calls.  The values that are not in the cache are fetched
+     * from the server in one round trip.
+     *
+     * @return the values of each reference, in the order of the references.
+     */
+    public synchronized List<List> getDirectValues(List<Reference> references) {
+        List<List> valuesList = new ArrayList<List>(references.size());
+        List<Reference> missing = new ArrayList<Reference>();
+        List<Integer> missingIndices = new ArrayList<Integer>();
+        for (Reference reference : references) {
+            if (reference.getFacet() != null && !reference.isTemplate()) {
+                throw new UnsupportedOperationException("We don't cache this information...");
+            }
+            CacheResult<List> cachedResult = readCache(reference.getFrame(), reference.getSlot(),
+                                                       reference.getFacet(), reference.isTemplate());
+            if (cachedResult.isValid()) {
+                valuesList.add(cachedResult.getResult());
+            }
+            else {
+                missingIndices.add(valuesList.size());
+                missing.add(reference);
+                valuesList.add(null);
+            }
+        }
+        if (!missing.isEmpty()) {
+            try {
+                RemoteResponse<List<List>> vu = getRemoteDelegate().getDirectValues(missing, session);
+                processValueUpdate(vu);
+                for (int i = 0; i < missing.size(); ++i) {
+                    valuesList.set(missingIndices.get(i), vu.getResponse().get(i));
+                }
+            } catch (RemoteException e) {
+                throw convertException(e);
+            }
+        }
+        for (int i = 0; i < valuesList.size(); ++i) {
+            if (valuesList.get(i) == null) {
+                valuesList.set(i, new ArrayList());
+            }
+        }
+        return valuesList;
+    }
+
+    /*
+     * The ...Async() calls do not wait for this frame store.  Their reads are queued and sent
+     * to the server in batches (see PipelinedValueReader).
+     */
+    public Future<List> getDirectOwnSlotValuesAsync(Frame frame, Slot slot) {
+        return valueReader.read(new ReferenceImpl(frame, slot, null, false));
+    }
+
+    public Future<List> getDirectTemplateSlotValuesAsync(Cls cls, Slot slot) {
+        return valueReader.read(new ReferenceImpl(cls, slot, getSystemFrames().getValuesFacet(), true));
+    }
+
+    public Future<List> getDirectTemplateFacetValuesAsync(Cls cls, Slot slot, Facet facet) {
+        return valueReader.read(new ReferenceImpl(cls, slot, facet, true));
+    }
+
     public synchronized void setDirectTemplateFacetValues(Cls cls, Slot slot, Facet facet, Collection values) {
         try {
             OntologyUpdate vu = getRemoteDelegate().setDirectTemplateFacetValues(cls, slot, facet, values, session);
@@ -1020,6 +1157,13 @@ public class RemoteClientFrameStore implements FrameStore {
         if (transactionNesting > 0) {
           return new ArrayList<AbstractEvent>();
         }
+        if (listeningForEvents) {
+          synchronized (eventsSignalLock) {
+            if (!eventsSignalled) {
+              return new ArrayList<AbstractEvent>();
+            }
+          }
+        }
         List<AbstractEvent> receivedEvents = null;
         try {
           RemoteResponse<List<AbstractEvent>> response = getRemoteDelegate().getEvents(session);
@@ -1030,6 +1174,11 @@ public class RemoteClientFrameStore implements FrameStore {
           Log.getLogger().log(Level.SEVERE,
                               "Exception caught - local cache may be out of date", e);
           throw new RuntimeException(e);
+        } finally {
+          synchronized (eventsSignalLock) {
+            eventsSignalled = false;
+            eventsSignalLock.notifyAll();
+          }
         }
     }
 
@@ -1257,16 +1406,79 @@ public class RemoteClientFrameStore implements FrameStore {
 
     public synchronized void close() {
         try {
+            savePersistentCache();
             if (server != null) {
                 server.closeSession(session);
                 server = null;
             }
             remoteDelegate = null;
+            listeningForEvents = false;
+            if (valueReader != null) {
+                valueReader.close();
+            }
+            synchronized (eventsSignalLock) {
+                eventsSignalLock.notifyAll();
+            }
         } catch (RemoteException e) {
             throw convertException(e);
         }
     }
 
+    /*
+     * Replays the saved caches except for the frames that the server has changed since they
+     * were saved.  The values of those frames are read from the server again when they are
+     * next needed.
+     */
+    private synchronized boolean restorePersistentCache() throws RemoteException {
+        if (persistentCache == null) {
+            return false;
+        }
+        PersistentClientCache.Snapshot snapshot = persistentCache.load(kb, kbClassLoader);
+        if (snapshot == null) {
+            return false;
+        }
+        RemoteResponse<FrameChanges> response = getRemoteDelegate().getFrameChanges(snapshot.getEpoch(), 
+                                                                                    snapshot.getSequence(), 
+                                                                                    session);
+        FrameChanges changes = response.getResponse();
+        if (changes.isEverythingChanged()) {
+            Log.getLogger().config("Cached values in " + persistentCache.getFile() + " are out of date");
+            processValueUpdate(response);
+            return false;
+        }
+        Set<FrameID> changedFrames = changes.getChangedFrames();
+        List<ValueUpdate> kept = new ArrayList<ValueUpdate>();
+        Set<Frame> dropped = new HashSet<Frame>();
+        for (ValueUpdate vu : snapshot.getValueUpdates()) {
+            if (changedFrames.contains(vu.getFrame().getFrameID())) {
+                dropped.add(vu.getFrame());
+            }
+            else {
+                kept.add(vu);
+            }
+        }
+        processValueUpdate(new OntologyUpdate(kept));
+        processValueUpdate(response);
+        Log.getLogger().config("Restored cached frame values from " + persistentCache.getFile() 
+                               + ", " + dropped.size() + " frames changed since");
+        return true;
+    }
+
+    private void savePersistentCache() {
+        if (persistentCache == null || remoteDelegate == null || transactionNesting > 0) {
+            return;
+        }
+        try {
+            RemoteResponse<FrameChanges> response = getRemoteDelegate().getFrameChanges(null, 0, session);
+            processValueUpdate(response);
+            FrameChanges position = response.getResponse();
+            persistentCache.save(position.getEpoch(), position.getSequence(), cacheMap, session);
+        }
+        catch (Throwable t) {
+            log.log(Level.WARNING, "Could not save the cached frame values to " + persistentCache.getFile(), t);
+        }
+    }
+
     //------------------------------
     public synchronized void preload(boolean preloadAll) throws RemoteException {
       boolean skip = ServerProperties.skipPreload();
@@ -1647,7 +1859,7 @@ public class RemoteClientFrameStore implements FrameStore {
     	        cache = CacheFactory.createEmptyCache(getTransactionIsolationLevel());
     	        FifoReader<SerializedCacheUpdate<RemoteSession, Sft,  List>> reader 
     	           = new FifoReader<SerializedCacheUpdate<RemoteSession, Sft,  List>>(deferredTransactionsReader);
-    	        cache = new DeferredOperationCache(cache, reader);
+    	        cache = new DeferredOperationCache(cache, reader, persistentCache != null);
     	        cacheMap.put(frame, (DeferredOperationCache) cache);
     	        if (cacheLog.isLoggable(Level.FINEST)) {
     	            cacheLog.finest("Created cache " + cache.getCacheId() + " for frame " + frame.getFrameID().getName());
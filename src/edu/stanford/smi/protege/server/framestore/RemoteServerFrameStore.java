@@ -33,6 +33,7 @@ public interface RemoteServerFrameStore extends Remote {
   
     public static final long HEARTBEAT_POLL_INTERVAL=3000;  // 15 seconds
     public static final long HEARTBEAT_CLIENT_DIED = 8 * HEARTBEAT_POLL_INTERVAL;
+    public static final long EVENT_WAIT_TIMEOUT = 30000;
 
     Map<RemoteSession, Boolean> getUserInfo() throws RemoteException;
     
@@ -123,6 +124,15 @@ public interface RemoteServerFrameStore extends Remote {
 
     RemoteResponse<List> getDirectTemplateFacetValues(Cls cls, Slot slot, Facet facet, RemoteSession session) throws RemoteException;
 
+    /**
+     * Several getDirectOwnSlotValues(), getDirectTemplateSlotValues() and
+     * getDirectTemplateFacetValues() calls in one round trip.  A reference with a facet
+     * must be a template reference.
+     *
+     * @return the values of each reference, in the order of the references.
+     */
+    RemoteResponse<List<List>> getDirectValues(List<Reference> references, RemoteSession session) throws RemoteException;
+
     OntologyUpdate setDirectTemplateFacetValues(Cls cls, Slot slot, Facet facet, Collection values, RemoteSession session)
             throws RemoteException;
 
@@ -149,6 +159,14 @@ public interface RemoteServerFrameStore extends Remote {
     // events
     RemoteResponse<List<AbstractEvent>> getEvents(RemoteSession session) throws RemoteException;
 
+    /**
+     * Blocks until there are events or value updates for the session or until the timeout
+     * (at most EVENT_WAIT_TIMEOUT) expires.  The caller then collects them with getEvents().
+     *
+     * @return true if there are events or value updates for the session.
+     */
+    boolean waitForEvents(RemoteSession session, long timeout) throws RemoteException;
+
     // arbitrary queries
     Set<Reference> getReferences(Object object, RemoteSession session) throws RemoteException;
 
@@ -206,6 +224,15 @@ public interface RemoteServerFrameStore extends Remote {
     
     void requestValueCache(Set<Frame> frames, boolean skipDirectInstances, RemoteSession session) throws RemoteException;
     
+    /**
+     * Used by clients with a persistent cache.  The epoch and sequence are those of an earlier
+     * answer (or null and 0 to only learn the current position).
+     *
+     * @return the current epoch and sequence of the server and the frames changed since the
+     * given sequence.
+     */
+    RemoteResponse<FrameChanges> getFrameChanges(String epoch, long sequence, RemoteSession session) throws RemoteException;
+    
     TransactionIsolationLevel getTransactionIsolationLevel() throws TransactionException, RemoteException;
     
    /**
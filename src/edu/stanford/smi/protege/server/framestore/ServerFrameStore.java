@@ -29,9 +29,14 @@ import edu.stanford.smi.protege.model.KnowledgeBase;
 import edu.stanford.smi.protege.model.Reference;
 import edu.stanford.smi.protege.model.SimpleInstance;
 import edu.stanford.smi.protege.model.Slot;
+import edu.stanford.smi.protege.model.framestore.CompactFrameDb;
 import edu.stanford.smi.protege.model.framestore.EventDispatchFrameStore;
+import edu.stanford.smi.protege.model.framestore.FrameDbSnapshot;
 import edu.stanford.smi.protege.model.framestore.FrameStore;
 import edu.stanford.smi.protege.model.framestore.FrameStoreManager;
+import edu.stanford.smi.protege.model.framestore.InMemoryFrameDb;
+import edu.stanford.smi.protege.model.framestore.MergingNarrowFrameStore;
+import edu.stanford.smi.protege.model.framestore.NarrowFrameStore;
 import edu.stanford.smi.protege.model.framestore.Sft;
 import edu.stanford.smi.protege.model.query.Query;
 import edu.stanford.smi.protege.model.query.SynchronizeQueryCallback;
@@ -134,6 +139,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
       = new HashMap<RemoteSession, Registration>();
     private boolean _isDirty;
     private final Object _kbLock;
+    private final FrameStore _queryDelegate;
 
     private final Facet valuesFacet;
 
@@ -141,6 +147,8 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
 
     private final FrameCalculator frameCalculator;
 
+    private final FrameChangeJournal changeJournal = new FrameChangeJournal(ServerProperties.getChangeJournalSize());
+
     private static Set<KnowledgeBase> requiresEventDispatch = new HashSet<KnowledgeBase>();
     
     private final Set<Thread> runningClientThreads = new HashSet<Thread>();
@@ -155,6 +163,13 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
         _kbLock = kb;
 
         FrameStoreManager fsm = ((DefaultKnowledgeBase) kb).getFrameStoreManager();
+        if (ServerProperties.useReadWriteLocking() && isInMemory(kb)) {
+            ((DefaultKnowledgeBase) kb).setReadWriteLockingEnabled(true);
+        }
+        fsm.getFrameStoreMetrics().register();
+        if (ServerProperties.useFrameStoreMetrics()) {
+            fsm.setMetricsEnabled(true);
+        }
 
         if (!requiresEventDispatch.contains(kb)) {
             kb.setDispatchEventsEnabled(false);
@@ -173,6 +188,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
         fsm.insertFrameStore(new FrameCalculatorFrameStore(frameCalculator), 1); // after  the localization frame  store.
         
         _delegate = fsm.getHeadFrameStore();
+        _queryDelegate = fsm.getQueryFrameStore();
         transactionMonitor = _delegate.getTransactionStatusMonitor();
         if (ServerProperties.delayInMilliseconds() != 0) {
             Log.getLogger().config("Simulated delay of " + ServerProperties.delayInMilliseconds() + " msec/call");
@@ -180,6 +196,19 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
         startHeartbeatThread(_kb.toString());
     }
 
+    /*
+     * Only the in-memory stores are safe for concurrent readers.  The database stores
+     * keep per session caches on the read path.
+     */
+    private static boolean isInMemory(KnowledgeBase kb) {
+        MergingNarrowFrameStore mnfs = MergingNarrowFrameStore.get(kb);
+        if (mnfs == null) {
+            return false;
+        }
+        NarrowFrameStore active = mnfs.getActiveFrameStore();
+        return active instanceof InMemoryFrameDb || active instanceof CompactFrameDb;
+    }
+
     public static void requestEventDispatch(KnowledgeBase kb) {
         kb.setDispatchEventsEnabled(true);
         kb.getFrameStoreManager().setDispatchEventsPassThrough(true);
@@ -239,6 +268,14 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
         return _delegate;
     }
 
+    /*
+     * For the calls that are a single query: the delegate behind the kb lock, or behind the
+     * read lock when read/write locking is enabled.
+     */
+    private FrameStore getQueryDelegate() {
+        return _queryDelegate;
+    }
+
     public void recordCall(RemoteSession session) throws ServerSessionLost {
       synchronized (sessionMap) {
         if (!_sessionToRegistrationMap.containsKey(session)) {
@@ -294,9 +331,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public int getClsCount(RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getClsCount();
-          }
+          return getQueryDelegate().getClsCount();
       }
       finally {
           unrecordCall();
@@ -306,9 +341,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public int getSlotCount(RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getSlotCount();
-          }
+          return getQueryDelegate().getSlotCount();
       }
       finally {
           unrecordCall();
@@ -318,9 +351,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public int getFacetCount(RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getFacetCount();
-          }
+          return getQueryDelegate().getFacetCount();
       }
       finally {
           unrecordCall();
@@ -330,9 +361,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public int getSimpleInstanceCount(RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getSimpleInstanceCount();
-          }
+          return getQueryDelegate().getSimpleInstanceCount();
       }
       finally {
           unrecordCall();
@@ -342,9 +371,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public int getFrameCount(RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getFrameCount();
-          }
+          return getQueryDelegate().getFrameCount();
       }
       finally {
           unrecordCall();
@@ -527,9 +554,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public Set getClsesWithDirectTemplateSlotValue(Slot slot, Object value, RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getClsesWithDirectTemplateSlotValue(slot, value);
-          }
+          return getQueryDelegate().getClsesWithDirectTemplateSlotValue(slot, value);
       }
       finally {
           unrecordCall();
@@ -542,9 +567,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
                                                     RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getClsesWithDirectTemplateFacetValue(slot, facet, value);
-          }
+          return getQueryDelegate().getClsesWithDirectTemplateFacetValue(slot, facet, value);
       }
       finally {
           unrecordCall();
@@ -557,9 +580,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
                                                               RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getFramesWithMatchingDirectOwnSlotValue(slot, value, maxMatches);
-          }
+          return getQueryDelegate().getFramesWithMatchingDirectOwnSlotValue(slot, value, maxMatches);
       }
       finally {
           unrecordCall();
@@ -573,9 +594,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
                                                             RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getClsesWithMatchingDirectTemplateFacetValue(slot, facet, value, maxMatches);
-          }
+          return getQueryDelegate().getClsesWithMatchingDirectTemplateFacetValue(slot, facet, value, maxMatches);
       }
       finally {
           unrecordCall();
@@ -588,9 +607,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
                                                            RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getClsesWithMatchingDirectTemplateSlotValue(slot, value, maxMatches);
-          }
+          return getQueryDelegate().getClsesWithMatchingDirectTemplateSlotValue(slot, value, maxMatches);
       }
       finally {
           unrecordCall();
@@ -619,11 +636,37 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
       }
     }
 
-    public Set<Cls> getClses(RemoteSession session) throws ServerSessionLost {
+    public RemoteResponse<List<List>> getDirectValues(List<Reference> references,
+                                                      RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
+          LocalizeUtils.localize(references, _kb);
           synchronized(_kbLock) {
-              return getDelegate().getClses();
+              List<List> valuesList = new ArrayList<List>(references.size());
+              for (Reference reference : references) {
+                  Frame frame = reference.getFrame();
+                  Slot slot = reference.getSlot();
+                  Facet facet = reference.getFacet();
+                  boolean isTemplate = reference.isTemplate();
+                  List values;
+                  if (facet != null) {
+                      if (!isTemplate) {
+                          throw new UnsupportedOperationException("Own facet values are not cached: " + reference);
+                      }
+                      values = getDelegate().getDirectTemplateFacetValues((Cls) frame, slot, facet);
+                  }
+                  else if (isTemplate) {
+                      values = getDelegate().getDirectTemplateSlotValues((Cls) frame, slot);
+                  }
+                  else {
+                      values = getDelegate().getDirectOwnSlotValues(frame, slot);
+                  }
+                  Sft sft = new Sft(slot, facet, isTemplate);
+                  CacheResult<List> cacheValues = new CacheResult<List>(values, true);
+                  addReadUpdate(session, frame, new CacheRead<RemoteSession, Sft, List>(session, sft, cacheValues));
+                  valuesList.add(values);
+              }
+              return new RemoteResponse<List<List>>(valuesList, getValueUpdates(session));
           }
       }
       finally {
@@ -631,12 +674,20 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
       }
     }
 
+    public Set<Cls> getClses(RemoteSession session) throws ServerSessionLost {
+      recordCall(session);
+      try {
+          return getQueryDelegate().getClses();
+      }
+      finally {
+          unrecordCall();
+      }
+    }
+
     public Set<Facet> getTemplateFacets(Cls cls, Slot slot, RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getTemplateFacets(cls, slot);
-          }
+          return getQueryDelegate().getTemplateFacets(cls, slot);
       }
       finally {
           unrecordCall();
@@ -659,9 +710,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public Frame getFrame(FrameID id, RemoteSession session) throws  ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getFrame(id);
-          }
+          return getQueryDelegate().getFrame(id);
       }
       finally {
           unrecordCall();
@@ -749,9 +798,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public Set<Frame> getFrames(RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getFrames();
-          }
+          return getQueryDelegate().getFrames();
       }
       finally {
           unrecordCall();
@@ -784,9 +831,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public Collection getTemplateFacetValues(Cls cls, Slot slot, Facet facet, RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getTemplateFacetValues(cls, slot, facet);
-          }
+          return getQueryDelegate().getTemplateFacetValues(cls, slot, facet);
       }
       finally {
           unrecordCall();
@@ -952,9 +997,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public Set<Facet> getFacets(RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getFacets();
-          }
+          return getQueryDelegate().getFacets();
       }
       finally {
           unrecordCall();
@@ -994,9 +1037,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public Set<Reference> getReferences(Object value, RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getReferences(value);
-          }
+          return getQueryDelegate().getReferences(value);
       }
       finally {
           unrecordCall();
@@ -1006,9 +1047,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public Set<Reference> getMatchingReferences(String value, int maxMatches, RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getMatchingReferences(value, maxMatches);
-          }
+          return getQueryDelegate().getMatchingReferences(value, maxMatches);
       }
       finally {
           unrecordCall();
@@ -1021,9 +1060,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
                                                     RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getClsesWithMatchingBrowserText(value, superclasses, maxMatches);
-          }
+          return getQueryDelegate().getClsesWithMatchingBrowserText(value, superclasses, maxMatches);
       }
       finally {
           unrecordCall();
@@ -1079,9 +1116,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public String getFrameName(Frame frame, RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getFrameName(frame);
-          }
+          return getQueryDelegate().getFrameName(frame);
       }
       finally {
           unrecordCall();
@@ -1091,9 +1126,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public Set getOverriddenTemplateSlots(Cls cls, RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getOverriddenTemplateSlots(cls);
-          }
+          return getQueryDelegate().getOverriddenTemplateSlots(cls);
       }
       finally {
           unrecordCall();
@@ -1103,9 +1136,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public Set getDirectlyOverriddenTemplateSlots(Cls cls, RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getDirectlyOverriddenTemplateSlots(cls);
-          }
+          return getQueryDelegate().getDirectlyOverriddenTemplateSlots(cls);
       }
       finally {
           unrecordCall();
@@ -1115,9 +1146,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public Set getOverriddenTemplateFacets(Cls cls, Slot slot, RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getOverriddenTemplateFacets(cls, slot);
-          }
+          return getQueryDelegate().getOverriddenTemplateFacets(cls, slot);
       }
       finally {
           unrecordCall();
@@ -1127,9 +1156,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public Set getDirectlyOverriddenTemplateFacets(Cls cls, Slot slot, RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getOverriddenTemplateFacets(cls, slot);
-          }
+          return getQueryDelegate().getOverriddenTemplateFacets(cls, slot);
       }
       finally {
           unrecordCall();
@@ -1158,9 +1185,16 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
                                                     RemoteSession session)
                                                     throws ProtegeException, ServerSessionLost {
       recordCall(session);
+      FrameDbSnapshot snapshot = null;
       try {
         synchronized(_kbLock) {
           job.localize(_kb);
+          if (job.isReadOnly()) {
+              snapshot = createSnapshot();
+          }
+        }
+        if (snapshot != null) {
+            snapshot.activate();
         }
         return job.run();
       } catch (ProtegeException pe) {
@@ -1168,10 +1202,26 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
         throw pe;
       }
       finally {
+          if (snapshot != null) {
+              snapshot.close();
+          }
           unrecordCall();
       }
     }
 
+    /**
+     * Creates a point in time view of the knowledge base that a read only job can use
+     * without holding the knowledge base lock.  The caller must hold the knowledge base
+     * lock.
+     *
+     * @return the snapshot or null if the knowledge base does not support snapshots.
+     */
+    public FrameDbSnapshot createSnapshot() {
+        MergingNarrowFrameStore mnfs = MergingNarrowFrameStore.get(_kb);
+        NarrowFrameStore active = mnfs == null ? null : mnfs.getActiveFrameStore();
+        return active instanceof InMemoryFrameDb ? ((InMemoryFrameDb) active).createSnapshot() : null;
+    }
+
     public void register(RemoteSession session) throws ServerSessionLost {
       synchronized(_kbLock) {
         Registration registration = new Registration(_eventWriter);
@@ -1186,7 +1236,10 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
               while (inTransaction()) {
                   rollbackTransaction(session);
               }
-              _sessionToRegistrationMap.remove(session);
+              Registration registration = _sessionToRegistrationMap.remove(session);
+              if (registration != null) {
+                  registration.close();
+              }
               frameCalculator.deregister(session);
           }
       }
@@ -1210,6 +1263,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
               if (reg == null) {
                   throw new IllegalStateException("Not registered");
               }
+              reg.clearEventsSignal();
               FifoReader<AbstractEvent> clientEvents = reg.getEvents();
               AbstractEvent eo = null;
               while ((eo = clientEvents.read()) != null) {
@@ -1223,12 +1277,46 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
       }
     }
 
+    /**
+     * Waits for events or value updates for the session without taking the knowledge base
+     * lock, so that an idle client does not have to keep calling getEvents().  When the
+     * BandWidthPolicy of the session says that the client has been sent too many value
+     * updates recently the answer is held back for a sampling interval so that the updates
+     * reach the client in larger and fewer batches.
+     */
+    public boolean waitForEvents(RemoteSession session, long timeout) throws ServerSessionLost {
+      Registration registration;
+      synchronized (sessionMap) {
+        registration = _sessionToRegistrationMap.get(session);
+      }
+      if (registration == null) {
+        throw new ServerSessionLost("Dropped connection due to timeout");
+      }
+      try {
+        boolean pending = registration.waitForEvents(Math.min(timeout, RemoteServerFrameStore.EVENT_WAIT_TIMEOUT));
+        BandWidthPolicy policy = registration.getBandWidthPolicy();
+        if (pending && policy.stopSending()) {
+          Thread.sleep(policy.getSamplingInterval());
+        }
+        return pending;
+      }
+      catch (InterruptedException ie) {
+        return true;
+      }
+    }
+
     public void updateEvents(RemoteSession session) {
       Registration registration = _sessionToRegistrationMap.get(session);
       TransactionIsolationLevel level = getTransactionIsolationLevel();
-      for (AbstractEvent eo : getDelegate().getEvents()) {
+      List<AbstractEvent> events = getDelegate().getEvents();
+      for (AbstractEvent eo : events) {
         addEvent(session, registration, level, eo);
       }
+      if (!events.isEmpty()) {
+        for (Registration r : _sessionToRegistrationMap.values()) {
+          r.signalEvents();
+        }
+      }
     }
 
     private void addEvent(RemoteSession session,
@@ -1358,10 +1446,15 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
   private void addWriteUpdate(RemoteSession session, Frame frame, 
 		                     SerializedCacheUpdate<RemoteSession, Sft, List> update) {
 	  ValueUpdate vu = new ValueUpdate(frame, update);
+	  recordChange(vu);
 	  TransactionIsolationLevel level = getTransactionIsolationLevel();
 	  if (TransactionMonitor.updatesSeenByUntransactedClients(transactionMonitor, level)) {
+		  Registration mine = _sessionToRegistrationMap.get(getCurrentSession());
 		  for (Registration r : _sessionToRegistrationMap.values()) {
 			  r.addUpdate(vu);
+			  if (r != mine) {  // the caller gets its updates with the response
+				  r.signalEvents();
+			  }
 		  }
 	  }
 	  else {
@@ -1371,11 +1464,25 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
 	  }
   }
 
+  /*
+   * A change made in a transaction is recorded again when it is committed because a client
+   * that saved its cache in between does not have it.
+   */
+  private void recordChange(ValueUpdate vu) {
+      if (vu.getFrame() != null) {
+          changeJournal.recordChange(vu.getFrame().getFrameID());
+      }
+      else if (vu.getUpdate() instanceof CacheDelete) {
+          changeJournal.recordChangeToEverything();
+      }
+  }
+
   public void addReadUpdate(RemoteSession session, Frame frame, 
 		                    SerializedCacheUpdate<RemoteSession, Sft, List> update) {
 	  Registration r = _sessionToRegistrationMap.get(getCurrentSession());
 	  ValueUpdate vu = new ValueUpdate(frame, update);
 	  r.addUpdate(vu);
+	  r.signalEvents();
   }
 
   @SuppressWarnings("unchecked")
@@ -1450,6 +1557,9 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
               if (!inTransaction()) {
                   Registration registration = _sessionToRegistrationMap.get(session);
                   List<ValueUpdate> committedUpdates = registration.getCommits();
+                  for (ValueUpdate committedUpdate : committedUpdates) {
+                      recordChange(committedUpdate);
+                  }
                   for (Registration otherRegistration : _sessionToRegistrationMap.values()) {
                       if (otherRegistration.equals(registration)) {
                           continue;
@@ -1457,6 +1567,9 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
                       for (ValueUpdate committedUpdate : committedUpdates) {
                           otherRegistration.addUpdate(committedUpdate);
                       }
+                      if (!committedUpdates.isEmpty()) {
+                          otherRegistration.signalEvents();
+                      }
                   }
                   registration.endTransaction();
               }
@@ -1600,9 +1713,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public Set<Frame> getFramesWithAnyDirectOwnSlotValue(Slot slot, RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getFramesWithAnyDirectOwnSlotValue(slot);
-          }
+          return getQueryDelegate().getFramesWithAnyDirectOwnSlotValue(slot);
       }
       finally {
           unrecordCall();
@@ -1612,9 +1723,7 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
     public Set<Cls> getClsesWithAnyDirectTemplateSlotValue(Slot slot, RemoteSession session) throws ServerSessionLost {
       recordCall(session);
       try {
-          synchronized(_kbLock) {
-              return getDelegate().getClsesWithAnyDirectTemplateSlotValue(slot);
-          }
+          return getQueryDelegate().getClsesWithAnyDirectTemplateSlotValue(slot);
       }
       finally {
           unrecordCall();
@@ -1795,6 +1904,21 @@ public class ServerFrameStore extends UnicastRemoteObject implements RemoteServe
       }
     }
 
+    public RemoteResponse<FrameChanges> getFrameChanges(String epoch, long sequence, RemoteSession session) 
+    throws ServerSessionLost {
+      recordCall(session);
+      try {
+          synchronized (_kbLock) {
+              updateEvents(session);
+              FrameChanges changes = changeJournal.getChangesSince(epoch, sequence);
+              return new RemoteResponse<FrameChanges>(changes, getValueUpdates(session));
+          }
+      }
+      finally {
+          unrecordCall();
+      }
+    }
+
     public FrameCalculator getFrameCalculator() {
         return frameCalculator;
     }
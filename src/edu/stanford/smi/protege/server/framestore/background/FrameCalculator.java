@@ -20,6 +20,7 @@ import edu.stanford.smi.protege.model.KnowledgeBase;
 import edu.stanford.smi.protege.model.Model;
 import edu.stanford.smi.protege.model.Slot;
 import edu.stanford.smi.protege.model.framestore.FrameStore;
+import edu.stanford.smi.protege.model.framestore.MergingNarrowFrameStore;
 import edu.stanford.smi.protege.model.framestore.Sft;
 import edu.stanford.smi.protege.server.RemoteSession;
 import edu.stanford.smi.protege.server.Server;
@@ -27,6 +28,7 @@ import edu.stanford.smi.protege.server.ServerProject;
 import edu.stanford.smi.protege.server.framestore.Registration;
 import edu.stanford.smi.protege.server.framestore.ServerFrameStore;
 import edu.stanford.smi.protege.server.framestore.ServerSessionLost;
+import edu.stanford.smi.protege.storage.database.IdleConnectionNarrowFrameStore;
 import edu.stanford.smi.protege.util.Log;
 import edu.stanford.smi.protege.util.transaction.cache.CacheResult;
 import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheAbortComplete;
@@ -63,6 +65,7 @@ public class FrameCalculator {
   
   public static long WAIT_FOR_OVERLOADED_CLIENT = 300; // ms
   public static long MAX_WORKINFO_QUEUE = 15000;
+  public static int PREFETCH_BATCH_SIZE = 500;
 
 
   private FrameStore fs;
@@ -89,6 +92,9 @@ public class FrameCalculator {
   
   private long startOfLockHeldTime;
 
+  private boolean databaseFrameStoreChecked = false;
+  private IdleConnectionNarrowFrameStore databaseFrameStore;
+
   public FrameCalculator(FrameStore fs,
                          ServerCacheStateMachine machine,
                          Object kbLock,
@@ -228,6 +234,51 @@ private void doWork(WorkInfo wi) throws ServerSessionLost {
   }
 
 
+  /*
+   * The frames waiting to be precalculated for a client are mostly siblings (e.g. the
+   * subclasses of a class that the client expanded).  If they live in a database, fetching
+   * them in one go is much cheaper than one query per frame when doWork() reads them.
+   */
+  private void prefetchQueuedFrames(WorkInfo current) {
+    IdleConnectionNarrowFrameStore nfs = getDatabaseFrameStore(current.getFrame());
+    if (nfs == null) {
+      return;
+    }
+    List<Frame> frames = new ArrayList<Frame>();
+    synchronized (requestLock) {
+      for (WorkInfo wi : requests) {
+        if (wi.getClient() == current.getClient()) {
+          frames.add(wi.getFrame());
+          if (frames.size() == PREFETCH_BATCH_SIZE) {
+            break;
+          }
+        }
+      }
+    }
+    if (frames.size() > 1) {
+      ServerFrameStore.setCurrentSession(current.getClient());
+      letOtherThreadsRun();
+      synchronized (kbLock) {
+        if (!server.inTransaction()) {
+          nfs.prefetch(frames);
+        }
+      }
+      afterKbLockHeld();
+    }
+  }
+
+  private IdleConnectionNarrowFrameStore getDatabaseFrameStore(Frame frame) {
+    if (!databaseFrameStoreChecked) {
+      databaseFrameStoreChecked = true;
+      KnowledgeBase kb = frame.getKnowledgeBase();
+      if (kb != null && MergingNarrowFrameStore.get(kb) != null) {
+        databaseFrameStore = (IdleConnectionNarrowFrameStore)
+            MergingNarrowFrameStore.getNarrowFrameStore(kb, IdleConnectionNarrowFrameStore.class);
+      }
+    }
+    return databaseFrameStore;
+  }
+
   private void checkAbilityToGenerateFullCache(WorkInfo wi) {
     if (server.inTransaction() && wi.isTargetFullCache()) {
       if (log.isLoggable(Level.FINE)) {
@@ -519,6 +570,7 @@ private void doWork(WorkInfo wi) throws ServerSessionLost {
             try {
                 workInfo = getWorkInfo();
                 long startTime = System.currentTimeMillis();
+                prefetchQueuedFrames(workInfo);
                 doWork(workInfo);
                 synchronized (requestLock) {
                     removeRequest(workInfo);
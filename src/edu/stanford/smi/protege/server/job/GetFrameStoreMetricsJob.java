@@ -0,0 +1,41 @@
+package edu.stanford.smi.protege.server.job;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.stanford.smi.protege.exception.ProtegeException;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.framestore.FrameStoreMethodMetrics;
+import edu.stanford.smi.protege.model.framestore.FrameStoreMetrics;
+import edu.stanford.smi.protege.util.ProtegeJob;
+
+/**
+ * Fetches the frame store metrics of the knowledge base from wherever it lives (the
+ * server for a client of a remote project).  The result is empty unless metrics have been
+ * enabled there (see FrameStoreMetrics).
+ */
+public class GetFrameStoreMetricsJob extends ProtegeJob {
+    private static final long serialVersionUID = -5239177470265418839L;
+    private final boolean reset;
+
+    public GetFrameStoreMetricsJob(KnowledgeBase kb, boolean reset) {
+        super(kb);
+        this.reset = reset;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<FrameStoreMethodMetrics> getMetrics(KnowledgeBase kb, boolean reset) {
+        return (List<FrameStoreMethodMetrics>) new GetFrameStoreMetricsJob(kb, reset).execute();
+    }
+
+    @Override
+    public Object run() throws ProtegeException {
+        FrameStoreMetrics metrics = getKnowledgeBase().getFrameStoreManager().getFrameStoreMetrics();
+        List<FrameStoreMethodMetrics> result = new ArrayList<FrameStoreMethodMetrics>(metrics.getMethodMetrics());
+        if (reset) {
+            metrics.reset();
+        }
+        return result;
+    }
+
+}
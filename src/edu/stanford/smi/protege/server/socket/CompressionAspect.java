@@ -5,17 +5,32 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import edu.stanford.smi.protege.server.ServerProperties;
+import edu.stanford.smi.protege.server.socket.deflate.BlockCodec;
+import edu.stanford.smi.protege.server.socket.deflate.BlockCompressingInputStream;
+import edu.stanford.smi.protege.server.socket.deflate.BlockCompressingOutputStream;
 import edu.stanford.smi.protege.server.socket.deflate.CompressingInputStream;
 import edu.stanford.smi.protege.server.socket.deflate.CompressingOutputStream;
+import edu.stanford.smi.protege.server.socket.deflate.DictionaryDeflateCodec;
+import edu.stanford.smi.protege.server.socket.deflate.Lz4Codec;
+import edu.stanford.smi.protege.util.Log;
 
 public class CompressionAspect implements SocketAspect {
+    public final static String DEFLATE = "deflate";
+    public final static String DEFLATE_DICTIONARY = "deflate-dictionary";
+    public final static String LZ4 = "lz4";
     
     private SocketAspect delegate;
+    private String codec;
     private InputStream is;
     private OutputStream os;
     
     public CompressionAspect(SocketAspect delegate) {
+        this(delegate, DEFLATE);
+    }
+    
+    public CompressionAspect(SocketAspect delegate, String codec) {
         this.delegate = delegate;
+        this.codec = codec;
     }
 
     public SocketAspect getDelegate() {
@@ -24,14 +39,24 @@ public class CompressionAspect implements SocketAspect {
 
     public InputStream getInputStream() throws IOException {
         if (is == null) {
-            is = new CompressingInputStream(delegate.getInputStream());
+            if (codec.equals(DEFLATE)) {
+                is = new CompressingInputStream(delegate.getInputStream());
+            }
+            else {
+                is = new BlockCompressingInputStream(delegate.getInputStream(), createCodec(codec));
+            }
         }
         return is;
     }
 
     public OutputStream getOutputStream() throws IOException {
         if (os == null) {
-            os = new CompressingOutputStream(delegate.getOutputStream());
+            if (codec.equals(DEFLATE)) {
+                os = new CompressingOutputStream(delegate.getOutputStream());
+            }
+            else {
+                os = new BlockCompressingOutputStream(delegate.getOutputStream(), createCodec(codec));
+            }
         }
         return os;
     }
@@ -49,5 +74,30 @@ public class CompressionAspect implements SocketAspect {
     public static boolean useCompression() {
         return ServerProperties.useCompression();
     }
+    
+    /**
+     * @return the codec named by the server.compression.codec property or deflate if
+     * that name is not known.
+     */
+    public static String getCodec() {
+        String codec = ServerProperties.compressionCodec();
+        if (codec.equals(DEFLATE_DICTIONARY) || codec.equals(LZ4)) {
+            return codec;
+        }
+        if (!codec.equals(DEFLATE)) {
+            Log.getLogger().warning("Unknown compression codec " + codec + ", using " + DEFLATE);
+        }
+        return DEFLATE;
+    }
+    
+    private static BlockCodec createCodec(String codec) throws IOException {
+        if (codec.equals(DEFLATE_DICTIONARY)) {
+            return new DictionaryDeflateCodec();
+        }
+        else if (codec.equals(LZ4)) {
+            return new Lz4Codec();
+        }
+        throw new IOException("Unknown compression codec " + codec);
+    }
 
 }
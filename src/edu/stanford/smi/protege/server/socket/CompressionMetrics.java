@@ -0,0 +1,124 @@
+package edu.stanford.smi.protege.server.socket;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters kept by the compressing streams of all the connections in this jvm.  Bytes are
+ * counted before compression and after it in both directions, along with the time spent in
+ * the codec, so that the compression ratio and the codec throughput of the current
+ * server.compression.codec can be compared.
+ * <p></p>
+ * <b>Thread Safety:</b> all methods are thread safe.
+ */
+public class CompressionMetrics {
+    private static final double MB = 1024 * 1024;
+
+    private final AtomicLong packetsWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong compressedBytesWritten = new AtomicLong();
+    private final AtomicLong compressNanos = new AtomicLong();
+    private final AtomicLong packetsRead = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong compressedBytesRead = new AtomicLong();
+    private final AtomicLong decompressNanos = new AtomicLong();
+
+    public void recordCompression(int size, int compressedSize, long nanos) {
+        packetsWritten.incrementAndGet();
+        bytesWritten.addAndGet(size);
+        compressedBytesWritten.addAndGet(compressedSize);
+        compressNanos.addAndGet(nanos);
+    }
+
+    public void recordDecompression(int size, int compressedSize, long nanos) {
+        packetsRead.incrementAndGet();
+        bytesRead.addAndGet(size);
+        compressedBytesRead.addAndGet(compressedSize);
+        decompressNanos.addAndGet(nanos);
+    }
+
+    public long getPacketsWritten() {
+        return packetsWritten.get();
+    }
+
+    /**
+     * @return the number of bytes handed to the compressing streams.
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return the number of bytes that the compressing streams sent for them (without
+     * the packet headers).
+     */
+    public long getCompressedBytesWritten() {
+        return compressedBytesWritten.get();
+    }
+
+    public long getCompressNanos() {
+        return compressNanos.get();
+    }
+
+    public long getPacketsRead() {
+        return packetsRead.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getCompressedBytesRead() {
+        return compressedBytesRead.get();
+    }
+
+    public long getDecompressNanos() {
+        return decompressNanos.get();
+    }
+
+    /**
+     * @return the uncompressed size of the bytes written divided by their compressed size.
+     */
+    public double getCompressionRatio() {
+        long compressed = compressedBytesWritten.get();
+        return compressed == 0 ? 0 : (double) bytesWritten.get() / compressed;
+    }
+
+    /**
+     * @return the uncompressed megabytes compressed per second of codec time.
+     */
+    public double getCompressThroughput() {
+        return throughput(bytesWritten.get(), compressNanos.get());
+    }
+
+    /**
+     * @return the uncompressed megabytes produced per second of codec time.
+     */
+    public double getDecompressThroughput() {
+        return throughput(bytesRead.get(), decompressNanos.get());
+    }
+
+    private static double throughput(long bytes, long nanos) {
+        return nanos == 0 ? 0 : (bytes / MB) / (nanos / 1e9);
+    }
+
+    public synchronized void reset() {
+        packetsWritten.set(0);
+        bytesWritten.set(0);
+        compressedBytesWritten.set(0);
+        compressNanos.set(0);
+        packetsRead.set(0);
+        bytesRead.set(0);
+        compressedBytesRead.set(0);
+        decompressNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("packets written=%d, %d bytes compressed to %d (ratio %.2f to 1, %.1f MB/s), "
+                             + "packets read=%d, %d bytes decompressed from %d (%.1f MB/s)",
+                             packetsWritten.get(), bytesWritten.get(), compressedBytesWritten.get(),
+                             getCompressionRatio(), getCompressThroughput(),
+                             packetsRead.get(), bytesRead.get(), compressedBytesRead.get(),
+                             getDecompressThroughput());
+    }
+}
@@ -7,6 +7,8 @@ import java.util.logging.Level;
 
 public class MonitoringAspect implements SocketAspect {
     public final static int KB = 1024;
+    private static final CompressionMetrics compressionMetrics = new CompressionMetrics();
+
     private SocketAspect delegate;
 
     private InputStream is;
@@ -36,6 +38,17 @@ public class MonitoringAspect implements SocketAspect {
     
     public void close() throws IOException {
         delegate.close();
+        if (MonitoringOutputStream.log.isLoggable(Level.FINE) && compressionMetrics.getPacketsWritten() > 0) {
+            MonitoringOutputStream.log.fine("Compression: " + compressionMetrics);
+        }
+    }
+    
+    /**
+     * @return the compression ratio and codec throughput of the compressed connections
+     * in this jvm.
+     */
+    public static CompressionMetrics getCompressionMetrics() {
+        return compressionMetrics;
     }
     
     public static boolean useMonitoring() {
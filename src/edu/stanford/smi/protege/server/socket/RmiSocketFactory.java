@@ -1,6 +1,7 @@
 package edu.stanford.smi.protege.server.socket;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
@@ -26,6 +27,7 @@ public class RmiSocketFactory implements RMIClientSocketFactory,
      */
     private boolean useSSL = false;
     private boolean useCompression = CompressionAspect.useCompression();
+    private String compressionCodec = CompressionAspect.getCodec();
     
     public RmiSocketFactory(SSLFactory.Context context) {
         useSSL = SSLFactory.useSSL(context);
@@ -35,7 +37,7 @@ public class RmiSocketFactory implements RMIClientSocketFactory,
     public Socket createSocket(String host, int port) throws IOException {
         SocketAddress serverAddress = new InetSocketAddress(host, port);
         SocketAddress localAddress = new InetSocketAddress(0);
-        Socket socket = new SocketWithAspects(useCompression);
+        Socket socket = new SocketWithAspects(useCompression, compressionCodec);
         socket.setReuseAddress(true);
         socket.bind(localAddress);
         socket.connect(serverAddress);
@@ -46,7 +48,7 @@ public class RmiSocketFactory implements RMIClientSocketFactory,
         return new ServerSocket(port) {
             @Override
             public Socket accept() throws IOException {
-                Socket socket = new SocketWithAspects(useCompression);
+                Socket socket = new SocketWithAspects(useCompression, compressionCodec);
                 implAccept(socket);
                 return socket;
             }
@@ -58,14 +60,25 @@ public class RmiSocketFactory implements RMIClientSocketFactory,
             return false;
         }
         RmiSocketFactory other = (RmiSocketFactory) o;
-        return useSSL == other.useSSL && useCompression == other.useCompression;
+        return useSSL == other.useSSL && useCompression == other.useCompression
+            && compressionCodec.equals(other.compressionCodec);
     }
     
     public int hashCode() {
-        return (useSSL ? 1 : 0) + (useCompression ? 2 : 0);
+        return (useSSL ? 1 : 0) + (useCompression ? 2 : 0) + 4 * compressionCodec.hashCode();
     }
 
 
+    /*
+     * A factory from a jvm that predates the codec choice only knows deflate.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (compressionCodec == null) {
+            compressionCodec = CompressionAspect.DEFLATE;
+        }
+    }
+
     private static boolean portsReported = false;
     private void reportPorts() {
         if (!portsReported) {
@@ -76,7 +89,9 @@ public class RmiSocketFactory implements RMIClientSocketFactory,
             sb.append(", registry port = ");
             sb.append(registryPort);
             if (useCompression) {
-                sb.append(", compressed stream");
+                sb.append(", compressed stream (");
+                sb.append(compressionCodec);
+                sb.append(")");
             }
             if (useSSL) {
                 sb.append(", SSL");
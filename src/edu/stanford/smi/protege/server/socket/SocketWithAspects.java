@@ -15,6 +15,10 @@ public class SocketWithAspects extends Socket {
     private SocketAspect myAspects;
 
     public SocketWithAspects(boolean useCompression) {
+        this(useCompression, CompressionAspect.DEFLATE);
+    }
+
+    public SocketWithAspects(boolean useCompression, String compressionCodec) {
         myAspects = new SocketAspect() {
 
             public SocketAspect getDelegate() {
@@ -38,7 +42,7 @@ public class SocketWithAspects extends Socket {
             myAspects = new SimulateDelayAspect(myAspects);
         }
         if (useCompression) {
-            myAspects = new CompressionAspect(myAspects);
+            myAspects = new CompressionAspect(myAspects, compressionCodec);
         }
         if (MonitoringAspect.useMonitoring()) {
             myAspects = new MonitoringAspect(myAspects);
@@ -0,0 +1,34 @@
+package edu.stanford.smi.protege.server.socket.deflate;
+
+import java.io.IOException;
+
+/**
+ * Compresses or decompresses the packets of one direction of a connection.  A codec may
+ * remember the packets it has seen (e.g. to use them as a dictionary for the next packet), so
+ * each stream has its own codec and the codecs on the two ends of a connection see the same
+ * packets in the same order.
+ */
+public interface BlockCodec {
+
+    /**
+     * @return the size of a buffer that is large enough for the compressed form of
+     * length bytes.
+     */
+    int maxCompressedLength(int length);
+
+    /**
+     * @return the number of bytes written to dst.
+     */
+    int compress(byte[] src, int length, byte[] dst) throws IOException;
+
+    /**
+     * Decompresses srcLength bytes into exactly dstLength bytes of dst.
+     */
+    void decompress(byte[] src, int srcLength, byte[] dst, int dstLength) throws IOException;
+
+    /**
+     * Releases the resources of the codec when its stream is closed.
+     */
+    void end();
+
+}
@@ -0,0 +1,103 @@
+package edu.stanford.smi.protege.server.socket.deflate;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import edu.stanford.smi.protege.server.socket.MonitoringAspect;
+
+/**
+ * Reads the packets written by a BlockCompressingOutputStream.  The codec must be of the same
+ * kind as the one used by the writer and must see every packet that the writer's codec saw.
+ */
+public class BlockCompressingInputStream extends InputStream {
+    private InputStream is;
+    private BlockCodec codec;
+
+    private byte[] buffer = new byte[0];
+    private int offset = 0;
+    private int limit = 0;
+    private byte[] compressedBuffer = new byte[0];
+
+    public BlockCompressingInputStream(InputStream is, BlockCodec codec) {
+        this.is = is;
+        this.codec = codec;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (offset == limit && !fillBuffer()) {
+            return -1;
+        }
+        return buffer[offset++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (offset == limit && !fillBuffer()) {
+            return -1;
+        }
+        int count = Math.min(len, limit - offset);
+        System.arraycopy(buffer, offset, b, off, count);
+        offset += count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return limit - offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            is.close();
+        }
+        finally {
+            codec.end();
+        }
+    }
+
+    /*
+     * Returns false at the end of the stream.
+     */
+    private boolean fillBuffer() throws IOException {
+        PacketHeader header;
+        try {
+            header = PacketHeader.read(is);
+        }
+        catch (EOFException eof) {
+            return false;
+        }
+        int size = header.getSize();
+        int compressedSize = header.getCompressedSize();
+        if (buffer.length < size) {
+            buffer = new byte[size];
+        }
+        if (compressedBuffer.length < compressedSize) {
+            compressedBuffer = new byte[compressedSize];
+        }
+        readFully(compressedBuffer, compressedSize);
+        long start = System.nanoTime();
+        codec.decompress(compressedBuffer, compressedSize, buffer, size);
+        MonitoringAspect.getCompressionMetrics().recordDecompression(size, compressedSize,
+                                                                     System.nanoTime() - start);
+        offset = 0;
+        limit = size;
+        return true;
+    }
+
+    private void readFully(byte[] b, int len) throws IOException {
+        int bytesRead = 0;
+        while (bytesRead < len) {
+            int readThisTime = is.read(b, bytesRead, len - bytesRead);
+            if (readThisTime == -1) {
+                throw new EOFException("Unabled to read entire compressed packet contents");
+            }
+            bytesRead += readThisTime;
+        }
+    }
+}
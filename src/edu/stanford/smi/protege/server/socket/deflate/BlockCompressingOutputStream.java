@@ -0,0 +1,88 @@
+package edu.stanford.smi.protege.server.socket.deflate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.stanford.smi.protege.server.socket.MonitoringAspect;
+import edu.stanford.smi.protege.util.Log;
+
+/**
+ * Like the CompressingOutputStream this stream sends each flush as one packet with a
+ * PacketHeader giving its size and compressed size, but the packet is compressed by a
+ * BlockCodec.  The codec belongs to the stream and remembers the earlier packets, so the
+ * BlockCompressingInputStream on the other end must be given a codec of the same kind.
+ */
+public class BlockCompressingOutputStream extends OutputStream {
+    private static Logger log = Log.getLogger(BlockCompressingOutputStream.class);
+
+    public static int BUFFER_SIZE = CompressingOutputStream.BUFFER_SIZE;
+
+    private OutputStream os;
+    private BlockCodec codec;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int offset = 0;
+    private byte[] compressedBuffer;
+
+    public BlockCompressingOutputStream(OutputStream os, BlockCodec codec) {
+        this.os = os;
+        this.codec = codec;
+        compressedBuffer = new byte[codec.maxCompressedLength(BUFFER_SIZE)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        buffer[offset++] = (byte) b;
+        if (offset == BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int count = Math.min(len, BUFFER_SIZE - offset);
+            System.arraycopy(b, off, buffer, offset, count);
+            offset += count;
+            off += count;
+            len -= count;
+            if (offset == BUFFER_SIZE) {
+                flush();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (offset > 0) {
+            try {
+                long start = System.nanoTime();
+                int compressedSize = codec.compress(buffer, offset, compressedBuffer);
+                MonitoringAspect.getCompressionMetrics().recordCompression(offset, compressedSize,
+                                                                           System.nanoTime() - start);
+                if (log.isLoggable(Level.FINEST)) {
+                    log.finest("Compressed packet of " + offset + " bytes to " + compressedSize + " bytes");
+                }
+                new PacketHeader(offset, compressedSize).write(os);
+                os.write(compressedBuffer, 0, compressedSize);
+            }
+            finally {
+                offset = 0;
+            }
+        }
+        os.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            os.close();
+        }
+        finally {
+            codec.end();
+        }
+    }
+}
@@ -8,6 +8,7 @@ import java.util.logging.Logger;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
+import edu.stanford.smi.protege.server.socket.MonitoringAspect;
 import edu.stanford.smi.protege.util.Log;
 
 /**
@@ -104,6 +105,7 @@ public class CompressingInputStream extends InputStream {
 
         readFully(compressedBuffer, compressedSize);
         
+        long start = System.nanoTime();
         inflater.setInput(compressedBuffer);
         try {
             int inflatedSize = inflater.inflate(buffer);
@@ -123,6 +125,8 @@ public class CompressingInputStream extends InputStream {
         if (!inflater.needsInput()) {
             throw new IOException("Inflater thinks that there is more data to decompress");
         }
+        MonitoringAspect.getCompressionMetrics().recordDecompression(buffer.length, compressedSize,
+                                                                     System.nanoTime() - start);
         logPacket(compressedBuffer);
     }
     
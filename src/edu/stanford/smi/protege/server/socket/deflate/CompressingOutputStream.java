@@ -6,6 +6,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.Deflater;
 
+import edu.stanford.smi.protege.server.socket.MonitoringAspect;
 import edu.stanford.smi.protege.util.Log;
 
 /**
@@ -73,6 +74,7 @@ public class CompressingOutputStream extends OutputStream {
                 ;
             }
             else {
+                long start = System.nanoTime();
                 deflater.reset();
                 deflater.setInput(buffer, 0, offset);
                 deflater.finish();
@@ -84,6 +86,8 @@ public class CompressingOutputStream extends OutputStream {
                 int compressedSize = (int) deflater.getBytesWritten();
                 PacketHeader header = new PacketHeader((int) deflater.getBytesRead(), 
                                                        (int) compressedSize);
+                MonitoringAspect.getCompressionMetrics().recordCompression(offset, compressedSize,
+                                                                           System.nanoTime() - start);
                 logPacket(compressedBuffer, compressedSize);
                 header.write(os);
                 os.write(compressedBuffer, 0, compressedSize);
@@ -0,0 +1,93 @@
+package edu.stanford.smi.protege.server.socket.deflate;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflates each packet with the last 8K bytes of the packets before it as a preset
+ * dictionary.  Most RMI calls are a few hundred bytes that mostly repeat class descriptors
+ * and frame names sent a moment earlier, which a fresh Deflater cannot do much with but the
+ * dictionary finds.
+ * <p></p>
+ * Deflate has to index the whole dictionary for every packet, so a larger dictionary costs
+ * time on each small packet for a little more compression.  8K keeps most of the gain of the
+ * full 32K window at about twice the speed.
+ */
+public class DictionaryDeflateCodec implements BlockCodec {
+    public static final int DICTIONARY_SIZE = 8 * 1024;
+
+    private final byte[] dictionary = new byte[DICTIONARY_SIZE];
+    private int dictionaryLength = 0;
+    private Deflater deflater;
+    private Inflater inflater;
+
+    public int maxCompressedLength(int length) {
+        return length + length / 1000 + 64;
+    }
+
+    public int compress(byte[] src, int length, byte[] dst) throws IOException {
+        if (deflater == null) {
+            deflater = new Deflater();
+        }
+        deflater.reset();
+        if (dictionaryLength > 0) {
+            deflater.setDictionary(dictionary, 0, dictionaryLength);
+        }
+        deflater.setInput(src, 0, length);
+        deflater.finish();
+        int compressedSize = deflater.deflate(dst);
+        if (!deflater.finished()) {
+            throw new IOException("Insufficient pad for compression");
+        }
+        addToDictionary(src, length);
+        return compressedSize;
+    }
+
+    public void decompress(byte[] src, int srcLength, byte[] dst, int dstLength) throws IOException {
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        inflater.reset();
+        inflater.setInput(src, 0, srcLength);
+        try {
+            int inflatedSize = inflater.inflate(dst, 0, dstLength);
+            if (inflatedSize == 0 && inflater.needsDictionary()) {
+                inflater.setDictionary(dictionary, 0, dictionaryLength);
+                inflatedSize = inflater.inflate(dst, 0, dstLength);
+            }
+            if (inflatedSize != dstLength || !inflater.finished()) {
+                throw new IOException("Inflated to the wrong size, expected " + dstLength
+                                      + " bytes but got " + inflatedSize + " bytes");
+            }
+        }
+        catch (DataFormatException dfe) {
+            IOException ioe = new IOException("Compressed Data format bad: " + dfe.getMessage());
+            ioe.initCause(dfe);
+            throw ioe;
+        }
+        addToDictionary(dst, dstLength);
+    }
+
+    public void end() {
+        if (deflater != null) {
+            deflater.end();
+        }
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+
+    private void addToDictionary(byte[] b, int length) {
+        if (length >= DICTIONARY_SIZE) {
+            System.arraycopy(b, length - DICTIONARY_SIZE, dictionary, 0, DICTIONARY_SIZE);
+            dictionaryLength = DICTIONARY_SIZE;
+            return;
+        }
+        int keep = Math.min(dictionaryLength, DICTIONARY_SIZE - length);
+        System.arraycopy(dictionary, dictionaryLength - keep, dictionary, 0, keep);
+        System.arraycopy(b, 0, dictionary, keep, length);
+        dictionaryLength = keep + length;
+    }
+}
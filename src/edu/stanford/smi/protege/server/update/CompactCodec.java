@@ -0,0 +1,497 @@
+package edu.stanford.smi.protege.server.update;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.stanford.smi.protege.model.DefaultFrame;
+import edu.stanford.smi.protege.model.Facet;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Slot;
+import edu.stanford.smi.protege.model.framestore.Sft;
+import edu.stanford.smi.protege.server.RemoteSession;
+import edu.stanford.smi.protege.server.ServerProperties;
+import edu.stanford.smi.protege.util.transaction.cache.CacheResult;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheAbortComplete;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheBeginTransaction;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheCommitTransaction;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheCompleted;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheDelete;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheModify;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheRead;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheRollbackTransaction;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.CacheStartComplete;
+import edu.stanford.smi.protege.util.transaction.cache.serialize.SerializedCacheUpdate;
+
+/**
+ * A compact encoding of the value updates and the response that the server sends back with
+ * every call (see OntologyUpdate and RemoteResponse).  Java serialization writes every
+ * frame as an object with its FrameID and, for each call, the class descriptors of the
+ * frames, Sfts and cache updates.  This encoding instead writes
+ * <ul>
+ * <li> a one byte tag for the common values (frames, strings, Integers, Booleans, Floats,
+ *      Sfts, lists and sets) and for the cache updates,
+ * <li> integers and lengths as variable length ints, and
+ * <li> a frame, string, frame class or session the first time it is seen in a message and an
+ *      index into a per message dictionary after that.
+ * </ul>
+ * Anything else is written with the ObjectOutput that the encoding is embedded in, so the
+ * encoding can carry any value that Java serialization can.
+ * <p></p>
+ * The encoding is used when the server.use.compact.encoding property is true on the
+ * writing side.  The reader does not need the property.
+ */
+class CompactCodec {
+    private static final byte NULL = 0;
+    private static final byte OBJECT = 1;
+    private static final byte FRAME = 2;
+    private static final byte STRING = 3;
+    private static final byte INTEGER = 4;
+    private static final byte TRUE = 5;
+    private static final byte FALSE = 6;
+    private static final byte FLOAT = 7;
+    private static final byte SFT = 8;
+    private static final byte LIST = 9;
+    private static final byte SET = 10;
+    private static final byte LINKED_SET = 11;
+
+    private static final byte OTHER_UPDATE = 0;
+    private static final byte READ = 1;
+    private static final byte MODIFY = 2;
+    private static final byte DELETE = 3;
+    private static final byte BEGIN = 4;
+    private static final byte COMMIT = 5;
+    private static final byte ROLLBACK = 6;
+    private static final byte START_COMPLETE = 7;
+    private static final byte COMPLETED = 8;
+    private static final byte ABORT_COMPLETE = 9;
+
+    private static final Map<Class<?>, Constructor<?>> frameConstructors = new ConcurrentHashMap<Class<?>, Constructor<?>>();
+    private static final Constructor<?> NO_CONSTRUCTOR = CompactCodec.class.getDeclaredConstructors()[0];
+
+    private CompactCodec() {
+    }
+
+    public static boolean isEnabled() {
+        return ServerProperties.useCompactEncoding();
+    }
+
+    /*
+     * A frame is written by name only if the reader can make it again with the
+     * (KnowledgeBase, FrameID) constructor that all of the DefaultFrame classes have.
+     */
+    private static Constructor<?> getFrameConstructor(Class<?> c) {
+        Constructor<?> constructor = frameConstructors.get(c);
+        if (constructor == null) {
+            constructor = NO_CONSTRUCTOR;
+            if (DefaultFrame.class.isAssignableFrom(c)) {
+                try {
+                    constructor = c.getConstructor(KnowledgeBase.class, FrameID.class);
+                }
+                catch (NoSuchMethodException e) {
+                    constructor = NO_CONSTRUCTOR;
+                }
+            }
+            frameConstructors.put(c, constructor);
+        }
+        return constructor == NO_CONSTRUCTOR ? null : constructor;
+    }
+
+    static class Encoder {
+        private final ObjectOutput out;
+        private final Map<Frame, Integer> frames = new HashMap<Frame, Integer>();
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+        private final Map<Class<?>, Integer> classes = new HashMap<Class<?>, Integer>();
+        private final Map<RemoteSession, Integer> sessions = new HashMap<RemoteSession, Integer>();
+
+        Encoder(ObjectOutput out) {
+            this.out = out;
+        }
+
+        public void writeValueUpdates(List<ValueUpdate> updates) throws IOException {
+            if (updates == null) {
+                writeInt(0);
+                return;
+            }
+            writeInt(updates.size() + 1);
+            for (ValueUpdate update : updates) {
+                writeValue(update.getFrame());
+                writeUpdate(update.getUpdate());
+            }
+        }
+
+        private void writeUpdate(SerializedCacheUpdate<RemoteSession, Sft, List> update) throws IOException {
+            if (update instanceof CacheRead) {
+                CacheRead<RemoteSession, Sft, List> read = (CacheRead<RemoteSession, Sft, List>) update;
+                out.writeByte(READ);
+                writeSession(read.getSession());
+                writeSft(read.getVar());
+                writeResult(read.getValue());
+            }
+            else if (update instanceof CacheModify) {
+                CacheModify<RemoteSession, Sft, List> modify = (CacheModify<RemoteSession, Sft, List>) update;
+                out.writeByte(MODIFY);
+                writeSession(modify.getSession());
+                writeSft(modify.getVar());
+                writeResult(modify.getNewValue());
+            }
+            else if (update instanceof CacheDelete) {
+                out.writeByte(DELETE);
+                writeSession(update.getSession());
+            }
+            else if (update instanceof CacheBeginTransaction) {
+                out.writeByte(BEGIN);
+                writeSession(update.getSession());
+            }
+            else if (update instanceof CacheCommitTransaction) {
+                out.writeByte(COMMIT);
+                writeSession(update.getSession());
+            }
+            else if (update instanceof CacheRollbackTransaction) {
+                out.writeByte(ROLLBACK);
+                writeSession(update.getSession());
+            }
+            else if (update instanceof CacheStartComplete) {
+                out.writeByte(START_COMPLETE);
+            }
+            else if (update instanceof CacheCompleted) {
+                out.writeByte(COMPLETED);
+            }
+            else if (update instanceof CacheAbortComplete) {
+                out.writeByte(ABORT_COMPLETE);
+            }
+            else {
+                out.writeByte(OTHER_UPDATE);
+                out.writeObject(update);
+            }
+        }
+
+        private void writeResult(CacheResult<List> result) throws IOException {
+            out.writeBoolean(result.isValid());
+            writeValue(result.getResult());
+        }
+
+        private void writeSft(Sft sft) throws IOException {
+            writeValue(sft.getSlot());
+            writeValue(sft.getFacet());
+            out.writeBoolean(sft.isTemplateSlot() || sft.isTemplateFacet());
+        }
+
+        private void writeSession(RemoteSession session) throws IOException {
+            if (session == null) {
+                writeInt(0);
+                return;
+            }
+            Integer index = sessions.get(session);
+            if (index != null) {
+                writeInt(index + 1);
+                return;
+            }
+            writeInt(sessions.size() + 1);
+            sessions.put(session, sessions.size());
+            out.writeObject(session);
+        }
+
+        public void writeValue(Object o) throws IOException {
+            if (o == null) {
+                out.writeByte(NULL);
+            }
+            else if (o instanceof String) {
+                out.writeByte(STRING);
+                writeString((String) o);
+            }
+            else if (o instanceof Frame && getFrameConstructor(o.getClass()) != null) {
+                out.writeByte(FRAME);
+                writeFrame((DefaultFrame) o);
+            }
+            else if (o instanceof Integer) {
+                int i = (Integer) o;
+                out.writeByte(INTEGER);
+                writeInt((i << 1) ^ (i >> 31));
+            }
+            else if (o instanceof Boolean) {
+                out.writeByte(((Boolean) o).booleanValue() ? TRUE : FALSE);
+            }
+            else if (o instanceof Float) {
+                out.writeByte(FLOAT);
+                out.writeFloat((Float) o);
+            }
+            else if (o.getClass() == Sft.class) {
+                out.writeByte(SFT);
+                writeSft((Sft) o);
+            }
+            else if (o.getClass() == ArrayList.class) {
+                out.writeByte(LIST);
+                writeElements((List) o);
+            }
+            else if (o.getClass() == HashSet.class) {
+                out.writeByte(SET);
+                writeElements((HashSet) o);
+            }
+            else if (o.getClass() == LinkedHashSet.class) {
+                out.writeByte(LINKED_SET);
+                writeElements((LinkedHashSet) o);
+            }
+            else {
+                out.writeByte(OBJECT);
+                out.writeObject(o);
+            }
+        }
+
+        private void writeElements(Iterable<?> elements) throws IOException {
+            int size = 0;
+            for (Object o : elements) {
+                ++size;
+            }
+            writeInt(size);
+            for (Object o : elements) {
+                writeValue(o);
+            }
+        }
+
+        private void writeFrame(DefaultFrame frame) throws IOException {
+            Integer index = frames.get(frame);
+            if (index != null) {
+                writeInt(index);
+                return;
+            }
+            writeInt(frames.size());
+            frames.put(frame, frames.size());
+            Class<?> c = frame.getClass();
+            index = classes.get(c);
+            if (index != null) {
+                writeInt(index);
+            }
+            else {
+                writeInt(classes.size());
+                classes.put(c, classes.size());
+                out.writeObject(c);
+            }
+            writeChars(frame.getFrameID().getName());
+            writeInt(frame.getStateFlags());
+        }
+
+        private void writeString(String s) throws IOException {
+            Integer index = strings.get(s);
+            if (index != null) {
+                writeInt(index);
+                return;
+            }
+            writeInt(strings.size());
+            strings.put(s, strings.size());
+            writeChars(s);
+        }
+
+        private void writeChars(String s) throws IOException {
+            int length = s.length();
+            writeInt(length);
+            for (int i = 0; i < length; ++i) {
+                writeInt(s.charAt(i));
+            }
+        }
+
+        /*
+         * An unsigned variable length int: seven bits per byte, low bits first, with the high
+         * bit set on every byte but the last.
+         */
+        private void writeInt(int i) throws IOException {
+            while ((i & ~0x7f) != 0) {
+                out.writeByte((i & 0x7f) | 0x80);
+                i >>>= 7;
+            }
+            out.writeByte(i);
+        }
+    }
+
+    static class Decoder {
+        private final ObjectInput in;
+        private final List<Frame> frames = new ArrayList<Frame>();
+        private final List<String> strings = new ArrayList<String>();
+        private final List<Constructor<?>> constructors = new ArrayList<Constructor<?>>();
+        private final List<RemoteSession> sessions = new ArrayList<RemoteSession>();
+
+        Decoder(ObjectInput in) {
+            this.in = in;
+        }
+
+        public List<ValueUpdate> readValueUpdates() throws IOException, ClassNotFoundException {
+            int size = readInt() - 1;
+            if (size < 0) {
+                return null;
+            }
+            List<ValueUpdate> updates = new ArrayList<ValueUpdate>(size);
+            for (int i = 0; i < size; ++i) {
+                Frame frame = (Frame) readValue();
+                updates.add(new ValueUpdate(frame, readUpdate()));
+            }
+            return updates;
+        }
+
+        @SuppressWarnings("unchecked")
+        private SerializedCacheUpdate<RemoteSession, Sft, List> readUpdate() throws IOException, ClassNotFoundException {
+            byte kind = in.readByte();
+            switch (kind) {
+            case READ: {
+                RemoteSession session = readSession();
+                Sft sft = readSft();
+                return new CacheRead<RemoteSession, Sft, List>(session, sft, readResult());
+            }
+            case MODIFY: {
+                RemoteSession session = readSession();
+                Sft sft = readSft();
+                return new CacheModify<RemoteSession, Sft, List>(session, sft, readResult());
+            }
+            case DELETE:
+                return new CacheDelete<RemoteSession, Sft, List>(readSession());
+            case BEGIN:
+                return new CacheBeginTransaction<RemoteSession, Sft, List>(readSession());
+            case COMMIT:
+                return new CacheCommitTransaction<RemoteSession, Sft, List>(readSession());
+            case ROLLBACK:
+                return new CacheRollbackTransaction<RemoteSession, Sft, List>(readSession());
+            case START_COMPLETE:
+                return new CacheStartComplete<RemoteSession, Sft, List>();
+            case COMPLETED:
+                return new CacheCompleted<RemoteSession, Sft, List>();
+            case ABORT_COMPLETE:
+                return new CacheAbortComplete<RemoteSession, Sft, List>();
+            case OTHER_UPDATE:
+                return (SerializedCacheUpdate<RemoteSession, Sft, List>) in.readObject();
+            default:
+                throw new StreamCorruptedException("Unknown cache update " + kind);
+            }
+        }
+
+        private CacheResult<List> readResult() throws IOException, ClassNotFoundException {
+            boolean isValid = in.readBoolean();
+            return new CacheResult<List>((List) readValue(), isValid);
+        }
+
+        private Sft readSft() throws IOException, ClassNotFoundException {
+            Slot slot = (Slot) readValue();
+            Facet facet = (Facet) readValue();
+            return new Sft(slot, facet, in.readBoolean());
+        }
+
+        private RemoteSession readSession() throws IOException, ClassNotFoundException {
+            int index = readInt() - 1;
+            if (index < 0) {
+                return null;
+            }
+            if (index == sessions.size()) {
+                sessions.add((RemoteSession) in.readObject());
+            }
+            return sessions.get(index);
+        }
+
+        public Object readValue() throws IOException, ClassNotFoundException {
+            byte tag = in.readByte();
+            switch (tag) {
+            case NULL:
+                return null;
+            case OBJECT:
+                return in.readObject();
+            case FRAME:
+                return readFrame();
+            case STRING: {
+                int index = readInt();
+                if (index == strings.size()) {
+                    strings.add(readChars());
+                }
+                return strings.get(index);
+            }
+            case INTEGER: {
+                int i = readInt();
+                return (i >>> 1) ^ -(i & 1);
+            }
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case FLOAT:
+                return in.readFloat();
+            case SFT:
+                return readSft();
+            case LIST: {
+                int size = readInt();
+                List<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; ++i) {
+                    list.add(readValue());
+                }
+                return list;
+            }
+            case SET:
+            case LINKED_SET: {
+                int size = readInt();
+                HashSet<Object> set = tag == SET ? new HashSet<Object>() : new LinkedHashSet<Object>();
+                for (int i = 0; i < size; ++i) {
+                    set.add(readValue());
+                }
+                return set;
+            }
+            default:
+                throw new StreamCorruptedException("Unknown value tag " + tag);
+            }
+        }
+
+        private Frame readFrame() throws IOException, ClassNotFoundException {
+            int index = readInt();
+            if (index < frames.size()) {
+                return frames.get(index);
+            }
+            int classIndex = readInt();
+            if (classIndex == constructors.size()) {
+                Constructor<?> constructor = getFrameConstructor((Class<?>) in.readObject());
+                if (constructor == null) {
+                    throw new StreamCorruptedException("No frame constructor for class " + classIndex);
+                }
+                constructors.add(constructor);
+            }
+            FrameID id = new FrameID(readChars());
+            DefaultFrame frame;
+            try {
+                frame = (DefaultFrame) constructors.get(classIndex).newInstance(null, id);
+            }
+            catch (Exception e) {
+                IOException ioe = new IOException("Could not create frame " + id.getName());
+                ioe.initCause(e);
+                throw ioe;
+            }
+            frame.setStateFlags(readInt());
+            frames.add(frame);
+            return frame;
+        }
+
+        private String readChars() throws IOException {
+            int length = readInt();
+            char[] chars = new char[length];
+            for (int i = 0; i < length; ++i) {
+                chars[i] = (char) readInt();
+            }
+            return new String(chars);
+        }
+
+        private int readInt() throws IOException {
+            int i = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = in.readByte();
+                i |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return i;
+                }
+            }
+            throw new StreamCorruptedException("Malformed variable length int");
+        }
+    }
+}
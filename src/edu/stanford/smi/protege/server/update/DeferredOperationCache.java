@@ -1,6 +1,9 @@
 package edu.stanford.smi.protege.server.update;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import edu.stanford.smi.protege.model.framestore.Sft;
 import edu.stanford.smi.protege.server.RemoteSession;
@@ -22,6 +25,10 @@ import edu.stanford.smi.protege.util.transaction.cache.serialize.SerializedCache
  * This is bad.  It can lead to incorrect data in the untransacted cache and missing rollbacks.  This situation
  * should be taken care of by the InvalidatableCache which commits suicide when it noties a transaction 
  * with nesting less than 0.
+ * <p/>
+ * A cache that is to be saved to disk (see the server.client.persistent.cache property) also
+ * remembers the variables it has been told about, because the caches below it can not list
+ * their contents.
  * 
  * @author tredmond
  *
@@ -29,14 +36,35 @@ import edu.stanford.smi.protege.util.transaction.cache.serialize.SerializedCache
 public class DeferredOperationCache implements Cache<RemoteSession, Sft, List> {
 	private FifoReader<SerializedCacheUpdate<RemoteSession, Sft, List>> transactionUpdates;
 	private Cache<RemoteSession, Sft, List> delegate;
+	private Set<Sft> vars;
 	
 	@SuppressWarnings("unchecked")
     public DeferredOperationCache(Cache<RemoteSession, Sft, List> delegate, 
 	                                 FifoReader<SerializedCacheUpdate<RemoteSession, Sft, List>> transactionUpdates) {
-		this.delegate = delegate;
-		this.transactionUpdates = transactionUpdates;
+		this(delegate, transactionUpdates, false);
 	}
 	
+    public DeferredOperationCache(Cache<RemoteSession, Sft, List> delegate, 
+                                  FifoReader<SerializedCacheUpdate<RemoteSession, Sft, List>> transactionUpdates,
+                                  boolean rememberVars) {
+        this.delegate = delegate;
+        this.transactionUpdates = transactionUpdates;
+        if (rememberVars) {
+            vars = new HashSet<Sft>();
+        }
+    }
+    
+    /**
+     * @return the variables that this cache has been told about, if it was asked to remember
+     * them.  Their values may since have been invalidated.
+     */
+    public Set<Sft> getVars() {
+        if (vars == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(vars);
+    }
+	
 	public CacheResult<List> readCache(RemoteSession session, Sft var) {
 		catchUp();
 		return delegate.readCache(session, var);
@@ -44,21 +72,25 @@ public class DeferredOperationCache implements Cache<RemoteSession, Sft, List> {
 	
 	public void updateCache(RemoteSession session, Sft var) {
 		catchUp();
+		rememberVar(var);
 		delegate.updateCache(session, var);
 	}
 	
 	public void updateCache(RemoteSession session, Sft var, List value) {
 		catchUp();
+		rememberVar(var);
 		delegate.updateCache(session, var, value);
 	}
 	
 	public void modifyCache(RemoteSession session, Sft var) {
 		catchUp();
+		rememberVar(var);
 		delegate.modifyCache(session, var);
 	}
 	
 	public void modifyCache(RemoteSession session, Sft var, List value) {
 		catchUp();
+		rememberVar(var);
 		delegate.modifyCache(session, var, value);
 	}
 	
@@ -77,6 +109,9 @@ public class DeferredOperationCache implements Cache<RemoteSession, Sft, List> {
 			;
 		}
 		delegate.flush();
+		if (vars != null) {
+		    vars.clear();
+		}
 	}
 	
 	public void startCompleteCache() {
@@ -116,6 +151,12 @@ public class DeferredOperationCache implements Cache<RemoteSession, Sft, List> {
 		return delegate.getTransactionNesting(session);
 	}
 	
+	private void rememberVar(Sft var) {
+	    if (vars != null) {
+	        vars.add(var);
+	    }
+	}
+	
 	@SuppressWarnings("unchecked")
 	private void catchUp() {
 		SerializedCacheUpdate<RemoteSession, Sft, List> update;
@@ -22,8 +22,14 @@ import edu.stanford.smi.protege.util.LocalizeUtils;
  */
 public class OntologyUpdate implements Serializable, Localizable {
 
-  private static final long serialVersionUID = 5997164031043543620L;
-private List<ValueUpdate> updates;
+  private static final long serialVersionUID = 7699346602614558689L;
+  private transient List<ValueUpdate> updates;
+  /*
+   * The encoder or decoder of the message while it is being written or read, so that
+   * RemoteResponse can write its response with the same dictionaries.
+   */
+  transient CompactCodec.Encoder encoder;
+  transient CompactCodec.Decoder decoder;
   
   /**
    * 
@@ -48,6 +54,59 @@ private List<ValueUpdate> updates;
      LocalizeUtils.localize(updates, kb);
   }
 
+  /*
+   * The leading flag tells the reader whether the compact encoding follows, so the reader
+   * does not need the property.
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    boolean compact = CompactCodec.isEnabled();
+    out.writeBoolean(compact);
+    try {
+      if (compact) {
+        encoder = new CompactCodec.Encoder(out);
+        encoder.writeValueUpdates(updates);
+      }
+      else {
+        out.writeObject(updates);
+      }
+      writeResponse(out);
+    }
+    finally {
+      encoder = null;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    try {
+      if (in.readBoolean()) {
+        decoder = new CompactCodec.Decoder(in);
+        updates = decoder.readValueUpdates();
+      }
+      else {
+        updates = (List<ValueUpdate>) in.readObject();
+      }
+      readResponse(in);
+    }
+    finally {
+      decoder = null;
+    }
+  }
+
+  /**
+   * Writes what a subclass sends after the value updates, with the encoder if it is not null.
+   */
+  protected void writeResponse(ObjectOutputStream out) throws IOException {
+  }
+
+  /**
+   * Reads what writeResponse() wrote, with the decoder if it is not null.
+   */
+  protected void readResponse(ObjectInputStream in) throws IOException, ClassNotFoundException {
+  }
+
   /* 
      Unable to figure how to avoid the EOF Exception and 
      the ClassNotFoundException.
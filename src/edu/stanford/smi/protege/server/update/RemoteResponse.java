@@ -1,5 +1,8 @@
 package edu.stanford.smi.protege.server.update;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.List;
 
 import edu.stanford.smi.protege.model.KnowledgeBase;
@@ -7,8 +10,8 @@ import edu.stanford.smi.protege.model.Localizable;
 import edu.stanford.smi.protege.util.LocalizeUtils;
 
 public class RemoteResponse<X> extends OntologyUpdate implements Localizable {
-  private static final long serialVersionUID = 8300863164211405883L;
-private X response;
+  private static final long serialVersionUID = -3570712891305357221L;
+  private transient X response;
   
   /**
    * 
@@ -30,5 +33,30 @@ private X response;
     super.localize(kb);
     LocalizeUtils.localize(response, kb);
   }
+
+  /*
+   * The response follows the value updates so that the compact encoding can write both with
+   * the same dictionaries.
+   */
+  @Override
+  protected void writeResponse(ObjectOutputStream out) throws IOException {
+    if (encoder != null) {
+      encoder.writeValue(response);
+    }
+    else {
+      out.writeObject(response);
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  protected void readResponse(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    if (decoder != null) {
+      response = (X) decoder.readValue();
+    }
+    else {
+      response = (X) in.readObject();
+    }
+  }
 	
 }
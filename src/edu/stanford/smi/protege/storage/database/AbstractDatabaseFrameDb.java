@@ -16,6 +16,7 @@ import java.util.logging.Logger;
 import edu.stanford.smi.protege.exception.ProtegeError;
 import edu.stanford.smi.protege.exception.TransactionException;
 import edu.stanford.smi.protege.model.FrameFactory;
+import edu.stanford.smi.protege.model.framestore.NarrowFrameStore;
 import edu.stanford.smi.protege.model.query.Query;
 import edu.stanford.smi.protege.model.query.QueryCallback;
 import edu.stanford.smi.protege.server.RemoteSession;
@@ -337,10 +338,13 @@ public abstract class AbstractDatabaseFrameDb implements DatabaseFrameDb {
 	}
 
 	protected ResultSet executeQuery(String text, int maxRows) throws SQLException {
+	    return executeQuery(getCurrentConnection().getStatement(), text);
+	}
+
+	protected static ResultSet executeQuery(Statement statement, String text) throws SQLException {
 	    Level traceLevel = Level.FINER;
 	    traceQuery(text, traceLevel);	    
 
-	    Statement statement = getCurrentConnection().getStatement();
 	    long startTime = System.nanoTime();
 	    ResultSet ret = statement.executeQuery(text);
 	    double t = (System.nanoTime() - startTime)/1000000.0;
@@ -376,6 +380,21 @@ public abstract class AbstractDatabaseFrameDb implements DatabaseFrameDb {
 		return ret;
 	}
 
+	/**
+	 * Finds the database frame db at the end of a chain of narrow frame stores (the frame
+	 * store of a database project with its caching layers in front of it).
+	 *
+	 * @return the frame db or null if the chain does not end in one.
+	 */
+	protected static DatabaseFrameDb getDatabaseFrameDb(NarrowFrameStore nfs) {
+	    for (; nfs != null; nfs = nfs.getDelegate()) {
+	        if (nfs instanceof DatabaseFrameDb) {
+	            return (DatabaseFrameDb) nfs;
+	        }
+	    }
+	    return null;
+	}
+
 	public void executeQuery(Query query, final QueryCallback callback) {
 	  new Thread(new Runnable() {
 	      public void run() {
@@ -1,6 +1,7 @@
 package edu.stanford.smi.protege.storage.database;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -28,6 +29,30 @@ public interface DatabaseFrameDb extends NarrowFrameStore {
 
     Map<Sft,List> getFrameValues(Frame frame);
 
+    /**
+     * Fetches the values of many frames at once.  This does the work of calling
+     * getFrameValues(Frame) for each frame with a few queries instead of one per frame.
+     *
+     * @return a map with an entry for each of the frames (empty if the frame has no
+     * values).
+     */
+    Map<Frame, Map<Sft,List>> getFrameValues(Collection<Frame> frames);
+
+    /**
+     * Reads all of the values in frame order and hands them to the callback one frame at a
+     * time.  Unlike getFrameValues() this only holds the values of one frame in memory.  The
+     * connection of the calling thread is held until the last frame has been handled.
+     */
+    void streamFrameValues(FrameValuesCallback callback) throws SQLException;
+
+    /**
+     * Pages through the frames in the order of their names.
+     *
+     * @return at most maxFrames frames whose names come after the given name (the empty
+     * string for the first page), ordered by name.
+     */
+    List<Frame> getFramesAfter(String name, int maxFrames) throws SQLException;
+
     void overwriteKB(KnowledgeBase kb,
                                 boolean saveFrames) throws SQLException;
 
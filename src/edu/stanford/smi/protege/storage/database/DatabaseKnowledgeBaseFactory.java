@@ -18,6 +18,7 @@ import edu.stanford.smi.protege.model.KnowledgeBaseSourcesEditor;
 import edu.stanford.smi.protege.model.framestore.MergingNarrowFrameStore;
 import edu.stanford.smi.protege.model.framestore.NarrowFrameStore;
 import edu.stanford.smi.protege.resource.Text;
+import edu.stanford.smi.protege.util.ApplicationProperties;
 import edu.stanford.smi.protege.util.Log;
 import edu.stanford.smi.protege.util.MessageError;
 import edu.stanford.smi.protege.util.PropertyList;
@@ -29,6 +30,16 @@ import edu.stanford.smi.protege.util.PropertyList;
  */
 public class DatabaseKnowledgeBaseFactory implements KnowledgeBaseFactory2 {
     public static final String DESCRIPTION = Text.getProgramName() + " Database";
+    /*
+     * The name of the DatabaseFrameDb class that stores the frames, for example
+     * edu.stanford.smi.protege.storage.database.NormalizedDatabaseFrameDb.
+     */
+    public static final String FRAME_DB_CLASS_PROPERTY = "database.frame.db.class";
+    /*
+     * If true, getMatchingFrames() and getMatchingReferences() are answered from a trigram
+     * index of the string values that is kept in the database (see FullTextIndexNarrowFrameStore).
+     */
+    public static final String FULL_TEXT_INDEX_PROPERTY = "database.full.text.index";
     /*
      * This variable indicates tells the routines that handle the 
      * inclusion of projects to ignore the isIncluded flag on frames.
@@ -54,7 +65,8 @@ public class DatabaseKnowledgeBaseFactory implements KnowledgeBaseFactory2 {
     }
     
     public Class<? extends DatabaseFrameDb> getDatabaseFrameDbClass() {
-        return DefaultDatabaseFrameDb.class;
+        String className = ApplicationProperties.getApplicationOrSystemProperty(FRAME_DB_CLASS_PROPERTY);
+        return DatabaseFrameDbFactory.getFrameDbClass(className);
     }
 
     public KnowledgeBaseSourcesEditor createKnowledgeBaseSourcesEditor(String projectName, PropertyList sources) {
@@ -225,6 +237,9 @@ public class DatabaseKnowledgeBaseFactory implements KnowledgeBaseFactory2 {
       ValueCachingNarrowFrameStore vcnfs = new ValueCachingNarrowFrameStore(store);
       IdleConnectionNarrowFrameStore icnfs = new IdleConnectionNarrowFrameStore(vcnfs);
       icnfs.setName(name);
+      if (Boolean.valueOf(ApplicationProperties.getApplicationOrSystemProperty(FULL_TEXT_INDEX_PROPERTY))) {
+          return new FullTextIndexNarrowFrameStore(icnfs);
+      }
       return icnfs;
     }
     
@@ -5,12 +5,15 @@ package edu.stanford.smi.protege.storage.database;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,6 +33,7 @@ import edu.stanford.smi.protege.model.framestore.NarrowFrameStore;
 import edu.stanford.smi.protege.model.framestore.ReferenceImpl;
 import edu.stanford.smi.protege.model.framestore.Sft;
 import edu.stanford.smi.protege.server.RemoteSession;
+import edu.stanford.smi.protege.util.ApplicationProperties;
 import edu.stanford.smi.protege.util.Log;
 
 public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
@@ -48,9 +52,17 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
 
     private static int lastReturnedFrameID;
 
-    public Set getClosure(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
-        throw new UnsupportedOperationException();
-    }
+    public static final String WRITE_BEHIND_PROPERTY = "database.write.behind";
+    public static final String WRITE_BEHIND_SIZE_PROPERTY = "database.write.behind.size";
+    public static final String WRITE_BEHIND_DELAY_PROPERTY = "database.write.behind.milliseconds";
+
+    private final WriteBehindBuffer _pendingWrites = new WriteBehindBuffer();
+    private volatile boolean _writeBehind = ApplicationProperties.getBooleanProperty(WRITE_BEHIND_PROPERTY, false);
+    private int _writeBehindSize = ApplicationProperties.getIntegerProperty(WRITE_BEHIND_SIZE_PROPERTY, 1000);
+    private long _writeBehindDelay = ApplicationProperties.getIntegerProperty(WRITE_BEHIND_DELAY_PROPERTY, 1000);
+
+    public static final String VALUE_INDEX_GAP_PROPERTY = "database.value.index.gap";
+    private int _valueIndexGap = Math.max(1, ApplicationProperties.getIntegerProperty(VALUE_INDEX_GAP_PROPERTY, 1));
 
     public DefaultDatabaseFrameDb() {
 
@@ -70,9 +82,15 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
     }
 
     private void dropTableIfItExists() {
+        dropTableIfItExists(FullTextIndex.getBuildTableName(_table));
+        dropTableIfItExists(FullTextIndex.getTableName(_table));
+        dropTableIfItExists(_table);
+    }
+
+    private void dropTableIfItExists(String table) {
         try {
             getCurrentConnection().closeStatements();
-            String command = "DROP TABLE " + _table;
+            String command = "DROP TABLE " + table;
             executeUpdate(command);
         } catch (Exception e) {
             // do nothing
@@ -248,6 +266,7 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
     public void deleteFrame(Frame frame) {
         checkModifiability();
         try {
+            flushPendingWritesSQL();
             deleteFrameSQL(frame);
         } catch (SQLException e) {
             throw createRuntimeException(e);
@@ -287,6 +306,7 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
 
     public Set<Reference> getReferences(Object value) {
         try {
+            flushPendingWritesSQL();
             return getReferencesSQL(value);
         } catch (SQLException e) {
             throw createRuntimeException(e);
@@ -337,6 +357,7 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
 
     public Set<Reference> getMatchingReferences(String value, int maxMatches) {
         try {
+            flushPendingWritesSQL();
             return getMatchingReferencesSQL(value, maxMatches);
         } catch (SQLException e) {
             throw createRuntimeException(e);
@@ -377,7 +398,19 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
     public void removeValue(Frame frame, Slot slot, Facet facet, boolean isTemplate, Object value) {
         checkModifiability();
         try {
-            removeValueSQL(frame, slot, facet, isTemplate, value);
+            if (isBufferingWrites()) {
+                synchronized (_pendingWrites) {
+                    List values = getPendingValues(frame, slot, facet, isTemplate);
+                    if (values == null) {
+                        values = getValuesSQL(frame, slot, facet, isTemplate);
+                    }
+                    values.removeAll(Collections.singleton(value));
+                    _pendingWrites.setValues(frame, slot, facet, isTemplate, values);
+                }
+                flushPendingWritesIfDue();
+            } else {
+                removeValueSQL(frame, slot, facet, isTemplate, value);
+            }
         } catch (SQLException e) {
             throw createRuntimeException(e);
         }
@@ -410,7 +443,14 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
     public void removeValues(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
         checkModifiability();
         try {
-            removeValuesSQL(frame, slot, facet, isTemplate);
+            if (isBufferingWrites()) {
+                synchronized (_pendingWrites) {
+                    _pendingWrites.setValues(frame, slot, facet, isTemplate, Collections.EMPTY_LIST);
+                }
+                flushPendingWritesIfDue();
+            } else {
+                removeValuesSQL(frame, slot, facet, isTemplate);
+            }
         } catch (SQLException e) {
             throw createRuntimeException(e);
         }
@@ -419,14 +459,7 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
     private String _removeValuesText;
 
     private void removeValuesSQL(Frame frame, Slot slot, Facet facet, boolean isTemplate) throws SQLException {
-        if (_removeValuesText == null) {
-            _removeValuesText = "DELETE FROM " + _table;
-            _removeValuesText += " WHERE " + FRAME_COLUMN + " = ?";
-            _removeValuesText += " AND " + SLOT_COLUMN + " = ?";
-            _removeValuesText += " AND " + FACET_COLUMN + " = ?";
-            _removeValuesText += " AND " + IS_TEMPLATE_COLUMN + " = ?";
-        }
-        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_removeValuesText);
+        PreparedStatement stmt = getRemoveValuesStatement();
 
         setFrame(stmt, 1, frame);
         setSlot(stmt, 2, slot);
@@ -436,10 +469,28 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
         executeUpdate(stmt);
     }
 
+    private PreparedStatement getRemoveValuesStatement() throws SQLException {
+        if (_removeValuesText == null) {
+            _removeValuesText = "DELETE FROM " + _table;
+            _removeValuesText += " WHERE " + FRAME_COLUMN + " = ?";
+            _removeValuesText += " AND " + SLOT_COLUMN + " = ?";
+            _removeValuesText += " AND " + FACET_COLUMN + " = ?";
+            _removeValuesText += " AND " + IS_TEMPLATE_COLUMN + " = ?";
+        }
+        return getCurrentConnection().getPreparedStatement(_removeValuesText);
+    }
+
     public void addValues(Frame frame, Slot slot, Facet facet, boolean isTemplate, Collection values) {
         try {
-            int index = getMaxIndex(frame, slot, facet, isTemplate);
-            addValuesSQL(frame, slot, facet, isTemplate, values, index + 1);
+            if (isBufferingWrites()) {
+                synchronized (_pendingWrites) {
+                    _pendingWrites.addValues(frame, slot, facet, isTemplate, values);
+                }
+                flushPendingWritesIfDue();
+            } else {
+                int index = getNextIndex(getMaxIndex(frame, slot, facet, isTemplate));
+                addValuesSQL(frame, slot, facet, isTemplate, values, index);
+            }
         } catch (SQLException e) {
             throw createRuntimeException(e);
         }
@@ -482,7 +533,7 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
                 } else {
                     executeUpdate(stmt);
                 }
-                ++index;
+                index += _valueIndexGap;
             }
         }
         if (useBatch) {
@@ -522,18 +573,187 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
         return index;
     }
 
+    /*
+     * The index that follows the given maximum index of a location (-1 for no values).
+     */
+    private int getNextIndex(int maxIndex) {
+        return maxIndex < 0 ? 0 : maxIndex + _valueIndexGap;
+    }
+
     public void moveValue(Frame frame, Slot slot, Facet facet, boolean isTemplate, int from, int index) {
         checkModifiability();
-        // this implementation could probably be optimized but it probably isn't
-        // worth it
-        List values = getValues(frame, slot, facet, isTemplate);
-        Object value = values.remove(from);
-        values.add(index, value);
-        setValues(frame, slot, facet, isTemplate, values);
+        try {
+            boolean moved = false;
+            if (isBufferingWrites()) {
+                synchronized (_pendingWrites) {
+                    List values = getPendingValues(frame, slot, facet, isTemplate);
+                    if (values != null) {
+                        Object value = values.remove(from);
+                        values.add(index, value);
+                        _pendingWrites.setValues(frame, slot, facet, isTemplate, values);
+                        moved = true;
+                    }
+                }
+            }
+            if (moved) {
+                flushPendingWritesIfDue();
+            } else if (from != index) {
+                moveValueSQL(frame, slot, facet, isTemplate, from, index);
+            }
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+    }
+
+    private String _valueIndicesText;
+    private String _updateValueIndexText;
+    private String _shiftValueIndicesText;
+
+    /*
+     * Only the value_index of the moved row and of the rows between its old and new
+     * position change.  If there is a gap between the indices of the values that end up
+     * on either side of the moved value (see setValueIndexGap()) the moved row takes an
+     * index in the gap and no other row is touched.
+     */
+    private void moveValueSQL(Frame frame, Slot slot, Facet facet, boolean isTemplate, int from, int to)
+            throws SQLException {
+        int[] indices = getValueIndicesSQL(frame, slot, facet, isTemplate, Math.max(from, to) + 2);
+        if (from >= indices.length || to >= indices.length) {
+            throw new IndexOutOfBoundsException("Cannot move value " + from + " to " + to + " in a list of "
+                    + indices.length + " or fewer values");
+        }
+        int fromIndex = indices[from];
+        int toIndex = indices[to];
+        int before;
+        int after;
+        if (from < to) {
+            before = toIndex;
+            after = to + 1 < indices.length ? indices[to + 1] : Integer.MAX_VALUE;
+        } else {
+            before = to > 0 ? indices[to - 1] : -1;
+            after = toIndex;
+        }
+        if (after == Integer.MAX_VALUE) {
+            updateValueIndexSQL(frame, slot, facet, isTemplate, fromIndex, before + _valueIndexGap);
+        } else if ((long) after - before >= 2) {
+            updateValueIndexSQL(frame, slot, facet, isTemplate, fromIndex, before + (after - before) / 2);
+        } else {
+            boolean groupCommit = beginGroupCommit();
+            boolean committed = false;
+            try {
+                updateValueIndexSQL(frame, slot, facet, isTemplate, fromIndex, Integer.MIN_VALUE);
+                if (from < to) {
+                    shiftValueIndicesSQL(frame, slot, facet, isTemplate, fromIndex + 1, toIndex, -1);
+                } else {
+                    shiftValueIndicesSQL(frame, slot, facet, isTemplate, toIndex, fromIndex - 1, 1);
+                }
+                updateValueIndexSQL(frame, slot, facet, isTemplate, Integer.MIN_VALUE, toIndex);
+                committed = true;
+            } finally {
+                endGroupCommit(committed);
+            }
+        }
+    }
+
+    /*
+     * Returns the value indices of the first maxRows values of the location.
+     */
+    private int[] getValueIndicesSQL(Frame frame, Slot slot, Facet facet, boolean isTemplate, int maxRows)
+            throws SQLException {
+        if (_valueIndicesText == null) {
+            _valueIndicesText = "SELECT " + VALUE_INDEX_COLUMN;
+            _valueIndicesText += " FROM " + _table;
+            _valueIndicesText += " WHERE " + FRAME_COLUMN + " = ?";
+            _valueIndicesText += " AND " + SLOT_COLUMN + " = ?";
+            _valueIndicesText += " AND " + FACET_COLUMN + " = ?";
+            _valueIndicesText += " AND " + IS_TEMPLATE_COLUMN + " = ?";
+            _valueIndicesText += " ORDER BY " + VALUE_INDEX_COLUMN;
+        }
+        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_valueIndicesText);
+
+        setFrame(stmt, 1, frame);
+        setSlot(stmt, 2, slot);
+        setFacet(stmt, 3, facet);
+        setIsTemplate(stmt, 4, isTemplate);
+
+        int[] indices = new int[maxRows];
+        int count = 0;
+        stmt.setMaxRows(maxRows);
+        try {
+            ResultSet rs = executeQuery(stmt);
+            try {
+                while (count < maxRows && rs.next()) {
+                    indices[count++] = getIndex(rs, 1);
+                }
+            }
+            finally  {
+                rs.close();
+            }
+        } finally {
+            stmt.setMaxRows(0);
+        }
+        if (count < maxRows) {
+            int[] result = new int[count];
+            System.arraycopy(indices, 0, result, 0, count);
+            indices = result;
+        }
+        return indices;
+    }
+
+    private void updateValueIndexSQL(Frame frame, Slot slot, Facet facet, boolean isTemplate, int oldIndex,
+                                     int newIndex) throws SQLException {
+        if (_updateValueIndexText == null) {
+            _updateValueIndexText = "UPDATE " + _table;
+            _updateValueIndexText += " SET " + VALUE_INDEX_COLUMN + " = ?";
+            _updateValueIndexText += " WHERE " + FRAME_COLUMN + " = ?";
+            _updateValueIndexText += " AND " + SLOT_COLUMN + " = ?";
+            _updateValueIndexText += " AND " + FACET_COLUMN + " = ?";
+            _updateValueIndexText += " AND " + IS_TEMPLATE_COLUMN + " = ?";
+            _updateValueIndexText += " AND " + VALUE_INDEX_COLUMN + " = ?";
+        }
+        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_updateValueIndexText);
+
+        setValueIndex(stmt, 1, newIndex);
+        setFrame(stmt, 2, frame);
+        setSlot(stmt, 3, slot);
+        setFacet(stmt, 4, facet);
+        setIsTemplate(stmt, 5, isTemplate);
+        setValueIndex(stmt, 6, oldIndex);
+
+        executeUpdate(stmt);
+    }
+
+    /*
+     * Adds delta to the value indices of the location from lowIndex to highIndex inclusive.
+     */
+    private void shiftValueIndicesSQL(Frame frame, Slot slot, Facet facet, boolean isTemplate, int lowIndex,
+                                      int highIndex, int delta) throws SQLException {
+        if (_shiftValueIndicesText == null) {
+            _shiftValueIndicesText = "UPDATE " + _table;
+            _shiftValueIndicesText += " SET " + VALUE_INDEX_COLUMN + " = " + VALUE_INDEX_COLUMN + " + ?";
+            _shiftValueIndicesText += " WHERE " + FRAME_COLUMN + " = ?";
+            _shiftValueIndicesText += " AND " + SLOT_COLUMN + " = ?";
+            _shiftValueIndicesText += " AND " + FACET_COLUMN + " = ?";
+            _shiftValueIndicesText += " AND " + IS_TEMPLATE_COLUMN + " = ?";
+            _shiftValueIndicesText += " AND " + VALUE_INDEX_COLUMN + " >= ?";
+            _shiftValueIndicesText += " AND " + VALUE_INDEX_COLUMN + " <= ?";
+        }
+        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_shiftValueIndicesText);
+
+        stmt.setInt(1, delta);
+        setFrame(stmt, 2, frame);
+        setSlot(stmt, 3, slot);
+        setFacet(stmt, 4, facet);
+        setIsTemplate(stmt, 5, isTemplate);
+        setValueIndex(stmt, 6, lowIndex);
+        setValueIndex(stmt, 7, highIndex);
+
+        executeUpdate(stmt);
     }
 
     public Set<Frame> getMatchingFrames(Slot slot, Facet facet, boolean isTemplate, String value, int maxMatches) {
         try {
+            flushPendingWritesSQL();
             return getMatchingFramesSQL(slot, facet, isTemplate, value, maxMatches);
         } catch (SQLException e) {
             throw createRuntimeException(e);
@@ -615,6 +835,7 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
 
     public Set getFrames(Slot slot, Facet facet, boolean isTemplate, Object value) {
         try {
+            flushPendingWritesSQL();
             return getFramesSQL(slot, facet, isTemplate, value);
         } catch (SQLException e) {
             throw createRuntimeException(e);
@@ -668,6 +889,7 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
 
     public Set getFramesWithAnyValue(Slot slot, Facet facet, boolean isTemplate) {
         try {
+            flushPendingWritesSQL();
             return getFramesWithAnyValueSQL(slot, facet, isTemplate);
         } catch (SQLException e) {
             throw createRuntimeException(e);
@@ -708,8 +930,15 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
         // Boolean.valueOf(isTemplate), values);
         checkModifiability();
         try {
-            removeValuesSQL(frame, slot, facet, isTemplate);
-            addValuesSQL(frame, slot, facet, isTemplate, values, 0);
+            if (isBufferingWrites()) {
+                synchronized (_pendingWrites) {
+                    _pendingWrites.setValues(frame, slot, facet, isTemplate, values);
+                }
+                flushPendingWritesIfDue();
+            } else {
+                removeValuesSQL(frame, slot, facet, isTemplate);
+                addValuesSQL(frame, slot, facet, isTemplate, values, 0);
+            }
         } catch (SQLException e) {
             throw createRuntimeException(e);
         }
@@ -718,7 +947,11 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
     public List getValues(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
         List values;
         try {
-            values = getValuesSQL(frame, slot, facet, isTemplate);
+            flushPendingWritesIfDue();
+            values = getPendingValues(frame, slot, facet, isTemplate);
+            if (values == null) {
+                values = getValuesSQL(frame, slot, facet, isTemplate);
+            }
         } catch (SQLException e) {
             throw createRuntimeException(e);
         }
@@ -768,7 +1001,9 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
     public int getValuesCount(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
         int count = 0;
         try {
-            count = getValuesCountSQL(frame, slot, facet, isTemplate);
+            flushPendingWritesIfDue();
+            List values = getPendingValues(frame, slot, facet, isTemplate);
+            count = values == null ? getValuesCountSQL(frame, slot, facet, isTemplate) : values.size();
         } catch (SQLException e) {
             throw createRuntimeException(e);
         }
@@ -806,8 +1041,165 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
         return count;
     }
 
+    /**
+     * Computes the closure in the database rather than with a query for each frame that is
+     * reached.  A single recursive query is used if the database supports one (see
+     * RobustConnection.supportsRecursiveQueries()), otherwise one query for each level of
+     * the traversal (and each FRAME_VALUES_BATCH_SIZE frames of the level).
+     */
+    public Set getClosure(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        try {
+            flushPendingWritesSQL();
+            if (getCurrentConnection().supportsRecursiveQueries()) {
+                return getClosureRecursiveSQL(frame, slot, facet, isTemplate);
+            }
+            return getClosureSQL(frame, slot, facet, isTemplate);
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+    }
+
+    private String _closureText;
+
+    /*
+     * The recursive part only collects the names of the frames that are reached.  The values
+     * (including strings and long values) are then read for the start frame and those frames.
+     * The UNION (rather than UNION ALL) ends the recursion at cycles.
+     */
+    private Set getClosureRecursiveSQL(Frame frame, Slot slot, Facet facet, boolean isTemplate)
+            throws SQLException {
+        if (_closureText == null) {
+            String location = SLOT_COLUMN + " = ? AND " + FACET_COLUMN + " = ? AND " + IS_TEMPLATE_COLUMN + " = ?";
+            String isFrame = VALUE_TYPE_COLUMN + " >= " + DatabaseUtils.BASE_FRAME_TYPE_VALUE;
+            _closureText = "WITH RECURSIVE closure_frames (name) AS (";
+            _closureText += "SELECT " + SHORT_VALUE_COLUMN + " FROM " + _table;
+            _closureText += " WHERE " + FRAME_COLUMN + " = ? AND " + location + " AND " + isFrame;
+            _closureText += " UNION SELECT t." + SHORT_VALUE_COLUMN + " FROM " + _table + " t";
+            _closureText += " INNER JOIN closure_frames c ON t." + FRAME_COLUMN + " = c.name";
+            _closureText += " WHERE t." + location.replaceAll(" AND ", " AND t.") + " AND t." + isFrame + ")";
+            _closureText += " SELECT " + SHORT_VALUE_COLUMN + ", " + VALUE_TYPE_COLUMN + ", " + LONG_VALUE_COLUMN;
+            _closureText += " FROM " + _table + " WHERE " + location;
+            _closureText += " AND (" + FRAME_COLUMN + " = ? OR " + FRAME_COLUMN + " IN (SELECT name FROM closure_frames))";
+        }
+        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_closureText);
+        setFrame(stmt, 1, frame);
+        for (int i = 0; i < 3; ++i) {
+            setSlot(stmt, 2 + 3 * i, slot);
+            setFacet(stmt, 3 + 3 * i, facet);
+            setIsTemplate(stmt, 4 + 3 * i, isTemplate);
+        }
+        setFrame(stmt, 11, frame);
+
+        Set closure = new LinkedHashSet();
+        ResultSet rs = executeQuery(stmt);
+        try {
+            while (rs.next()) {
+                Object value = getShortValue(rs, 1, 2);
+                if (value == null) {
+                    value = getLongValue(rs, 3);
+                    if (value == null) {
+                        value = "";
+                    }
+                }
+                closure.add(value);
+            }
+        }
+        finally  {
+            rs.close();
+        }
+        return closure;
+    }
+
+    private String _closureLevelText;
+
+    /*
+     * A breadth first traversal that reads the values of the frames of a level with one
+     * query per batch.
+     */
+    private Set getClosureSQL(Frame frame, Slot slot, Facet facet, boolean isTemplate) throws SQLException {
+        if (_closureLevelText == null) {
+            StringBuffer text = new StringBuffer();
+            text.append("SELECT " + FRAME_COLUMN + ", " + SHORT_VALUE_COLUMN + ", " + VALUE_TYPE_COLUMN + ", ");
+            text.append(LONG_VALUE_COLUMN);
+            text.append(" FROM " + _table);
+            text.append(" WHERE " + SLOT_COLUMN + " = ?");
+            text.append(" AND " + FACET_COLUMN + " = ?");
+            text.append(" AND " + IS_TEMPLATE_COLUMN + " = ?");
+            text.append(" AND " + FRAME_COLUMN + " IN (?");
+            for (int i = 1; i < FRAME_VALUES_BATCH_SIZE; ++i) {
+                text.append(", ?");
+            }
+            text.append(")");
+            text.append(" ORDER BY " + FRAME_COLUMN + ", " + VALUE_INDEX_COLUMN);
+            _closureLevelText = text.toString();
+        }
+        Set closure = new LinkedHashSet();
+        Set<Frame> visited = new HashSet<Frame>();
+        visited.add(frame);
+        List<Frame> level = Collections.singletonList(frame);
+        while (!level.isEmpty()) {
+            List<Frame> nextLevel = new ArrayList<Frame>();
+            for (int start = 0; start < level.size(); start += FRAME_VALUES_BATCH_SIZE) {
+                List<Frame> batch = level.subList(start, Math.min(level.size(), start + FRAME_VALUES_BATCH_SIZE));
+                Map<String, List> nameToValues = getClosureLevelSQL(batch, slot, facet, isTemplate);
+                for (Frame batchFrame : batch) {
+                    List values = nameToValues.get(getValue(batchFrame.getFrameID()));
+                    if (values == null) {
+                        continue;
+                    }
+                    for (Object value : values) {
+                        if (closure.add(value) && value instanceof Frame && visited.add((Frame) value)) {
+                            nextLevel.add((Frame) value);
+                        }
+                    }
+                }
+            }
+            level = nextLevel;
+        }
+        return closure;
+    }
+
+    /*
+     * The last batch is padded by repeating its last frame, as in getFrameValuesSQL(Collection).
+     */
+    private Map<String, List> getClosureLevelSQL(List<Frame> batch, Slot slot, Facet facet, boolean isTemplate)
+            throws SQLException {
+        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_closureLevelText);
+        setSlot(stmt, 1, slot);
+        setFacet(stmt, 2, facet);
+        setIsTemplate(stmt, 3, isTemplate);
+        for (int i = 0; i < FRAME_VALUES_BATCH_SIZE; ++i) {
+            setFrame(stmt, i + 4, batch.get(Math.min(i, batch.size() - 1)));
+        }
+        Map<String, List> nameToValues = new HashMap<String, List>();
+        ResultSet rs = executeQuery(stmt);
+        try {
+            while (rs.next()) {
+                String name = rs.getString(1);
+                Object value = getShortValue(rs, 2, 3);
+                if (value == null) {
+                    value = getLongValue(rs, 4);
+                    if (value == null) {
+                        value = "";
+                    }
+                }
+                List values = nameToValues.get(name);
+                if (values == null) {
+                    values = new ArrayList();
+                    nameToValues.put(name, values);
+                }
+                values.add(value);
+            }
+        }
+        finally  {
+            rs.close();
+        }
+        return nameToValues;
+    }
+
     public Map<Frame, Map<Sft,List>> getFrameValues() {
         try {
+            flushPendingWritesSQL();
             return getFrameValuesSQL();
         } catch (SQLException e) {
             throw createRuntimeException(e);
@@ -818,12 +1210,22 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
         try {
             // Log.trace("call=" + ++call, this, "getFrameValues",
             // frame.getFrameID());
+            flushPendingWritesSQL();
             return getFrameValuesSQL(frame);
         } catch (SQLException e) {
             throw createRuntimeException(e);
         }
     }
 
+    public Map<Frame, Map<Sft,List>> getFrameValues(Collection<Frame> frames) {
+        try {
+            flushPendingWritesSQL();
+            return getFrameValuesSQL(frames);
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+    }
+
     private static String getValue(FrameID id) {
         return DatabaseUtils.getValue(id);
     }
@@ -874,46 +1276,160 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
         return sftToValueMap;
     }
 
-    private String _allFrameValuesText;
+    /*
+     * The number of frames fetched by one query of getFrameValues(Collection).  It is
+     * well below the limits that databases put on the size of an IN list (1000 for Oracle)
+     * and on the number of parameters of a statement.
+     */
+    private static final int FRAME_VALUES_BATCH_SIZE = 500;
+    private String _batchFrameValuesText;
 
-    private Map<Frame, Map<Sft, List>> getFrameValuesSQL() throws SQLException {
-        if (_allFrameValuesText == null) {
-            _allFrameValuesText = "SELECT " + FRAME_COLUMN + ", " + FRAME_TYPE_COLUMN;
-            _allFrameValuesText += ", " + SLOT_COLUMN + ", " + FACET_COLUMN + ", " + IS_TEMPLATE_COLUMN;
-            _allFrameValuesText += ", " + SHORT_VALUE_COLUMN + ", " + VALUE_TYPE_COLUMN + ", " + VALUE_INDEX_COLUMN;
-            _allFrameValuesText += ", " + LONG_VALUE_COLUMN;
-            _allFrameValuesText += " FROM " + _table;
-            _allFrameValuesText += " ORDER BY " + SLOT_COLUMN + ", " + FACET_COLUMN + ", " + IS_TEMPLATE_COLUMN + ", "
-                    + VALUE_INDEX_COLUMN;
+    /*
+     * The last batch is padded by repeating its last frame so that every batch uses the
+     * same statement.
+     */
+    private Map<Frame, Map<Sft, List>> getFrameValuesSQL(Collection<Frame> frames) throws SQLException {
+        if (_batchFrameValuesText == null) {
+            StringBuffer text = new StringBuffer();
+            text.append("SELECT " + FRAME_COLUMN + ", " + SLOT_COLUMN + ", " + FACET_COLUMN + ", ");
+            text.append(IS_TEMPLATE_COLUMN + ", " + SHORT_VALUE_COLUMN + ", " + VALUE_TYPE_COLUMN + ", ");
+            text.append(VALUE_INDEX_COLUMN + ", " + LONG_VALUE_COLUMN);
+            text.append(" FROM " + _table);
+            text.append(" WHERE " + FRAME_COLUMN + " IN (?");
+            for (int i = 1; i < FRAME_VALUES_BATCH_SIZE; ++i) {
+                text.append(", ?");
+            }
+            text.append(")");
+            text.append(" AND " + SLOT_COLUMN + " <> '" + getValue(Model.SlotID.DIRECT_INSTANCES) + "'");
+            text.append(" ORDER BY " + FRAME_COLUMN + ", " + SLOT_COLUMN + ", " + FACET_COLUMN + ", "
+                    + IS_TEMPLATE_COLUMN + ", " + VALUE_INDEX_COLUMN);
+            _batchFrameValuesText = text.toString();
+        }
+        Map<Frame, Map<Sft, List>> frameToSftToValueMap = new HashMap<Frame, Map<Sft, List>>();
+        Map<String, Frame> nameToFrame = new HashMap<String, Frame>();
+        List<Frame> batch = new ArrayList<Frame>(FRAME_VALUES_BATCH_SIZE);
+        for (Frame frame : frames) {
+            if (!frameToSftToValueMap.containsKey(frame)) {
+                frameToSftToValueMap.put(frame, new HashMap<Sft, List>());
+                nameToFrame.put(getValue(frame.getFrameID()), frame);
+                batch.add(frame);
+                if (batch.size() == FRAME_VALUES_BATCH_SIZE) {
+                    getFrameValuesSQL(batch, nameToFrame, frameToSftToValueMap);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            getFrameValuesSQL(batch, nameToFrame, frameToSftToValueMap);
         }
-        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_allFrameValuesText);
+        return frameToSftToValueMap;
+    }
 
-        Map<Frame, Map<Sft,List>> frameToSftToValueMap = new HashMap<Frame, Map<Sft, List>>();
+    private void getFrameValuesSQL(List<Frame> batch, Map<String, Frame> nameToFrame,
+                                   Map<Frame, Map<Sft, List>> frameToSftToValueMap) throws SQLException {
+        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_batchFrameValuesText);
+        for (int i = 0; i < FRAME_VALUES_BATCH_SIZE; ++i) {
+            setFrame(stmt, i + 1, batch.get(Math.min(i, batch.size() - 1)));
+        }
         ResultSet rs = executeQuery(stmt);
         try {
             while (rs.next()) {
-                Frame frame = getFrame(rs, 1, 2);
-                Slot slot = getSlot(rs, 3);
-                Facet facet = getFacet(rs, 4);
-                boolean isTemplate = getIsTemplate(rs, 5);
-                Object value = getShortValue(rs, 6, 7);
+                Frame frame = nameToFrame.get(rs.getString(1));
+                if (frame == null) {
+                    continue;
+                }
+                Slot slot = getSlot(rs, 2);
+                Facet facet = getFacet(rs, 3);
+                boolean isTemplate = getIsTemplate(rs, 4);
+                Object value = getShortValue(rs, 5, 6);
                 if (value == null) {
-                    // int index = getIndex(rs, 8);
-                    // value = getLongValue(frame, slot, facet, isTemplate, index);
-                    value = getLongValue(rs, 9);
+                    value = getLongValue(rs, 8);
                     if (value == null) {
                         value = "";
                     }
                 }
-                addToMap(frameToSftToValueMap, frame, slot, facet, isTemplate, value);
+                addToMap(frameToSftToValueMap.get(frame), slot, facet, isTemplate, value);
             }
         }
         finally  {
             rs.close();
         }
+    }
+
+    private String _allFrameValuesText;
+
+    private Map<Frame, Map<Sft, List>> getFrameValuesSQL() throws SQLException {
+        final Map<Frame, Map<Sft,List>> frameToSftToValueMap = new HashMap<Frame, Map<Sft, List>>();
+        streamFrameValuesSQL(new FrameValuesCallback() {
+            public void handleFrameValues(Frame frame, Map<Sft, List> sftToValues) {
+                frameToSftToValueMap.put(frame, sftToValues);
+            }
+        });
         return frameToSftToValueMap;
     }
 
+    public void streamFrameValues(FrameValuesCallback callback) throws SQLException {
+        flushPendingWritesSQL();
+        streamFrameValuesSQL(callback);
+    }
+
+    /*
+     * The rows come in frame order so the values of a frame are complete when the frame
+     * column changes.
+     */
+    private void streamFrameValuesSQL(FrameValuesCallback callback) throws SQLException {
+        if (_allFrameValuesText == null) {
+            _allFrameValuesText = "SELECT " + FRAME_COLUMN + ", " + FRAME_TYPE_COLUMN;
+            _allFrameValuesText += ", " + SLOT_COLUMN + ", " + FACET_COLUMN + ", " + IS_TEMPLATE_COLUMN;
+            _allFrameValuesText += ", " + SHORT_VALUE_COLUMN + ", " + VALUE_TYPE_COLUMN + ", " + VALUE_INDEX_COLUMN;
+            _allFrameValuesText += ", " + LONG_VALUE_COLUMN;
+            _allFrameValuesText += " FROM " + _table;
+            _allFrameValuesText += " ORDER BY " + FRAME_COLUMN + ", " + SLOT_COLUMN + ", " + FACET_COLUMN + ", "
+                    + IS_TEMPLATE_COLUMN + ", " + VALUE_INDEX_COLUMN;
+        }
+        RobustConnection connection = getCurrentConnection();
+        Statement stmt = connection.createStreamingStatement();
+        try {
+            ResultSet rs = executeQuery(stmt, _allFrameValuesText);
+            try {
+                String currentName = null;
+                Frame currentFrame = null;
+                Map<Sft,List> sftToValueMap = null;
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    if (!name.equals(currentName)) {
+                        if (currentFrame != null) {
+                            callback.handleFrameValues(currentFrame, sftToValueMap);
+                        }
+                        currentName = name;
+                        currentFrame = getFrame(rs, 1, 2);
+                        sftToValueMap = createInitialMap(currentFrame);
+                    }
+                    Slot slot = getSlot(rs, 3);
+                    Facet facet = getFacet(rs, 4);
+                    boolean isTemplate = getIsTemplate(rs, 5);
+                    Object value = getShortValue(rs, 6, 7);
+                    if (value == null) {
+                        value = getLongValue(rs, 9);
+                        if (value == null) {
+                            value = "";
+                        }
+                    }
+                    addToMap(sftToValueMap, slot, facet, isTemplate, value);
+                }
+                if (currentFrame != null) {
+                    callback.handleFrameValues(currentFrame, sftToValueMap);
+                }
+            }
+            finally  {
+                rs.close();
+            }
+        }
+        finally {
+            connection.closeStreamingStatement(stmt);
+        }
+    }
+
     private static void addToMap(Map<Sft,List> map, Slot slot, Facet facet, boolean isTemplate, Object value) {
         Sft sft = new Sft(slot, facet, isTemplate);
         List values = map.get(sft);
@@ -924,16 +1440,6 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
         values.add(value);
     }
 
-    private static void addToMap(Map<Frame, Map<Sft,List>> map,
-                                 Frame frame, Slot slot, Facet facet, boolean isTemplate, Object value) {
-        Map<Sft,List> sftToValueMap = map.get(frame);
-        if (sftToValueMap == null) {
-            sftToValueMap = createInitialMap(frame);
-            map.put(frame, sftToValueMap);
-        }
-        addToMap(sftToValueMap, slot, facet, isTemplate, value);
-    }
-
     private static Map<Sft,List> createInitialMap(Frame frame) {
         Map<Sft,List> map = new HashMap<Sft,List>();
         if (frame instanceof Cls) {
@@ -1054,8 +1560,8 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
     private static final int MAX_BATCH = 1000;
 
     protected void beginBatch() throws SQLException {
+        getCurrentConnection().beginManualCommit();
         _addValuesBatchStmt = getAddValuesStatement();
-        getCurrentConnection().setAutoCommit(false);
         _addValuesBatchCounter = 0;
     }
 
@@ -1064,7 +1570,7 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
             executeBatch();
         }
         _addValuesBatchStmt = null;
-        getCurrentConnection().setAutoCommit(true);
+        getCurrentConnection().endManualCommit(true);
     }
 
     private static final Map slotToFacetsCacheMap = new HashMap();
@@ -1072,6 +1578,9 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
     public void overwriteKB(KnowledgeBase kb,
                                 boolean saveFrames) throws SQLException {
         slotToFacetsCacheMap.clear();
+        synchronized (_pendingWrites) {
+            _pendingWrites.removeEntries();
+        }
         try {
         ensureEmptyTableExists();
         boolean wasCaching = kb.setCallCachingEnabled(false);
@@ -1098,6 +1607,11 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
             nfs = mnfs.getActiveFrameStore();
         }
 
+        DatabaseFrameDb source = getDatabaseFrameDb(nfs);
+        if (source != null && source != this) {
+            saveFrames(source);
+            return;
+        }
         if (nFrames > LOOP_SIZE) {
             Log.getLogger().info("Getting " + nFrames + " frames, please be patient, " + new Date());
         }
@@ -1118,6 +1632,22 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
         }
     }
 
+    /*
+     * Copies another database project without going through the knowledge base.  Only the
+     * values of one frame are in memory at a time.
+     */
+    private void saveFrames(DatabaseFrameDb source) throws SQLException {
+        source.streamFrameValues(new FrameValuesCallback() {
+            public void handleFrameValues(Frame frame, Map<Sft, List> sftToValues) throws SQLException {
+                printTraceMessage();
+                for (Map.Entry<Sft, List> entry : sftToValues.entrySet()) {
+                    Sft sft = entry.getKey();
+                    saveValues(frame, sft.getSlot(), sft.getFacet(), !sft.isOwnSlot(), entry.getValue());
+                }
+            }
+        });
+    }
+
     private static final int LOOP_SIZE = 1000;
     private int loopcount;
     private int nFrames;
@@ -1157,7 +1687,7 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
                 setValueIndex(_addValuesBatchStmt, 6, index);
                 setValue(_addValuesBatchStmt, 7, 8, 9, value);
                 addBatch();
-                ++index;
+                index += _valueIndexGap;
             }
         }
     }
@@ -1251,12 +1781,14 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
     @Override
     public boolean beginTransaction(String name) {
         checkModifiability();
+        flushPendingWrites();
         return super.beginTransaction( name );
     }
 
     @Override
     public boolean commitTransaction() {
         checkModifiability();
+        flushPendingWrites();
         return super.commitTransaction();
     }
 
@@ -1272,8 +1804,235 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
         }
     }
 
+    @Override
+    public void close() {
+        flushPendingWrites();
+        super.close();
+    }
+
+    public boolean isWriteBehind() {
+        return _writeBehind;
+    }
+
+    /**
+     * Turns write behind on or off.  While write behind is on and no transaction is open,
+     * setValues, addValues, removeValue and removeValues only record the new values of
+     * the location in a buffer.  The writes to one location are coalesced and the buffer is
+     * written with JDBC batches in a single database transaction once it holds the given
+     * number of values, once its oldest write is older than the given delay (checked
+     * whenever the frame db is called), when a transaction begins or commits, when the
+     * frame db is closed and before any query that spans more than one location.
+     * getValues and getValuesCount answer from the buffer so that a client always reads
+     * its own writes.
+     * <p>
+     * Writes are only delayed, not lost.  If a flush fails the whole batch is rolled back
+     * and the writes stay in the buffer to be written by the next flush.  A failed flush that
+     * was only due to the size or age of the buffer is logged, otherwise the failure is thrown
+     * to the caller that needed the flush.  On a database without transactions the writes of
+     * a failed flush are dropped since part of them may already have been made.  Write behind
+     * is off by default.  It can be turned on for all database projects
+     * with the database.write.behind property.
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        if (!writeBehind) {
+            flushPendingWrites();
+        }
+        _writeBehind = writeBehind;
+    }
+
+    public void setWriteBehindThresholds(int size, long delayMillis) {
+        synchronized (_pendingWrites) {
+            _writeBehindSize = size;
+            _writeBehindDelay = delayMillis;
+        }
+    }
+
+    public int getValueIndexGap() {
+        return _valueIndexGap;
+    }
+
+    /**
+     * Sets the difference between the value_index of consecutive values written from now
+     * on.  The default of 1 numbers the values consecutively.  With a larger gap moveValue
+     * can usually give the moved value an index between its new neighbours and leave all
+     * other rows alone, which matters for locations with very many values such as the
+     * direct subclasses of a large class.  The default is read from the
+     * database.value.index.gap property.
+     */
+    public void setValueIndexGap(int gap) {
+        if (gap < 1) {
+            throw new IllegalArgumentException("Gap must be positive: " + gap);
+        }
+        _valueIndexGap = gap;
+    }
+
+    public void flushPendingWrites() {
+        try {
+            flushPendingWritesSQL();
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+    }
+
+    /*
+     * Writes are buffered while write behind is on and no transaction is open.  Otherwise
+     * anything still pending is written first so that the order of the writes is kept.
+     */
+    private boolean isBufferingWrites() throws SQLException {
+        if (!_writeBehind) {
+            return false;
+        }
+        if (getTransactionStatusMonitor().existsTransaction()) {
+            flushPendingWritesSQL();
+            return false;
+        }
+        return true;
+    }
+
+    /*
+     * Returns the values of the location including the pending writes, or null if there are
+     * no pending writes for it.
+     */
+    private List getPendingValues(Frame frame, Slot slot, Facet facet, boolean isTemplate) throws SQLException {
+        if (!_writeBehind) {
+            return null;
+        }
+        synchronized (_pendingWrites) {
+            WriteBehindBuffer.Entry entry = _pendingWrites.get(frame, slot, facet, isTemplate);
+            if (entry == null) {
+                return null;
+            }
+            List values = entry.isReplace() ? new ArrayList() : getValuesSQL(frame, slot, facet, isTemplate);
+            values.addAll(entry.getValues());
+            return values;
+        }
+    }
+
+    private void flushPendingWritesIfDue() throws SQLException {
+        if (_writeBehind) {
+            synchronized (_pendingWrites) {
+                if (_pendingWrites.getSize() >= _writeBehindSize || _pendingWrites.getAge() >= _writeBehindDelay) {
+                    try {
+                        flushPendingWritesSQL();
+                    } catch (SQLException e) {
+                        log.log(Level.WARNING, "Could not write the pending values, will try again later", e);
+                    }
+                }
+            }
+        }
+    }
+
+    private void flushPendingWritesSQL() throws SQLException {
+        synchronized (_pendingWrites) {
+            if (_pendingWrites.isEmpty()) {
+                return;
+            }
+            List<WriteBehindBuffer.Entry> entries = _pendingWrites.getEntries();
+            boolean groupCommit = beginGroupCommit();
+            try {
+                boolean written = false;
+                try {
+                    writePendingSQL(entries);
+                    written = true;
+                } finally {
+                    endGroupCommit(written);
+                }
+            } catch (SQLException e) {
+                if (!groupCommit) {
+                    _pendingWrites.removeEntries();
+                }
+                throw e;
+            }
+            _pendingWrites.removeEntries();
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Wrote " + entries.size() + " pending locations");
+            }
+        }
+    }
+
+    /*
+     * Makes the following statements one database transaction unless a transaction is
+     * already open, and keeps them on one connection until endGroupCommit().  Returns true
+     * if endGroupCommit() commits or rolls back the statements.
+     */
+    private boolean beginGroupCommit() throws SQLException {
+        RobustConnection connection = getCurrentConnection();
+        boolean groupCommit = connection.supportsTransactions() && !getTransactionStatusMonitor().inTransaction();
+        connection.beginManualCommit();
+        return groupCommit;
+    }
+
+    private void endGroupCommit(boolean succeeded) throws SQLException {
+        getCurrentConnection().endManualCommit(succeeded);
+    }
+
+    /*
+     * The locations in the buffer are distinct so all of the deletes can go before all of
+     * the inserts.  The indices of appended values have to be read first.
+     */
+    private void writePendingSQL(List<WriteBehindBuffer.Entry> entries) throws SQLException {
+        boolean useBatch = getCurrentConnection().supportsBatch();
+        int[] startIndices = new int[entries.size()];
+        for (int i = 0; i < entries.size(); ++i) {
+            WriteBehindBuffer.Entry entry = entries.get(i);
+            if (!entry.isReplace()) {
+                startIndices[i] = getNextIndex(getMaxIndex(entry.getFrame(), entry.getSlot(), entry.getFacet(),
+                                                           entry.isTemplate()));
+            }
+        }
+
+        PreparedStatement stmt = getRemoveValuesStatement();
+        int batchCount = 0;
+        for (WriteBehindBuffer.Entry entry : entries) {
+            if (entry.isReplace()) {
+                setFrame(stmt, 1, entry.getFrame());
+                setSlot(stmt, 2, entry.getSlot());
+                setFacet(stmt, 3, entry.getFacet());
+                setIsTemplate(stmt, 4, entry.isTemplate());
+                batchCount = addToBatch(stmt, useBatch, batchCount);
+            }
+        }
+        if (batchCount > 0) {
+            stmt.executeBatch();
+        }
+
+        stmt = getAddValuesStatement();
+        batchCount = 0;
+        for (int i = 0; i < entries.size(); ++i) {
+            WriteBehindBuffer.Entry entry = entries.get(i);
+            setFrame(stmt, 1, 2, entry.getFrame(), _frameFactory);
+            setSlot(stmt, 3, entry.getSlot());
+            setFacet(stmt, 4, entry.getFacet());
+            setIsTemplate(stmt, 5, entry.isTemplate());
+            int index = startIndices[i];
+            for (Object value : entry.getValues()) {
+                setValueIndex(stmt, 6, index);
+                index += _valueIndexGap;
+                setValue(stmt, 7, 8, 9, value);
+                batchCount = addToBatch(stmt, useBatch, batchCount);
+            }
+        }
+        if (batchCount > 0) {
+            stmt.executeBatch();
+        }
+    }
+
+    private static int addToBatch(PreparedStatement stmt, boolean useBatch, int batchCount) throws SQLException {
+        if (!useBatch) {
+            executeUpdate(stmt);
+            return 0;
+        }
+        stmt.addBatch();
+        if (++batchCount == MAX_BATCH) {
+            stmt.executeBatch();
+            batchCount = 0;
+        }
+        return batchCount;
+    }
+
     public void replaceFrame(Frame frame) {
         try {
+            flushPendingWritesSQL();
             int newTypeId = DatabaseUtils.valueType(frame, _frameFactory);
             replaceFrameTypeSQL(frame, newTypeId);
             replaceValueTypeSQL(frame, newTypeId);
@@ -1361,6 +2120,7 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
         }
         Set frames = null;
         try {
+            flushPendingWritesSQL();
             frames = getFramesSQL();
         } catch (SQLException e) {
             throw createRuntimeException(e);
@@ -1375,6 +2135,7 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
     private int countUniqueFrames(Collection types) {
         int count = -1;
         try {
+            flushPendingWritesSQL();
             count = countFramesSQL(types);
         } catch (SQLException e) {
             throw createRuntimeException(e);
@@ -1420,6 +2181,7 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
     private int countUniqueFrames() {
         int count = -1;
         try {
+            flushPendingWritesSQL();
             count = countFramesSQL();
         } catch (SQLException e) {
             throw createRuntimeException(e);
@@ -1475,6 +2237,36 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
         return frames;
     }
 
+    private String _getFramesAfterText;
+
+    public List<Frame> getFramesAfter(String name, int maxFrames) throws SQLException {
+        flushPendingWritesSQL();
+        if (_getFramesAfterText == null) {
+            _getFramesAfterText = "SELECT DISTINCT " + FRAME_COLUMN + ", " + FRAME_TYPE_COLUMN;
+            _getFramesAfterText += " FROM " + _table;
+            _getFramesAfterText += " WHERE " + FRAME_COLUMN + " > ?";
+            _getFramesAfterText += " ORDER BY " + FRAME_COLUMN;
+        }
+        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_getFramesAfterText);
+        stmt.setString(1, name);
+        List<Frame> frames = new ArrayList<Frame>();
+        stmt.setMaxRows(maxFrames);
+        try {
+            ResultSet rs = executeQuery(stmt);
+            try {
+                while (frames.size() < maxFrames && rs.next()) {
+                    frames.add(getFrame(rs, 1, 2));
+                }
+            }
+            finally  {
+                rs.close();
+            }
+        } finally {
+            stmt.setMaxRows(0);
+        }
+        return frames;
+    }
+
     private String _getFrameFromIdText;
 
     public Frame getFrame(FrameID id) {
@@ -1487,6 +2279,7 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
                     + " WHERE " + FRAME_COLUMN + " = ?";
         }
         try {
+            flushPendingWritesSQL();
             // if the id is null, we cannot continue (method will return null)
             if (id != null) {
                 // get the prepared statement and set the id value
@@ -1522,6 +2315,7 @@ public class DefaultDatabaseFrameDb extends AbstractDatabaseFrameDb {
 
     public void replaceFrame(Frame original, Frame replacement) {
     	try {
+    		flushPendingWritesSQL();
     		if (_updateFrameFieldText == null) {
     			_updateFrameFieldText = "UPDATE " + _table + " SET " + FRAME_COLUMN + " = ? WHERE ";
     			_updateFrameFieldText = _updateFrameFieldText + FRAME_COLUMN + " = ?";
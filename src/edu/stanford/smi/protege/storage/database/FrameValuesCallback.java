@@ -0,0 +1,21 @@
+package edu.stanford.smi.protege.storage.database;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.framestore.Sft;
+
+/**
+ * Receives the values of a database project one frame at a time from
+ * DatabaseFrameDb.streamFrameValues(FrameValuesCallback).
+ */
+public interface FrameValuesCallback {
+
+    /**
+     * Called once for each frame that has values.  The map is not used by the caller
+     * afterwards.  The callback must not read from the frame db that is streaming the values.
+     */
+    void handleFrameValues(Frame frame, Map<Sft, List> sftToValues) throws SQLException;
+}
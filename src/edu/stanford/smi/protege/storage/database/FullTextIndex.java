@@ -0,0 +1,459 @@
+package edu.stanford.smi.protege.storage.database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.stanford.smi.protege.model.Facet;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.Reference;
+import edu.stanford.smi.protege.model.Slot;
+import edu.stanford.smi.protege.model.framestore.ReferenceImpl;
+import edu.stanford.smi.protege.model.framestore.Sft;
+import edu.stanford.smi.protege.model.framestore.StringValueIndex;
+import edu.stanford.smi.protege.util.Log;
+import edu.stanford.smi.protege.util.SimpleStringMatcher;
+
+/**
+ * A trigram index of the string values of a database frame db that is kept in a table of
+ * the same database (the table name of the frame db with "_trigrams" appended).  The table
+ * has a row for each trigram (see StringValueIndex, hashed to an int) of the strings of a
+ * frame, slot, facet and isTemplate.  A search selects the locations that have a row for
+ * every trigram of the pattern, reads their values with DatabaseFrameDb.getFrameValues()
+ * and checks them with a SimpleStringMatcher, so the table only needs to hold a superset of
+ * the trigrams of each location.  Rows left behind by a removed value, duplicate rows and
+ * hash collisions only add candidates.
+ * <p>
+ * The rows are written with the connection of the frame db so they are committed and rolled
+ * back together with the values that they describe.
+ * <p>
+ * The table of an existing project is filled a step at a time.  While the build table (the
+ * table name of the frame db with "_trigrams_build" appended) exists it holds the name of
+ * the last frame indexed, in the name order of the database, and searches cannot use the
+ * index yet.  Writes
+ * keep the rows up to date all the time.
+ */
+class FullTextIndex {
+    private static Logger log = Log.getLogger(FullTextIndex.class);
+
+    private static final String FRAME_COLUMN = "frame";
+    private static final String FRAME_TYPE_COLUMN = "frame_type";
+    private static final String SLOT_COLUMN = "slot";
+    private static final String FACET_COLUMN = "facet";
+    private static final String IS_TEMPLATE_COLUMN = "is_template";
+    private static final String TRIGRAM_COLUMN = "trigram";
+    private static final String LAST_FRAME_COLUMN = "last_frame";
+    private static final String LOCATION_COLUMNS = FRAME_COLUMN + ", " + FRAME_TYPE_COLUMN + ", " + SLOT_COLUMN + ", "
+            + FACET_COLUMN + ", " + IS_TEMPLATE_COLUMN;
+
+    /*
+     * A pattern with more trigrams than this is searched with the first ones only.
+     */
+    private static final int MAX_PATTERN_TRIGRAMS = 16;
+    private static final int FRAME_BATCH_SIZE = 500;
+    private static final int MAX_BATCH = 1000;
+
+    private final AbstractDatabaseFrameDb db;
+    private final String table;
+    private final String buildTable;
+    private volatile boolean built;
+    private boolean building;
+
+    FullTextIndex(AbstractDatabaseFrameDb db) throws SQLException {
+        this.db = db;
+        table = getTableName(db.getTableName());
+        buildTable = getBuildTableName(db.getTableName());
+        if (!tableExists(table)) {
+            createTables();
+        }
+        built = !tableExists(buildTable);
+    }
+
+    public static String getTableName(String frameDbTable) {
+        return frameDbTable + "_trigrams";
+    }
+
+    public static String getBuildTableName(String frameDbTable) {
+        return getTableName(frameDbTable) + "_build";
+    }
+
+    private void dropTableIfItExists(String name) {
+        try {
+            db.getCurrentConnection().closeStatements();
+            db.executeUpdate("DROP TABLE " + name);
+        } catch (SQLException e) {
+            // do nothing
+        }
+    }
+
+    private boolean tableExists(String name) {
+        try {
+            ResultSet rs = db.executeQuery("SELECT COUNT(*) FROM " + name);
+            rs.close();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void createTables() throws SQLException {
+        RobustConnection connection = db.getCurrentConnection();
+        String nameType = connection.getFrameNameType();
+        String tableOptions = connection.isMySql() ? " ENGINE = INNODB DEFAULT CHARACTER SET 'utf8'" : "";
+        String text = "CREATE TABLE " + table + " (";
+        text += FRAME_COLUMN + " " + nameType + " NOT NULL, ";
+        text += FRAME_TYPE_COLUMN + " " + connection.getSmallIntTypeName() + " NOT NULL, ";
+        text += SLOT_COLUMN + " " + nameType + " NOT NULL, ";
+        text += FACET_COLUMN + " " + nameType + " NOT NULL, ";
+        text += IS_TEMPLATE_COLUMN + " " + connection.getBitTypeName() + " NOT NULL, ";
+        text += TRIGRAM_COLUMN + " " + connection.getIntegerTypeName() + " NOT NULL)";
+        db.executeUpdate(text + tableOptions);
+        db.executeUpdate("CREATE INDEX " + table + "_I1 ON " + table + " (" + TRIGRAM_COLUMN + ")");
+        db.executeUpdate("CREATE INDEX " + table + "_I2 ON " + table + " (" + FRAME_COLUMN + ")");
+
+        db.executeUpdate("CREATE TABLE " + buildTable + " (" + LAST_FRAME_COLUMN + " " + nameType + " NOT NULL)"
+                         + tableOptions);
+        PreparedStatement stmt = connection.getPreparedStatement(
+                "INSERT INTO " + buildTable + " (" + LAST_FRAME_COLUMN + ") VALUES (?)");
+        stmt.setString(1, DatabaseUtils.NULL_FRAME_ID_STRING);
+        AbstractDatabaseFrameDb.executeUpdate(stmt);
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Created the full text index " + table);
+        }
+    }
+
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Empties the index and starts building it again, e.g. after a bulk load that did not
+     * write its values to the index.
+     */
+    public synchronized void clear() throws SQLException {
+        dropTableIfItExists(buildTable);
+        dropTableIfItExists(table);
+        createTables();
+        built = false;
+    }
+
+    /*
+     * ---------------------------------------------------------------------------------
+     * Building
+     */
+
+    /**
+     * Indexes frames that are not indexed yet until the time is up.  Nothing is done inside
+     * a transaction, which could roll back the rows but not the progress kept here, or while
+     * another thread is building.  No lock is held while the frames are indexed.
+     *
+     * @return true if the index is complete.
+     */
+    public boolean build(long maxMillis) throws SQLException {
+        synchronized (this) {
+            if (built || building || db.getTransactionStatusMonitor().inTransaction()) {
+                return built;
+            }
+            building = true;
+        }
+        try {
+            buildSteps(maxMillis);
+        } finally {
+            synchronized (this) {
+                building = false;
+            }
+        }
+        return built;
+    }
+
+    /*
+     * Each step indexes a page of frames and records the last of them in one database
+     * transaction on one connection.  Frames added since the build began are indexed by the
+     * writes that add them.
+     */
+    private void buildSteps(long maxMillis) throws SQLException {
+        long start = System.currentTimeMillis();
+        RobustConnection connection = db.getCurrentConnection();
+        while (!built && System.currentTimeMillis() - start < maxMillis) {
+            boolean finished = false;
+            boolean succeeded = false;
+            connection.beginManualCommit();
+            try {
+                List<Frame> frames = db.getFramesAfter(getLastBuiltFrame(), FRAME_BATCH_SIZE);
+                Map<Frame, Map<Sft, List>> frameValues = db.getFrameValues(frames);
+                for (Map.Entry<Frame, Map<Sft, List>> entry : frameValues.entrySet()) {
+                    for (Map.Entry<Sft, List> sftToValues : entry.getValue().entrySet()) {
+                        insertRows(entry.getKey(), sftToValues.getKey(), sftToValues.getValue());
+                    }
+                }
+                finished = frames.size() < FRAME_BATCH_SIZE;
+                if (finished) {
+                    db.executeUpdate("DELETE FROM " + buildTable);
+                } else {
+                    PreparedStatement stmt = connection.getPreparedStatement(
+                            "UPDATE " + buildTable + " SET " + LAST_FRAME_COLUMN + " = ?");
+                    stmt.setString(1, getName(frames.get(frames.size() - 1)));
+                    AbstractDatabaseFrameDb.executeUpdate(stmt);
+                }
+                succeeded = true;
+            } finally {
+                connection.endManualCommit(succeeded);
+            }
+            if (finished) {
+                dropTableIfItExists(buildTable);
+                built = true;
+            }
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine((built ? "Finished " : "Continued ") + "building the full text index " + table + " in "
+                     + (System.currentTimeMillis() - start) + "ms.");
+        }
+    }
+
+    private String getLastBuiltFrame() throws SQLException {
+        String lastFrame = DatabaseUtils.NULL_FRAME_ID_STRING;
+        ResultSet rs = db.executeQuery("SELECT " + LAST_FRAME_COLUMN + " FROM " + buildTable);
+        try {
+            if (rs.next()) {
+                lastFrame = rs.getString(1);
+            }
+        } finally {
+            rs.close();
+        }
+        return lastFrame;
+    }
+
+    /*
+     * ---------------------------------------------------------------------------------
+     * Writes
+     */
+
+    /**
+     * Replaces the rows of a frame, slot, facet and isTemplate with those of the strings in
+     * values.  Values that are not strings are ignored.
+     */
+    public void setValues(Frame frame, Sft sft, Collection values) throws SQLException {
+        PreparedStatement stmt = db.getCurrentConnection().getPreparedStatement(
+                "DELETE FROM " + table + " WHERE " + FRAME_COLUMN + " = ? AND " + SLOT_COLUMN + " = ? AND "
+                + FACET_COLUMN + " = ? AND " + IS_TEMPLATE_COLUMN + " = ?");
+        DatabaseUtils.setFrame(stmt, 1, frame);
+        setSft(stmt, 2, sft);
+        AbstractDatabaseFrameDb.executeUpdate(stmt);
+        insertRows(frame, sft, values);
+    }
+
+    /**
+     * Adds the rows of the strings in values to those of the frame, slot, facet and
+     * isTemplate.
+     */
+    public void addValues(Frame frame, Sft sft, Collection values) throws SQLException {
+        insertRows(frame, sft, values);
+    }
+
+    public void removeFrame(Frame frame) throws SQLException {
+        deleteRows(FRAME_COLUMN, frame);
+        if (frame instanceof Slot) {
+            deleteRows(SLOT_COLUMN, frame);
+        }
+        if (frame instanceof Facet) {
+            deleteRows(FACET_COLUMN, frame);
+        }
+    }
+
+    /**
+     * Indexes the values of the frame again, e.g. when its java class changes.
+     */
+    public void reindexFrame(Frame frame) throws SQLException {
+        deleteRows(FRAME_COLUMN, frame);
+        for (Map.Entry<Sft, List> entry : db.getFrameValues(frame).entrySet()) {
+            insertRows(frame, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Moves the rows of a renamed frame to the replacement.
+     */
+    public void replaceFrame(Frame original, Frame replacement) throws SQLException {
+        deleteRows(FRAME_COLUMN, original);
+        for (String column : new String[] { SLOT_COLUMN, FACET_COLUMN }) {
+            PreparedStatement stmt = db.getCurrentConnection().getPreparedStatement(
+                    "UPDATE " + table + " SET " + column + " = ? WHERE " + column + " = ?");
+            DatabaseUtils.setFrame(stmt, 1, replacement);
+            DatabaseUtils.setFrame(stmt, 2, original);
+            AbstractDatabaseFrameDb.executeUpdate(stmt);
+        }
+        reindexFrame(replacement);
+    }
+
+    private void deleteRows(String column, Frame frame) throws SQLException {
+        PreparedStatement stmt = db.getCurrentConnection().getPreparedStatement(
+                "DELETE FROM " + table + " WHERE " + column + " = ?");
+        DatabaseUtils.setFrame(stmt, 1, frame);
+        AbstractDatabaseFrameDb.executeUpdate(stmt);
+    }
+
+    private void insertRows(Frame frame, Sft sft, Collection values) throws SQLException {
+        Set<Integer> trigrams = new HashSet<Integer>();
+        for (Object value : values) {
+            if (value instanceof String) {
+                for (Long trigram : StringValueIndex.getStringTrigrams((String) value)) {
+                    trigrams.add(Integer.valueOf(hash(trigram.longValue())));
+                }
+            }
+        }
+        if (trigrams.isEmpty()) {
+            return;
+        }
+        RobustConnection connection = db.getCurrentConnection();
+        boolean useBatch = connection.supportsBatch();
+        PreparedStatement stmt = connection.getPreparedStatement(
+                "INSERT INTO " + table + " (" + LOCATION_COLUMNS + ", " + TRIGRAM_COLUMN + ") VALUES (?, ?, ?, ?, ?, ?)");
+        int count = 0;
+        for (Integer trigram : trigrams) {
+            DatabaseUtils.setFrame(stmt, 1, 2, frame, db.getFrameFactory());
+            setSft(stmt, 3, sft);
+            stmt.setInt(6, trigram.intValue());
+            if (useBatch) {
+                stmt.addBatch();
+                if (++count % MAX_BATCH == 0) {
+                    stmt.executeBatch();
+                }
+            } else {
+                AbstractDatabaseFrameDb.executeUpdate(stmt);
+            }
+        }
+        if (useBatch && count % MAX_BATCH != 0) {
+            stmt.executeBatch();
+        }
+    }
+
+    private static void setSft(PreparedStatement stmt, int index, Sft sft) throws SQLException {
+        DatabaseUtils.setSlot(stmt, index, sft.getSlot());
+        DatabaseUtils.setFacet(stmt, index + 1, sft.getFacet());
+        DatabaseUtils.setIsTemplate(stmt, index + 2, isTemplate(sft));
+    }
+
+    private static boolean isTemplate(Sft sft) {
+        return sft.isTemplateSlot() || sft.isTemplateFacet();
+    }
+
+    private static String getName(Frame frame) {
+        return DatabaseUtils.getValue(frame.getFrameID());
+    }
+
+    private static int hash(long trigram) {
+        return (int) (trigram ^ (trigram >>> 32));
+    }
+
+    /*
+     * ---------------------------------------------------------------------------------
+     * Searching
+     */
+
+    /**
+     * @param sft if not null only the values of this slot, facet and isTemplate are searched.
+     * @param maxMatches the maximum number of references returned, or unlimited if less than 1.
+     * @return the locations with a value that matches the pattern or null if the pattern has
+     * no literal part that is long enough (e.g. "*ab*"), in which case the index cannot
+     * narrow down the search.
+     */
+    public List<Reference> search(String pattern, Sft sft, int maxMatches) throws SQLException {
+        Set<Integer> trigrams = new HashSet<Integer>();
+        for (Long trigram : StringValueIndex.getPatternTrigrams(pattern)) {
+            if (trigrams.size() < MAX_PATTERN_TRIGRAMS) {
+                trigrams.add(Integer.valueOf(hash(trigram.longValue())));
+            }
+        }
+        if (trigrams.isEmpty()) {
+            return null;
+        }
+        StringBuffer text = new StringBuffer("SELECT " + LOCATION_COLUMNS + " FROM " + table + " WHERE "
+                                             + TRIGRAM_COLUMN + " IN (");
+        for (int i = 0; i < trigrams.size(); ++i) {
+            text.append(i == 0 ? "?" : ", ?");
+        }
+        text.append(")");
+        if (sft != null) {
+            text.append(" AND " + SLOT_COLUMN + " = ? AND " + FACET_COLUMN + " = ? AND " + IS_TEMPLATE_COLUMN + " = ?");
+        }
+        text.append(" GROUP BY " + LOCATION_COLUMNS + " HAVING COUNT(DISTINCT " + TRIGRAM_COLUMN + ") = ?");
+        PreparedStatement stmt = db.getCurrentConnection().getPreparedStatement(text.toString());
+        int index = 1;
+        for (Integer trigram : trigrams) {
+            stmt.setInt(index++, trigram.intValue());
+        }
+        if (sft != null) {
+            setSft(stmt, index, sft);
+            index += 3;
+        }
+        stmt.setInt(index, trigrams.size());
+
+        Map<Frame, List<ReferenceImpl>> candidates = new LinkedHashMap<Frame, List<ReferenceImpl>>();
+        ResultSet rs = AbstractDatabaseFrameDb.executeQuery(stmt);
+        try {
+            while (rs.next()) {
+                Frame frame = DatabaseUtils.getFrame(rs, 1, 2, db.getFrameFactory(), db._isInclude);
+                Slot slot = DatabaseUtils.getSlot(rs, 3, db.getFrameFactory(), db._isInclude);
+                Facet facet = DatabaseUtils.getFacet(rs, 4, db.getFrameFactory(), db._isInclude);
+                List<ReferenceImpl> references = candidates.get(frame);
+                if (references == null) {
+                    references = new ArrayList<ReferenceImpl>();
+                    candidates.put(frame, references);
+                }
+                references.add(new ReferenceImpl(frame, slot, facet, DatabaseUtils.getIsTemplate(rs, 5)));
+            }
+        } finally {
+            rs.close();
+        }
+        return getMatches(candidates, new SimpleStringMatcher(pattern), maxMatches);
+    }
+
+    private List<Reference> getMatches(Map<Frame, List<ReferenceImpl>> candidates, SimpleStringMatcher matcher,
+                                       int maxMatches) {
+        List<Reference> matches = new ArrayList<Reference>();
+        Iterator<Frame> frames = candidates.keySet().iterator();
+        while (frames.hasNext()) {
+            List<Frame> batch = new ArrayList<Frame>();
+            while (frames.hasNext() && batch.size() < FRAME_BATCH_SIZE) {
+                batch.add(frames.next());
+            }
+            Map<Frame, Map<Sft, List>> frameValues = db.getFrameValues(batch);
+            for (Frame frame : batch) {
+                Map<Sft, List> sftToValues = frameValues.get(frame);
+                if (sftToValues == null) {
+                    continue;
+                }
+                for (ReferenceImpl reference : candidates.get(frame)) {
+                    Sft sft = new Sft(reference.getSlot(), reference.getFacet(), reference.isTemplate());
+                    List values = sftToValues.get(sft);
+                    if (values != null && matches(values, matcher)) {
+                        matches.add(reference);
+                        if (matches.size() == maxMatches) {
+                            return matches;
+                        }
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static boolean matches(Collection values, SimpleStringMatcher matcher) {
+        for (Object value : values) {
+            if (value instanceof String && matcher.isMatch((String) value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,348 @@
+package edu.stanford.smi.protege.storage.database;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.stanford.smi.protege.model.Facet;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.Reference;
+import edu.stanford.smi.protege.model.Slot;
+import edu.stanford.smi.protege.model.framestore.BulkLoadable;
+import edu.stanford.smi.protege.model.framestore.NarrowFrameStore;
+import edu.stanford.smi.protege.model.framestore.Sft;
+import edu.stanford.smi.protege.model.query.Query;
+import edu.stanford.smi.protege.model.query.QueryCallback;
+import edu.stanford.smi.protege.server.RemoteSession;
+import edu.stanford.smi.protege.util.Log;
+import edu.stanford.smi.protege.util.transaction.TransactionMonitor;
+
+/**
+ * Answers getMatchingFrames() and getMatchingReferences() from a FullTextIndex of the string
+ * values (both the short_value and the long_value columns) instead of a LIKE query on the
+ * values table.  The index is kept in a table next to the frame db table and the writes that
+ * pass through this frame store update it with the same connection, so it commits and rolls
+ * back with the values.  Every program that writes the frame db table must therefore run with
+ * the index turned on.
+ * <p></p>
+ * The index of an existing project is built a little at a time by the searches made outside
+ * of a transaction.  Until it is complete, and for patterns without a literal part that can
+ * narrow down the search (e.g. "*ab*"), searches go to the database.
+ */
+public class FullTextIndexNarrowFrameStore implements NarrowFrameStore, BulkLoadable {
+    private static Logger log = Log.getLogger(FullTextIndexNarrowFrameStore.class);
+    /*
+     * The time that a search may spend building the index.
+     */
+    private static final long BUILD_STEP_MILLIS = 200;
+    private final NarrowFrameStore delegate;
+    private final AbstractDatabaseFrameDb db;
+    private FullTextIndex index;
+    private boolean bulkLoading;
+    private boolean bulkLoadWrites;
+
+    public FullTextIndexNarrowFrameStore(NarrowFrameStore delegate) {
+        this.delegate = delegate;
+        db = (AbstractDatabaseFrameDb) AbstractDatabaseFrameDb.getDatabaseFrameDb(delegate);
+    }
+
+    public NarrowFrameStore getDelegate() {
+        return delegate;
+    }
+
+    public String getName() {
+        return delegate.getName();
+    }
+
+    public void setName(String name) {
+        delegate.setName(name);
+    }
+
+    private synchronized FullTextIndex getIndex() throws SQLException {
+        if (index == null) {
+            index = new FullTextIndex(db);
+        }
+        return index;
+    }
+
+    private void setIdle() {
+        try {
+            db.getCurrentConnection().setIdle(true);
+        }
+        catch (SQLException sqle) {
+            throw new RuntimeException(sqle);
+        }
+    }
+
+    /*
+     * Returns the index if searches can use it.
+     */
+    private FullTextIndex getBuiltIndex() throws SQLException {
+        if (bulkLoading) {
+            return null;
+        }
+        FullTextIndex index = getIndex();
+        return index.build(BUILD_STEP_MILLIS) ? index : null;
+    }
+
+    private List<Reference> search(String value, Sft sft, int maxMatches) {
+        try {
+            FullTextIndex index = getBuiltIndex();
+            return index == null ? null : index.search(value, sft, maxMatches);
+        }
+        catch (SQLException e) {
+            log.log(Level.WARNING, "Could not search the full text index of " + getName(), e);
+            return null;
+        }
+        finally {
+            setIdle();
+        }
+    }
+
+    private static boolean containsString(Collection values) {
+        for (Object value : values) {
+            if (value instanceof String) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<Frame> getMatchingFrames(Slot slot, Facet facet, boolean isTemplate,
+                                        String value, int maxMatches) {
+        List<Reference> references = search(value, new Sft(slot, facet, isTemplate), maxMatches);
+        if (references != null) {
+            Set<Frame> frames = new HashSet<Frame>();
+            for (Reference reference : references) {
+                frames.add(reference.getFrame());
+            }
+            return frames;
+        }
+        return delegate.getMatchingFrames(slot, facet, isTemplate, value, maxMatches);
+    }
+
+    public Set<Reference> getMatchingReferences(String value, int maxMatches) {
+        List<Reference> references = search(value, null, maxMatches);
+        if (references != null) {
+            return new HashSet<Reference>(references);
+        }
+        return delegate.getMatchingReferences(value, maxMatches);
+    }
+
+    public void addValues(Frame frame, Slot slot, Facet facet, boolean isTemplate, Collection values) {
+        delegate.addValues(frame, slot, facet, isTemplate, values);
+        if (bulkLoading) {
+            bulkLoadWrites = true;
+        }
+        else if (containsString(values)) {
+            try {
+                getIndex().addValues(frame, new Sft(slot, facet, isTemplate), values);
+            }
+            catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            finally {
+                setIdle();
+            }
+        }
+    }
+
+    public void setValues(Frame frame, Slot slot, Facet facet, boolean isTemplate, Collection values) {
+        delegate.setValues(frame, slot, facet, isTemplate, values);
+        if (bulkLoading) {
+            bulkLoadWrites = true;
+        }
+        else {
+            try {
+                getIndex().setValues(frame, new Sft(slot, facet, isTemplate), values);
+            }
+            catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            finally {
+                setIdle();
+            }
+        }
+    }
+
+    public void removeValue(Frame frame, Slot slot, Facet facet, boolean isTemplate, Object value) {
+        delegate.removeValue(frame, slot, facet, isTemplate, value);
+        if (bulkLoading) {
+            bulkLoadWrites = true;
+        }
+        else if (value instanceof String) {
+            try {
+                getIndex().setValues(frame, new Sft(slot, facet, isTemplate),
+                                     delegate.getValues(frame, slot, facet, isTemplate));
+            }
+            catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            finally {
+                setIdle();
+            }
+        }
+    }
+
+    public void moveValue(Frame frame, Slot slot, Facet facet, boolean isTemplate, int from, int to) {
+        delegate.moveValue(frame, slot, facet, isTemplate, from, to);
+    }
+
+    public void deleteFrame(Frame frame) {
+        delegate.deleteFrame(frame);
+        try {
+            getIndex().removeFrame(frame);
+        }
+        catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        finally {
+            setIdle();
+        }
+    }
+
+    public void replaceFrame(Frame frame) {
+        delegate.replaceFrame(frame);
+        try {
+            getIndex().reindexFrame(frame);
+        }
+        catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        finally {
+            setIdle();
+        }
+    }
+
+    public void replaceFrame(Frame original, Frame replacement) {
+        delegate.replaceFrame(original, replacement);
+        try {
+            getIndex().replaceFrame(original, replacement);
+        }
+        catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        finally {
+            setIdle();
+        }
+    }
+
+    public boolean rollbackTransaction() {
+        return delegate.rollbackTransaction();
+    }
+
+    public void reinitialize() {
+        delegate.reinitialize();
+    }
+
+    /**
+     * The values written by a bulk load are not written to the index.  It is emptied and
+     * built again at the end of the bulk load instead.
+     */
+    public void beginBulkLoad() {
+        bulkLoading = true;
+        bulkLoadWrites = false;
+        if (delegate instanceof BulkLoadable) {
+            ((BulkLoadable) delegate).beginBulkLoad();
+        }
+    }
+
+    public void close() {
+        delegate.close();
+    }
+
+    public void endBulkLoad() {
+        if (delegate instanceof BulkLoadable) {
+            ((BulkLoadable) delegate).endBulkLoad();
+        }
+        bulkLoading = false;
+        if (bulkLoadWrites) {
+            try {
+                getIndex().clear();
+            }
+            catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            finally {
+                setIdle();
+            }
+        }
+    }
+
+    public boolean beginTransaction(String name) {
+        return delegate.beginTransaction(name);
+    }
+
+    public boolean commitTransaction() {
+        return delegate.commitTransaction();
+    }
+
+    public TransactionMonitor getTransactionStatusMonitor() {
+        return delegate.getTransactionStatusMonitor();
+    }
+
+    public boolean setCaching(RemoteSession session, boolean doCache) {
+        return delegate.setCaching(session, doCache);
+    }
+
+    public int getFrameCount() {
+        return delegate.getFrameCount();
+    }
+
+    public int getClsCount() {
+        return delegate.getClsCount();
+    }
+
+    public int getSlotCount() {
+        return delegate.getSlotCount();
+    }
+
+    public int getFacetCount() {
+        return delegate.getFacetCount();
+    }
+
+    public int getSimpleInstanceCount() {
+        return delegate.getSimpleInstanceCount();
+    }
+
+    public Set<Frame> getFrames() {
+        return delegate.getFrames();
+    }
+
+    public Frame getFrame(FrameID id) {
+        return delegate.getFrame(id);
+    }
+
+    public List getValues(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        return delegate.getValues(frame, slot, facet, isTemplate);
+    }
+
+    public int getValuesCount(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        return delegate.getValuesCount(frame, slot, facet, isTemplate);
+    }
+
+    public Set<Frame> getFrames(Slot slot, Facet facet, boolean isTemplate, Object value) {
+        return delegate.getFrames(slot, facet, isTemplate, value);
+    }
+
+    public Set<Frame> getFramesWithAnyValue(Slot slot, Facet facet, boolean isTemplate) {
+        return delegate.getFramesWithAnyValue(slot, facet, isTemplate);
+    }
+
+    public Set<Reference> getReferences(Object value) {
+        return delegate.getReferences(value);
+    }
+
+    public void executeQuery(Query query, QueryCallback callback) {
+        delegate.executeQuery(query, callback);
+    }
+
+    public Set getClosure(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        return delegate.getClosure(frame, slot, facet, isTemplate);
+    }
+}
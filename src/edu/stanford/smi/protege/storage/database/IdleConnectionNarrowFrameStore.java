@@ -11,6 +11,7 @@ import edu.stanford.smi.protege.model.Frame;
 import edu.stanford.smi.protege.model.FrameID;
 import edu.stanford.smi.protege.model.Reference;
 import edu.stanford.smi.protege.model.Slot;
+import edu.stanford.smi.protege.model.framestore.BulkLoadable;
 import edu.stanford.smi.protege.model.framestore.NarrowFrameStore;
 import edu.stanford.smi.protege.model.query.Query;
 import edu.stanford.smi.protege.model.query.QueryCallback;
@@ -18,7 +19,7 @@ import edu.stanford.smi.protege.server.RemoteSession;
 import edu.stanford.smi.protege.util.Log;
 import edu.stanford.smi.protege.util.transaction.TransactionMonitor;
 
-public class IdleConnectionNarrowFrameStore implements NarrowFrameStore {
+public class IdleConnectionNarrowFrameStore implements NarrowFrameStore, BulkLoadable {
     private static Logger logger = Log.getLogger(IdleConnectionNarrowFrameStore.class);
     private final NarrowFrameStore delegate;
     private final AbstractDatabaseFrameDb databaseNfs;
@@ -38,6 +39,18 @@ public class IdleConnectionNarrowFrameStore implements NarrowFrameStore {
     }
 
 
+    /**
+     * See ValueCachingNarrowFrameStore.prefetch().
+     */
+    public void prefetch(Collection<Frame> frames) {
+        try {
+            ((ValueCachingNarrowFrameStore) delegate).prefetch(frames);
+        }
+        finally {
+            setIdle();
+        }
+    }
+
     public void addValues(Frame frame, Slot slot, Facet facet,
                           boolean isTemplate, Collection values) {
         try {
@@ -276,6 +289,18 @@ public class IdleConnectionNarrowFrameStore implements NarrowFrameStore {
         return delegate.setCaching(session, doCache);
     }
 
+    public void beginBulkLoad() {
+        if (delegate instanceof BulkLoadable) {
+            ((BulkLoadable) delegate).beginBulkLoad();
+        }
+    }
+
+    public void endBulkLoad() {
+        if (delegate instanceof BulkLoadable) {
+            ((BulkLoadable) delegate).endBulkLoad();
+        }
+    }
+
     public void removeValue(Frame frame, Slot slot, Facet facet,
                             boolean isTemplate, Object value) {
         try {
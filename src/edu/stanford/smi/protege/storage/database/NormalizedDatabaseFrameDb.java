@@ -0,0 +1,1688 @@
+package edu.stanford.smi.protege.storage.database;
+
+import static edu.stanford.smi.protege.server.framestore.ServerFrameStore.getCurrentSession;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+import edu.stanford.smi.protege.model.Cls;
+import edu.stanford.smi.protege.model.Facet;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.FrameFactory;
+import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.KnowledgeBase;
+import edu.stanford.smi.protege.model.Model;
+import edu.stanford.smi.protege.model.Reference;
+import edu.stanford.smi.protege.model.Slot;
+import edu.stanford.smi.protege.model.framestore.MergingNarrowFrameStore;
+import edu.stanford.smi.protege.model.framestore.NarrowFrameStore;
+import edu.stanford.smi.protege.model.framestore.ReferenceImpl;
+import edu.stanford.smi.protege.model.framestore.Sft;
+import edu.stanford.smi.protege.server.RemoteSession;
+import edu.stanford.smi.protege.util.Log;
+
+/**
+ * A DatabaseFrameDb that stores each frame name once.  The frames table (the table name
+ * with "_frames" appended) maps every frame, slot and facet name to an integer id and holds
+ * the java class id of the frame.  The values table (the table name with "_values"
+ * appended) refers to frames, slots, facets and frame values by these ids so its rows and
+ * indices are much smaller than those of the single table of DefaultDatabaseFrameDb.
+ * Frame values are joined back to their names when they are read.
+ * <p>
+ * This frame db is selected with the database.frame.db.class property (see
+ * DatabaseKnowledgeBaseFactory.getDatabaseFrameDbClass()).  Existing single table projects
+ * are converted with NormalizedSchemaMigration.  New ids are reserved in blocks from the
+ * single row of the ids table (the table name with "_ids" appended) so several frame dbs,
+ * also in different processes, can add frames to the same tables.
+ */
+public class NormalizedDatabaseFrameDb extends AbstractDatabaseFrameDb {
+    private static final String ID_COLUMN = "id";
+    private static final String NAME_COLUMN = "name";
+    private static final String FRAME_TYPE_COLUMN = "frame_type";
+    private static final String FRAME_COLUMN = "frame";
+    private static final String SLOT_COLUMN = "slot";
+    private static final String FACET_COLUMN = "facet";
+    private static final String IS_TEMPLATE_COLUMN = "is_template";
+    private static final String VALUE_INDEX_COLUMN = "value_index";
+    private static final String VALUE_TYPE_COLUMN = "value_type";
+    private static final String VALUE_FRAME_COLUMN = "value_frame";
+    private static final String SHORT_VALUE_COLUMN = "short_value";
+    private static final String LONG_VALUE_COLUMN = "long_value";
+    private static final String NEXT_ID_COLUMN = "next_id";
+
+    /*
+     * The id of the empty name, which stands for a missing facet.
+     */
+    private static final int NULL_FRAME_ID = 0;
+    /*
+     * The value type of frame values.  Their java class id is in the frames table.
+     */
+    private static final int FRAME_VALUE_TYPE = 0;
+    private static final int MAX_BATCH = 1000;
+    private static final int FRAME_VALUES_BATCH_SIZE = 500;
+    private static final int ID_CACHE_SIZE = 100000;
+    private static final int ID_BLOCK_SIZE = 100;
+
+    private String _framesTable;
+    private String _valuesTable;
+    private String _idsTable;
+    /*
+     * Held while a new frame is added to the frames table.  The ids from _nextId up to
+     * _idLimit are reserved for this frame db on _idConnection.
+     */
+    private final Object _createIdLock = new Object();
+    private int _nextId;
+    private int _idLimit;
+    private RobustConnection _idConnection;
+    private final Map<String, Integer> _idCache = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        private static final long serialVersionUID = 8172389447761243135L;
+
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > ID_CACHE_SIZE;
+        }
+    };
+    /*
+     * The ids that each session found or created in its open transaction.  Other sessions
+     * only see them in _idCache once the transaction commits.  Guarded by _idCache.
+     */
+    private final Map<RemoteSession, Map<String, Integer>> _transactionIds = new HashMap<RemoteSession, Map<String, Integer>>();
+
+    /*
+     * The columns from which getValue() reads a value, starting with the value type.
+     */
+    private String _valueColumns;
+    private String _valueJoin;
+
+    @Override
+    public void initialize(FrameFactory factory, String driver, String url, String user, String pass, String table,
+                           boolean isInclude) {
+        _framesTable = table + "_frames";
+        _valuesTable = table + "_values";
+        _idsTable = table + "_ids";
+        _valueColumns = "v." + VALUE_TYPE_COLUMN + ", v." + SHORT_VALUE_COLUMN + ", v." + LONG_VALUE_COLUMN + ", vf."
+                + NAME_COLUMN + ", vf." + FRAME_TYPE_COLUMN;
+        _valueJoin = " LEFT OUTER JOIN " + _framesTable + " vf ON v." + VALUE_FRAME_COLUMN + " = vf." + ID_COLUMN;
+        super.initialize(factory, driver, url, user, pass, table, isInclude);
+    }
+
+    public String getFramesTableName() {
+        return _framesTable;
+    }
+
+    public String getValuesTableName() {
+        return _valuesTable;
+    }
+
+    public void ensureEmptyTablesExist() throws SQLException {
+        dropTablesIfTheyExist();
+        createTables();
+        createIndices();
+    }
+
+    private void dropTablesIfTheyExist() {
+        dropTableIfItExists(_valuesTable);
+        dropTableIfItExists(_framesTable);
+        dropTableIfItExists(_idsTable);
+        dropTableIfItExists(FullTextIndex.getBuildTableName(_table));
+        dropTableIfItExists(FullTextIndex.getTableName(_table));
+    }
+
+    private void dropTableIfItExists(String table) {
+        try {
+            getCurrentConnection().closeStatements();
+            executeUpdate("DROP TABLE " + table);
+        } catch (Exception e) {
+            // do nothing
+        }
+    }
+
+    private void createTables() throws SQLException {
+        RobustConnection connection = getCurrentConnection();
+        String frameIdType = connection.getIntegerTypeName();
+        String frameTypeType = connection.getSmallIntTypeName();
+        String tableOptions = connection.isMySql() ? " ENGINE = INNODB DEFAULT CHARACTER SET 'utf8'" : "";
+
+        String text = "CREATE TABLE " + _framesTable + " (";
+        text += ID_COLUMN + " " + frameIdType + " NOT NULL PRIMARY KEY, ";
+        text += NAME_COLUMN + " " + connection.getFrameNameType() + " NOT NULL, ";
+        text += FRAME_TYPE_COLUMN + " " + frameTypeType + " NOT NULL)";
+        executeUpdate(text + tableOptions);
+
+        text = "CREATE TABLE " + _valuesTable + " (";
+        text += FRAME_COLUMN + " " + frameIdType + " NOT NULL, ";
+        text += SLOT_COLUMN + " " + frameIdType + " NOT NULL, ";
+        text += FACET_COLUMN + " " + frameIdType + " NOT NULL, ";
+        text += IS_TEMPLATE_COLUMN + " " + connection.getBitTypeName() + " NOT NULL, ";
+        text += VALUE_INDEX_COLUMN + " " + connection.getIntegerTypeName() + " NOT NULL, ";
+        text += VALUE_TYPE_COLUMN + " " + frameTypeType + " NOT NULL, ";
+        text += VALUE_FRAME_COLUMN + " " + frameIdType + ", ";
+        text += SHORT_VALUE_COLUMN + " " + connection.getShortValueType() + ", ";
+        text += LONG_VALUE_COLUMN + " " + connection.getLongvarcharTypeName() + ")";
+        executeUpdate(text + tableOptions);
+
+        text = "CREATE TABLE " + _idsTable + " (" + NEXT_ID_COLUMN + " " + frameIdType + " NOT NULL)";
+        executeUpdate(text + tableOptions);
+        executeUpdate("INSERT INTO " + _idsTable + " (" + NEXT_ID_COLUMN + ") VALUES (" + (NULL_FRAME_ID + 1) + ")");
+
+        PreparedStatement stmt = getInsertFrameStatement();
+        stmt.setInt(1, NULL_FRAME_ID);
+        stmt.setString(2, DatabaseUtils.NULL_FRAME_ID_STRING);
+        DatabaseUtils.setFrameType(stmt, 3, 0);
+        executeUpdate(stmt);
+        clearIdCache();
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Created tables " + _framesTable + ", " + _valuesTable + " and " + _idsTable);
+        }
+    }
+
+    /**
+     * A bulk load (see overwriteKB() and copyFromSingleTable()) fills the tables before the
+     * indices are created.
+     */
+    private void createIndices() throws SQLException {
+        /*
+         * Frame names are not unique as far as a case insensitive database is concerned so
+         * the name index is not a unique index.
+         */
+        executeUpdate("CREATE INDEX " + _table + "_FI1 ON " + _framesTable + " (" + NAME_COLUMN + ")");
+        executeUpdate("CREATE INDEX " + _table + "_VI1 ON " + _valuesTable + " (" + FRAME_COLUMN + ", " + SLOT_COLUMN
+                + ", " + FACET_COLUMN + ", " + IS_TEMPLATE_COLUMN + ", " + VALUE_INDEX_COLUMN + ")");
+        executeUpdate("CREATE INDEX " + _table + "_VI2 ON " + _valuesTable + " (" + VALUE_FRAME_COLUMN + ")");
+        executeUpdate("CREATE INDEX " + _table + "_VI3 ON " + _valuesTable + " (" + SHORT_VALUE_COLUMN + ")");
+        executeUpdate("CREATE INDEX " + _table + "_VI4 ON " + _valuesTable + " (" + SLOT_COLUMN + ", " + FACET_COLUMN
+                + ", " + IS_TEMPLATE_COLUMN + ")");
+    }
+
+    /*
+     * ---------------------------------------------------------------------------------
+     * Frame ids
+     */
+
+    private void clearIdCache() {
+        synchronized (_createIdLock) {
+            synchronized (_idCache) {
+                _idCache.clear();
+                _transactionIds.clear();
+            }
+            _nextId = 0;
+            _idLimit = 0;
+        }
+    }
+
+    private static String getName(Frame frame) {
+        return DatabaseUtils.getValue(frame.getFrameID());
+    }
+
+    /*
+     * Returns the id of the frame or -1 if the frame is not in the frames table.
+     */
+    private int getId(Frame frame) throws SQLException {
+        return frame == null ? NULL_FRAME_ID : getId(getName(frame));
+    }
+
+    private String _idText;
+
+    private int getId(String name) throws SQLException {
+        synchronized (_idCache) {
+            Integer id = _idCache.get(name);
+            if (id == null) {
+                Map<String, Integer> ids = _transactionIds.get(getCurrentSession());
+                id = ids == null ? null : ids.get(name);
+            }
+            if (id != null) {
+                return id.intValue();
+            }
+        }
+        if (_idText == null) {
+            _idText = "SELECT " + ID_COLUMN + ", " + NAME_COLUMN + " FROM " + _framesTable;
+            _idText += " WHERE " + NAME_COLUMN + " = ?";
+        }
+        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_idText);
+        stmt.setString(1, name);
+        int id = -1;
+        ResultSet rs = executeQuery(stmt);
+        try {
+            while (rs.next()) {
+                // a case insensitive database also returns names that differ in case
+                if (name.equals(rs.getString(2))) {
+                    id = rs.getInt(1);
+                    break;
+                }
+            }
+        } finally {
+            rs.close();
+        }
+        if (id >= 0) {
+            cacheId(name, id);
+        }
+        return id;
+    }
+
+    /*
+     * Inside a transaction the row may not be committed yet so the id is only cached for the
+     * current session.
+     */
+    private void cacheId(String name, int id) {
+        boolean inTransaction = getTransactionStatusMonitor().inTransaction();
+        synchronized (_idCache) {
+            if (inTransaction) {
+                RemoteSession session = getCurrentSession();
+                Map<String, Integer> ids = _transactionIds.get(session);
+                if (ids == null) {
+                    ids = new HashMap<String, Integer>();
+                    _transactionIds.put(session, ids);
+                }
+                ids.put(name, Integer.valueOf(id));
+            } else {
+                _idCache.put(name, Integer.valueOf(id));
+            }
+        }
+    }
+
+    private void uncacheId(String name) {
+        synchronized (_idCache) {
+            _idCache.remove(name);
+            Map<String, Integer> ids = _transactionIds.get(getCurrentSession());
+            if (ids != null) {
+                ids.remove(name);
+            }
+        }
+    }
+
+    /*
+     * Called when the outermost transaction of the current session ends.
+     */
+    private void endTransactionIds(boolean committed) {
+        synchronized (_idCache) {
+            Map<String, Integer> ids = _transactionIds.remove(getCurrentSession());
+            if (committed && ids != null) {
+                _idCache.putAll(ids);
+            }
+        }
+    }
+
+    private String _insertFrameText;
+
+    private PreparedStatement getInsertFrameStatement() throws SQLException {
+        if (_insertFrameText == null) {
+            _insertFrameText = "INSERT INTO " + _framesTable + " (" + ID_COLUMN + ", " + NAME_COLUMN + ", "
+                    + FRAME_TYPE_COLUMN + ") VALUES (?, ?, ?)";
+        }
+        return getCurrentConnection().getPreparedStatement(_insertFrameText);
+    }
+
+    /*
+     * The id cache is only locked to read or update it so that lookups of known frames do
+     * not wait for the database.
+     */
+    private int getOrCreateId(Frame frame) throws SQLException {
+        if (frame == null) {
+            return NULL_FRAME_ID;
+        }
+        String name = getName(frame);
+        int id = getId(name);
+        if (id >= 0) {
+            return id;
+        }
+        synchronized (_createIdLock) {
+            id = getId(name);
+            if (id < 0) {
+                id = allocateId();
+                PreparedStatement stmt = getInsertFrameStatement();
+                stmt.setInt(1, id);
+                stmt.setString(2, name);
+                DatabaseUtils.setFrameType(stmt, 3, _frameFactory.getJavaClassId(frame));
+                executeUpdate(stmt);
+                cacheId(name, id);
+            }
+            return id;
+        }
+    }
+
+    private int allocateId() throws SQLException {
+        if (_nextId >= _idLimit) {
+            reserveIds();
+        }
+        return _nextId++;
+    }
+
+    private String _reserveIdsText;
+
+    /*
+     * Blocks are reserved on a connection of their own that commits straight away.  The row
+     * of the ids table is then not locked for the rest of a transaction, and a transaction
+     * that rolls back does not hand the block out a second time.
+     */
+    private void reserveIds() throws SQLException {
+        if (_reserveIdsText == null) {
+            _reserveIdsText = "UPDATE " + _idsTable + " SET " + NEXT_ID_COLUMN + " = " + NEXT_ID_COLUMN + " + ?";
+        }
+        if (_idConnection == null) {
+            _idConnection = new RobustConnection(_driver, _url, _user, _password, null, null);
+        }
+        int limit = 0;
+        boolean reserved = false;
+        _idConnection.beginManualCommit();
+        try {
+            PreparedStatement stmt = _idConnection.getPreparedStatement(_reserveIdsText);
+            stmt.setInt(1, ID_BLOCK_SIZE);
+            executeUpdate(stmt);
+            ResultSet rs = executeQuery(_idConnection.getStatement(), "SELECT " + NEXT_ID_COLUMN + " FROM " + _idsTable);
+            try {
+                if (!rs.next()) {
+                    throw new SQLException("No row in " + _idsTable);
+                }
+                limit = rs.getInt(1);
+            } finally {
+                rs.close();
+            }
+            reserved = true;
+        } finally {
+            _idConnection.endManualCommit(reserved);
+        }
+        _nextId = limit - ID_BLOCK_SIZE;
+        _idLimit = limit;
+    }
+
+    /*
+     * ---------------------------------------------------------------------------------
+     * Reading rows
+     */
+
+    private Frame createFrame(String name, int type) {
+        Frame frame = _frameFactory.createFrameFromClassId(type, new FrameID(name));
+        if (_isInclude) {
+            frame.setIncluded(true);
+        }
+        return frame;
+    }
+
+    private Frame getFrame(ResultSet rs, int nameIndex, int typeIndex) throws SQLException {
+        return createFrame(rs.getString(nameIndex), rs.getInt(typeIndex));
+    }
+
+    private Slot getSlot(ResultSet rs, int index) throws SQLException {
+        return DatabaseUtils.getSlot(rs, index, _frameFactory, _isInclude);
+    }
+
+    private Facet getFacet(ResultSet rs, int index) throws SQLException {
+        return DatabaseUtils.getFacet(rs, index, _frameFactory, _isInclude);
+    }
+
+    /*
+     * Reads a value selected with _valueColumns.
+     */
+    private Object getValue(ResultSet rs, int index) throws SQLException {
+        String frameName = rs.getString(index + 3);
+        if (frameName != null) {
+            return createFrame(frameName, rs.getInt(index + 4));
+        }
+        Object value = DatabaseUtils.getShortValue(rs, index + 1, index, _frameFactory, 0, _isInclude);
+        if (value == null) {
+            value = DatabaseUtils.getLongValue(rs, index + 2);
+            if (value == null) {
+                value = "";
+            }
+        }
+        return value;
+    }
+
+    private static boolean getIsTemplate(ResultSet rs, int index) throws SQLException {
+        return DatabaseUtils.getIsTemplate(rs, index);
+    }
+
+    private static void setLocation(PreparedStatement stmt, int index, int frameId, int slotId, int facetId,
+                                    boolean isTemplate) throws SQLException {
+        stmt.setInt(index, frameId);
+        stmt.setInt(index + 1, slotId);
+        stmt.setInt(index + 2, facetId);
+        DatabaseUtils.setIsTemplate(stmt, index + 3, isTemplate);
+    }
+
+    private String getLocationClause() {
+        return " WHERE v." + FRAME_COLUMN + " = ? AND v." + SLOT_COLUMN + " = ? AND v." + FACET_COLUMN
+                + " = ? AND v." + IS_TEMPLATE_COLUMN + " = ?";
+    }
+
+    /*
+     * ---------------------------------------------------------------------------------
+     * Values
+     */
+
+    private String _valuesText;
+
+    public List getValues(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        try {
+            int frameId = getId(frame);
+            int slotId = getId(slot);
+            int facetId = getId(facet);
+            if (frameId < 0 || slotId < 0 || facetId < 0) {
+                return new ArrayList();
+            }
+            if (_valuesText == null) {
+                _valuesText = "SELECT " + _valueColumns + " FROM " + _valuesTable + " v" + _valueJoin
+                        + getLocationClause() + " ORDER BY v." + VALUE_INDEX_COLUMN;
+            }
+            PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_valuesText);
+            setLocation(stmt, 1, frameId, slotId, facetId, isTemplate);
+            List values = new ArrayList();
+            ResultSet rs = executeQuery(stmt);
+            try {
+                while (rs.next()) {
+                    values.add(getValue(rs, 1));
+                }
+            } finally {
+                rs.close();
+            }
+            return values;
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+    }
+
+    private String _valuesCountText;
+
+    public int getValuesCount(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        try {
+            int frameId = getId(frame);
+            int slotId = getId(slot);
+            int facetId = getId(facet);
+            if (frameId < 0 || slotId < 0 || facetId < 0) {
+                return 0;
+            }
+            if (_valuesCountText == null) {
+                _valuesCountText = "SELECT COUNT(*) FROM " + _valuesTable + " v" + getLocationClause();
+            }
+            PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_valuesCountText);
+            setLocation(stmt, 1, frameId, slotId, facetId, isTemplate);
+            return getCount(stmt);
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+    }
+
+    private static int getCount(PreparedStatement stmt) throws SQLException {
+        int count = 0;
+        ResultSet rs = executeQuery(stmt);
+        try {
+            while (rs.next()) {
+                count = rs.getInt(1);
+            }
+        } finally {
+            rs.close();
+        }
+        return count;
+    }
+
+    public void setValues(Frame frame, Slot slot, Facet facet, boolean isTemplate, Collection values) {
+        try {
+            int frameId = getOrCreateId(frame);
+            int slotId = getOrCreateId(slot);
+            int facetId = getOrCreateId(facet);
+            removeValuesSQL(frameId, slotId, facetId, isTemplate);
+            addValuesSQL(frameId, slotId, facetId, isTemplate, values, 0);
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+    }
+
+    public void addValues(Frame frame, Slot slot, Facet facet, boolean isTemplate, Collection values) {
+        try {
+            int frameId = getOrCreateId(frame);
+            int slotId = getOrCreateId(slot);
+            int facetId = getOrCreateId(facet);
+            int index = getMaxIndexSQL(frameId, slotId, facetId, isTemplate) + 1;
+            addValuesSQL(frameId, slotId, facetId, isTemplate, values, index);
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+    }
+
+    public void moveValue(Frame frame, Slot slot, Facet facet, boolean isTemplate, int from, int to) {
+        List values = getValues(frame, slot, facet, isTemplate);
+        Object value = values.remove(from);
+        values.add(to, value);
+        setValues(frame, slot, facet, isTemplate, values);
+    }
+
+    private String _removeValuesText;
+
+    private void removeValuesSQL(int frameId, int slotId, int facetId, boolean isTemplate) throws SQLException {
+        if (_removeValuesText == null) {
+            _removeValuesText = "DELETE FROM " + _valuesTable + getLocationClause().replaceAll("v\\.", "");
+        }
+        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_removeValuesText);
+        setLocation(stmt, 1, frameId, slotId, facetId, isTemplate);
+        executeUpdate(stmt);
+    }
+
+    private String _removeFrameValueText;
+    private String _removeValueText;
+
+    public void removeValue(Frame frame, Slot slot, Facet facet, boolean isTemplate, Object value) {
+        try {
+            int frameId = getId(frame);
+            int slotId = getId(slot);
+            int facetId = getId(facet);
+            if (frameId < 0 || slotId < 0 || facetId < 0) {
+                return;
+            }
+            PreparedStatement stmt;
+            if (value instanceof Frame) {
+                int valueId = getId((Frame) value);
+                if (valueId < 0) {
+                    return;
+                }
+                if (_removeFrameValueText == null) {
+                    _removeFrameValueText = "DELETE FROM " + _valuesTable + getLocationClause().replaceAll("v\\.", "")
+                            + " AND " + VALUE_FRAME_COLUMN + " = ?";
+                }
+                stmt = getCurrentConnection().getPreparedStatement(_removeFrameValueText);
+                stmt.setInt(5, valueId);
+            } else {
+                if (_removeValueText == null) {
+                    _removeValueText = "DELETE FROM " + _valuesTable + getLocationClause().replaceAll("v\\.", "")
+                            + " AND " + SHORT_VALUE_COLUMN + " = ? AND " + VALUE_TYPE_COLUMN + " = ?";
+                }
+                stmt = getCurrentConnection().getPreparedStatement(_removeValueText);
+                DatabaseUtils.setShortValue(stmt, 5, 6, value, _frameFactory);
+            }
+            setLocation(stmt, 1, frameId, slotId, facetId, isTemplate);
+            executeUpdate(stmt);
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+    }
+
+    private String _maxIndexText;
+
+    private int getMaxIndexSQL(int frameId, int slotId, int facetId, boolean isTemplate) throws SQLException {
+        if (_maxIndexText == null) {
+            _maxIndexText = "SELECT MAX(v." + VALUE_INDEX_COLUMN + ") FROM " + _valuesTable + " v" + getLocationClause();
+        }
+        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_maxIndexText);
+        setLocation(stmt, 1, frameId, slotId, facetId, isTemplate);
+        int index = -1;
+        ResultSet rs = executeQuery(stmt);
+        try {
+            if (rs.next()) {
+                index = rs.getInt(1);
+                if (rs.wasNull()) {
+                    index = -1;
+                }
+            }
+        } finally {
+            rs.close();
+        }
+        return index;
+    }
+
+    private String _addValuesText;
+
+    private PreparedStatement getAddValuesStatement() throws SQLException {
+        if (_addValuesText == null) {
+            _addValuesText = "INSERT INTO " + _valuesTable + " (" + FRAME_COLUMN + ", " + SLOT_COLUMN + ", "
+                    + FACET_COLUMN + ", " + IS_TEMPLATE_COLUMN + ", " + VALUE_INDEX_COLUMN + ", " + VALUE_TYPE_COLUMN
+                    + ", " + VALUE_FRAME_COLUMN + ", " + SHORT_VALUE_COLUMN + ", " + LONG_VALUE_COLUMN + ")";
+            _addValuesText += " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        }
+        return getCurrentConnection().getPreparedStatement(_addValuesText);
+    }
+
+    private void addValuesSQL(int frameId, int slotId, int facetId, boolean isTemplate, Collection values, int index)
+            throws SQLException {
+        PreparedStatement stmt = getAddValuesStatement();
+        boolean useBatch = values.size() > 1 && getCurrentConnection().supportsBatch();
+        int batchCount = 0;
+        Iterator i = values.iterator();
+        while (i.hasNext()) {
+            Object value = i.next();
+            if (isNullValue(value)) {
+                Log.getLogger().warning("Skipping null value");
+                continue;
+            }
+            setValueRow(stmt, frameId, slotId, facetId, isTemplate, index++, value);
+            if (useBatch) {
+                stmt.addBatch();
+                if (++batchCount == MAX_BATCH) {
+                    stmt.executeBatch();
+                    batchCount = 0;
+                }
+            } else {
+                executeUpdate(stmt);
+            }
+        }
+        if (batchCount > 0) {
+            stmt.executeBatch();
+        }
+    }
+
+    private void setValueRow(PreparedStatement stmt, int frameId, int slotId, int facetId, boolean isTemplate,
+                             int index, Object value) throws SQLException {
+        setLocation(stmt, 1, frameId, slotId, facetId, isTemplate);
+        DatabaseUtils.setValueIndex(stmt, 5, index);
+        if (value instanceof Frame) {
+            DatabaseUtils.setValueType(stmt, 6, FRAME_VALUE_TYPE);
+            stmt.setInt(7, getOrCreateId((Frame) value));
+            stmt.setNull(8, Types.VARCHAR);
+            DatabaseUtils.setNullLongValue(stmt, 9);
+        } else {
+            stmt.setNull(7, Types.INTEGER);
+            DatabaseUtils.setValue(stmt, 8, 9, 6, value, getCurrentConnection().getMaxVarcharSize(), _frameFactory);
+        }
+    }
+
+    /*
+     * ---------------------------------------------------------------------------------
+     * Queries
+     */
+
+    private String getFrameSelect() {
+        return "SELECT f." + NAME_COLUMN + ", f." + FRAME_TYPE_COLUMN + " FROM " + _valuesTable + " v INNER JOIN "
+                + _framesTable + " f ON v." + FRAME_COLUMN + " = f." + ID_COLUMN;
+    }
+
+    private String _framesWithFrameValueText;
+    private String _framesWithValueText;
+
+    public Set<Frame> getFrames(Slot slot, Facet facet, boolean isTemplate, Object value) {
+        Set<Frame> results = new HashSet<Frame>();
+        try {
+            int slotId = getId(slot);
+            int facetId = getId(facet);
+            if (slotId < 0 || facetId < 0) {
+                return results;
+            }
+            String where = " WHERE v." + SLOT_COLUMN + " = ? AND v." + FACET_COLUMN + " = ? AND v." + IS_TEMPLATE_COLUMN
+                    + " = ?";
+            PreparedStatement stmt;
+            if (value instanceof Frame) {
+                int valueId = getId((Frame) value);
+                if (valueId < 0) {
+                    return results;
+                }
+                if (_framesWithFrameValueText == null) {
+                    _framesWithFrameValueText = getFrameSelect() + where + " AND v." + VALUE_FRAME_COLUMN + " = ?";
+                }
+                stmt = getCurrentConnection().getPreparedStatement(_framesWithFrameValueText);
+                stmt.setInt(4, valueId);
+            } else {
+                if (_framesWithValueText == null) {
+                    _framesWithValueText = getFrameSelect().replaceFirst(" FROM", ", v." + SHORT_VALUE_COLUMN + " FROM")
+                            + where + " AND v." + SHORT_VALUE_COLUMN + " = ? AND v." + VALUE_TYPE_COLUMN + " = ?";
+                }
+                stmt = getCurrentConnection().getPreparedStatement(_framesWithValueText);
+                DatabaseUtils.setShortValue(stmt, 4, 5, value, _frameFactory);
+            }
+            stmt.setInt(1, slotId);
+            stmt.setInt(2, facetId);
+            DatabaseUtils.setIsTemplate(stmt, 3, isTemplate);
+            ResultSet rs = executeQuery(stmt);
+            try {
+                while (rs.next()) {
+                    // MySQL matches strings case insensitively
+                    if (!(value instanceof String) || value.equals(rs.getString(3))) {
+                        results.add(getFrame(rs, 1, 2));
+                    }
+                }
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+        return results;
+    }
+
+    private String _framesWithAnyValueText;
+
+    public Set<Frame> getFramesWithAnyValue(Slot slot, Facet facet, boolean isTemplate) {
+        Set<Frame> results = new HashSet<Frame>();
+        try {
+            int slotId = getId(slot);
+            int facetId = getId(facet);
+            if (slotId < 0 || facetId < 0) {
+                return results;
+            }
+            if (_framesWithAnyValueText == null) {
+                _framesWithAnyValueText = getFrameSelect() + " WHERE v." + SLOT_COLUMN + " = ? AND v." + FACET_COLUMN
+                        + " = ? AND v." + IS_TEMPLATE_COLUMN + " = ?";
+            }
+            PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_framesWithAnyValueText);
+            stmt.setInt(1, slotId);
+            stmt.setInt(2, facetId);
+            DatabaseUtils.setIsTemplate(stmt, 3, isTemplate);
+            ResultSet rs = executeQuery(stmt);
+            try {
+                while (rs.next()) {
+                    results.add(getFrame(rs, 1, 2));
+                }
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+        return results;
+    }
+
+    private String getShortValueMatchColumn() throws SQLException {
+        String column = "v." + SHORT_VALUE_COLUMN;
+        return getCurrentConnection().supportsCaseInsensitiveMatches() ? column : "LOWER(" + column + ")";
+    }
+
+    private String getMatchClause(String column, String value) throws SQLException {
+        RobustConnection connection = getCurrentConnection();
+        return column + " LIKE '" + DatabaseUtils.getMatchString(value, connection.getEscapeCharacter()) + "' "
+                + connection.getEscapeClause();
+    }
+
+    /*
+     * As in DefaultDatabaseFrameDb the match string is part of the statement text, so a plain
+     * statement is used rather than a prepared one.  The is_template test is done here rather
+     * than in the query to avoid boolean literals.
+     */
+    public Set<Frame> getMatchingFrames(Slot slot, Facet facet, boolean isTemplate, String value, int maxMatches) {
+        Set<Frame> results = new HashSet<Frame>();
+        try {
+            int slotId = getId(slot);
+            int facetId = getId(facet);
+            if (slotId < 0 || facetId < 0) {
+                return results;
+            }
+            String text = getFrameSelect().replaceFirst(" FROM", ", v." + IS_TEMPLATE_COLUMN + " FROM");
+            text += " WHERE v." + SLOT_COLUMN + " = " + slotId + " AND v." + FACET_COLUMN + " = " + facetId;
+            text += " AND v." + VALUE_TYPE_COLUMN + " = " + DatabaseUtils.getStringValueType();
+            text += " AND (" + getMatchClause(getShortValueMatchColumn(), value) + " OR "
+                    + getMatchClause("v." + LONG_VALUE_COLUMN, value) + ")";
+            ResultSet rs = executeQuery(text);
+            try {
+                while (rs.next()) {
+                    if (getIsTemplate(rs, 3) == isTemplate) {
+                        results.add(getFrame(rs, 1, 2));
+                        if (--maxMatches == 0) {
+                            break;
+                        }
+                    }
+                }
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+        return results;
+    }
+
+    private String getReferenceSelect() {
+        return "SELECT f." + NAME_COLUMN + ", f." + FRAME_TYPE_COLUMN + ", s." + NAME_COLUMN + ", fa." + NAME_COLUMN
+                + ", v." + IS_TEMPLATE_COLUMN + ", v." + SHORT_VALUE_COLUMN + " FROM " + _valuesTable + " v"
+                + " INNER JOIN " + _framesTable + " f ON v." + FRAME_COLUMN + " = f." + ID_COLUMN
+                + " INNER JOIN " + _framesTable + " s ON v." + SLOT_COLUMN + " = s." + ID_COLUMN
+                + " INNER JOIN " + _framesTable + " fa ON v." + FACET_COLUMN + " = fa." + ID_COLUMN;
+    }
+
+    private Reference getReference(ResultSet rs) throws SQLException {
+        return new ReferenceImpl(getFrame(rs, 1, 2), getSlot(rs, 3), getFacet(rs, 4), getIsTemplate(rs, 5));
+    }
+
+    private String _frameReferencesText;
+    private String _referencesText;
+
+    public Set<Reference> getReferences(Object value) {
+        Set<Reference> references = new HashSet<Reference>();
+        try {
+            PreparedStatement stmt;
+            if (value instanceof Frame) {
+                int valueId = getId((Frame) value);
+                if (valueId < 0) {
+                    return references;
+                }
+                if (_frameReferencesText == null) {
+                    _frameReferencesText = getReferenceSelect() + " WHERE v." + VALUE_FRAME_COLUMN + " = ?";
+                }
+                stmt = getCurrentConnection().getPreparedStatement(_frameReferencesText);
+                stmt.setInt(1, valueId);
+            } else {
+                if (_referencesText == null) {
+                    _referencesText = getReferenceSelect() + " WHERE v." + SHORT_VALUE_COLUMN + " = ? AND v."
+                            + VALUE_TYPE_COLUMN + " = ?";
+                }
+                stmt = getCurrentConnection().getPreparedStatement(_referencesText);
+                DatabaseUtils.setShortValue(stmt, 1, 2, value, _frameFactory);
+            }
+            ResultSet rs = executeQuery(stmt);
+            try {
+                while (rs.next()) {
+                    if (!(value instanceof String) || value.equals(rs.getString(6))) {
+                        references.add(getReference(rs));
+                    }
+                }
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+        return references;
+    }
+
+    public Set<Reference> getMatchingReferences(String value, int maxMatches) {
+        Set<Reference> references = new HashSet<Reference>();
+        try {
+            String text = getReferenceSelect();
+            text += " WHERE v." + VALUE_TYPE_COLUMN + " = " + DatabaseUtils.getStringValueType();
+            text += " AND " + getMatchClause(getShortValueMatchColumn(), value);
+            ResultSet rs = executeQuery(text, maxMatches);
+            try {
+                while (rs.next()) {
+                    references.add(getReference(rs));
+                }
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+        return references;
+    }
+
+    /*
+     * ---------------------------------------------------------------------------------
+     * Frame values
+     */
+
+    private String getFrameValuesSelect() {
+        return "SELECT f." + NAME_COLUMN + ", s." + NAME_COLUMN + ", fa." + NAME_COLUMN + ", v." + IS_TEMPLATE_COLUMN
+                + ", " + _valueColumns + ", f." + FRAME_TYPE_COLUMN + " FROM " + _valuesTable + " v"
+                + " INNER JOIN " + _framesTable + " f ON v." + FRAME_COLUMN + " = f." + ID_COLUMN
+                + " INNER JOIN " + _framesTable + " s ON v." + SLOT_COLUMN + " = s." + ID_COLUMN
+                + " INNER JOIN " + _framesTable + " fa ON v." + FACET_COLUMN + " = fa." + ID_COLUMN
+                + _valueJoin;
+    }
+
+    private static final String FRAME_VALUES_ORDER = " ORDER BY v." + FRAME_COLUMN + ", v." + SLOT_COLUMN + ", v."
+            + FACET_COLUMN + ", v." + IS_TEMPLATE_COLUMN + ", v." + VALUE_INDEX_COLUMN;
+
+    private static void addToMap(Map<Sft, List> map, Slot slot, Facet facet, boolean isTemplate, Object value) {
+        Sft sft = new Sft(slot, facet, isTemplate);
+        List values = map.get(sft);
+        if (values == null) {
+            values = new ArrayList();
+            map.put(sft, values);
+        }
+        values.add(value);
+    }
+
+    private String _frameValuesText;
+
+    public Map<Sft, List> getFrameValues(Frame frame) {
+        Map<Sft, List> sftToValues = new HashMap<Sft, List>();
+        try {
+            int frameId = getId(frame);
+            if (frameId < 0) {
+                return sftToValues;
+            }
+            if (_frameValuesText == null) {
+                _frameValuesText = getFrameValuesSelect() + " WHERE v." + FRAME_COLUMN + " = ? AND v." + SLOT_COLUMN
+                        + " <> ?" + FRAME_VALUES_ORDER;
+            }
+            PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_frameValuesText);
+            stmt.setInt(1, frameId);
+            stmt.setInt(2, getId(DatabaseUtils.getValue(Model.SlotID.DIRECT_INSTANCES)));
+            ResultSet rs = executeQuery(stmt);
+            try {
+                while (rs.next()) {
+                    addToMap(sftToValues, getSlot(rs, 2), getFacet(rs, 3), getIsTemplate(rs, 4), getValue(rs, 5));
+                }
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+        return sftToValues;
+    }
+
+    private String _batchFrameValuesText;
+
+    /*
+     * The last batch is padded by repeating its last frame so that every batch uses the
+     * same statement.
+     */
+    public Map<Frame, Map<Sft, List>> getFrameValues(Collection<Frame> frames) {
+        Map<Frame, Map<Sft, List>> frameToSftToValues = new HashMap<Frame, Map<Sft, List>>();
+        try {
+            if (_batchFrameValuesText == null) {
+                StringBuffer text = new StringBuffer(getFrameValuesSelect());
+                text.append(" WHERE f." + NAME_COLUMN + " IN (?");
+                for (int i = 1; i < FRAME_VALUES_BATCH_SIZE; ++i) {
+                    text.append(", ?");
+                }
+                text.append(") AND v." + SLOT_COLUMN + " <> ?");
+                text.append(FRAME_VALUES_ORDER);
+                _batchFrameValuesText = text.toString();
+            }
+            Map<String, Frame> nameToFrame = new HashMap<String, Frame>();
+            List<Frame> batch = new ArrayList<Frame>(FRAME_VALUES_BATCH_SIZE);
+            for (Frame frame : frames) {
+                if (!frameToSftToValues.containsKey(frame)) {
+                    frameToSftToValues.put(frame, new HashMap<Sft, List>());
+                    nameToFrame.put(getName(frame), frame);
+                    batch.add(frame);
+                    if (batch.size() == FRAME_VALUES_BATCH_SIZE) {
+                        getFrameValuesSQL(batch, nameToFrame, frameToSftToValues);
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                getFrameValuesSQL(batch, nameToFrame, frameToSftToValues);
+            }
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+        return frameToSftToValues;
+    }
+
+    private void getFrameValuesSQL(List<Frame> batch, Map<String, Frame> nameToFrame,
+                                   Map<Frame, Map<Sft, List>> frameToSftToValues) throws SQLException {
+        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_batchFrameValuesText);
+        for (int i = 0; i < FRAME_VALUES_BATCH_SIZE; ++i) {
+            stmt.setString(i + 1, getName(batch.get(Math.min(i, batch.size() - 1))));
+        }
+        stmt.setInt(FRAME_VALUES_BATCH_SIZE + 1, getId(DatabaseUtils.getValue(Model.SlotID.DIRECT_INSTANCES)));
+        ResultSet rs = executeQuery(stmt);
+        try {
+            while (rs.next()) {
+                Frame frame = nameToFrame.get(rs.getString(1));
+                if (frame != null) {
+                    addToMap(frameToSftToValues.get(frame), getSlot(rs, 2), getFacet(rs, 3), getIsTemplate(rs, 4),
+                             getValue(rs, 5));
+                }
+            }
+        } finally {
+            rs.close();
+        }
+    }
+
+    public Map<Frame, Map<Sft, List>> getFrameValues() {
+        final Map<Frame, Map<Sft, List>> frameToSftToValues = new HashMap<Frame, Map<Sft, List>>();
+        try {
+            streamFrameValues(new FrameValuesCallback() {
+                public void handleFrameValues(Frame frame, Map<Sft, List> sftToValues) {
+                    frameToSftToValues.put(frame, sftToValues);
+                }
+            });
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+        return frameToSftToValues;
+    }
+
+    public void streamFrameValues(FrameValuesCallback callback) throws SQLException {
+        RobustConnection connection = getCurrentConnection();
+        Statement stmt = connection.createStreamingStatement();
+        try {
+            ResultSet rs = executeQuery(stmt, getFrameValuesSelect() + FRAME_VALUES_ORDER);
+            try {
+                String currentName = null;
+                Frame currentFrame = null;
+                Map<Sft, List> sftToValues = null;
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    if (!name.equals(currentName)) {
+                        if (currentFrame != null) {
+                            callback.handleFrameValues(currentFrame, sftToValues);
+                        }
+                        currentName = name;
+                        currentFrame = getFrame(rs, 1, 10);
+                        sftToValues = new HashMap<Sft, List>();
+                        if (currentFrame instanceof Cls) {
+                            Slot directInstancesSlot = currentFrame.getKnowledgeBase().getSystemFrames()
+                                    .getDirectInstancesSlot();
+                            sftToValues.put(new Sft(directInstancesSlot, null, false), new ArrayList());
+                        }
+                    }
+                    addToMap(sftToValues, getSlot(rs, 2), getFacet(rs, 3), getIsTemplate(rs, 4), getValue(rs, 5));
+                }
+                if (currentFrame != null) {
+                    callback.handleFrameValues(currentFrame, sftToValues);
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            connection.closeStreamingStatement(stmt);
+        }
+    }
+
+    /*
+     * ---------------------------------------------------------------------------------
+     * Closures
+     */
+
+    private String _closureText;
+    private String _closureLevelText;
+
+    /*
+     * Like DefaultDatabaseFrameDb.getClosure() but the traversal follows the value_frame ids
+     * so it does not have to look up frame names.
+     */
+    public Set getClosure(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        try {
+            int frameId = getId(frame);
+            int slotId = getId(slot);
+            int facetId = getId(facet);
+            if (frameId < 0 || slotId < 0 || facetId < 0) {
+                return new LinkedHashSet();
+            }
+            if (getCurrentConnection().supportsRecursiveQueries()) {
+                return getClosureRecursiveSQL(frameId, slotId, facetId, isTemplate);
+            }
+            return getClosureSQL(frameId, slotId, facetId, isTemplate);
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+    }
+
+    private Set getClosureRecursiveSQL(int frameId, int slotId, int facetId, boolean isTemplate)
+            throws SQLException {
+        if (_closureText == null) {
+            String location = " AND v." + SLOT_COLUMN + " = ? AND v." + FACET_COLUMN + " = ? AND v."
+                    + IS_TEMPLATE_COLUMN + " = ?";
+            _closureText = "WITH RECURSIVE closure_frames (id) AS (SELECT v." + VALUE_FRAME_COLUMN + " FROM "
+                    + _valuesTable + " v WHERE v." + FRAME_COLUMN + " = ?" + location + " AND v." + VALUE_TYPE_COLUMN
+                    + " = " + FRAME_VALUE_TYPE + " UNION SELECT v." + VALUE_FRAME_COLUMN + " FROM " + _valuesTable
+                    + " v INNER JOIN closure_frames c ON v." + FRAME_COLUMN + " = c.id WHERE v." + VALUE_TYPE_COLUMN
+                    + " = " + FRAME_VALUE_TYPE + location + ") SELECT " + _valueColumns + " FROM " + _valuesTable
+                    + " v" + _valueJoin + " WHERE (v." + FRAME_COLUMN + " = ? OR v." + FRAME_COLUMN
+                    + " IN (SELECT id FROM closure_frames))" + location;
+        }
+        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_closureText);
+        setLocation(stmt, 1, frameId, slotId, facetId, isTemplate);
+        stmt.setInt(5, slotId);
+        stmt.setInt(6, facetId);
+        DatabaseUtils.setIsTemplate(stmt, 7, isTemplate);
+        setLocation(stmt, 8, frameId, slotId, facetId, isTemplate);
+        Set closure = new LinkedHashSet();
+        ResultSet rs = executeQuery(stmt);
+        try {
+            while (rs.next()) {
+                closure.add(getValue(rs, 1));
+            }
+        } finally {
+            rs.close();
+        }
+        return closure;
+    }
+
+    /*
+     * A breadth first traversal with one query for each FRAME_VALUES_BATCH_SIZE frames of a
+     * level.  The last batch of a level is padded by repeating its last id.
+     */
+    private Set getClosureSQL(int frameId, int slotId, int facetId, boolean isTemplate) throws SQLException {
+        if (_closureLevelText == null) {
+            StringBuffer text = new StringBuffer("SELECT v." + FRAME_COLUMN + ", " + _valueColumns + ", v."
+                    + VALUE_FRAME_COLUMN + " FROM " + _valuesTable + " v" + _valueJoin);
+            text.append(" WHERE v." + SLOT_COLUMN + " = ? AND v." + FACET_COLUMN + " = ? AND v." + IS_TEMPLATE_COLUMN
+                    + " = ? AND v." + FRAME_COLUMN + " IN (?");
+            for (int i = 1; i < FRAME_VALUES_BATCH_SIZE; ++i) {
+                text.append(", ?");
+            }
+            text.append(") ORDER BY v." + FRAME_COLUMN + ", v." + VALUE_INDEX_COLUMN);
+            _closureLevelText = text.toString();
+        }
+        Set closure = new LinkedHashSet();
+        Set<Integer> visited = new HashSet<Integer>();
+        visited.add(frameId);
+        List<Integer> level = new ArrayList<Integer>();
+        level.add(frameId);
+        while (!level.isEmpty()) {
+            List<Integer> nextLevel = new ArrayList<Integer>();
+            for (int start = 0; start < level.size(); start += FRAME_VALUES_BATCH_SIZE) {
+                List<Integer> batch = level.subList(start, Math.min(level.size(), start + FRAME_VALUES_BATCH_SIZE));
+                PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_closureLevelText);
+                stmt.setInt(1, slotId);
+                stmt.setInt(2, facetId);
+                DatabaseUtils.setIsTemplate(stmt, 3, isTemplate);
+                for (int i = 0; i < FRAME_VALUES_BATCH_SIZE; ++i) {
+                    stmt.setInt(i + 4, batch.get(Math.min(i, batch.size() - 1)));
+                }
+                ResultSet rs = executeQuery(stmt);
+                try {
+                    while (rs.next()) {
+                        Object value = getValue(rs, 2);
+                        if (closure.add(value) && value instanceof Frame && visited.add(rs.getInt(7))) {
+                            nextLevel.add(rs.getInt(7));
+                        }
+                    }
+                } finally {
+                    rs.close();
+                }
+            }
+            level = nextLevel;
+        }
+        return closure;
+    }
+
+    /*
+     * ---------------------------------------------------------------------------------
+     * Frames
+     */
+
+    private String _frameText;
+
+    public Frame getFrame(FrameID id) {
+        if (id == null) {
+            return null;
+        }
+        try {
+            if (_frameText == null) {
+                _frameText = "SELECT f." + NAME_COLUMN + ", f." + FRAME_TYPE_COLUMN + " FROM " + _framesTable + " f";
+                _frameText += " WHERE f." + NAME_COLUMN + " = ? AND EXISTS (SELECT * FROM " + _valuesTable + " v";
+                _frameText += " WHERE v." + FRAME_COLUMN + " = f." + ID_COLUMN + ")";
+            }
+            PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_frameText);
+            String name = DatabaseUtils.getValue(id);
+            stmt.setString(1, name);
+            ResultSet rs = executeQuery(stmt);
+            try {
+                while (rs.next()) {
+                    if (name.equals(rs.getString(1))) {
+                        return getFrame(rs, 1, 2);
+                    }
+                }
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+        return null;
+    }
+
+    public Set<Frame> getFrames() {
+        Set<Frame> frames = new HashSet<Frame>();
+        try {
+            String text = "SELECT f." + NAME_COLUMN + ", f." + FRAME_TYPE_COLUMN + " FROM " + _framesTable + " f";
+            text += " WHERE f." + ID_COLUMN + " IN (SELECT " + FRAME_COLUMN + " FROM " + _valuesTable + ")";
+            ResultSet rs = executeQuery(text);
+            try {
+                while (rs.next()) {
+                    frames.add(getFrame(rs, 1, 2));
+                }
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+        return frames;
+    }
+
+    public List<Frame> getFramesAfter(String name, int maxFrames) throws SQLException {
+        String text = "SELECT " + NAME_COLUMN + ", " + FRAME_TYPE_COLUMN + " FROM " + _framesTable;
+        text += " WHERE " + NAME_COLUMN + " > ? ORDER BY " + NAME_COLUMN;
+        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(text);
+        stmt.setString(1, name);
+        List<Frame> frames = new ArrayList<Frame>();
+        stmt.setMaxRows(maxFrames);
+        try {
+            ResultSet rs = executeQuery(stmt);
+            try {
+                while (frames.size() < maxFrames && rs.next()) {
+                    frames.add(getFrame(rs, 1, 2));
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            stmt.setMaxRows(0);
+        }
+        return frames;
+    }
+
+    public int getFrameCount() {
+        return countFrames(null);
+    }
+
+    public int getClsCount() {
+        return countFrames(_frameFactory.getClsJavaClassIds());
+    }
+
+    public int getSlotCount() {
+        return countFrames(_frameFactory.getSlotJavaClassIds());
+    }
+
+    public int getFacetCount() {
+        return countFrames(_frameFactory.getFacetJavaClassIds());
+    }
+
+    public int getSimpleInstanceCount() {
+        return countFrames(_frameFactory.getSimpleInstanceJavaClassIds());
+    }
+
+    /*
+     * Counts the frames with a name, like DefaultDatabaseFrameDb does.
+     */
+    private int countFrames(Collection types) {
+        try {
+            int nameSlotId = getId(DatabaseUtils.getValue(Model.SlotID.NAME));
+            if (nameSlotId < 0) {
+                return 0;
+            }
+            StringBuffer text = new StringBuffer(getFrameSelect().replaceFirst("SELECT .* FROM", "SELECT COUNT(*) FROM"));
+            text.append(" WHERE v." + SLOT_COLUMN + " = ? AND v." + FACET_COLUMN + " = " + NULL_FRAME_ID);
+            text.append(" AND v." + IS_TEMPLATE_COLUMN + " = ?");
+            if (types != null) {
+                text.append(" AND f." + FRAME_TYPE_COLUMN + " IN (");
+                boolean isFirst = true;
+                for (Object type : types) {
+                    if (!isFirst) {
+                        text.append(", ");
+                    }
+                    isFirst = false;
+                    text.append(((Integer) type).intValue());
+                }
+                text.append(")");
+            }
+            PreparedStatement stmt = getCurrentConnection().getPreparedStatement(text.toString());
+            stmt.setInt(1, nameSlotId);
+            DatabaseUtils.setIsTemplate(stmt, 2, false);
+            return getCount(stmt);
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+    }
+
+    private String _deleteFrameText;
+
+    public void deleteFrame(Frame frame) {
+        try {
+            int id = getId(frame);
+            if (id < 0) {
+                return;
+            }
+            String[] columns;
+            if (frame instanceof Slot) {
+                columns = new String[] { FRAME_COLUMN, VALUE_FRAME_COLUMN, SLOT_COLUMN };
+            } else if (frame instanceof Facet) {
+                columns = new String[] { FRAME_COLUMN, VALUE_FRAME_COLUMN, FACET_COLUMN };
+            } else {
+                columns = new String[] { FRAME_COLUMN, VALUE_FRAME_COLUMN };
+            }
+            for (String column : columns) {
+                PreparedStatement stmt = getCurrentConnection().getPreparedStatement(
+                        "DELETE FROM " + _valuesTable + " WHERE " + column + " = ?");
+                stmt.setInt(1, id);
+                executeUpdate(stmt);
+            }
+            if (_deleteFrameText == null) {
+                _deleteFrameText = "DELETE FROM " + _framesTable + " WHERE " + ID_COLUMN + " = ?";
+            }
+            PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_deleteFrameText);
+            stmt.setInt(1, id);
+            executeUpdate(stmt);
+            uncacheId(getName(frame));
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+    }
+
+    private String _updateFrameTypeText;
+
+    /*
+     * The java class of a frame is only stored in the frames table so this is a single
+     * update.
+     */
+    public void replaceFrame(Frame frame) {
+        try {
+            int id = getId(frame);
+            if (id < 0) {
+                return;
+            }
+            if (_updateFrameTypeText == null) {
+                _updateFrameTypeText = "UPDATE " + _framesTable + " SET " + FRAME_TYPE_COLUMN + " = ? WHERE "
+                        + ID_COLUMN + " = ?";
+            }
+            PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_updateFrameTypeText);
+            DatabaseUtils.setFrameType(stmt, 1, _frameFactory.getJavaClassId(frame));
+            stmt.setInt(2, id);
+            executeUpdate(stmt);
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+    }
+
+    private String _renameFrameText;
+    private String _replaceNameText;
+
+    /*
+     * A rename to an unused name only changes the frames table.
+     */
+    public void replaceFrame(Frame original, Frame replacement) {
+        try {
+            int originalId = getId(original);
+            if (originalId < 0) {
+                return;
+            }
+            String replacementName = getName(replacement);
+            int replacementId = getId(replacementName);
+            if (replacementId < 0) {
+                if (_renameFrameText == null) {
+                    _renameFrameText = "UPDATE " + _framesTable + " SET " + NAME_COLUMN + " = ?, " + FRAME_TYPE_COLUMN
+                            + " = ? WHERE " + ID_COLUMN + " = ?";
+                }
+                PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_renameFrameText);
+                stmt.setString(1, replacementName);
+                DatabaseUtils.setFrameType(stmt, 2, _frameFactory.getJavaClassId(replacement));
+                stmt.setInt(3, originalId);
+                executeUpdate(stmt);
+                uncacheId(getName(original));
+                cacheId(replacementName, originalId);
+            } else {
+                for (String column : new String[] { FRAME_COLUMN, SLOT_COLUMN, FACET_COLUMN, VALUE_FRAME_COLUMN }) {
+                    PreparedStatement stmt = getCurrentConnection().getPreparedStatement(
+                            "UPDATE " + _valuesTable + " SET " + column + " = ? WHERE " + column + " = ?");
+                    stmt.setInt(1, replacementId);
+                    stmt.setInt(2, originalId);
+                    executeUpdate(stmt);
+                }
+                deleteFrameRow(original, originalId);
+            }
+            int nameSlotId = getId(DatabaseUtils.getValue(Model.SlotID.NAME));
+            if (nameSlotId >= 0) {
+                if (_replaceNameText == null) {
+                    _replaceNameText = "UPDATE " + _valuesTable + " SET " + SHORT_VALUE_COLUMN + " = ?, "
+                            + VALUE_TYPE_COLUMN + " = ? WHERE " + FRAME_COLUMN + " = ? AND " + SLOT_COLUMN + " = ?";
+                }
+                PreparedStatement stmt = getCurrentConnection().getPreparedStatement(_replaceNameText);
+                DatabaseUtils.setShortValue(stmt, 1, 2, replacementName, _frameFactory);
+                stmt.setInt(3, getId(replacementName));
+                stmt.setInt(4, nameSlotId);
+                executeUpdate(stmt);
+            }
+            original.markDeleted(true);
+        } catch (SQLException e) {
+            throw createRuntimeException(e);
+        }
+    }
+
+    private void deleteFrameRow(Frame frame, int id) throws SQLException {
+        PreparedStatement stmt = getCurrentConnection().getPreparedStatement(
+                "DELETE FROM " + _framesTable + " WHERE " + ID_COLUMN + " = ?");
+        stmt.setInt(1, id);
+        executeUpdate(stmt);
+        uncacheId(getName(frame));
+    }
+
+    /*
+     * ---------------------------------------------------------------------------------
+     * Saving a whole knowledge base
+     */
+
+    public void overwriteKB(KnowledgeBase kb, boolean saveFrames) throws SQLException {
+        dropTablesIfTheyExist();
+        createTables();
+        if (saveFrames) {
+            boolean wasCaching = kb.setCallCachingEnabled(false);
+            RobustConnection connection = getCurrentConnection();
+            connection.setAutoCommit(false);
+            try {
+                saveFrames(kb);
+                connection.commit();
+            } finally {
+                connection.setAutoCommit(true);
+                kb.setCallCachingEnabled(wasCaching);
+            }
+        }
+        createIndices();
+    }
+
+    private void saveFrames(KnowledgeBase kb) throws SQLException {
+        MergingNarrowFrameStore mnfs = MergingNarrowFrameStore.get(kb);
+        NarrowFrameStore nfs = mnfs == null ? null : mnfs.getActiveFrameStore();
+        DatabaseFrameDb source = getDatabaseFrameDb(nfs);
+        if (source != null && source != this) {
+            // another database project is copied one frame at a time
+            source.streamFrameValues(new FrameValuesCallback() {
+                public void handleFrameValues(Frame frame, Map<Sft, List> sftToValues) throws SQLException {
+                    for (Map.Entry<Sft, List> entry : sftToValues.entrySet()) {
+                        Sft sft = entry.getKey();
+                        saveValues(frame, sft.getSlot(), sft.getFacet(), !sft.isOwnSlot(), entry.getValue());
+                    }
+                }
+            });
+            return;
+        }
+        Collection<Frame> frames = nfs == null ? kb.getFrames() : nfs.getFrames();
+        for (Frame frame : frames) {
+            for (Object o : frame.getOwnSlots()) {
+                Slot slot = (Slot) o;
+                Collection values = nfs == null ? frame.getDirectOwnSlotValues(slot) : nfs.getValues(frame, slot,
+                                                                                                     null, false);
+                saveValues(frame, slot, null, false, values);
+            }
+            if (frame instanceof Cls) {
+                Cls cls = (Cls) frame;
+                for (Object o : cls.getTemplateSlots()) {
+                    Slot slot = (Slot) o;
+                    Collection values = nfs == null ? cls.getDirectTemplateSlotValues(slot) : nfs.getValues(cls,
+                                                                                                             slot,
+                                                                                                             null,
+                                                                                                             true);
+                    saveValues(cls, slot, null, true, values);
+                    for (Object f : cls.getTemplateFacets(slot)) {
+                        Facet facet = (Facet) f;
+                        values = nfs == null ? cls.getDirectTemplateFacetValues(slot, facet) : nfs.getValues(cls,
+                                                                                                             slot,
+                                                                                                             facet,
+                                                                                                             true);
+                        saveValues(cls, slot, facet, true, values);
+                    }
+                }
+            }
+        }
+    }
+
+    private void saveValues(Frame frame, Slot slot, Facet facet, boolean isTemplate, Collection values)
+            throws SQLException {
+        if (!values.isEmpty()) {
+            addValuesSQL(getOrCreateId(frame), getOrCreateId(slot), getOrCreateId(facet), isTemplate, values, 0);
+        }
+    }
+
+    /*
+     * ---------------------------------------------------------------------------------
+     * Migration
+     */
+
+    /**
+     * Replaces the tables of this frame db with the contents of a DefaultDatabaseFrameDb
+     * table.  The source table is read in one pass and left as it is.  The frame ids are
+     * handed out as the rows are read and the frames table is written at the end, once the
+     * java class id of each frame is known.  The indices are created last.
+     *
+     * @return the number of value rows copied.
+     */
+    public int copyFromSingleTable(String sourceTable) throws SQLException {
+        dropTablesIfTheyExist();
+        createTables();
+        Map<String, int[]> frames = new HashMap<String, int[]>();
+        frames.put(DatabaseUtils.NULL_FRAME_ID_STRING, new int[] { NULL_FRAME_ID, 0 });
+        RobustConnection connection = getCurrentConnection();
+        boolean useBatch = connection.supportsBatch();
+        connection.setAutoCommit(false);
+        int rows = 0;
+        try {
+            String text = "SELECT frame, frame_type, slot, facet, is_template, value_index, value_type, short_value, "
+                    + "long_value FROM " + sourceTable;
+            ResultSet rs = executeQuery(text);
+            PreparedStatement stmt = getAddValuesStatement();
+            try {
+                while (rs.next()) {
+                    int frameId = getMigrationId(frames, rs.getString(1), rs.getInt(2), true);
+                    int slotId = getMigrationId(frames, rs.getString(3), 0, false);
+                    int facetId = getMigrationId(frames, rs.getString(4), 0, false);
+                    setLocation(stmt, 1, frameId, slotId, facetId, getIsTemplate(rs, 5));
+                    DatabaseUtils.setValueIndex(stmt, 5, rs.getInt(6));
+                    int valueType = rs.getInt(7);
+                    String shortValue = rs.getString(8);
+                    if (valueType >= DatabaseUtils.BASE_FRAME_TYPE_VALUE) {
+                        DatabaseUtils.setValueType(stmt, 6, FRAME_VALUE_TYPE);
+                        stmt.setInt(7, getMigrationId(frames, shortValue, valueType, false));
+                        stmt.setNull(8, Types.VARCHAR);
+                        DatabaseUtils.setNullLongValue(stmt, 9);
+                    } else {
+                        DatabaseUtils.setValueType(stmt, 6, valueType);
+                        stmt.setNull(7, Types.INTEGER);
+                        if (shortValue == null) {
+                            stmt.setNull(8, Types.VARCHAR);
+                        } else {
+                            stmt.setString(8, shortValue);
+                        }
+                        String longValue = rs.getString(9);
+                        if (longValue == null) {
+                            DatabaseUtils.setNullLongValue(stmt, 9);
+                        } else {
+                            stmt.setString(9, longValue);
+                        }
+                    }
+                    if (useBatch) {
+                        stmt.addBatch();
+                        if (++rows % MAX_BATCH == 0) {
+                            stmt.executeBatch();
+                        }
+                    } else {
+                        executeUpdate(stmt);
+                        ++rows;
+                    }
+                }
+                if (useBatch && rows % MAX_BATCH != 0) {
+                    stmt.executeBatch();
+                }
+            } finally {
+                rs.close();
+            }
+
+            stmt = getInsertFrameStatement();
+            int count = 0;
+            for (Map.Entry<String, int[]> entry : frames.entrySet()) {
+                int[] idAndType = entry.getValue();
+                if (idAndType[0] == NULL_FRAME_ID) {
+                    continue;
+                }
+                stmt.setInt(1, idAndType[0]);
+                stmt.setString(2, entry.getKey());
+                DatabaseUtils.setFrameType(stmt, 3, idAndType[1]);
+                if (useBatch) {
+                    stmt.addBatch();
+                    if (++count % MAX_BATCH == 0) {
+                        stmt.executeBatch();
+                    }
+                } else {
+                    executeUpdate(stmt);
+                }
+            }
+            if (useBatch && count % MAX_BATCH != 0) {
+                stmt.executeBatch();
+            }
+            executeUpdate("UPDATE " + _idsTable + " SET " + NEXT_ID_COLUMN + " = " + frames.size());
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        clearIdCache();
+        createIndices();
+        return rows;
+    }
+
+    /*
+     * The java class id of a frame comes from the rows of the frame itself if there are any
+     * and otherwise from a value that refers to it.
+     */
+    private static int getMigrationId(Map<String, int[]> frames, String name, int type, boolean isFrameRow) {
+        int[] idAndType = frames.get(name);
+        if (idAndType == null) {
+            idAndType = new int[] { frames.size(), type, isFrameRow ? 1 : 0 };
+            frames.put(name, idAndType);
+        } else if (type != 0 && (isFrameRow || idAndType[1] == 0) && idAndType[2] == 0) {
+            idAndType[1] = type;
+            if (isFrameRow) {
+                idAndType[2] = 1;
+            }
+        }
+        return idAndType[0];
+    }
+
+    /*
+     * ---------------------------------------------------------------------------------
+     * The rest of the narrow frame store
+     */
+
+    @Override
+    public boolean commitTransaction() {
+        boolean committed = super.commitTransaction();
+        if (!getTransactionStatusMonitor().inTransaction()) {
+            endTransactionIds(committed);
+        }
+        return committed;
+    }
+
+    @Override
+    public boolean rollbackTransaction() {
+        boolean rolledBack = super.rollbackTransaction();
+        if (!getTransactionStatusMonitor().inTransaction()) {
+            // the frames added in the transaction are gone from the frames table
+            endTransactionIds(false);
+        }
+        return rolledBack;
+    }
+
+    @Override
+    public void close() {
+        synchronized (_createIdLock) {
+            if (_idConnection != null) {
+                try {
+                    _idConnection.dispose();
+                } catch (SQLException e) {
+                    throw createRuntimeException(e);
+                } finally {
+                    _idConnection = null;
+                }
+            }
+        }
+        super.close();
+    }
+
+    public NarrowFrameStore getDelegate() {
+        return null;
+    }
+
+    public void reinitialize() {
+    }
+
+    public boolean setCaching(RemoteSession session, boolean doCache) {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "NormalizedDatabaseFrameDb(" + getName() + ")";
+    }
+}
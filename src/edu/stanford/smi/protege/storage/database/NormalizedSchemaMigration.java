@@ -0,0 +1,52 @@
+package edu.stanford.smi.protege.storage.database;
+
+import java.sql.SQLException;
+
+import edu.stanford.smi.protege.model.DefaultKnowledgeBase;
+import edu.stanford.smi.protege.model.FrameFactory;
+import edu.stanford.smi.protege.util.Log;
+
+/**
+ * Converts a database project from the single table schema of DefaultDatabaseFrameDb to
+ * the frames and values tables of NormalizedDatabaseFrameDb.  The source table is left as
+ * it is.  The new tables are named after the target table name (which may be the same as the
+ * source table):
+ * <pre>
+ *     java edu.stanford.smi.protege.storage.database.NormalizedSchemaMigration driver url user password table [target]
+ * </pre>
+ * Afterwards set the database.frame.db.class property to
+ * edu.stanford.smi.protege.storage.database.NormalizedDatabaseFrameDb and, if a different
+ * target was given, change the table of the project to it.
+ */
+public class NormalizedSchemaMigration {
+
+    public static int migrate(FrameFactory factory, String driver, String url, String user, String password,
+                              String sourceTable, String targetTable) throws SQLException {
+        NormalizedDatabaseFrameDb db = new NormalizedDatabaseFrameDb();
+        db.initialize(factory, driver, url, user, password, targetTable, false);
+        try {
+            return db.copyFromSingleTable(sourceTable);
+        } finally {
+            db.close();
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 5) {
+            System.err.println("usage: NormalizedSchemaMigration driver url user password table [target]");
+            System.exit(1);
+        }
+        String target = args.length > 5 ? args[5] : args[4];
+        try {
+            long start = System.currentTimeMillis();
+            int rows = migrate(new DefaultKnowledgeBase().getFrameFactory(), args[0], args[1], args[2], args[3],
+                               args[4], target);
+            long time = System.currentTimeMillis() - start;
+            System.out.println("Copied " + rows + " rows from " + args[4] + " to " + target + "_frames and " + target
+                    + "_values in " + time + " ms");
+        } catch (SQLException e) {
+            Log.getLogger().severe("Migration failed: " + e);
+            System.exit(1);
+        }
+    }
+}
@@ -16,6 +16,7 @@ import edu.stanford.smi.protege.server.RemoteSession;
 import edu.stanford.smi.protege.server.ServerProperties;
 import edu.stanford.smi.protege.server.framestore.ServerFrameStore;
 import edu.stanford.smi.protege.storage.database.pool.ConnectionPool;
+import edu.stanford.smi.protege.storage.database.pool.ConnectionPoolMetrics;
 import edu.stanford.smi.protege.util.ApplicationProperties;
 import edu.stanford.smi.protege.util.Log;
 import edu.stanford.smi.protege.util.SystemUtilities;
@@ -35,6 +36,9 @@ public class RobustConnection {
     public static final String PROPERTY_INTEGER_TYPE_NAME = "Database.typename.integer";
     public static final String PROPERTY_SMALL_INTEGER_TYPE_NAME = "Database.typename.small_integer";
     public static final String PROPERTY_BIT_TYPE_NAME = "Database.typename.bit";
+    public static final String PROPERTY_STREAM_FETCH_SIZE = "Database.stream.fetch.size";
+    public static final int DEFAULT_STREAM_FETCH_SIZE = 1000;
+    public static final String PROPERTY_RECURSIVE_QUERIES = "Database.recursive.queries";
     
     private static int idCounter = 0;
 
@@ -43,12 +47,17 @@ public class RobustConnection {
     private Connection connection;
     private ConnectionPool pool;
     private boolean idleFlag  = true;
+    private int streamingCount;
+    private boolean streamingDisabledAutoCommit;
+    private int manualCommitCount;
+    private boolean manualCommitDisabledAutoCommit;
     
     private KnownDatabase dbType;
     private boolean _supportsBatch;
     private char _escapeChar;
     private String _escapeClause;
     private boolean _supportsTransactions;
+    private boolean _supportsRecursiveQueries;
     
     private RemoteSession session;
     private TransactionMonitor transactionMonitor;
@@ -81,6 +90,7 @@ public class RobustConnection {
         initializeSupportsEscapeSyntax();
         initializeDriverTypeNames();
         initializeSupportsTransactions();
+        initializeSupportsRecursiveQueries();
     }
     
     private void initializeDatabaseType() throws SQLException {
@@ -123,11 +133,20 @@ public class RobustConnection {
         }
     }
 
+    public void rollback() throws SQLException {
+        try {
+            getConnection().rollback();
+        }
+        finally {
+            setIdle(true);
+        }
+    }
+
     private void setupConnection() throws SQLException {
         if (log.isLoggable(Level.FINE)) {
             log.fine("Opening connection for robust connection manager #" + id);
         }
-        connection = pool.getConnection();
+        connection = pool.getConnection(session);
         TransactionIsolationLevel defaultLevel = ServerProperties.getDefaultTransactionIsolationLevel();
         if (defaultLevel != null) {
             connection.setTransactionIsolation(defaultLevel.getJdbcLevel());
@@ -145,6 +164,10 @@ public class RobustConnection {
         pool.closeStatements(getConnection());
     }
 
+    public ConnectionPoolMetrics getConnectionPoolMetrics() {
+        return pool.getMetrics();
+    }
+
 
     private void initializeSupportsBatch() throws SQLException {
         try {
@@ -172,6 +195,25 @@ public class RobustConnection {
         }
     }
 
+    /*
+     * Recursive common table expressions with a UNION (which stops at cycles) are available
+     * from PostgreSQL 8.4 and MySQL 8.0.  SQL Server and Oracle only allow UNION ALL.  The
+     * Database.recursive.queries property overrides the check for other databases.
+     */
+    private void initializeSupportsRecursiveQueries() throws SQLException {
+        String property = ApplicationProperties.getApplicationOrSystemProperty(PROPERTY_RECURSIVE_QUERIES);
+        if (property != null) {
+            _supportsRecursiveQueries = Boolean.valueOf(property).booleanValue();
+        }
+        else if (isPostgres()) {
+            int major = getDatabaseMajorVersion();
+            _supportsRecursiveQueries = major > 8 || (major == 8 && getDatabaseMinorVersion() >= 4);
+        }
+        else if (isMySql()) {
+            _supportsRecursiveQueries = getDatabaseMajorVersion() >= 8;
+        }
+    }
+
     private void initializeSupportsEscapeSyntax() throws SQLException {
         try {
             _escapeChar = 0;
@@ -214,6 +256,114 @@ public class RobustConnection {
         return pool.getStatement(getConnection());
     }
 
+    /**
+     * Creates a forward only, read only statement whose result sets are fetched from the
+     * server a few rows at a time (Database.stream.fetch.size rows, or one row at a time
+     * for MySQL) instead of being read into memory at once.  The connection is held until
+     * the statement is passed to closeStreamingStatement().  MySQL does not allow any other
+     * statement on the connection while a streaming result set is open.
+     */
+    public synchronized Statement createStreamingStatement() throws SQLException {
+        Connection c = getConnection();
+        ++streamingCount;
+        boolean created = false;
+        try {
+            Statement stmt = c.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            if (isMySql()) {
+                stmt.setFetchSize(Integer.MIN_VALUE);
+            }
+            else {
+                if (isPostgres() && streamingCount == 1 && c.getAutoCommit()) {
+                    // the postgres driver ignores the fetch size in auto commit mode
+                    c.setAutoCommit(false);
+                    streamingDisabledAutoCommit = true;
+                }
+                stmt.setFetchSize(getStreamFetchSize());
+            }
+            created = true;
+            return stmt;
+        }
+        finally {
+            if (!created) {
+                endStreaming();
+            }
+        }
+    }
+
+    public synchronized void closeStreamingStatement(Statement stmt) throws SQLException {
+        try {
+            stmt.close();
+        }
+        finally {
+            endStreaming();
+        }
+    }
+
+    private void endStreaming() throws SQLException {
+        try {
+            if (--streamingCount == 0 && streamingDisabledAutoCommit) {
+                streamingDisabledAutoCommit = false;
+                connection.commit();
+                connection.setAutoCommit(true);
+            }
+        }
+        finally {
+            setIdle(true);
+        }
+    }
+
+    /**
+     * Starts a span of statements that endManualCommit() commits or rolls back together.  The
+     * connection is held until then, so all of the statements run on the same connection
+     * (setAutoCommit(), commit() and rollback() let it go back to the pool).  Spans nest, and
+     * inside a transaction the statements are simply part of the transaction.
+     */
+    public synchronized void beginManualCommit() throws SQLException {
+        Connection c = getConnection();
+        ++manualCommitCount;
+        boolean begun = false;
+        try {
+            if (manualCommitCount == 1 && _supportsTransactions && c.getAutoCommit()) {
+                c.setAutoCommit(false);
+                manualCommitDisabledAutoCommit = true;
+            }
+            begun = true;
+        }
+        finally {
+            if (!begun) {
+                --manualCommitCount;
+                setIdle(true);
+            }
+        }
+    }
+
+    public synchronized void endManualCommit(boolean commit) throws SQLException {
+        try {
+            if (manualCommitCount == 1 && manualCommitDisabledAutoCommit) {
+                manualCommitDisabledAutoCommit = false;
+                try {
+                    if (commit) {
+                        connection.commit();
+                    }
+                    else {
+                        connection.rollback();
+                    }
+                }
+                finally {
+                    connection.setAutoCommit(true);
+                }
+            }
+        }
+        finally {
+            --manualCommitCount;
+            setIdle(true);
+        }
+    }
+
+    private static int getStreamFetchSize() {
+        return ApplicationProperties.getIntegerProperty(PROPERTY_STREAM_FETCH_SIZE, DEFAULT_STREAM_FETCH_SIZE);
+    }
+
     public synchronized void checkConnection() throws SQLException {
         if (connection == null) {
             setupConnection();
@@ -511,6 +661,10 @@ public class RobustConnection {
         return isOracle() || isPostgres();
     }
 
+    public boolean supportsRecursiveQueries() {
+        return _supportsRecursiveQueries;
+    }
+
     public boolean beginTransaction() {
         if (!sessionOk()) {
             return false;
@@ -644,6 +798,9 @@ public class RobustConnection {
     }
 
     public boolean getIdle() {
+        if (streamingCount > 0 || manualCommitCount > 0) {
+            return false;
+        }
         if (_supportsTransactions && transactionMonitor != null &&
         								transactionMonitor.getNesting() > 0) {
             return false;
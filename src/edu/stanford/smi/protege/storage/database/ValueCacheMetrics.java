@@ -0,0 +1,121 @@
+package edu.stanford.smi.protege.storage.database;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.stanford.smi.protege.util.TinyLfuCache;
+
+/**
+ * Counters kept by a ValueCachingNarrowFrameStore for its per frame caches.  The counters
+ * are only ever incremented (until reset()) so a caller that wants rates takes two readings.
+ * <p></p>
+ * <b>Thread Safety:</b> all methods are thread safe.
+ */
+public class ValueCacheMetrics {
+    private final TinyLfuCache<?, ?> cache;
+    private final AtomicLong buildCount = new AtomicLong();
+    private final AtomicLong buildNanos = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private long evictionBase;
+
+    ValueCacheMetrics(TinyLfuCache<?, ?> cache) {
+        this.cache = cache;
+    }
+
+    void recordBuilds(int count, long nanos) {
+        buildCount.addAndGet(count);
+        buildNanos.addAndGet(nanos);
+    }
+
+    void recordHit() {
+        hitCount.incrementAndGet();
+    }
+
+    void recordMiss() {
+        missCount.incrementAndGet();
+    }
+
+    void recordInvalidation() {
+        invalidationCount.incrementAndGet();
+    }
+
+    /**
+     * @return the number of frame caches that were filled from the database.
+     */
+    public long getBuildCount() {
+        return buildCount.get();
+    }
+
+    /**
+     * @return the total time in nanoseconds spent reading the values of frames to fill
+     * their caches.
+     */
+    public long getBuildNanos() {
+        return buildNanos.get();
+    }
+
+    /**
+     * @return the number of value reads served from a frame cache.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of value reads that went to the database.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long requests = hits + missCount.get();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * @return the number of frame caches that were found to be invalid (e.g. because they
+     * were created in a transaction that has ended) and dropped.
+     */
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    /**
+     * @return the number of frame caches dropped to stay within the
+     * database.value.cache.frames budget.
+     */
+    public synchronized long getEvictionCount() {
+        return cache.getEvictionCount() - evictionBase;
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    public int getMaximumSize() {
+        return cache.getMaximumSize();
+    }
+
+    public synchronized void reset() {
+        buildCount.set(0);
+        buildNanos.set(0);
+        hitCount.set(0);
+        missCount.set(0);
+        invalidationCount.set(0);
+        evictionBase = cache.getEvictionCount();
+    }
+
+    @Override
+    public String toString() {
+        long builds = buildCount.get();
+        return "frames cached=" + getSize() + "/" + getMaximumSize()
+            + ", builds=" + builds
+            + ", average build=" + (builds == 0 ? 0 : buildNanos.get() / builds / 1000) + "us"
+            + ", hit rate=" + Math.round(getHitRate() * 100) + "%"
+            + ", evictions=" + getEvictionCount()
+            + ", invalidations=" + invalidationCount.get();
+    }
+}
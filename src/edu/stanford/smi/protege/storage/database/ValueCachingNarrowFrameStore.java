@@ -1,23 +1,25 @@
 package edu.stanford.smi.protege.storage.database;
 
-import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.WeakHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import edu.stanford.smi.protege.model.Facet;
 import edu.stanford.smi.protege.model.Frame;
 import edu.stanford.smi.protege.model.FrameID;
+import edu.stanford.smi.protege.model.Model;
 import edu.stanford.smi.protege.model.Reference;
 import edu.stanford.smi.protege.model.Slot;
 import edu.stanford.smi.protege.model.SystemFrames;
+import edu.stanford.smi.protege.model.framestore.BulkLoadable;
 import edu.stanford.smi.protege.model.framestore.NarrowFrameStore;
 import edu.stanford.smi.protege.model.framestore.Sft;
 import edu.stanford.smi.protege.model.query.Query;
@@ -27,7 +29,9 @@ import edu.stanford.smi.protege.server.framestore.ServerFrameStore;
 import edu.stanford.smi.protege.server.update.DeferredOperationCache;
 import edu.stanford.smi.protege.server.util.FifoReader;
 import edu.stanford.smi.protege.server.util.FifoWriter;
+import edu.stanford.smi.protege.util.ApplicationProperties;
 import edu.stanford.smi.protege.util.Log;
+import edu.stanford.smi.protege.util.TinyLfuCache;
 import edu.stanford.smi.protege.util.transaction.TransactionMonitor;
 import edu.stanford.smi.protege.util.transaction.cache.Cache;
 import edu.stanford.smi.protege.util.transaction.cache.CacheFactory;
@@ -44,27 +48,41 @@ import edu.stanford.smi.protege.util.transaction.cache.serialize.SerializedCache
  * Description of this class
  */
 
-public class ValueCachingNarrowFrameStore implements NarrowFrameStore {
+public class ValueCachingNarrowFrameStore implements NarrowFrameStore, BulkLoadable {
     public static final transient Logger CACHE_LOG = Logger.getLogger(CompleteableCache.class.getPackage().getName() + ".ValueCachingNFS");
     public static final Logger LOGGER = Log.getLogger(ValueCachingNarrowFrameStore.class);
+    /*
+     * The number of frames whose values are kept.  Frames beyond this budget are evicted
+     * as new ones are cached, favouring the frames that are read most often.
+     */
+    public static final String CACHE_SIZE_PROPERTY = "database.value.cache.frames";
+    public static final int DEFAULT_CACHE_SIZE = 50000;
+    public static final String CLOSURE_CACHE_SIZE_PROPERTY = "database.closure.cache.frames";
+    public static final int DEFAULT_CLOSURE_CACHE_SIZE = 1000;
     private DatabaseFrameDb framedb;
-    private final WeakHashMap<String, SoftReference<DeferredOperationCache>> cacheMap
-                      = new WeakHashMap<String, SoftReference<DeferredOperationCache>>();
+    private final TinyLfuCache<String, DeferredOperationCache> cacheMap
+                      = new TinyLfuCache<String, DeferredOperationCache>(
+                              Math.max(1, ApplicationProperties.getIntegerProperty(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE)));
+    private final ValueCacheMetrics metrics = new ValueCacheMetrics(cacheMap);
     private Sft directInstancesSft;
     private FifoWriter<SerializedCacheUpdate<RemoteSession, Sft,  List>> transactions
          = new FifoWriter<SerializedCacheUpdate<RemoteSession, Sft,  List>>();
 
     private Set<RemoteSession> unCachingSessions;
+    /*
+     * Closures computed by the frame db.  A closure is dropped when any value of its slot,
+     * facet and isTemplate changes (a hierarchy edit for the subclass and superclass
+     * closures) and all of them are dropped at the end of a transaction.  Each slot keeps at
+     * most database.closure.cache.frames closures.
+     */
+    private final Map<Sft, TinyLfuCache<Frame, Set>> closureCache
+                      = new HashMap<Sft, TinyLfuCache<Frame, Set>>();
+    private final int closureCacheSize
+                      = Math.max(1, ApplicationProperties.getIntegerProperty(CLOSURE_CACHE_SIZE_PROPERTY, DEFAULT_CLOSURE_CACHE_SIZE));
     /*
      * see svn revision 14782 for code to keep server-side frames in memory...
      */
 
-    // stats
-    private long totalBuildTime = 0;
-    private long cacheBuilds = 0;
-    private long cacheLost = 0;
-    private long cacheHits = 0;
-
     public ValueCachingNarrowFrameStore(DatabaseFrameDb delegate) {
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.fine("Constructing ValueCachingNarrowFrameStore with delegate " + delegate);
@@ -86,6 +104,18 @@ public class ValueCachingNarrowFrameStore implements NarrowFrameStore {
         return ret;
     }
 
+    public void beginBulkLoad() {
+        if (framedb instanceof BulkLoadable) {
+            ((BulkLoadable) framedb).beginBulkLoad();
+        }
+    }
+
+    public void endBulkLoad() {
+        if (framedb instanceof BulkLoadable) {
+            ((BulkLoadable) framedb).endBulkLoad();
+        }
+    }
+
     private boolean cachingDisabledForSession() {
         return unCachingSessions != null && unCachingSessions.contains(ServerFrameStore.getCurrentSession());
     }
@@ -103,72 +133,103 @@ public class ValueCachingNarrowFrameStore implements NarrowFrameStore {
         return framedb;
     }
 
+    public ValueCacheMetrics getMetrics() {
+        return metrics;
+    }
+
     @SuppressWarnings("unchecked")
     private DeferredOperationCache getCache(Frame  frame, boolean create) {
         RemoteSession session = ServerFrameStore.getCurrentSession();
-        SoftReference<DeferredOperationCache> reference = cacheMap.get(frame.getFrameID().getName());
-        DeferredOperationCache cache = null;
-        if (reference != null) {
-            cache = reference.get();
-        }
+        DeferredOperationCache cache = cacheMap.get(frame.getFrameID().getName());
         if (cache != null && cache.isInvalid()) {  // Cache's created in a transaction are short-lived.
             cache = null;
             cacheMap.remove(frame.getFrameID().getName());
-        }
-        if (reference != null && cache == null) {
-            if (CACHE_LOG.isLoggable(Level.FINER)) {
-                CACHE_LOG.finer("Cache for frame " + frame.getFrameID().getName() + " garbage collected");
-            }
-            cacheLost++;
+            metrics.recordInvalidation();
         }
         if (cache == null && create) {
-
-            String frameName = frame.getFrameID().getName();
-            Cache delegateCache = CacheFactory.createEmptyCache(getTransactionStatusMonitor().getTransationIsolationLevel());
-            cache = new DeferredOperationCache(delegateCache, new FifoReader<SerializedCacheUpdate<RemoteSession,Sft,List>>(transactions));
-            if (CACHE_LOG.isLoggable(Level.FINER)) {
-                CACHE_LOG.finer("Created cache " + cache.getCacheId() + " for frame " + frame.getFrameID().getName());
-            }
-            cacheMap.put(frameName, new SoftReference(cache));
-
+            cache = createCache(frame);
             if (!cachingDisabledForSession()) {
-                // sorry - this is a bit ugly...
-                // better would be to have a setter for the system frames.
-                if (directInstancesSft == null && frame.getKnowledgeBase() != null) {
-                    SystemFrames frames = frame.getKnowledgeBase().getSystemFrames();
-                    Slot directInstancesSlot = frames.getDirectInstancesSlot();
-                    directInstancesSft = new Sft(directInstancesSlot, null, false);
-                }
-                if (!getTransactionStatusMonitor().inTransaction() && directInstancesSft != null) {
+                if (!getTransactionStatusMonitor().inTransaction() && getDirectInstancesSft(frame) != null) {
                     long startTime = System.nanoTime();
-                    Map<Sft,List> values = framedb.getFrameValues(frame);
-                    cache.startCompleteCache();
-                    cache.updateCache(session, directInstancesSft);
-                    for (Entry<Sft, List> entry : values.entrySet()) {
-                        cache.updateCache(session, entry.getKey(), entry.getValue());
-                    }
-                    cache.finishCompleteCache();
-                    totalBuildTime += (System.nanoTime() - startTime);
+                    fillCache(cache, session, framedb.getFrameValues(frame));
+                    metrics.recordBuilds(1, System.nanoTime() - startTime);
                 }
+                cacheBuilt(frame, cache);
+            }
+        }
+        return cache;
+    }
 
-                cacheBuilds++;
-                logStats(Level.FINE);
-                if (CACHE_LOG.isLoggable(Level.FINER)) {
-                    CACHE_LOG.finer("Filled cache " + cache.getCacheId() + " for frame " + frame.getFrameID().getName());
-                }
+    /**
+     * Fills the caches of the frames that are not cached yet with the values fetched by
+     * one call to DatabaseFrameDb.getFrameValues(Collection).  Callers that know which
+     * frames are about to be read (e.g. the children of a class that is being expanded)
+     * use this instead of letting getCache() fetch the frames one by one.
+     */
+    @SuppressWarnings("unchecked")
+    public void prefetch(Collection<Frame> frames) {
+        if (cachingDisabledForSession() || getTransactionStatusMonitor().inTransaction()) {
+            return;
+        }
+        List<Frame> missingFrames = new ArrayList<Frame>();
+        for (Frame frame : frames) {
+            if (getCache(frame, false) == null && getDirectInstancesSft(frame) != null) {
+                missingFrames.add(frame);
             }
         }
+        if (missingFrames.isEmpty()) {
+            return;
+        }
+        RemoteSession session = ServerFrameStore.getCurrentSession();
+        long startTime = System.nanoTime();
+        Map<Frame, Map<Sft,List>> frameValues = framedb.getFrameValues(missingFrames);
+        for (Frame frame : missingFrames) {
+            DeferredOperationCache cache = createCache(frame);
+            fillCache(cache, session, frameValues.get(frame));
+            cacheBuilt(frame, cache);
+        }
+        metrics.recordBuilds(missingFrames.size(), System.nanoTime() - startTime);
+        if (CACHE_LOG.isLoggable(Level.FINE)) {
+            CACHE_LOG.fine("Prefetched " + missingFrames.size() + " frames in "
+                           + (System.nanoTime() - startTime) / 1000000 + "ms.");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private DeferredOperationCache createCache(Frame frame) {
+        String frameName = frame.getFrameID().getName();
+        Cache delegateCache = CacheFactory.createEmptyCache(getTransactionStatusMonitor().getTransationIsolationLevel());
+        DeferredOperationCache cache = new DeferredOperationCache(delegateCache, new FifoReader<SerializedCacheUpdate<RemoteSession,Sft,List>>(transactions));
+        if (CACHE_LOG.isLoggable(Level.FINER)) {
+            CACHE_LOG.finer("Created cache " + cache.getCacheId() + " for frame " + frameName);
+        }
+        cacheMap.put(frameName, cache);
         return cache;
     }
 
-    private void logStats(Level level) {
-        if (CACHE_LOG.isLoggable(level) && (cacheBuilds % 300 == 0)) {
-            CACHE_LOG.log(level, "------------------- Database ValueCaching Stats");
-            CACHE_LOG.log(level, "Caches built = " + cacheBuilds + " but only " + cacheMap.size() + " cache references still present.");
-            CACHE_LOG.log(level, "Cache references found but were invalid at time of use = " + cacheLost);
-            CACHE_LOG.log(level, "Ave time per build = " + (((float) totalBuildTime) / (1000 * 1000 * cacheBuilds)) + "ms.");
-            CACHE_LOG.log(level, "Ave hits per build = " + (cacheHits / cacheBuilds));
-            CACHE_LOG.log(level, "------------------- Database ValueCaching Stats");
+    private Sft getDirectInstancesSft(Frame frame) {
+        // sorry - this is a bit ugly...
+        // better would be to have a setter for the system frames.
+        if (directInstancesSft == null && frame.getKnowledgeBase() != null) {
+            SystemFrames frames = frame.getKnowledgeBase().getSystemFrames();
+            Slot directInstancesSlot = frames.getDirectInstancesSlot();
+            directInstancesSft = new Sft(directInstancesSlot, null, false);
+        }
+        return directInstancesSft;
+    }
+
+    private void fillCache(DeferredOperationCache cache, RemoteSession session, Map<Sft,List> values) {
+        cache.startCompleteCache();
+        cache.updateCache(session, directInstancesSft);
+        for (Entry<Sft, List> entry : values.entrySet()) {
+            cache.updateCache(session, entry.getKey(), entry.getValue());
+        }
+        cache.finishCompleteCache();
+    }
+
+    private void cacheBuilt(Frame frame, DeferredOperationCache cache) {
+        if (CACHE_LOG.isLoggable(Level.FINER)) {
+            CACHE_LOG.finer("Filled cache " + cache.getCacheId() + " for frame " + frame.getFrameID().getName());
         }
     }
 
@@ -207,6 +268,7 @@ public class ValueCachingNarrowFrameStore implements NarrowFrameStore {
     public void addValues(Frame frame, Slot slot, Facet facet,
                           boolean isTemplate, Collection values) {
         getDelegate().addValues(frame, slot, facet, isTemplate, values);
+        invalidateClosures(slot, facet, isTemplate);
         DeferredOperationCache cache = getCache(frame, getTransactionStatusMonitor().inTransaction());
         if (cache != null) {
             RemoteSession session = ServerFrameStore.getCurrentSession();
@@ -237,6 +299,7 @@ public class ValueCachingNarrowFrameStore implements NarrowFrameStore {
             return getDelegate().commitTransaction();
         }
         finally {
+            invalidateClosures();
             transactions.write(new CacheCommitTransaction<RemoteSession, Sft, List>(ServerFrameStore.getCurrentSession()));
         }
     }
@@ -246,6 +309,7 @@ public class ValueCachingNarrowFrameStore implements NarrowFrameStore {
             return getDelegate().rollbackTransaction();
         }
         finally {
+            invalidateClosures();
             transactions.write(new CacheRollbackTransaction<RemoteSession, Sft, List>(ServerFrameStore.getCurrentSession()));
         }
     }
@@ -254,6 +318,7 @@ public class ValueCachingNarrowFrameStore implements NarrowFrameStore {
         framedb.close();
         framedb = null;
         cacheMap.clear();
+        invalidateClosures();
         directInstancesSft = null;
         transactions = null;
     }
@@ -262,6 +327,7 @@ public class ValueCachingNarrowFrameStore implements NarrowFrameStore {
 
     public void deleteFrame(Frame frame) {
         removeFrameReferences(frame);
+        invalidateClosures();
         getDelegate().deleteFrame(frame);
     }
 
@@ -290,7 +356,41 @@ public class ValueCachingNarrowFrameStore implements NarrowFrameStore {
 
     public Set getClosure(Frame frame, Slot slot, Facet facet,
                           boolean isTemplate) {
-        return getDelegate().getClosure(frame, slot, facet, isTemplate);
+        boolean useCache = !cachingDisabledForSession() && !getTransactionStatusMonitor().inTransaction();
+        Sft sft = new Sft(slot, facet, isTemplate);
+        if (useCache) {
+            synchronized (closureCache) {
+                TinyLfuCache<Frame, Set> frameToClosure = closureCache.get(sft);
+                Set closure = frameToClosure == null ? null : frameToClosure.get(frame);
+                if (closure != null) {
+                    return closure;
+                }
+            }
+        }
+        Set closure = Collections.unmodifiableSet(getDelegate().getClosure(frame, slot, facet, isTemplate));
+        if (useCache) {
+            synchronized (closureCache) {
+                TinyLfuCache<Frame, Set> frameToClosure = closureCache.get(sft);
+                if (frameToClosure == null) {
+                    frameToClosure = new TinyLfuCache<Frame, Set>(closureCacheSize);
+                    closureCache.put(sft, frameToClosure);
+                }
+                frameToClosure.put(frame, closure);
+            }
+        }
+        return closure;
+    }
+
+    private void invalidateClosures(Slot slot, Facet facet, boolean isTemplate) {
+        synchronized (closureCache) {
+            closureCache.remove(new Sft(slot, facet, isTemplate));
+        }
+    }
+
+    private void invalidateClosures() {
+        synchronized (closureCache) {
+            closureCache.clear();
+        }
     }
 
     public int getClsCount() {
@@ -359,14 +459,38 @@ public class ValueCachingNarrowFrameStore implements NarrowFrameStore {
         RemoteSession session = ServerFrameStore.getCurrentSession();
         Sft sft = new Sft(slot, facet, isTemplate);
         CacheResult<List> result = cache.readCache(session, sft);
+        List values;
         if (result.isValid()) {
-            cacheHits++;
-            return new ArrayList(getValues(result));
+            metrics.recordHit();
+            values = new ArrayList(getValues(result));
         }
         else {
-            List values = getDelegate().getValues(frame, slot, facet, isTemplate);
+            metrics.recordMiss();
+            values = getDelegate().getValues(frame, slot, facet, isTemplate);
             cache.updateCache(session, sft, values);
-            return values;
+            if (facet == null && !isTemplate && slot.getFrameID().equals(Model.SlotID.DIRECT_SUBCLASSES)) {
+                prefetchFrames(values);
+            }
+        }
+        return values;
+    }
+
+    /*
+     * Whoever asks for the subclasses of a class (e.g. to expand it in a tree) usually
+     * goes on to read each of them.  This is only worth a query when the subclasses were
+     * not cached and at least two of them are missing.
+     */
+    private void prefetchFrames(Collection values) {
+        if (values.size() > 1) {
+            List<Frame> frames = new ArrayList<Frame>(values.size());
+            for (Object o : values) {
+                if (o instanceof Frame && getCache((Frame) o, false) == null) {
+                    frames.add((Frame) o);
+                }
+            }
+            if (frames.size() > 1) {
+                prefetch(frames);
+            }
         }
     }
 
@@ -377,10 +501,11 @@ public class ValueCachingNarrowFrameStore implements NarrowFrameStore {
         Sft sft = new Sft(slot, facet, isTemplate);
         CacheResult<List> result = cache.readCache(session, sft);
         if (result.isValid()) {
-            cacheHits++;
+            metrics.recordHit();
             return getValues(result).size();
         }
         else {
+            metrics.recordMiss();
             return getDelegate().getValuesCount(frame, slot, facet, isTemplate);
         }
     }
@@ -398,6 +523,7 @@ public class ValueCachingNarrowFrameStore implements NarrowFrameStore {
 
     public void reinitialize() {
         cacheMap.clear();
+        invalidateClosures();
     }
 
     public void removeValue(Frame frame, Slot slot, Facet facet,
@@ -417,11 +543,13 @@ public class ValueCachingNarrowFrameStore implements NarrowFrameStore {
             }
         }
         getDelegate().removeValue(frame, slot, facet, isTemplate, value);
+        invalidateClosures(slot, facet, isTemplate);
 
     }
 
     public void replaceFrame(Frame frame) {
         getDelegate().replaceFrame(frame);
+        invalidateClosures();
     }
 
     public void replaceFrame(Frame original, Frame replacement) {
@@ -432,6 +560,7 @@ public class ValueCachingNarrowFrameStore implements NarrowFrameStore {
             replacementCache.invalidate(session);
         }
         getDelegate().replaceFrame(original, replacement);
+        invalidateClosures();
     }
 
     public void setName(String name) {
@@ -447,6 +576,7 @@ public class ValueCachingNarrowFrameStore implements NarrowFrameStore {
             cache.modifyCache(session, sft, new ArrayList(values));
         }
         getDelegate().setValues(frame, slot, facet, isTemplate, values);
+        invalidateClosures(slot, facet, isTemplate);
     }
 }
 
@@ -0,0 +1,174 @@
+package edu.stanford.smi.protege.storage.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.smi.protege.model.Facet;
+import edu.stanford.smi.protege.model.Frame;
+import edu.stanford.smi.protege.model.Slot;
+import edu.stanford.smi.protege.util.Log;
+
+/**
+ * The writes that the DefaultDatabaseFrameDb has accepted but not yet sent to the database
+ * while write behind is on.  The writes to one (frame, slot, facet, isTemplate) location are
+ * coalesced into a single entry which either replaces the values in the database or is
+ * appended to them.  Callers synchronize on the buffer.
+ */
+class WriteBehindBuffer {
+    private final Map<Location, Entry> entries = new LinkedHashMap<Location, Entry>();
+    private int valueCount;
+    private long firstWriteTime;
+
+    static class Entry {
+        private final Location location;
+        private final List values = new ArrayList();
+        private boolean replace;
+
+        Entry(Location location) {
+            this.location = location;
+        }
+
+        public Frame getFrame() {
+            return location.frame;
+        }
+
+        public Slot getSlot() {
+            return location.slot;
+        }
+
+        public Facet getFacet() {
+            return location.facet;
+        }
+
+        public boolean isTemplate() {
+            return location.isTemplate;
+        }
+
+        /**
+         * @return true if the values replace the ones in the database and false if they
+         * are appended to them.
+         */
+        public boolean isReplace() {
+            return replace;
+        }
+
+        public List getValues() {
+            return values;
+        }
+    }
+
+    private static class Location {
+        private final Frame frame;
+        private final Slot slot;
+        private final Facet facet;
+        private final boolean isTemplate;
+
+        Location(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+            this.frame = frame;
+            this.slot = slot;
+            this.facet = facet;
+            this.isTemplate = isTemplate;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Location)) {
+                return false;
+            }
+            Location other = (Location) o;
+            return frame.equals(other.frame) && slot.equals(other.slot)
+                    && (facet == null ? other.facet == null : facet.equals(other.facet))
+                    && isTemplate == other.isTemplate;
+        }
+
+        public int hashCode() {
+            int hash = frame.hashCode() * 31 + slot.hashCode();
+            if (facet != null) {
+                hash = hash * 31 + facet.hashCode();
+            }
+            return isTemplate ? hash + 1 : hash;
+        }
+    }
+
+    public Entry get(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        return entries.get(new Location(frame, slot, facet, isTemplate));
+    }
+
+    private Entry getOrCreate(Frame frame, Slot slot, Facet facet, boolean isTemplate) {
+        Location location = new Location(frame, slot, facet, isTemplate);
+        Entry entry = entries.get(location);
+        if (entry == null) {
+            if (entries.isEmpty()) {
+                firstWriteTime = System.currentTimeMillis();
+            }
+            entry = new Entry(location);
+            entries.put(location, entry);
+        }
+        return entry;
+    }
+
+    public void setValues(Frame frame, Slot slot, Facet facet, boolean isTemplate, Collection values) {
+        Entry entry = getOrCreate(frame, slot, facet, isTemplate);
+        valueCount -= entry.values.size();
+        entry.values.clear();
+        entry.replace = true;
+        addNonNullValues(entry, values);
+    }
+
+    public void addValues(Frame frame, Slot slot, Facet facet, boolean isTemplate, Collection values) {
+        addNonNullValues(getOrCreate(frame, slot, facet, isTemplate), values);
+    }
+
+    private void addNonNullValues(Entry entry, Collection values) {
+        Iterator i = values.iterator();
+        while (i.hasNext()) {
+            Object value = i.next();
+            if (AbstractDatabaseFrameDb.isNullValue(value)) {
+                Log.getLogger().warning("Skipping null value");
+            } else {
+                entry.values.add(value);
+                ++valueCount;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return the number of statements that writing the buffer takes, roughly.
+     */
+    public int getSize() {
+        return entries.size() + valueCount;
+    }
+
+    /**
+     * @return the time in milliseconds since the oldest pending write was buffered.
+     */
+    public long getAge() {
+        return entries.isEmpty() ? 0 : System.currentTimeMillis() - firstWriteTime;
+    }
+
+    /**
+     * @return the entries in the order in which their locations were first written.
+     */
+    public List<Entry> getEntries() {
+        return new ArrayList<Entry>(entries.values());
+    }
+
+    /**
+     * Empties the buffer.
+     *
+     * @return the entries in the order in which their locations were first written.
+     */
+    public List<Entry> removeEntries() {
+        List<Entry> result = new ArrayList<Entry>(entries.values());
+        entries.clear();
+        valueCount = 0;
+        return result;
+    }
+}
@@ -4,25 +4,47 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.stanford.smi.protege.util.Log;
 
 
 
 public class ConnectionInfo {
+    private static Logger log = Log.getLogger(ConnectionInfo.class);
     private static int nextId = 0;
     private int id = nextId++;
 
     private Connection connection;
-    private Map<String, PreparedStatement> preparedStatementMap = new HashMap<String, PreparedStatement>();
+    private final int maxStatements;
+    private final ConnectionPoolMetrics metrics;
+    /*
+     * In least recently used order.  When the cache is full the least recently used statement
+     * is closed.
+     */
+    private Map<String, PreparedStatement> preparedStatementMap = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
     private Statement genericStatement;
     
-    private long lastAccessTime;
+    private volatile long lastAccessTime;
+    private volatile long reservationTime;
     private boolean InformedUserOfLongConnectionTime = false;
     private Exception connectionCallStack;
     
     public ConnectionInfo(Connection connection) {
+        this(connection, Integer.MAX_VALUE, new ConnectionPoolMetrics());
+    }
+
+    public ConnectionInfo(Connection connection, int maxStatements, ConnectionPoolMetrics metrics) {
         this.connection = connection;
+        this.maxStatements = maxStatements;
+        this.metrics = metrics;
     }
     
     public int getId() {
@@ -30,19 +52,21 @@ public class ConnectionInfo {
     }
     
     
-    /**
-     * Synchronized by the connection pool.
-     */
     public void touch() {
         lastAccessTime = System.currentTimeMillis();
     }
     
-    /**
-     * Synchronized by the connection pool.
-     */
     public long getLastAccessTime() {
         return lastAccessTime;
     }
+
+    public void reserve() {
+        reservationTime = System.currentTimeMillis();
+    }
+
+    public long getReservationTime() {
+        return reservationTime;
+    }
     
     public boolean getInformedUserOfLongConnectionTime() {
         return InformedUserOfLongConnectionTime;
@@ -64,14 +88,64 @@ public class ConnectionInfo {
         return connection;
     }
     
-    public PreparedStatement getPreparedStatement(String text) throws SQLException {
+    public synchronized PreparedStatement getPreparedStatement(String text) throws SQLException {
         PreparedStatement stmt = (PreparedStatement) preparedStatementMap.get(text);
         if (stmt == null) {
-            stmt = connection.prepareStatement(text);
-            preparedStatementMap.put(text, stmt);
+            stmt = prepareStatement(text);
+        }
+        else {
+            metrics.recordStatementHit();
         }
         return stmt;
     }
+
+    private PreparedStatement prepareStatement(String text) throws SQLException {
+        PreparedStatement stmt = connection.prepareStatement(text);
+        metrics.recordPrepare();
+        preparedStatementMap.put(text, stmt);
+        if (preparedStatementMap.size() > maxStatements) {
+            Iterator<PreparedStatement> i = preparedStatementMap.values().iterator();
+            PreparedStatement eldest = i.next();
+            i.remove();
+            metrics.recordStatementEviction();
+            try {
+                eldest.close();
+            }
+            catch (SQLException e) {
+                log.log(Level.FINE, "Exception caught closing an evicted statement", e);
+            }
+        }
+        return stmt;
+    }
+
+    /**
+     * Prepares the statements that a connection which this one replaces used, so that a
+     * connection refresh does not show up as a burst of statement preparations.  Statements
+     * that can no longer be prepared (a table might have been dropped) are skipped.
+     * 
+     * @param texts the statement texts in least recently used order
+     */
+    public synchronized void prepareStatements(Collection<String> texts) {
+        for (String text : texts) {
+            if (!preparedStatementMap.containsKey(text)) {
+                try {
+                    prepareStatement(text);
+                }
+                catch (SQLException e) {
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine("Could not prepare " + text + " on a new connection: " + e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the texts of the cached statements in least recently used order.
+     */
+    public synchronized List<String> getStatementTexts() {
+        return new ArrayList<String>(preparedStatementMap.keySet());
+    }
     
     public synchronized Statement getStatement() throws SQLException {
         if (genericStatement == null) {
@@ -7,15 +7,18 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
@@ -28,10 +31,21 @@ import edu.stanford.smi.protege.util.SystemUtilities;
 /**
  * A Connection Pool
  * <p></p>
- *
+ * At most Database.max.active.connections connections are handed out at a time.  Further
+ * callers of getConnection() wait in arrival order for up to Database.connection.wait.timeout
+ * seconds and no more than Database.max.waiting.threads callers wait at a time; beyond these
+ * limits getConnection() fails with an SQLException rather than queueing forever.  Up to
+ * Database.max.connections idle connections are kept open, and the reaper keeps at least
+ * Database.min.connections connections open.
  * <p></p>
- * 
- * <b>Thread Safety:</b> get/ungetConnection are thread safe.  Once a jdbc Connection has been obtained, it should only be handled 
+ * A caller can pass an affinity key (the RobustConnection passes its session) to get back
+ * the connection it used last when that connection is free, which keeps its statement cache
+ * and session state warm.  A connection that is handed out stays with the caller until it is
+ * returned, which is how a RobustConnection holds on to its connection for the length of a
+ * transaction.  Callers without a key, or whose connection is in use, get the most recently
+ * returned idle connection.
+ * <p></p>
+ * <b>Thread Safety:</b> get/ungetConnection are thread safe.  Once a jdbc Connection has been obtained, it should only be handled
  * in a single thread.
  */
 
@@ -39,35 +53,64 @@ import edu.stanford.smi.protege.util.SystemUtilities;
 public class ConnectionPool {
     private static Logger log = Log.getLogger(ConnectionPool.class);
     private static Map<DatabaseParam, ConnectionPool> connectionPoolMap = new HashMap<DatabaseParam, ConnectionPool>();
-    
+
     public static final String PROPERTY_REFRESH_CONNECTIONS_TIME="Database.refresh.connections.interval";
     public static final String PROPERTY_MAX_DB_CONNECTIONS = "Database.max.connections";
+    public static final String PROPERTY_MIN_DB_CONNECTIONS = "Database.min.connections";
+    public static final String PROPERTY_MAX_ACTIVE_DB_CONNECTIONS = "Database.max.active.connections";
+    public static final String PROPERTY_CONNECTION_WAIT_TIMEOUT = "Database.connection.wait.timeout";
+    public static final String PROPERTY_MAX_WAITING_THREADS = "Database.max.waiting.threads";
     public static final String PROPERTY_LONG_RUNNING_CONNECTIONS="Database.long.running.connection.time";
-    
+    public static final String PROPERTY_STATEMENT_CACHE_SIZE = "Database.statement.cache.size";
+
     private static long connectionRefreshInterval;
     static {
         int minutes = ApplicationProperties.getIntegerProperty(ConnectionPool.PROPERTY_REFRESH_CONNECTIONS_TIME, 5);
         connectionRefreshInterval = minutes * 60 * 1000;
     }
-    
+
     private static int maxOpenConnections = ApplicationProperties.getIntegerProperty(ConnectionPool.PROPERTY_MAX_DB_CONNECTIONS, 3);
-    
+
     private static long connectionLongTime;
     static {
         int longTime = ApplicationProperties.getIntegerProperty(PROPERTY_LONG_RUNNING_CONNECTIONS, -1);
         connectionLongTime = longTime * 60 * 1000;
     }
-    
-    
+
+    private static int maxStatementsPerConnection = ApplicationProperties.getIntegerProperty(PROPERTY_STATEMENT_CACHE_SIZE, 100);
+
+
     private String driver;
     private String url;
     private String username;
     private String password;
     private int referenceCount = 0;
-    
-    private Set<Connection> idleConnections = new HashSet<Connection>();
-    private Map<Connection, ConnectionInfo> connectionInfoMap = new HashMap<Connection, ConnectionInfo>();
-    
+
+    private final int minConnections;
+    private final int maxIdleConnections;
+    private final int maxActiveConnections;
+    private final long waitTimeout;
+    private final int maxWaitingThreads;
+    /*
+     * One permit per connection that may be handed out.  The semaphore is fair so waiting
+     * callers are served in arrival order.
+     */
+    private final Semaphore permits;
+
+    /*
+     * Most recently returned first.
+     */
+    private LinkedList<Connection> idleConnections = new LinkedList<Connection>();
+    private Set<Connection> activeConnections = new HashSet<Connection>();
+    private Map<Object, Connection> affinityMap = new WeakHashMap<Object, Connection>();
+    private Map<Connection, ConnectionInfo> connectionInfoMap = new ConcurrentHashMap<Connection, ConnectionInfo>();
+    private ConnectionPoolMetrics metrics = new ConnectionPoolMetrics();
+    /*
+     * The statements that the connections closed by the reaper had cached, most recently used
+     * last.  They are prepared again on the next new connection.
+     */
+    private List<String> retiredStatementTexts = Collections.emptyList();
+
     private ScheduledExecutorService executor = Executors.newScheduledThreadPool(1, new ThreadFactory() {
         public Thread newThread(Runnable r) {
             Thread th = new Thread(r, "Protege Connection Reaper");
@@ -75,14 +118,19 @@ public class ConnectionPool {
             return th;
         }
     });
-    
+
     public static ConnectionPool getConnectionPool(String driver, String url, String username, String password) {
         ConnectionPool pool;
         synchronized (connectionPoolMap) {
             DatabaseParam dp = new DatabaseParam(driver, url, username, password);
             pool = connectionPoolMap.get(dp);
             if (pool == null) {
-                pool = new ConnectionPool(driver, url, username, password);
+                pool = new ConnectionPool(driver, url, username, password,
+                                          ApplicationProperties.getIntegerProperty(PROPERTY_MIN_DB_CONNECTIONS, 0),
+                                          maxOpenConnections,
+                                          ApplicationProperties.getIntegerProperty(PROPERTY_MAX_ACTIVE_DB_CONNECTIONS, 64),
+                                          ApplicationProperties.getIntegerProperty(PROPERTY_CONNECTION_WAIT_TIMEOUT, 60) * 1000L,
+                                          ApplicationProperties.getIntegerProperty(PROPERTY_MAX_WAITING_THREADS, 256));
                 connectionPoolMap.put(dp, pool);
             }
         }
@@ -90,106 +138,251 @@ public class ConnectionPool {
         return pool;
     }
 
+    /**
+     * Creates a pool that is not shared through getConnectionPool().  The caller closes it
+     * with close().
+     *
+     * @param waitTimeout the longest time in milliseconds that getConnection() waits
+     */
     @SuppressWarnings("unchecked")
-    private ConnectionPool(String driver, String url, String username, String password) {
+    public ConnectionPool(String driver, String url, String username, String password,
+                          int minConnections, int maxIdleConnections, int maxActiveConnections,
+                          long waitTimeout, int maxWaitingThreads) {
         Class clas = SystemUtilities.forName(driver);
         if (clas == null) {
             throw new RuntimeException("class not found: " + driver);
         }
+        if (maxActiveConnections < 1 || minConnections > maxActiveConnections) {
+            throw new IllegalArgumentException("Bad connection pool size [" + minConnections + ", " + maxActiveConnections + "]");
+        }
         this.driver   = driver;
         this.url      = url;
         this.username = username;
         this.password = password;
+        this.minConnections = minConnections;
+        this.maxIdleConnections = Math.max(minConnections, maxIdleConnections);
+        this.maxActiveConnections = maxActiveConnections;
+        this.waitTimeout = waitTimeout;
+        this.maxWaitingThreads = maxWaitingThreads;
+        permits = new Semaphore(maxActiveConnections, true);
         executor.scheduleAtFixedRate(new Runnable() {
             public void run() {
                 cleanup();
+                ensureMinimumConnections();
                 setReaperThreadName();
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Connection pool for " + ConnectionPool.this.url + ": " + ConnectionPool.this);
+                }
             }
         }, 60, 60, TimeUnit.SECONDS);
     }
-    
+
     public int getId(Connection connection) {
-        ConnectionInfo ci;
-        synchronized (this) {
-            ci = connectionInfoMap.get(connection);
-        }
+        ConnectionInfo ci = connectionInfoMap.get(connection);
         return ci != null ? ci.getId() : -1;
     }
-    
+
+    public ConnectionPoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getMaxActiveConnections() {
+        return maxActiveConnections;
+    }
+
+    public synchronized int getActiveCount() {
+        return activeConnections.size();
+    }
+
+    public synchronized int getIdleCount() {
+        return idleConnections.size();
+    }
+
+    /**
+     * @return an estimate of the number of callers waiting for a connection.
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
     public Connection getConnection() throws SQLException {
+        return getConnection(null);
+    }
+
+    /**
+     * @param affinity the key (for example a session) whose last connection is preferred,
+     *                 or null for any free connection.
+     */
+    public Connection getConnection(Object affinity) throws SQLException {
+        long start = System.nanoTime();
+        acquirePermit();
         Connection connection = null;
-        synchronized (this) {
-            if (!idleConnections.isEmpty()) {
-                connection = idleConnections.iterator().next();
-                idleConnections.remove(connection);
+        try {
+            connection = takeIdleConnection(affinity);
+            if (connection == null) {
+                connection = openConnection();
             }
-        }
-        if (connection == null) {
-            connection = DriverManager.getConnection(url, username, password);
-            ConnectionInfo ci = new ConnectionInfo(connection);
+            ConnectionInfo ci = connectionInfoMap.get(connection);
             synchronized (this) {
-                connectionInfoMap.put(connection, ci);
+                activeConnections.add(connection);
+                if (affinity != null) {
+                    affinityMap.put(affinity, connection);
+                }
+                ci.touch();
+                ci.reserve();
+                if (connectionLongTime > 0) {
+                    ci.setInformedUserOfLongConnectionTime(false);
+                    ci.setConnectionCallStack(new Exception("getConnection stack trace"));
+                }
+            }
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Thread " + Thread.currentThread() + " caller allocated Connection with id = " + ci.getId());
             }
         }
-        synchronized (this) {
-            ConnectionInfo ci = connectionInfoMap.get(connection);
-            ci.touch();
-            if (connectionLongTime > 0) {
-                ci.setInformedUserOfLongConnectionTime(false);
-                ci.setConnectionCallStack(new Exception("getConnection stack trace"));
+        finally {
+            if (connection == null) {
+                permits.release();
             }
         }
-        if (log.isLoggable(Level.FINE)) {
-            ConnectionInfo ci = connectionInfoMap.get(connection);
-            log.fine("Thread " + Thread.currentThread() + " caller allocated Connection with id = " + ci.getId());
+        metrics.recordConnectionWait(System.nanoTime() - start);
+        return connection;
+    }
+
+    /*
+     * The untimed tryAcquire() would take a free permit ahead of the threads that are
+     * already waiting, so even the first attempt goes through the fair queue.
+     */
+    private void acquirePermit() throws SQLException {
+        boolean acquired;
+        try {
+            if (permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            if (permits.getQueueLength() >= maxWaitingThreads) {
+                metrics.recordConnectionRejected();
+                throw new SQLException("Too many threads (" + permits.getQueueLength() + ") waiting for a database connection");
+            }
+            acquired = permits.tryAcquire(waitTimeout, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a database connection");
+        }
+        if (!acquired) {
+            metrics.recordConnectionTimeout();
+            throw new SQLException("Timed out after " + waitTimeout + "ms waiting for one of "
+                                   + maxActiveConnections + " database connections");
+        }
+    }
+
+    private synchronized Connection takeIdleConnection(Object affinity) {
+        Connection connection = null;
+        if (affinity != null) {
+            connection = affinityMap.get(affinity);
+            if (connection != null && !idleConnections.remove(connection)) {
+                connection = null;
+            }
+        }
+        if (connection == null && !idleConnections.isEmpty()) {
+            connection = idleConnections.removeFirst();
+        }
+        return connection;
+    }
+
+    private Connection openConnection() throws SQLException {
+        List<String> statementTexts;
+        synchronized (this) {
+            statementTexts = retiredStatementTexts;
         }
+        Connection connection = DriverManager.getConnection(url, username, password);
+        ConnectionInfo ci = new ConnectionInfo(connection, maxStatementsPerConnection, metrics);
+        metrics.recordConnectionOpened();
+        ci.prepareStatements(statementTexts);
+        connectionInfoMap.put(connection, ci);
         return connection;
     }
-    
+
     public void ungetConnection(Connection connection) {
-        ConnectionInfo ci;
+        ConnectionInfo ci = connectionInfoMap.get(connection);
+        ConnectionInfo excess = null;
         synchronized (this) {
-            ci = connectionInfoMap.get(connection);
             if (ci == null) {
                 throw new IllegalStateException("Returning connection to the wrong pool");
             }
-            idleConnections.add(connection);
+            if (!activeConnections.contains(connection)) {
+                return;
+            }
+        }
+        if (!resetAutoCommit(connection)) {
+            try {
+                reportProblem(connection);
+            }
+            catch (SQLException e) {
+                log.log(Level.WARNING, "Exception closing connection", e);
+            }
+            return;
+        }
+        synchronized (this) {
+            if (!activeConnections.remove(connection)) {
+                return;
+            }
+            idleConnections.addFirst(connection);
             ci.touch();
+            if (idleConnections.size() > maxIdleConnections) {
+                excess = connectionInfoMap.remove(idleConnections.removeLast());
+            }
         }
+        permits.release();
+        long reserved = ci.getLastAccessTime() - ci.getReservationTime();
+        metrics.recordReservation(reserved, connectionLongTime > 0 && reserved > connectionLongTime);
         if (log.isLoggable(Level.FINE)) {
             log.fine("Thread " + Thread.currentThread() +" deallocated connection with id = " + ci.getId());
         }
-        cleanup();
+        if (excess != null) {
+            retire(excess);
+        }
     }
-    
-    public Statement getStatement(Connection connection) throws SQLException {
-        ConnectionInfo ci;
-        synchronized (this) {
-            ci = connectionInfoMap.get(connection);
-            if (ci == null) {
-                throw new IllegalStateException("Connection not managed by this pool");
+
+    /*
+     * A connection that comes back with auto commit off would pass its uncommitted work, and
+     * the manual commit mode, on to the next caller.
+     */
+    private static boolean resetAutoCommit(Connection connection) {
+        try {
+            if (!connection.getAutoCommit()) {
+                log.warning("Connection returned to the pool with auto commit off, rolling back");
+                connection.rollback();
+                connection.setAutoCommit(true);
             }
-            ci.touch();
+            return true;
         }
-        return ci.getStatement();
+        catch (SQLException e) {
+            log.log(Level.WARNING, "Could not reset a returned connection, closing it", e);
+            return false;
+        }
+    }
+
+    public Statement getStatement(Connection connection) throws SQLException {
+        return getConnectionInfo(connection).getStatement();
     }
-    
+
     public PreparedStatement getPreparedStatement(Connection connection, String text) throws SQLException {
-        ConnectionInfo ci;
-        synchronized (this) {
-            ci = connectionInfoMap.get(connection);
-            if (ci == null) {
-                throw new IllegalStateException("Connection not managed by this pool");
-            }
-            ci.touch();
+        return getConnectionInfo(connection).getPreparedStatement(text);
+    }
+
+    private ConnectionInfo getConnectionInfo(Connection connection) {
+        ConnectionInfo ci = connectionInfoMap.get(connection);
+        if (ci == null) {
+            throw new IllegalStateException("Connection not managed by this pool");
         }
-        return ci.getPreparedStatement(text);
+        ci.touch();
+        return ci;
     }
 
     public void reference() {
         referenceCount++;
     }
-    
+
     public void dereference() throws SQLException {
         referenceCount--;
         if (referenceCount == 0) {
@@ -197,119 +390,144 @@ public class ConnectionPool {
                 DatabaseParam dp = new DatabaseParam(driver, url, username, password);
                 connectionPoolMap.remove(dp);
             }
-            executor.shutdownNow(); // no more multi-threaded  access...
-            for (ConnectionInfo ci : connectionInfoMap.values()) {
-                ci.close();
-            }
+            close();
+        }
+    }
+
+    public void close() throws SQLException {
+        executor.shutdownNow(); // no more multi-threaded  access...
+        for (ConnectionInfo ci : connectionInfoMap.values()) {
+            ci.close();
         }
     }
-    
+
     public void closeStatements(Connection connection) throws SQLException {
-        ConnectionInfo ci;
-        synchronized (this) {
-            ci = connectionInfoMap.get(connection);
-            if (ci == null) {
-                throw new IllegalStateException("Connection not managed by this pool");
-            }
+        ConnectionInfo ci = connectionInfoMap.get(connection);
+        if (ci == null) {
+            throw new IllegalStateException("Connection not managed by this pool");
         }
         ci.closeStatements();
     }
-    
+
     public void reportProblem(Connection connection) throws SQLException {
         ConnectionInfo ci;
+        boolean wasActive;
         synchronized (this) {
             ci = connectionInfoMap.remove(connection);
             if (ci == null) {
                 throw new IllegalStateException("Connection not managed by this pool");
             }
             idleConnections.remove(connection);
+            wasActive = activeConnections.remove(connection);
+        }
+        if (wasActive) {
+            permits.release();
         }
         ci.close();
     }
-    
 
-    private  void cleanup() {
-        long now = System.currentTimeMillis();
-        List<ConnectionInfo> myIdleConnections = new ArrayList<ConnectionInfo>();
 
-        synchronized (this) {
-            for (Connection connection : this.idleConnections) {
-                myIdleConnections.add(connectionInfoMap.get(connection));
-            }
-            Collections.sort(myIdleConnections, new Comparator<ConnectionInfo>() {
-                public int compare(ConnectionInfo o1, ConnectionInfo o2) {
-                    return (int) (o1.getLastAccessTime() - o2.getLastAccessTime());
-                }
-            });
-        }
-        for (ConnectionInfo ci : myIdleConnections) {
+    /*
+     * Closes the idle connections that have not been used for the refresh interval, oldest
+     * first.  The idle list is ordered by the time the connections were returned.
+     */
+    private void cleanup() {
+        long now = System.currentTimeMillis();
+        while (true) {
+            ConnectionInfo ci;
             synchronized (this) {
-                if (now - ci.getLastAccessTime() <= connectionRefreshInterval) {
+                if (idleConnections.isEmpty()) {
                     break;
                 }
-                else if (!idleConnections.contains(ci.getConnection()))  {
-                    continue;
-                }
-                else {
-                    idleConnections.remove(ci.getConnection());
-                    connectionInfoMap.remove(ci.getConnection());
-                }
-            }
-            try {
-                ci.close();
-            }
-            catch (Throwable t) {
-                if (log.isLoggable(Level.WARNING)) {
-                    log.log(Level.WARNING, "Exception caught closing connection during cleanup", t);
+                ci = connectionInfoMap.get(idleConnections.getLast());
+                if (now - ci.getLastAccessTime() <= connectionRefreshInterval) {
+                    break;
                 }
+                connectionInfoMap.remove(idleConnections.removeLast());
             }
+            retire(ci);
+        }
+        if (connectionLongTime > 0) {
+            checkLongRunningConnections();
         }
+    }
 
-        for (ConnectionInfo ci : myIdleConnections) {
-            synchronized(this) {
-                if (idleConnections.size() <= maxOpenConnections) {
+    private void ensureMinimumConnections() {
+        while (true) {
+            synchronized (this) {
+                if (connectionInfoMap.size() >= minConnections) {
                     break;
                 }
-                else if (!idleConnections.contains(ci.getConnection())) {
-                    continue;
-                }
-                else {
-                    idleConnections.remove(ci.getConnection());
-                    connectionInfoMap.remove(ci.getConnection());
-                }
             }
             try {
-                ci.close();
-            }
-            catch (Throwable t) {
-                if (log.isLoggable(Level.WARNING)) {
-                    log.log(Level.WARNING, "Exception caught closing connection during cleanup", t);
+                Connection connection = openConnection();
+                synchronized (this) {
+                    idleConnections.addLast(connection);
+                    connectionInfoMap.get(connection).touch();
                 }
             }
+            catch (SQLException e) {
+                log.log(Level.WARNING, "Could not open the minimum number of database connections", e);
+                break;
+            }
         }
-        if (connectionLongTime > 0) {
-            checkLongRunningConnections();
+    }
+
+    /**
+     * Closes the idle connections now rather than when the reaper finds them too old.  The
+     * statements they had cached are prepared again on the next new connection.
+     */
+    public void refreshIdleConnections() {
+        List<ConnectionInfo> myIdleConnections = new ArrayList<ConnectionInfo>();
+        synchronized (this) {
+            for (Connection connection : idleConnections) {
+                myIdleConnections.add(connectionInfoMap.remove(connection));
+            }
+            idleConnections.clear();
+        }
+        for (ConnectionInfo ci : myIdleConnections) {
+            retire(ci);
         }
     }
-    
-    private void checkLongRunningConnections() { 
+
+    private void retire(ConnectionInfo ci) {
+        List<String> statementTexts = ci.getStatementTexts();
+        if (!statementTexts.isEmpty()) {
+            synchronized (this) {
+                Set<String> texts = new LinkedHashSet<String>(retiredStatementTexts);
+                texts.removeAll(statementTexts);
+                texts.addAll(statementTexts);
+                List<String> mergedTexts = new ArrayList<String>(texts);
+                int size = mergedTexts.size();
+                retiredStatementTexts = mergedTexts.subList(Math.max(0, size - maxStatementsPerConnection), size);
+            }
+        }
+        try {
+            ci.close();
+        }
+        catch (Throwable t) {
+            if (log.isLoggable(Level.WARNING)) {
+                log.log(Level.WARNING, "Exception caught closing connection during cleanup", t);
+            }
+        }
+    }
+
+    private void checkLongRunningConnections() {
         long now = System.currentTimeMillis();
         synchronized (this) {
-            for (Entry<Connection, ConnectionInfo> entry : connectionInfoMap.entrySet()) {
-                Connection connection = entry.getKey();
-                ConnectionInfo ci = entry.getValue();
-                if (!ci.getInformedUserOfLongConnectionTime() 
-                        && now - ci.getLastAccessTime() > connectionLongTime
-                        && !idleConnections.contains(connection)) {
-                    log.log(Level.WARNING, 
-                            "Connection has been reserved but idle for a long time (" + (now - ci.getLastAccessTime()) + "ms).  Call stack follows.", 
+            for (Connection connection : activeConnections) {
+                ConnectionInfo ci = connectionInfoMap.get(connection);
+                if (!ci.getInformedUserOfLongConnectionTime()
+                        && now - ci.getLastAccessTime() > connectionLongTime) {
+                    log.log(Level.WARNING,
+                            "Connection has been reserved but idle for a long time (" + (now - ci.getLastAccessTime()) + "ms).  Call stack follows.",
                             ci.getConnectionCallStack());
                     ci.setInformedUserOfLongConnectionTime(true);
                 }
             }
         }
     }
-    
+
     private void setReaperThreadName() {
         int connectionCount;
         int idleCount;
@@ -319,4 +537,10 @@ public class ConnectionPool {
         }
         Thread.currentThread().setName("Connection Reaper [" + connectionCount + ", " + idleCount + "]");
     }
+
+    @Override
+    public String toString() {
+        return "active=" + getActiveCount() + "/" + maxActiveConnections + ", idle=" + getIdleCount()
+            + ", waiting=" + getWaitingCount() + ", " + metrics;
+    }
 }
@@ -0,0 +1,184 @@
+package edu.stanford.smi.protege.storage.database.pool;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters kept by a ConnectionPool and its connections.  The counters are only ever
+ * incremented (until reset()) so a caller that wants rates takes two readings.
+ * <p></p>
+ * <b>Thread Safety:</b> all methods are thread safe.
+ */
+public class ConnectionPoolMetrics {
+    private final AtomicLong prepareCount = new AtomicLong();
+    private final AtomicLong statementHitCount = new AtomicLong();
+    private final AtomicLong statementEvictionCount = new AtomicLong();
+    private final AtomicLong connectionRequestCount = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong connectionWaitNanos = new AtomicLong();
+    private final AtomicLong maxConnectionWaitNanos = new AtomicLong();
+    private final AtomicLong connectionTimeoutCount = new AtomicLong();
+    private final AtomicLong connectionRejectedCount = new AtomicLong();
+    private final AtomicLong reservedMillis = new AtomicLong();
+    private final AtomicLong longRunningCount = new AtomicLong();
+    private final AtomicLong longRunningMillis = new AtomicLong();
+
+    void recordPrepare() {
+        prepareCount.incrementAndGet();
+    }
+
+    void recordStatementHit() {
+        statementHitCount.incrementAndGet();
+    }
+
+    void recordStatementEviction() {
+        statementEvictionCount.incrementAndGet();
+    }
+
+    void recordConnectionOpened() {
+        connectionsOpened.incrementAndGet();
+    }
+
+    void recordConnectionWait(long nanos) {
+        connectionRequestCount.incrementAndGet();
+        connectionWaitNanos.addAndGet(nanos);
+        long max = maxConnectionWaitNanos.get();
+        while (nanos > max && !maxConnectionWaitNanos.compareAndSet(max, nanos)) {
+            max = maxConnectionWaitNanos.get();
+        }
+    }
+
+    void recordConnectionTimeout() {
+        connectionTimeoutCount.incrementAndGet();
+    }
+
+    void recordConnectionRejected() {
+        connectionRejectedCount.incrementAndGet();
+    }
+
+    void recordReservation(long millis, boolean isLongRunning) {
+        reservedMillis.addAndGet(millis);
+        if (isLongRunning) {
+            longRunningCount.incrementAndGet();
+            longRunningMillis.addAndGet(millis);
+        }
+    }
+
+    /**
+     * @return the number of statements prepared, including the ones prepared again after
+     * a connection was refreshed.
+     */
+    public long getPrepareCount() {
+        return prepareCount.get();
+    }
+
+    /**
+     * @return the number of prepared statement requests served from a statement cache.
+     */
+    public long getStatementHitCount() {
+        return statementHitCount.get();
+    }
+
+    public long getStatementEvictionCount() {
+        return statementEvictionCount.get();
+    }
+
+    /**
+     * @return the fraction of prepared statement requests served from a statement cache.
+     */
+    public double getStatementHitRate() {
+        long hits = statementHitCount.get();
+        long requests = hits + prepareCount.get();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    public long getConnectionRequestCount() {
+        return connectionRequestCount.get();
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    /**
+     * @return the total time in nanoseconds that callers of getConnection() spent waiting,
+     * including the time to open new connections.
+     */
+    public long getConnectionWaitNanos() {
+        return connectionWaitNanos.get();
+    }
+
+    public long getMaxConnectionWaitNanos() {
+        return maxConnectionWaitNanos.get();
+    }
+
+    /**
+     * @return the number of getConnection() calls that gave up after the
+     * Database.connection.wait.timeout.
+     */
+    public long getConnectionTimeoutCount() {
+        return connectionTimeoutCount.get();
+    }
+
+    /**
+     * @return the number of getConnection() calls that failed at once because
+     * Database.max.waiting.threads callers were already waiting.
+     */
+    public long getConnectionRejectedCount() {
+        return connectionRejectedCount.get();
+    }
+
+    /**
+     * @return the total time in milliseconds that connections were reserved (between
+     * getConnection() and ungetConnection()).
+     */
+    public long getReservedMillis() {
+        return reservedMillis.get();
+    }
+
+    /**
+     * @return the number of reservations that lasted longer than the
+     * Database.long.running.connection.time.
+     */
+    public long getLongRunningCount() {
+        return longRunningCount.get();
+    }
+
+    /**
+     * @return the total time in milliseconds of the reservations counted by
+     * getLongRunningCount().
+     */
+    public long getLongRunningMillis() {
+        return longRunningMillis.get();
+    }
+
+    public void reset() {
+        prepareCount.set(0);
+        statementHitCount.set(0);
+        statementEvictionCount.set(0);
+        connectionRequestCount.set(0);
+        connectionsOpened.set(0);
+        connectionWaitNanos.set(0);
+        maxConnectionWaitNanos.set(0);
+        connectionTimeoutCount.set(0);
+        connectionRejectedCount.set(0);
+        reservedMillis.set(0);
+        longRunningCount.set(0);
+        longRunningMillis.set(0);
+    }
+
+    @Override
+    public String toString() {
+        long requests = connectionRequestCount.get();
+        return "prepares=" + prepareCount.get()
+            + ", statement hit rate=" + Math.round(getStatementHitRate() * 100) + "%"
+            + ", evictions=" + statementEvictionCount.get()
+            + ", connection requests=" + requests
+            + ", opened=" + connectionsOpened.get()
+            + ", average wait=" + (requests == 0 ? 0 : connectionWaitNanos.get() / requests / 1000) + "us"
+            + ", max wait=" + maxConnectionWaitNanos.get() / 1000 + "us"
+            + ", timeouts=" + connectionTimeoutCount.get()
+            + ", rejected=" + connectionRejectedCount.get()
+            + ", reserved=" + reservedMillis.get() + "ms"
+            + ", long running=" + longRunningCount.get() + " (" + longRunningMillis.get() + "ms)";
+    }
+}
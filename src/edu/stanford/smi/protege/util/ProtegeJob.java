@@ -95,6 +95,18 @@ public abstract class ProtegeJob extends RemoteJob implements Localizable, Seria
     }
   }
 
+  /**
+   * A job that only reads the knowledge base can return true.  The server then runs the
+   * job against a point in time snapshot of the knowledge base (if the knowledge base is
+   * kept in memory) so that the job sees a consistent view without blocking other users.
+   * Such a job must not modify the knowledge base.
+   * 
+   * @return true if this job does not modify the knowledge base.
+   */
+  public boolean isReadOnly() {
+    return false;
+  }
+
   /**
    * Returns the knowledge base associated with this job.
    * 
@@ -10,24 +10,31 @@ import java.util.regex.Pattern;
 public class SimpleStringMatcher implements StringMatcher {
     private Pattern pattern;
     private static final char WILDCARD = '*';
-    private static final String SPECIAL = "[]{}()^+.?-:,&\\";
 
+    /*
+     * Everything but the wildcards is quoted so that no character of the string has a
+     * regular expression meaning.
+     */
     public SimpleStringMatcher(String s) {
         StringBuffer buffer = new StringBuffer();
+        int start = 0;
         for (int i = 0; i < s.length(); ++i) {
-            char c = s.charAt(i);
-            if (c == WILDCARD) {
+            if (s.charAt(i) == WILDCARD) {
+                appendLiteral(buffer, s.substring(start, i));
                 buffer.append(".*");
-            } else if (SPECIAL.indexOf(c) != -1) {
-                buffer.append('\\');
-                buffer.append(c);
-            } else {
-                buffer.append(c);
+                start = i + 1;
             }
         }
+        appendLiteral(buffer, s.substring(start));
         pattern = Pattern.compile(buffer.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
     }
 
+    private static void appendLiteral(StringBuffer buffer, String literal) {
+        if (literal.length() > 0) {
+            buffer.append(Pattern.quote(literal));
+        }
+    }
+
     public boolean isMatch(String value) {    	
         return pattern.matcher(value).matches();
     }
@@ -0,0 +1,246 @@
+package edu.stanford.smi.protege.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache with a fixed maximum number of entries and W-TinyLFU eviction.  New entries go into
+ * a small LRU window (1% of the entries).  An entry that falls out of the window only replaces
+ * the least recently used entry of the main cache if it has been asked for more often, as
+ * estimated by a count-min sketch of recent accesses.  The main cache is a segmented LRU: an
+ * entry that is read again moves from the probation segment to the protected segment (80% of
+ * the main cache).  A burst of entries that are read only once (e.g. a scan over all frames)
+ * therefore does not push out the entries that are read all the time.
+ * <p>
+ * Entries are evicted as they are added, never by the garbage collector.  All methods are
+ * synchronized.
+ */
+public class TinyLfuCache<K, V> {
+    private final int maximumSize;
+    private final int windowSize;
+    private final int protectedSize;
+    private final int mainSize;
+
+    private final LinkedHashMap<K, V> window = new LinkedHashMap<K, V>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> probation = new LinkedHashMap<K, V>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> protectedEntries = new LinkedHashMap<K, V>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+
+    private long evictionCount;
+    private long rejectionCount;
+
+    public TinyLfuCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        windowSize = Math.max(1, maximumSize / 100);
+        mainSize = maximumSize - windowSize;
+        protectedSize = mainSize * 4 / 5;
+        sketch = new FrequencySketch(maximumSize);
+    }
+
+    public synchronized V get(K key) {
+        sketch.increment(key);
+        V value = window.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = protectedEntries.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = probation.remove(key);
+        if (value != null) {
+            protectedEntries.put(key, value);
+            if (protectedEntries.size() > protectedSize) {
+                Map.Entry<K, V> demoted = removeEldest(protectedEntries);
+                probation.put(demoted.getKey(), demoted.getValue());
+            }
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        if (window.containsKey(key)) {
+            window.put(key, value);
+        } else if (protectedEntries.containsKey(key)) {
+            protectedEntries.put(key, value);
+        } else if (probation.containsKey(key)) {
+            probation.put(key, value);
+        } else {
+            sketch.increment(key);
+            window.put(key, value);
+            if (window.size() > windowSize) {
+                admit(removeEldest(window));
+            }
+        }
+    }
+
+    /*
+     * The candidate has left the window.  Once the main cache is full the candidate and the
+     * least recently used entry of the main cache compete on their estimated frequency.
+     */
+    private void admit(Map.Entry<K, V> candidate) {
+        if (probation.size() + protectedEntries.size() < mainSize) {
+            probation.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+        if (mainSize == 0) {
+            ++evictionCount;
+            return;
+        }
+        LinkedHashMap<K, V> victims = probation.isEmpty() ? protectedEntries : probation;
+        K victim = victims.keySet().iterator().next();
+        if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim)) {
+            victims.remove(victim);
+            probation.put(candidate.getKey(), candidate.getValue());
+        } else {
+            ++rejectionCount;
+        }
+        ++evictionCount;
+    }
+
+    private static <K, V> Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> map) {
+        Iterator<Map.Entry<K, V>> i = map.entrySet().iterator();
+        Map.Entry<K, V> eldest = i.next();
+        Map.Entry<K, V> copy = new Tuple<K, V>(eldest.getKey(), eldest.getValue());
+        i.remove();
+        return copy;
+    }
+
+    public synchronized V remove(K key) {
+        V value = window.remove(key);
+        if (value == null) {
+            value = probation.remove(key);
+        }
+        if (value == null) {
+            value = protectedEntries.remove(key);
+        }
+        return value;
+    }
+
+    public synchronized boolean containsKey(K key) {
+        return window.containsKey(key) || probation.containsKey(key) || protectedEntries.containsKey(key);
+    }
+
+    public synchronized void clear() {
+        window.clear();
+        probation.clear();
+        protectedEntries.clear();
+    }
+
+    public synchronized int size() {
+        return window.size() + probation.size() + protectedEntries.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return the number of entries that were dropped to stay within the maximum size,
+     * including new entries that were not admitted.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of entries that left the window but were not admitted to the main
+     * cache because the entry they would have replaced was used more often.
+     */
+    public synchronized long getRejectionCount() {
+        return rejectionCount;
+    }
+
+    private static class Tuple<K, V> implements Map.Entry<K, V> {
+        private final K key;
+        private final V value;
+
+        Tuple(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /*
+     * A count-min sketch with four rows of four bit counters (two to a byte) that saturate
+     * at 15.  Each row has four counters per entry of the cache so that collisions between
+     * entries are rare.  All counters are halved after 10 * maximumSize increments so that
+     * the estimates follow recent accesses.
+     */
+    private static class FrequencySketch {
+        private static final int ROWS = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = { 0x97cb3127, 0xb7e15163, 0x9e3779b9, 0x7f4a7c15 };
+
+        private final byte[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            int width = Integer.highestOneBit(Math.max(16, Math.min(maximumSize, 1 << 22) - 1)) << 3;
+            counters = new byte[ROWS][width / 2];
+            mask = width - 1;
+            sampleSize = maximumSize < Integer.MAX_VALUE / 10 ? 10 * maximumSize : Integer.MAX_VALUE;
+        }
+
+        private int index(Object key, int row) {
+            int h = key.hashCode() * SEEDS[row];
+            h ^= h >>> 17;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            return h & mask;
+        }
+
+        private int count(int row, int index) {
+            return (counters[row][index >>> 1] >>> ((index & 1) << 2)) & MAX_COUNT;
+        }
+
+        void increment(Object key) {
+            boolean added = false;
+            for (int row = 0; row < ROWS; ++row) {
+                int index = index(key, row);
+                if (count(row, index) < MAX_COUNT) {
+                    counters[row][index >>> 1] += 1 << ((index & 1) << 2);
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(Object key) {
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < ROWS; ++row) {
+                frequency = Math.min(frequency, count(row, index(key, row)));
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            for (byte[] row : counters) {
+                for (int i = 0; i < row.length; ++i) {
+                    row[i] = (byte) ((row[i] >>> 1) & 0x77);
+                }
+            }
+            additions /= 2;
+        }
+    }
+}